@@ -7,6 +7,7 @@
 
 package net.codecrete.qrbill.examples.perftest;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,9 +24,26 @@ public class PerformanceTest {
     private static final int BATCH_COUNT = 1000;
 
     AtomicInteger counter = new AtomicInteger();
+    private final boolean useVirtualThreads;
+    private ExecutorService renderExecutor;
 
+    PerformanceTest(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Runs the performance test.
+     * <p>
+     * With the argument {@code --virtual-threads} (requires Java 21), each task runs on
+     * its own virtual thread and only the bill generation is run on a bounded
+     * pool of platform threads (one per processor).
+     * </p>
+     *
+     * @param args command line arguments
+     */
     public static void main(String[] args) {
-        PerformanceTest test = new PerformanceTest();
+        boolean useVirtualThreads = args.length > 0 && args[0].equals("--virtual-threads");
+        PerformanceTest test = new PerformanceTest(useVirtualThreads);
         try {
             test.execute(GraphicsFormat.SVG);
             test.execute(GraphicsFormat.PDF);
@@ -36,7 +54,13 @@ public class PerformanceTest {
     }
 
     void execute(GraphicsFormat graphicsFormat) throws InterruptedException {
-        ExecutorService executor = Executors.newFixedThreadPool(8);
+        ExecutorService executor;
+        if (useVirtualThreads) {
+            executor = newVirtualThreadPerTaskExecutor();
+            renderExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        } else {
+            executor = Executors.newFixedThreadPool(8);
+        }
 
         // warm up
         counter.set(0);
@@ -53,9 +77,20 @@ public class PerformanceTest {
         executor.shutdown();
         executor.awaitTermination(100, TimeUnit.SECONDS);
         long endTime = System.currentTimeMillis();
+        if (renderExecutor != null)
+            renderExecutor.shutdown();
 
-        double billPerSecond = (endTime - startTime) * 1000.0 / counter.intValue();
-        System.out.printf("Performance for %s: %.0f bill/second", graphicsFormat.name(), billPerSecond);
+        double billPerSecond = counter.intValue() * 1000.0 / (endTime - startTime);
+        System.out.printf("Performance for %s%s: %.0f bill/second%n", graphicsFormat.name(),
+                useVirtualThreads ? " (virtual threads)" : "", billPerSecond);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
     }
 
     void addBatchOfWork(ExecutorService executor, GraphicsFormat graphicsFormat) {
@@ -89,7 +124,10 @@ public class PerformanceTest {
             bill.getFormat().setGraphicsFormat(graphicsFormat);
 
             try {
-                QRBill.generate(bill);
+                if (renderExecutor != null)
+                    renderExecutor.submit(() -> QRBill.generate(bill)).get();
+                else
+                    QRBill.generate(bill);
             } catch (Exception e) {
                 e.printStackTrace();
                 System.exit(1);
@@ -0,0 +1,66 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the finalization of a canvas (encoding the PNG image, saving the PDF document
+ * or closing the SVG document).
+ * <p>
+ * Must only be used if the JFR API is available (see {@link JfrEvents}).
+ * </p>
+ */
+@Name("net.codecrete.qrbill.CanvasFinalization")
+@Label("Canvas Finalization")
+@Category("QR Bill")
+@Description("Encoding or saving the drawing of a canvas")
+@StackTrace(false)
+final class JfrCanvasFinalizationEvent extends jdk.jfr.Event implements CanvasFinalizationEvent {
+
+    @Label("Graphics Format")
+    String graphicsFormat;
+
+    @Label("Output Length")
+    @Description("Length of the encoded output (0 if unknown)")
+    @DataAmount
+    long outputLength;
+
+    /**
+     * Starts the event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static JfrCanvasFinalizationEvent start() {
+        JfrCanvasFinalizationEvent event = new JfrCanvasFinalizationEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format the graphics format
+     * @param length the output length (or 0)
+     */
+    @Override
+    public void commit(String format, long length) {
+        end();
+        if (!shouldCommit())
+            return;
+        graphicsFormat = format;
+        outputLength = length;
+        commit();
+    }
+}
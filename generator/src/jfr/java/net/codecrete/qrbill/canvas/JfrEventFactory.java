@@ -0,0 +1,26 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+/**
+ * Factory for the JFR events of the canvas classes.
+ * <p>
+ * Loaded reflectively by {@link JfrEvents}. Loading fails if the JFR API is not available.
+ * </p>
+ */
+final class JfrEventFactory implements JfrEvents.Factory {
+
+    JfrEventFactory() {
+        // fails if the JFR API is not available
+        jdk.jfr.FlightRecorder.isAvailable();
+    }
+
+    @Override
+    public CanvasFinalizationEvent startCanvasFinalization() {
+        return JfrCanvasFinalizationEvent.start();
+    }
+}
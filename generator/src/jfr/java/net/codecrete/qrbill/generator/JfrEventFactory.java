@@ -0,0 +1,41 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * Factory for the JFR events of the generator.
+ * <p>
+ * Loaded reflectively by {@link JfrEvents}. Loading fails if the JFR API is not available.
+ * </p>
+ */
+final class JfrEventFactory implements JfrEvents.Factory {
+
+    JfrEventFactory() {
+        // fails if the JFR API is not available
+        jdk.jfr.FlightRecorder.isAvailable();
+    }
+
+    @Override
+    public ValidationEvent startValidation() {
+        return JfrValidationEvent.start();
+    }
+
+    @Override
+    public QrCodeEncodingEvent startQrCodeEncoding() {
+        return JfrQrCodeEncodingEvent.start();
+    }
+
+    @Override
+    public LayoutEvent startLayout() {
+        return JfrLayoutEvent.start();
+    }
+
+    @Override
+    public RenderingEvent startRendering() {
+        return JfrRenderingEvent.start();
+    }
+}
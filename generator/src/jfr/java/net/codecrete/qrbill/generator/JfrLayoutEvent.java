@@ -0,0 +1,73 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the layout and drawing of the payment part and receipt
+ */
+@Name("net.codecrete.qrbill.Layout")
+@Label("QR Bill Layout")
+@Category("QR Bill")
+@Description("Text layout and drawing of payment part and receipt (including the QR code)")
+@StackTrace(false)
+final class JfrLayoutEvent extends jdk.jfr.Event implements LayoutEvent {
+
+    @Label("Graphics Format")
+    String graphicsFormat;
+
+    @Label("Output Size")
+    String outputSize;
+
+    @Label("Language")
+    String language;
+
+    @Label("QR Code Version")
+    int qrCodeVersion;
+
+    @Label("Text Font Size")
+    @Description("Font size of the payment part text (reduced for bills with much text)")
+    int textFontSize;
+
+    /**
+     * Starts the event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static JfrLayoutEvent start() {
+        JfrLayoutEvent event = new JfrLayoutEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format   the bill format
+     * @param version  the QR code version
+     * @param fontSize the text font size
+     */
+    @Override
+    public void commit(BillFormat format, int version, int fontSize) {
+        end();
+        if (!shouldCommit())
+            return;
+        graphicsFormat = JfrEvents.name(format.getGraphicsFormat());
+        outputSize = JfrEvents.name(format.getOutputSize());
+        language = JfrEvents.name(format.getLanguage());
+        qrCodeVersion = version;
+        textFontSize = fontSize;
+        commit();
+    }
+}
@@ -0,0 +1,61 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for encoding the text as a QR code
+ */
+@Name("net.codecrete.qrbill.QrCodeEncoding")
+@Label("QR Code Encoding")
+@Category("QR Bill")
+@Description("Encoding the QR code text (segmentation, error correction, masking)")
+@StackTrace(false)
+final class JfrQrCodeEncodingEvent extends jdk.jfr.Event implements QrCodeEncodingEvent {
+
+    @Label("QR Code Version")
+    int qrCodeVersion;
+
+    @Label("Text Length")
+    @DataAmount
+    int textLength;
+
+    /**
+     * Starts the event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static JfrQrCodeEncodingEvent start() {
+        JfrQrCodeEncodingEvent event = new JfrQrCodeEncodingEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param text    the encoded text
+     * @param version the QR code version
+     */
+    @Override
+    public void commit(String text, int version) {
+        end();
+        if (!shouldCommit())
+            return;
+        qrCodeVersion = version;
+        textLength = text.length();
+        commit();
+    }
+}
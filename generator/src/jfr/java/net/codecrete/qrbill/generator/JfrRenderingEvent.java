@@ -0,0 +1,77 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for rendering a validated bill
+ */
+@Name("net.codecrete.qrbill.Rendering")
+@Label("QR Bill Rendering")
+@Category("QR Bill")
+@Description("Drawing a validated QR bill and, for generated SVG and PDF data, serializing it")
+@StackTrace(false)
+final class JfrRenderingEvent extends jdk.jfr.Event implements RenderingEvent {
+
+    @Label("Graphics Format")
+    String graphicsFormat;
+
+    @Label("Output Size")
+    String outputSize;
+
+    @Label("Language")
+    String language;
+
+    @Label("QR Code Version")
+    int qrCodeVersion;
+
+    @Label("Output Length")
+    @Description("Length of generated SVG or PDF data (0 if drawn onto a canvas provided by the caller)")
+    @DataAmount
+    long outputLength;
+
+    /**
+     * Starts the event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static JfrRenderingEvent start() {
+        JfrRenderingEvent event = new JfrRenderingEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format  the bill format
+     * @param version the QR code version
+     * @param length  the output length (or 0)
+     */
+    @Override
+    public void commit(BillFormat format, int version, long length) {
+        end();
+        if (!shouldCommit())
+            return;
+        if (format != null) {
+            graphicsFormat = JfrEvents.name(format.getGraphicsFormat());
+            outputSize = JfrEvents.name(format.getOutputSize());
+            language = JfrEvents.name(format.getLanguage());
+        }
+        qrCodeVersion = version;
+        outputLength = length;
+        commit();
+    }
+}
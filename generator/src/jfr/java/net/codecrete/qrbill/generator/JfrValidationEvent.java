@@ -0,0 +1,71 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the validation of the bill data
+ */
+@Name("net.codecrete.qrbill.Validation")
+@Label("QR Bill Validation")
+@Category("QR Bill")
+@Description("Validation and cleaning of QR bill data")
+@StackTrace(false)
+final class JfrValidationEvent extends jdk.jfr.Event implements ValidationEvent {
+
+    @Label("Graphics Format")
+    String graphicsFormat;
+
+    @Label("Output Size")
+    String outputSize;
+
+    @Label("Valid")
+    boolean valid;
+
+    @Label("Messages")
+    @Description("Number of error and warning messages")
+    int messageCount;
+
+    /**
+     * Starts the event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static JfrValidationEvent start() {
+        JfrValidationEvent event = new JfrValidationEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param bill   the bill data
+     * @param result the validation result
+     */
+    @Override
+    public void commit(Bill bill, ValidationResult result) {
+        end();
+        if (!shouldCommit())
+            return;
+        BillFormat format = bill.getFormat();
+        if (format != null) {
+            graphicsFormat = JfrEvents.name(format.getGraphicsFormat());
+            outputSize = JfrEvents.name(format.getOutputSize());
+        }
+        valid = !result.hasErrors();
+        messageCount = result.getMessageCount();
+        commit();
+    }
+}
@@ -0,0 +1,166 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatorbenchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the binary bill encoding in {@link BillCodec} compared to
+ * Java serialization and JSON (Jackson).
+ * <p>
+ * The batch benchmarks encode 100 bills of the same creditor into a single
+ * buffer, which benefits from the shared string dictionary.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillCodecBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private Bill bill;
+    private Bill[] batch;
+    private byte[] codecData;
+    private byte[] serializedData;
+    private byte[] jsonData;
+    private ByteBuffer batchBuffer;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() throws IOException {
+        bill = createBill(1);
+        batch = new Bill[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++)
+            batch[i] = createBill(i);
+
+        mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        codecData = BillCodec.encode(bill);
+        serializedData = serialize(bill);
+        jsonData = mapper.writeValueAsBytes(bill);
+        batchBuffer = ByteBuffer.allocate(64 * 1024);
+
+        System.out.printf("%nEncoded size: codec %d bytes, Java serialization %d bytes, JSON %d bytes%n",
+                codecData.length, serializedData.length, jsonData.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return BillCodec.encode(bill);
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() throws IOException {
+        return serialize(bill);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return mapper.writeValueAsBytes(bill);
+    }
+
+    @Benchmark
+    public Bill decodeCodec() {
+        return BillCodec.decodeBill(codecData);
+    }
+
+    @Benchmark
+    public Bill decodeJavaSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedData))) {
+            return (Bill) in.readObject();
+        }
+    }
+
+    @Benchmark
+    public Bill decodeJson() throws IOException {
+        return mapper.readValue(jsonData, Bill.class);
+    }
+
+    @Benchmark
+    public int encodeBatchCodec() {
+        batchBuffer.clear();
+        BillCodec.Writer writer = new BillCodec.Writer();
+        for (Bill b : batch)
+            writer.writeBill(b, batchBuffer);
+        return batchBuffer.position();
+    }
+
+    @Benchmark
+    public int encodeBatchJavaSerialization() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            for (Bill b : batch)
+                out.writeObject(b);
+        }
+        return buffer.size();
+    }
+
+    private static byte[] serialize(Bill bill) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(bill);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Bill createBill(int index) {
+        Bill bill = new Bill();
+        bill.setAccount("CH4431999123000889012");
+        bill.setAmount(BigDecimal.valueOf(100000 + index * 37L, 2));
+        bill.setCurrency("CHF");
+        bill.setReference("210000000003139471430009017");
+        bill.setUnstructuredMessage("Invoice 2020-" + index);
+
+        Address creditor = new Address();
+        creditor.setName("Robert Schneider AG");
+        creditor.setStreet("Rue du Lac");
+        creditor.setHouseNo("1268/2/22");
+        creditor.setPostalCode("2501");
+        creditor.setTown("Biel");
+        creditor.setCountryCode("CH");
+        bill.setCreditor(creditor);
+
+        Address debtor = new Address();
+        debtor.setName("Pia-Maria Rutschmann-Schnyder");
+        debtor.setStreet("Grosse Marktgasse");
+        debtor.setHouseNo(Integer.toString(index));
+        debtor.setPostalCode("9400");
+        debtor.setTown("Rorschach");
+        debtor.setCountryCode("CH");
+        bill.setDebtor(debtor);
+        return bill;
+    }
+}
@@ -0,0 +1,161 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatorbenchmark;
+
+import net.codecrete.qrbill.generator.Payments;
+import net.codecrete.qrbill.generator.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the IBAN and reference number validation in {@link Payments}.
+ * <p>
+ * The inputs are formatted the way they are typically entered or printed, i.e.
+ * with spaces. For comparison, the benchmark also measures the previous
+ * implementation, which removed the whitespace and rearranged the characters
+ * by allocating intermediate strings.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentsBenchmark {
+
+    private String iban = "CH44 3199 9123 0008 8901 2";
+    private String creditorReference = "RF18 5390 0754 7034";
+    private String qrReference = "21 00000 00003 13947 14300 09017";
+
+    @Benchmark
+    public boolean validateIBAN() {
+        return Payments.isValidIBAN(iban);
+    }
+
+    @Benchmark
+    public boolean validateIBANWithAllocation() {
+        return LegacyPayments.isValidIBAN(iban);
+    }
+
+    @Benchmark
+    public boolean validateCreditorReference() {
+        return Payments.isValidISO11649Reference(creditorReference);
+    }
+
+    @Benchmark
+    public boolean validateCreditorReferenceWithAllocation() {
+        return LegacyPayments.isValidISO11649Reference(creditorReference);
+    }
+
+    @Benchmark
+    public boolean validateQRReference() {
+        return Payments.isValidQRReference(qrReference);
+    }
+
+    @Benchmark
+    public boolean validateQRReferenceWithAllocation() {
+        return LegacyPayments.isValidQRReference(qrReference);
+    }
+
+    /**
+     * Previous implementation of the validation (for comparison)
+     */
+    static class LegacyPayments {
+
+        private static final int[] MOD_10 = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
+
+        static boolean isValidIBAN(String iban) {
+            iban = Strings.whiteSpaceRemoved(iban);
+            int len = iban.length();
+            if (len < 5)
+                return false;
+            if (!isAlphaNumeric(iban))
+                return false;
+            if (!Character.isLetter(iban.charAt(0)) || !Character.isLetter(iban.charAt(1)))
+                return false;
+            if (!Character.isDigit(iban.charAt(2)) || !Character.isDigit(iban.charAt(3)))
+                return false;
+            String checkDigits = iban.substring(2, 4);
+            if ("00".equals(checkDigits) || "01".equals(checkDigits) || "99".equals(checkDigits))
+                return false;
+            return calculateMod97(iban) == 1;
+        }
+
+        static boolean isValidISO11649Reference(String reference) {
+            reference = Strings.whiteSpaceRemoved(reference);
+            if (reference.length() < 5 || reference.length() > 25)
+                return false;
+            if (!isAlphaNumeric(reference))
+                return false;
+            if (reference.charAt(0) != 'R' || reference.charAt(1) != 'F')
+                return false;
+            if (!Character.isDigit(reference.charAt(2)) || !Character.isDigit(reference.charAt(3)))
+                return false;
+            return calculateMod97(reference) == 1;
+        }
+
+        static boolean isValidQRReference(String reference) {
+            reference = Strings.whiteSpaceRemoved(reference);
+            int len = reference.length();
+            for (int i = 0; i < len; i++) {
+                char ch = reference.charAt(i);
+                if (ch < '0' || ch > '9')
+                    return false;
+            }
+            if (len != 27)
+                return false;
+            int carry = 0;
+            for (int i = 0; i < len; i++) {
+                int digit = reference.charAt(i) - '0';
+                carry = MOD_10[(carry + digit) % 10];
+            }
+            return carry == 0;
+        }
+
+        private static int calculateMod97(String reference) {
+            int len = reference.length();
+            String rearranged = reference.substring(4) + reference.substring(0, 4);
+            int sum = 0;
+            for (int i = 0; i < len; i++) {
+                char ch = rearranged.charAt(i);
+                if (ch >= '0' && ch <= '9') {
+                    sum = sum * 10 + (ch - '0');
+                } else if (ch >= 'A' && ch <= 'Z') {
+                    sum = sum * 100 + (ch - 'A' + 10);
+                } else if (ch >= 'a' && ch <= 'z') {
+                    sum = sum * 100 + (ch - 'a' + 10);
+                } else {
+                    throw new IllegalArgumentException("Invalid character in reference: " + ch);
+                }
+                if (sum > 9999999)
+                    sum = sum % 97;
+            }
+            return sum % 97;
+        }
+
+        private static boolean isAlphaNumeric(String value) {
+            int len = value.length();
+            for (int i = 0; i < len; i++) {
+                char ch = value.charAt(i);
+                if ((ch < '0' || ch > '9') && (ch < 'A' || ch > 'Z') && (ch < 'a' || ch > 'z'))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
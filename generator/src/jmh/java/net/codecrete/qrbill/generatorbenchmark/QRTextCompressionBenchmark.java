@@ -0,0 +1,124 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatorbenchmark;
+
+import net.codecrete.qrbill.generator.QRPayloadArchive;
+import net.codecrete.qrbill.generator.QRTextCompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Benchmark of the QR code text compression with the built-in preset dictionary
+ * compared to plain deflate.
+ * <p>
+ * The setup prints a compression report for the evaluation corpus. The archive
+ * benchmarks write and read all texts of the corpus.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QRTextCompressionBenchmark {
+
+    private static final int CORPUS_SIZE = 1000;
+
+    private List<String> corpus;
+    private String text;
+    private byte[] compressedText;
+    private byte[] archive;
+    private QRTextCompressor plainCompressor;
+
+    @Setup
+    public void setup() throws IOException {
+        // different seed than the one used for training the built-in dictionary
+        corpus = QRTextCorpus.create(2, CORPUS_SIZE);
+        text = corpus.get(0);
+        compressedText = QRTextCompressor.DEFAULT.compress(text);
+        plainCompressor = new QRTextCompressor(new byte[0]);
+        archive = writeArchive();
+
+        long rawSize = 0;
+        long plainSize = 0;
+        long dictionarySize = 0;
+        for (String t : corpus) {
+            rawSize += t.getBytes(StandardCharsets.UTF_8).length;
+            plainSize += plainCompressor.compress(t).length;
+            dictionarySize += QRTextCompressor.DEFAULT.compress(t).length;
+        }
+
+        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipBuffer)) {
+            for (String t : corpus)
+                gzip.write(t.getBytes(StandardCharsets.UTF_8));
+        }
+
+        System.out.printf("%nCorpus: %d texts, %d bytes%n", CORPUS_SIZE, rawSize);
+        System.out.printf("Per text, plain deflate:      %6d bytes (ratio %.3f)%n", plainSize,
+                (double) plainSize / rawSize);
+        System.out.printf("Per text, preset dictionary:  %6d bytes (ratio %.3f)%n", dictionarySize,
+                (double) dictionarySize / rawSize);
+        System.out.printf("Archive:                      %6d bytes (ratio %.3f)%n", archive.length,
+                (double) archive.length / rawSize);
+        System.out.printf("Entire corpus, gzip:          %6d bytes (ratio %.3f)%n", gzipBuffer.size(),
+                (double) gzipBuffer.size() / rawSize);
+    }
+
+    @Benchmark
+    public byte[] compressPlain() {
+        return plainCompressor.compress(text);
+    }
+
+    @Benchmark
+    public byte[] compressDictionary() {
+        return QRTextCompressor.DEFAULT.compress(text);
+    }
+
+    @Benchmark
+    public String decompressDictionary() {
+        return QRTextCompressor.DEFAULT.decompress(compressedText);
+    }
+
+    @Benchmark
+    public byte[] writeArchive() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(CORPUS_SIZE * 100);
+        try (QRPayloadArchive.Writer writer = new QRPayloadArchive.Writer(buffer)) {
+            for (String t : corpus)
+                writer.write(t);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public int readArchive() throws IOException {
+        int count = 0;
+        try (QRPayloadArchive.Reader reader = new QRPayloadArchive.Reader(new ByteArrayInputStream(archive))) {
+            while (reader.read() != null)
+                count++;
+        }
+        return count;
+    }
+}
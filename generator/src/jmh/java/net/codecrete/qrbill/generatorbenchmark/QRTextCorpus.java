@@ -0,0 +1,180 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatorbenchmark;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.AlternativeScheme;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.Payments;
+import net.codecrete.qrbill.generator.QRBill;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of realistic QR code texts.
+ * <p>
+ * The built-in dictionary of {@link net.codecrete.qrbill.generator.QRTextCompressor}
+ * was trained on {@code create(1, 5000)}. Benchmarks use a different seed.
+ * </p>
+ */
+public final class QRTextCorpus {
+
+    private static final String[] COMPANY_FORMS = {
+            "%s AG", "%s GmbH", "%s SA", "%s Sàrl", "%s & Co.", "Treuhand %s AG", "Garage %s", "Elektro %s GmbH"
+    };
+    private static final String[] FIRST_NAMES = {
+            "Pia-Maria", "Peter", "Anna", "Thomas", "Sandra", "Marco", "Laura", "Daniel", "Nicole", "Luca",
+            "Céline", "Jean-Pierre", "Giulia", "Simon", "Franziska", "Reto"
+    };
+    private static final String[] LAST_NAMES = {
+            "Rutschmann-Schnyder", "Müller", "Meier", "Schmid", "Keller", "Weber", "Huber", "Schneider",
+            "Bernasconi", "Rossi", "Favre", "Dubois", "Steiner", "Brunner", "Baumann", "Gerber"
+    };
+    private static final String[] STREETS = {
+            "Bahnhofstrasse", "Hauptstrasse", "Dorfstrasse", "Kirchweg", "Grosse Marktgasse", "Rue du Lac",
+            "Via Cantonale", "Seestrasse", "Industriestrasse", "Schulstrasse", "Rue de Lausanne", "Poststrasse",
+            "Gartenstrasse", "Birkenweg", "Avenue de la Gare", "Via Nassa", "Lindenstrasse", "Rosenweg"
+    };
+    private static final String[][] TOWNS = {
+            { "8001", "Zürich" }, { "3011", "Bern" }, { "1201", "Genève" }, { "4051", "Basel" },
+            { "6900", "Lugano" }, { "9000", "St. Gallen" }, { "6003", "Luzern" }, { "2501", "Biel/Bienne" },
+            { "8400", "Winterthur" }, { "1003", "Lausanne" }, { "5000", "Aarau" }, { "7000", "Chur" },
+            { "8304", "Wallisellen" }, { "3600", "Thun" }, { "6300", "Zug" }, { "2000", "Neuchâtel" },
+            { "8640", "Rapperswil" }, { "1700", "Fribourg" }, { "8500", "Frauenfeld" }, { "4600", "Olten" }
+    };
+    private static final String[][] FOREIGN_TOWNS = {
+            { "DE", "78250", "Watterdingen" }, { "DE", "79539", "Lörrach" }, { "FR", "68300", "Saint-Louis" },
+            { "IT", "22100", "Como" }, { "AT", "6900", "Bregenz" }, { "LI", "9490", "Vaduz" }
+    };
+    private static final String[] MESSAGES = {
+            "Rechnung Nr. %d", "Auftrag vom %d.06.2020", "Facture %d", "Fattura n. %d", "Mitgliederbeitrag %d",
+            "Spende", "Bestellung %d", "Miete Juli, Wohnung %d", "Invoice %d", "Jahresbeitrag 2020"
+    };
+    private static final int[] BANK_IIDS = { 700, 235, 900, 9000, 769, 8390, 4835, 767, 6300, 8401, 774 };
+    private static final int[] QR_IIDS = { 30000, 30808, 31999, 30002, 30761 };
+
+    private QRTextCorpus() {
+        // do not instantiate
+    }
+
+    /**
+     * Creates the specified number of QR code texts.
+     *
+     * @param seed  random seed
+     * @param count number of texts
+     * @return the QR code texts
+     */
+    public static List<String> create(long seed, int count) {
+        Random random = new Random(seed);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            texts.add(QRBill.encodeQrCodeText(createBill(random)));
+        return texts;
+    }
+
+    private static Bill createBill(Random random) {
+        Bill bill = new Bill();
+        bill.setCurrency(random.nextInt(100) < 85 ? "CHF" : "EUR");
+        if (random.nextInt(100) < 85)
+            bill.setAmount(BigDecimal.valueOf(random.nextInt(random.nextBoolean() ? 50000 : 500000) + 100, 2));
+
+        Address creditor = createAddress(random, true);
+        bill.setCreditor(creditor);
+        if (random.nextInt(100) < 70)
+            bill.setDebtor(createAddress(random, false));
+
+        int referenceType = random.nextInt(100);
+        if (referenceType < 50) {
+            bill.setAccount(createIBAN(random, QR_IIDS[random.nextInt(QR_IIDS.length)]));
+            bill.setReference(createQRReference(random));
+        } else {
+            bill.setAccount(createIBAN(random, BANK_IIDS[random.nextInt(BANK_IIDS.length)]));
+            if (referenceType < 70)
+                bill.setReference(Payments.createISO11649Reference(Integer.toString(random.nextInt(1000000000))));
+        }
+
+        if (random.nextInt(100) < 50)
+            bill.setUnstructuredMessage(String.format(MESSAGES[random.nextInt(MESSAGES.length)],
+                    random.nextInt(100000)));
+        if (random.nextInt(100) < 20)
+            bill.setBillInformation(String.format("//S1/10/%d/11/200%d0%d/20/%d/30/10%07d/32/7.7/40/0:30",
+                    random.nextInt(100000000), random.nextInt(10), random.nextInt(10), random.nextInt(100000),
+                    random.nextInt(10000000)));
+        if (random.nextInt(100) < 5)
+            bill.setAlternativeSchemes(new AlternativeScheme[] {
+                    new AlternativeScheme("Ultraviolet", "UV;UltraPay005;" + random.nextInt(1000000))
+            });
+        return bill;
+    }
+
+    private static Address createAddress(Random random, boolean isCreditor) {
+        Address address = new Address();
+        if (isCreditor || random.nextInt(100) < 20) {
+            address.setName(String.format(COMPANY_FORMS[random.nextInt(COMPANY_FORMS.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)]));
+        } else {
+            address.setName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+        }
+
+        String street = STREETS[random.nextInt(STREETS.length)];
+        String houseNo = Integer.toString(random.nextInt(120) + 1);
+        String countryCode;
+        String postalCode;
+        String town;
+        if (random.nextInt(100) < 90) {
+            String[] ch = TOWNS[random.nextInt(TOWNS.length)];
+            countryCode = "CH";
+            postalCode = ch[0];
+            town = ch[1];
+        } else {
+            String[] foreign = FOREIGN_TOWNS[random.nextInt(FOREIGN_TOWNS.length)];
+            countryCode = foreign[0];
+            postalCode = foreign[1];
+            town = foreign[2];
+        }
+
+        if (random.nextInt(100) < 25) {
+            address.setAddressLine1(street + " " + houseNo);
+            address.setAddressLine2(postalCode + " " + town);
+        } else {
+            address.setStreet(street);
+            if (random.nextInt(100) < 90)
+                address.setHouseNo(houseNo);
+            address.setPostalCode(postalCode);
+            address.setTown(town);
+        }
+        address.setCountryCode(countryCode);
+        return address;
+    }
+
+    private static String createIBAN(Random random, int iid) {
+        String bban = String.format("%05d%012d", iid, (long) (random.nextDouble() * 1e12));
+        // check digits: move country code and '00' to the end, convert letters (C = 12, H = 17)
+        BigInteger value = new BigInteger(bban + "121700");
+        int checkDigits = 98 - value.mod(BigInteger.valueOf(97)).intValue();
+        return String.format("CH%02d%s", checkDigits, bban);
+    }
+
+    private static String createQRReference(Random random) {
+        StringBuilder sb = new StringBuilder(27);
+        sb.append(String.format("%06d", random.nextInt(1000000)));
+        for (int i = 0; i < 20; i++)
+            sb.append(i < 12 ? '0' : (char) ('0' + random.nextInt(10)));
+        final int[] table = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
+        int carry = 0;
+        for (int i = 0; i < sb.length(); i++)
+            carry = table[(carry + sb.charAt(i) - '0') % 10];
+        sb.append((10 - carry) % 10);
+        return sb.toString();
+    }
+}
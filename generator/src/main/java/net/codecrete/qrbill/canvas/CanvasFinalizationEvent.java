@@ -0,0 +1,25 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+/**
+ * JFR event for the finalization of a canvas (encoding the PNG image, saving the PDF document
+ * or closing the SVG document)
+ * <p>
+ * Started with {@link JfrEvents}; implemented by {@code JfrCanvasFinalizationEvent}.
+ * </p>
+ */
+interface CanvasFinalizationEvent {
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format the graphics format
+     * @param length the output length (or 0)
+     */
+    void commit(String format, long length);
+}
@@ -0,0 +1,51 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.canvas;
+
+/**
+ * Support for the Java Flight Recorder events of the canvas classes.
+ * <p>
+ * As in the generator package, the event classes extending {@code jdk.jfr.Event} are
+ * compiled separately (source set {@code jfr}) and loaded reflectively. If loading fails
+ * because the JFR API is not available, no events are recorded.
+ * </p>
+ */
+final class JfrEvents {
+
+    /**
+     * Factory for started events (implemented in the {@code jfr} source set)
+     */
+    interface Factory {
+        CanvasFinalizationEvent startCanvasFinalization();
+    }
+
+    private static final Factory FACTORY = loadFactory();
+
+    private JfrEvents() {
+        // do not instantiate
+    }
+
+    /**
+     * Starts a canvas finalization event.
+     *
+     * @return the started event, or {@code null} if it is not enabled
+     */
+    static CanvasFinalizationEvent startCanvasFinalization() {
+        return FACTORY != null ? FACTORY.startCanvasFinalization() : null;
+    }
+
+    private static Factory loadFactory() {
+        try {
+            Class<?> factoryClass = Class.forName("net.codecrete.qrbill.canvas.JfrEventFactory",
+                    true, JfrEvents.class.getClassLoader());
+            return (Factory) factoryClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // JFR API or event classes not available
+            return null;
+        }
+    }
+}
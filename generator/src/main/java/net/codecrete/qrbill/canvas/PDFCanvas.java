@@ -89,6 +89,32 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
         }
     }
 
+    /**
+     * Adds a new page at the end of the document.
+     * <p>
+     * All subsequent drawing operations go to the new page. Together with
+     * {@link net.codecrete.qrbill.generator.QRBill#draw(net.codecrete.qrbill.generator.ValidatedBill, Canvas)},
+     * it can be used to generate a single document containing several QR bills.
+     * </p>
+     * @param width page width, in mm
+     * @param height page height, in mm
+     * @throws IOException thrown if the page cannot be added
+     */
+    public void addPage(double width, double height) throws IOException {
+        if (hasSavedGraphicsState) {
+            contentStream.restoreGraphicsState();
+            hasSavedGraphicsState = false;
+        }
+        contentStream.close();
+
+        PDPage page = new PDPage(new PDRectangle((float) (width * MM_TO_PT), (float) (height * MM_TO_PT)));
+        document.addPage(page);
+        contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.OVERWRITE, true);
+        lastStrokingColor = 0;
+        lastNonStrokingColor = 0;
+        lastLineWidth = 1;
+    }
+
     @Override
     public void setTransformation(double translateX, double translateY, double rotate, double scaleX, double scaleY) throws IOException {
         translateX *= MM_TO_PT;
@@ -221,8 +247,11 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
             contentStream.close();
             contentStream = null;
         }
+        CanvasFinalizationEvent event = JfrEvents.startCanvasFinalization();
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             document.save(os);
+            if (event != null)
+                event.commit("PDF", os.size());
             return os.toByteArray();
         }
     }
@@ -237,7 +266,10 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
             contentStream.close();
             contentStream = null;
         }
+        CanvasFinalizationEvent event = JfrEvents.startCanvasFinalization();
         document.save(os);
+        if (event != null)
+            event.commit("PDF", 0);
     }
 
     /**
@@ -251,9 +283,12 @@ public class PDFCanvas extends AbstractCanvas implements ByteArrayResult {
             contentStream = null;
         }
 
+        CanvasFinalizationEvent event = JfrEvents.startCanvasFinalization();
         try (OutputStream os = Files.newOutputStream(path)) {
             document.save(os);
         }
+        if (event != null)
+            event.commit("PDF", 0);
     }
 
     @Override
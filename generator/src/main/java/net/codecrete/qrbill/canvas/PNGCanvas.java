@@ -232,6 +232,8 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
      */
     private static void createPNG(BufferedImage image, OutputStream os, int resolution) throws IOException {
 
+        CanvasFinalizationEvent event = JfrEvents.startCanvasFinalization();
+
         ImageWriter writer = null;
         ImageWriteParam writeParam = null;
         IIOMetadata metadata = null;
@@ -254,6 +256,8 @@ public class PNGCanvas extends AbstractCanvas implements ByteArrayResult {
         try (ImageOutputStream stream = ImageIO.createImageOutputStream(os)) {
             writer.setOutput(stream);
             writer.write(metadata, new IIOImage(image, null, metadata), writeParam);
+            if (event != null)
+                event.commit("PNG", stream.getStreamPosition());
         }
     }
 
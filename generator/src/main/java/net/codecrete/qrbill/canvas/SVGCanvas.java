@@ -72,10 +72,13 @@ public class SVGCanvas extends AbstractCanvas implements ByteArrayResult {
             isInGroup = false;
         }
         if (stream != null) {
+            CanvasFinalizationEvent event = JfrEvents.startCanvasFinalization();
             stream.write("</g>\n");
             stream.write("</svg>\n");
             stream.close();
             stream = null;
+            if (event != null)
+                event.commit("SVG", buffer.size());
         }
     }
 
@@ -55,6 +55,30 @@ public class Address implements Serializable {
     private String town;
     private String countryCode;
 
+    /**
+     * Creates a new empty address
+     */
+    public Address() {
+        // default constructor
+    }
+
+    /**
+     * Copy constructor: creates a copy of the specified address
+     *
+     * @param address address to copy
+     */
+    public Address(Address address) {
+        type = address.type;
+        name = address.name;
+        addressLine1 = address.addressLine1;
+        addressLine2 = address.addressLine2;
+        street = address.street;
+        houseNo = address.houseNo;
+        postalCode = address.postalCode;
+        town = address.town;
+        countryCode = address.countryCode;
+    }
+
     /**
      * Gets the address type.
      * <p>
@@ -72,6 +96,15 @@ public class Address implements Serializable {
         return type;
     }
 
+    /**
+     * Sets the address type without changing any field (for BillCodec)
+     *
+     * @param type address type
+     */
+    void restoreType(Type type) {
+        this.type = type;
+    }
+
     private void changeType(Type desiredType) {
         if (type == desiredType)
             return;
@@ -0,0 +1,417 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Index of the financial institutions in the Swiss bank master data.
+ * <p>
+ * The index maps institution identifications (IIDs, formerly known as BC numbers)
+ * to bank names. It is built from the bank master file published by SIX
+ * and can be saved as a binary snapshot. A snapshot is loaded by memory-mapping
+ * it without any parsing so that it is available within milliseconds.
+ * </p>
+ * <p>
+ * The index is passed to {@link QRBill#validate(Bill, BankMasterIndex)} to check
+ * that the creditor account belongs to a known institution. Instances are immutable
+ * and can be shared between threads.
+ * </p>
+ */
+public final class BankMasterIndex {
+
+    /**
+     * Lowest QR-IID (institution identification reserved for QR-IBANs)
+     */
+    public static final int QR_IID_MIN = 30000;
+
+    /**
+     * Highest QR-IID (institution identification reserved for QR-IBANs)
+     */
+    public static final int QR_IID_MAX = 31999;
+
+    private static final int MAGIC = 0x51524249; // "QRBI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 8;
+    private static final int EMPTY_SLOT = -1;
+    private static final int MAX_NAME_LENGTH = 255;
+
+    // Layout of the buffer (big endian):
+    //   header: magic, version, number of slots (power of 2), number of IIDs
+    //   slots: IID and offset of name (relative to start of names), IID is -1 for empty slots
+    //   names: length (unsigned 16 bit) followed by UTF-8 bytes
+    private final ByteBuffer buffer;
+    private final int slotMask;
+    private final int size;
+    private final int namesOffset;
+
+    private BankMasterIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int slotCount = buffer.getInt(8);
+        slotMask = slotCount - 1;
+        size = buffer.getInt(12);
+        namesOffset = HEADER_SIZE + slotCount * SLOT_SIZE;
+    }
+
+    /**
+     * Builds the index from the specified bank master file.
+     * <p>
+     * The file is expected in the delimited text format published by SIX: a header line
+     * followed by a line per institution or branch, separated by semicolons, tabs or commas.
+     * The columns containing the IID, the QR-IID and the bank name are identified by the header.
+     * QR-IIDs are listed in a separate column of the institution's line; they are indexed
+     * with the same bank name as the IID.
+     * </p>
+     *
+     * @param bankMasterFile path of the bank master file
+     * @param charset        character set of the file
+     * @return the index
+     * @throws IOException if the file cannot be read or has an invalid format
+     */
+    public static BankMasterIndex load(Path bankMasterFile, Charset charset) throws IOException {
+        try (Reader reader = Files.newBufferedReader(bankMasterFile, charset)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Builds the index from the bank master data read from the specified reader.
+     *
+     * @param reader reader providing the bank master data
+     * @return the index
+     * @throws IOException if the data cannot be read or has an invalid format
+     * @see #load(Path, Charset)
+     */
+    public static BankMasterIndex parse(Reader reader) throws IOException {
+        BufferedReader lineReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String header = lineReader.readLine();
+        if (header == null)
+            throw new IOException("Invalid bank master file: empty");
+        if (!header.isEmpty() && header.charAt(0) == '\uFEFF')
+            header = header.substring(1);
+        char separator = detectSeparator(header);
+        String[] headerFields = splitLine(header, separator);
+        int iidColumn = findColumn(headerFields, "iid", "bc-nr", "bc-nr.", "bc no.", "bc number");
+        if (iidColumn < 0)
+            throw new IOException("Invalid bank master file: no IID column");
+        int qrIidColumn = findColumn(headerFields, "qr-iid", "qr iid", "qr-iid.");
+        int nameColumn = findColumn(headerFields, "bank/institution name", "bank/institut", "bank/institution",
+                "name", "short name", "kurzbez", "kurzbezeichnung");
+
+        Builder builder = new Builder();
+        String line;
+        int lineNumber = 1;
+        while ((line = lineReader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty())
+                continue;
+            String[] fields = splitLine(line, separator);
+            int iid = iidColumn < fields.length ? parseIID(fields[iidColumn]) : -1;
+            if (iid < 0)
+                throw new IOException("Invalid bank master file: invalid IID in line " + lineNumber);
+            String name = nameColumn >= 0 && nameColumn < fields.length ? fields[nameColumn].trim() : "";
+            builder.add(iid, name);
+
+            String qrIidField = qrIidColumn >= 0 && qrIidColumn < fields.length ? fields[qrIidColumn].trim() : "";
+            if (!qrIidField.isEmpty()) {
+                int qrIid = parseIID(qrIidField);
+                if (!isQRIID(qrIid))
+                    throw new IOException("Invalid bank master file: invalid QR-IID in line " + lineNumber);
+                builder.add(qrIid, name);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Loads the index from a binary snapshot by memory-mapping it.
+     *
+     * @param snapshotFile path of the snapshot file
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     * @see #writeSnapshot(Path)
+     */
+    public static BankMasterIndex loadSnapshot(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE)
+                throw new IOException("Invalid bank master snapshot: unexpected size");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException("Invalid bank master snapshot: unknown format");
+            int slotCount = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            if (slotCount <= 0 || (slotCount & (slotCount - 1)) != 0 || size < 0 || size >= slotCount
+                    || HEADER_SIZE + (long) slotCount * SLOT_SIZE > fileSize)
+                throw new IOException("Invalid bank master snapshot: corrupt header");
+            return new BankMasterIndex(buffer);
+        }
+    }
+
+    /**
+     * Saves the index as a binary snapshot.
+     *
+     * @param snapshotFile path of the snapshot file
+     * @throws IOException if the file cannot be written
+     * @see #loadSnapshot(Path)
+     */
+    public void writeSnapshot(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer data = buffer.duplicate();
+            data.clear();
+            while (data.hasRemaining())
+                channel.write(data);
+        }
+    }
+
+    /**
+     * Gets the number of institution identifications (IIDs and QR-IIDs) in the index.
+     *
+     * @return the number of institution identifications
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tests if the specified institution is contained in the bank master data.
+     *
+     * @param iid institution identification
+     * @return {@code true} if it is a known institution, {@code false} otherwise
+     */
+    public boolean contains(int iid) {
+        return findSlot(iid) >= 0;
+    }
+
+    /**
+     * Gets the name of the specified institution.
+     *
+     * @param iid institution identification
+     * @return the bank name, or {@code null} if the institution is unknown
+     */
+    public String getBankName(int iid) {
+        int slot = findSlot(iid);
+        if (slot < 0)
+            return null;
+        int offset = namesOffset + buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4);
+        int length = buffer.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[length];
+        ByteBuffer nameData = buffer.duplicate();
+        nameData.position(offset + 2);
+        nameData.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the name of the institution managing the specified account.
+     *
+     * @param iban the account number (IBAN from Switzerland or Liechtenstein, without spaces)
+     * @return the bank name, or {@code null} if the account number is invalid or the institution is unknown
+     */
+    public String getBankNameForAccount(String iban) {
+        int iid = getIID(iban);
+        return iid >= 0 ? getBankName(iid) : null;
+    }
+
+    /**
+     * Tests if the specified institution identification is a QR-IID.
+     * <p>
+     * QR-IIDs are used exclusively for QR-IBANs, which require a QR reference.
+     * </p>
+     *
+     * @param iid institution identification
+     * @return {@code true} if it is a QR-IID, {@code false} otherwise
+     */
+    public static boolean isQRIID(int iid) {
+        return iid >= QR_IID_MIN && iid <= QR_IID_MAX;
+    }
+
+    /**
+     * Extracts the institution identification from the specified account number.
+     *
+     * @param iban the account number (IBAN from Switzerland or Liechtenstein, without spaces)
+     * @return the institution identification, or -1 if the account number has an invalid format
+     */
+    public static int getIID(String iban) {
+        if (iban == null || iban.length() != 21)
+            return -1;
+        char ch0 = iban.charAt(0);
+        char ch1 = iban.charAt(1);
+        if (!(ch0 == 'C' && ch1 == 'H') && !(ch0 == 'L' && ch1 == 'I'))
+            return -1;
+        int iid = 0;
+        for (int i = 4; i < 9; i++) {
+            char ch = iban.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            iid = iid * 10 + (ch - '0');
+        }
+        return iid;
+    }
+
+    private int findSlot(int iid) {
+        if (iid < 0)
+            return -1;
+        int slot = hash(iid) & slotMask;
+        // a corrupt snapshot might not contain any empty slot
+        for (int probe = 0; probe <= slotMask; probe++) {
+            int slotIID = buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+            if (slotIID == iid)
+                return slot;
+            if (slotIID == EMPTY_SLOT)
+                return -1;
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    private static int hash(int iid) {
+        int h = iid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int parseIID(String field) {
+        String value = field.trim();
+        int len = value.length();
+        if (len == 0 || len > 5)
+            return -1;
+        int iid = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            iid = iid * 10 + (ch - '0');
+        }
+        return iid;
+    }
+
+    private static char detectSeparator(String header) {
+        if (header.indexOf(';') >= 0)
+            return ';';
+        if (header.indexOf('\t') >= 0)
+            return '\t';
+        return ',';
+    }
+
+    private static int findColumn(String[] headerFields, String... names) {
+        for (String name : names) {
+            for (int i = 0; i < headerFields.length; i++) {
+                if (headerFields[i].trim().toLowerCase(Locale.US).equals(name))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] splitLine(String line, char separator) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        int len = line.length();
+        for (int i = 0; i < len; i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                if (inQuotes && i + 1 < len && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (ch == separator && !inQuotes) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Collects the institutions and creates the index buffer
+     */
+    private static class Builder {
+
+        private final BitSet seen = new BitSet(100000);
+        private int[] iids = new int[256];
+        private byte[][] names = new byte[256][];
+        private int count;
+
+        void add(int iid, String name) {
+            // the bank master data contains a line per branch; the first line is the head office
+            if (seen.get(iid))
+                return;
+            seen.set(iid);
+
+            if (count == iids.length) {
+                iids = Arrays.copyOf(iids, count * 2);
+                names = Arrays.copyOf(names, count * 2);
+            }
+            if (name.length() > MAX_NAME_LENGTH)
+                name = name.substring(0, MAX_NAME_LENGTH);
+            iids[count] = iid;
+            names[count] = name.getBytes(StandardCharsets.UTF_8);
+            count++;
+        }
+
+        BankMasterIndex build() {
+            int slotCount = 16;
+            while (slotCount < count * 2)
+                slotCount <<= 1;
+            int slotMask = slotCount - 1;
+
+            int namesSize = 0;
+            for (int i = 0; i < count; i++)
+                namesSize += 2 + names[i].length;
+
+            int namesOffset = HEADER_SIZE + slotCount * SLOT_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(namesOffset + namesSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slotCount);
+            buffer.putInt(12, count);
+            for (int slot = 0; slot < slotCount; slot++)
+                buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE, EMPTY_SLOT);
+
+            int nameOffset = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = hash(iids[i]) & slotMask;
+                while (buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE) != EMPTY_SLOT)
+                    slot = (slot + 1) & slotMask;
+                buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE, iids[i]);
+                buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE + 4, nameOffset);
+
+                buffer.position(namesOffset + nameOffset);
+                buffer.putShort((short) names[i].length);
+                buffer.put(names[i]);
+                nameOffset += 2 + names[i].length;
+            }
+            buffer.clear();
+
+            return new BankMasterIndex(buffer);
+        }
+    }
+}
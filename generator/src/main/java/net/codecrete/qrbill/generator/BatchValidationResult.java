@@ -0,0 +1,129 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact container for the validation results of a batch of bills.
+ * <p>
+ * The result records which bills are valid and keeps the validation messages
+ * of the invalid bills only. No cleaned bill data is retained.
+ * </p>
+ * <p>
+ * Bills are identified by their index in the validated batch.
+ * </p>
+ */
+public class BatchValidationResult implements Serializable {
+
+    private static final long serialVersionUID = 2920917338458451023L;
+    private static final List<ValidationMessage> EMPTY_LIST = Collections.emptyList();
+
+    private final int size;
+    private final long[] validBits;
+    private final int[] invalidIndices;
+    private final List<ValidationMessage>[] invalidMessages;
+
+    BatchValidationResult(int size, long[] validBits, int[] invalidIndices,
+                          List<ValidationMessage>[] invalidMessages) {
+        this.size = size;
+        this.validBits = validBits;
+        this.invalidIndices = invalidIndices;
+        this.invalidMessages = invalidMessages;
+    }
+
+    /**
+     * Gets the number of validated bills
+     *
+     * @return the number of bills
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets if all bills of the batch are valid
+     *
+     * @return {@code true} if all bills are valid, {@code false} otherwise
+     */
+    public boolean isValid() {
+        return invalidIndices.length == 0;
+    }
+
+    /**
+     * Gets if the bill with the specified index is valid
+     *
+     * @param index the bill's index in the batch
+     * @return {@code true} if the bill is valid, {@code false} otherwise
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public boolean isValid(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return (validBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Gets the number of valid bills
+     *
+     * @return the number of valid bills
+     */
+    public int getValidCount() {
+        return size - invalidIndices.length;
+    }
+
+    /**
+     * Gets the number of invalid bills
+     *
+     * @return the number of invalid bills
+     */
+    public int getInvalidCount() {
+        return invalidIndices.length;
+    }
+
+    /**
+     * Gets the set of valid bills.
+     * <p>
+     * The bit with the bill's index is set if the bill is valid.
+     * </p>
+     *
+     * @return a new bit set of the valid bills
+     */
+    public BitSet getValidBills() {
+        return BitSet.valueOf(validBits);
+    }
+
+    /**
+     * Gets the indexes of the invalid bills (in ascending order)
+     *
+     * @return array of indexes
+     */
+    public int[] getInvalidIndices() {
+        return invalidIndices.clone();
+    }
+
+    /**
+     * Gets the validation messages of the bill with the specified index.
+     * <p>
+     * Messages are only retained for invalid bills. For valid bills, an empty
+     * list is returned.
+     * </p>
+     *
+     * @param index the bill's index in the batch
+     * @return the validation messages
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public List<ValidationMessage> getValidationMessages(int index) {
+        if (isValid(index))
+            return EMPTY_LIST;
+        return invalidMessages[Arrays.binarySearch(invalidIndices, index)];
+    }
+}
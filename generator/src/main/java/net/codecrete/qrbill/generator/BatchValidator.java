@@ -0,0 +1,155 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Internal class for validating a batch of bills in parallel.
+ * <p>
+ * The batch is recursively split into ranges, which are validated by the tasks
+ * of a fork/join pool. All tasks write into a shared bitmap of valid bills.
+ * The ranges are aligned to 64 bills so that each task owns entire words of the
+ * bitmap. Validation messages are only collected for invalid bills.
+ * </p>
+ */
+class BatchValidator {
+
+    /**
+     * Number of bills below which a range is no longer split (multiple of 64)
+     */
+    private static final int SPLIT_THRESHOLD = 1024;
+
+    private final Bill[] bills;
+    private final long[] validBits;
+
+    private BatchValidator(Bill[] bills) {
+        this.bills = bills;
+        validBits = new long[(bills.length + 63) >>> 6];
+    }
+
+    /**
+     * Validates the bills using the specified fork/join pool.
+     *
+     * @param bills bills to validate
+     * @param pool  fork/join pool executing the validation tasks
+     * @return validation result
+     */
+    static BatchValidationResult validate(Bill[] bills, ForkJoinPool pool) {
+        BatchValidator validator = new BatchValidator(bills);
+        Failures failures = pool.invoke(validator.new RangeTask(0, bills.length));
+        return failures.toResult(bills.length, validator.validBits);
+    }
+
+    /**
+     * Task validating a range of bills
+     */
+    private class RangeTask extends RecursiveTask<Failures> {
+
+        private static final long serialVersionUID = 2476133407209003128L;
+
+        private final int start;
+        private final int end;
+
+        RangeTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Failures compute() {
+            if (end - start <= SPLIT_THRESHOLD)
+                return validateRange();
+
+            int mid = ((start + end) >>> 1) & ~63;
+            RangeTask left = new RangeTask(start, mid);
+            RangeTask right = new RangeTask(mid, end);
+            left.fork();
+            Failures rightFailures = right.compute();
+            return left.join().append(rightFailures);
+        }
+
+        private Failures validateRange() {
+            Failures failures = null;
+            for (int i = start; i < end; i++) {
+                Bill bill = bills[i];
+                if (Validator.isCleanAndValid(bill)) {
+                    validBits[i >>> 6] |= 1L << i;
+                    continue;
+                }
+
+                ValidationResult result = Validator.validate(bill);
+                if (result.hasErrors()) {
+                    if (failures == null)
+                        failures = new Failures();
+                    failures.add(i, result.getValidationMessages());
+                } else {
+                    validBits[i >>> 6] |= 1L << i;
+                }
+            }
+            return failures != null ? failures : Failures.NONE;
+        }
+    }
+
+    /**
+     * Indexes and messages of invalid bills, in ascending order of the index
+     */
+    private static class Failures {
+
+        static final Failures NONE = new Failures();
+
+        private int count;
+        private int[] indices = new int[0];
+        private List<ValidationMessage>[] messages = newMessageArray(0);
+
+        void add(int index, List<ValidationMessage> messageList) {
+            ensureCapacity(count + 1);
+            indices[count] = index;
+            messages[count] = messageList;
+            count++;
+        }
+
+        Failures append(Failures other) {
+            if (other.count == 0)
+                return this;
+            if (count == 0)
+                return other;
+            ensureCapacity(count + other.count);
+            System.arraycopy(other.indices, 0, indices, count, other.count);
+            System.arraycopy(other.messages, 0, messages, count, other.count);
+            count += other.count;
+            return this;
+        }
+
+        BatchValidationResult toResult(int size, long[] validBits) {
+            int[] resultIndices = new int[count];
+            System.arraycopy(indices, 0, resultIndices, 0, count);
+            List<ValidationMessage>[] resultMessages = newMessageArray(count);
+            System.arraycopy(messages, 0, resultMessages, 0, count);
+            return new BatchValidationResult(size, validBits, resultIndices, resultMessages);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= indices.length)
+                return;
+            int newCapacity = Math.max(capacity, Math.max(8, indices.length * 2));
+            int[] newIndices = new int[newCapacity];
+            System.arraycopy(indices, 0, newIndices, 0, count);
+            indices = newIndices;
+            List<ValidationMessage>[] newMessages = newMessageArray(newCapacity);
+            System.arraycopy(messages, 0, newMessages, 0, count);
+            messages = newMessages;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static List<ValidationMessage>[] newMessageArray(int length) {
+            return (List<ValidationMessage>[]) new List[length];
+        }
+    }
+}
@@ -0,0 +1,606 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of bill data and validation results.
+ * <p>
+ * The encoding is considerably smaller and faster than Java serialization and is
+ * intended for transferring bills between processes, e.g. through a message queue.
+ * Numbers and lengths are encoded as variable-length integers, enumerations as
+ * ordinals and amounts as unscaled value and scale.
+ * </p>
+ * <p>
+ * A {@link Writer} writes a sequence of bills and validation results into
+ * {@link ByteBuffer}s and a {@link Reader} reads them back in the same order.
+ * The sequence starts with a header containing the format version. Strings
+ * that have already occurred in the sequence (such as the creditor data of
+ * a batch of bills) are replaced with a reference to the first occurrence.
+ * </p>
+ * <p>
+ * For single bills, the static methods {@link #encode(Bill)} and {@link #decodeBill(byte[])}
+ * can be used.
+ * </p>
+ */
+public final class BillCodec {
+
+    /**
+     * Current version of the binary format
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x51; // 'Q'
+
+    private static final int RECORD_BILL = 1;
+    private static final int RECORD_VALIDATION_RESULT = 2;
+
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_REFERENCE_BASE = 2;
+
+    private static final int AMOUNT_NULL = 0;
+    private static final int AMOUNT_LONG = 1;
+    private static final int AMOUNT_BIG = 2;
+
+    private static final int NO_CODE = 0;
+
+    private static final Bill.Version[] VERSIONS = Bill.Version.values();
+    private static final Address.Type[] ADDRESS_TYPES = Address.Type.values();
+    private static final OutputSize[] OUTPUT_SIZES = OutputSize.values();
+    private static final Language[] LANGUAGES = Language.values();
+    private static final SeparatorType[] SEPARATOR_TYPES = SeparatorType.values();
+    private static final GraphicsFormat[] GRAPHICS_FORMATS = GraphicsFormat.values();
+    private static final ValidationMessage.Type[] MESSAGE_TYPES = ValidationMessage.Type.values();
+
+    private BillCodec() {
+        // do not instantiate
+    }
+
+    /**
+     * Encodes a single bill.
+     *
+     * @param bill the bill data
+     * @return the encoded bill (including the header)
+     */
+    public static byte[] encode(Bill bill) {
+        int capacity = 512;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                new Writer().writeBill(bill, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                capacity *= 4;
+            }
+        }
+    }
+
+    /**
+     * Decodes a single bill.
+     *
+     * @param data the encoded bill (including the header)
+     * @return the decoded bill data
+     * @throws IllegalArgumentException if the data is invalid
+     * @see #encode(Bill)
+     */
+    public static Bill decodeBill(byte[] data) {
+        return new Reader().readBill(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Encodes a sequence of bills and validation results.
+     * <p>
+     * The header is written when the first record is written. Each record is written
+     * at the current position of the specified buffer, which is advanced. If the buffer
+     * has insufficient space, a {@link BufferOverflowException} is thrown and the
+     * writer must not be used for the same sequence anymore.
+     * </p>
+     * <p>
+     * Instances are not thread-safe.
+     * </p>
+     */
+    public static final class Writer {
+
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private boolean headerWritten;
+
+        /**
+         * Creates a new writer for a new sequence.
+         */
+        public Writer() {
+            // default constructor
+        }
+
+        /**
+         * Writes the bill data to the specified buffer.
+         *
+         * @param bill   bill data
+         * @param buffer buffer to write to
+         * @throws BufferOverflowException if the buffer is too small
+         */
+        public void writeBill(Bill bill, ByteBuffer buffer) {
+            writeHeader(buffer);
+            buffer.put((byte) RECORD_BILL);
+            writeBillData(bill, buffer);
+        }
+
+        /**
+         * Writes the validation result (messages and cleaned bill data) to the specified buffer.
+         *
+         * @param result validation result
+         * @param buffer buffer to write to
+         * @throws BufferOverflowException if the buffer is too small
+         */
+        public void writeValidationResult(ValidationResult result, ByteBuffer buffer) {
+            writeHeader(buffer);
+            buffer.put((byte) RECORD_VALIDATION_RESULT);
+
+            int count = result.getMessageCount();
+            writeVarInt(count, buffer);
+            for (int i = 0; i < count; i++) {
+                int code = result.getMessageCode(i);
+                if (code == MessageCodes.NO_CODE) {
+                    ValidationMessage message = result.getUncodedMessage(i);
+                    writeVarInt(NO_CODE, buffer);
+                    writeEnum(message.getType(), buffer);
+                    writeString(message.getField(), buffer);
+                    writeString(message.getMessageKey(), buffer);
+                    writeStringArray(message.getMessageParameters(), buffer);
+                } else {
+                    writeVarInt(code + 1, buffer);
+                    writeStringArray(result.getMessageParameters(i), buffer);
+                }
+            }
+
+            Bill cleanedBill = result.getCleanedBill();
+            buffer.put((byte) (cleanedBill != null ? 1 : 0));
+            if (cleanedBill != null)
+                writeBillData(cleanedBill, buffer);
+        }
+
+        /**
+         * Resets the writer for a new sequence.
+         */
+        public void reset() {
+            dictionary.clear();
+            headerWritten = false;
+        }
+
+        private void writeHeader(ByteBuffer buffer) {
+            if (headerWritten)
+                return;
+            buffer.put((byte) MAGIC);
+            buffer.put((byte) VERSION);
+            headerWritten = true;
+        }
+
+        private void writeBillData(Bill bill, ByteBuffer buffer) {
+            writeEnum(bill.getVersion(), buffer);
+            writeAmount(bill.getAmount(), buffer);
+            writeString(bill.getCurrency(), buffer);
+            writeString(bill.getAccount(), buffer);
+            writeAddress(bill.getCreditor(), buffer);
+            writeString(bill.getReference(), buffer);
+            writeAddress(bill.getDebtor(), buffer);
+            writeString(bill.getUnstructuredMessage(), buffer);
+            writeString(bill.getBillInformation(), buffer);
+
+            AlternativeScheme[] schemes = bill.getAlternativeSchemes();
+            writeVarInt(schemes != null ? schemes.length + 1 : 0, buffer);
+            if (schemes != null) {
+                for (AlternativeScheme scheme : schemes) {
+                    writeString(scheme.getName(), buffer);
+                    writeString(scheme.getInstruction(), buffer);
+                }
+            }
+
+            BillFormat format = bill.getFormat();
+            buffer.put((byte) (format != null ? 1 : 0));
+            if (format != null) {
+                writeEnum(format.getOutputSize(), buffer);
+                writeEnum(format.getLanguage(), buffer);
+                writeEnum(format.getSeparatorType(), buffer);
+                writeString(format.getFontFamily(), buffer);
+                writeEnum(format.getGraphicsFormat(), buffer);
+            }
+        }
+
+        private void writeAddress(Address address, ByteBuffer buffer) {
+            if (address == null) {
+                buffer.put((byte) 0);
+                return;
+            }
+            buffer.put((byte) (address.getType().ordinal() + 1));
+            writeString(address.getName(), buffer);
+            writeString(address.getAddressLine1(), buffer);
+            writeString(address.getAddressLine2(), buffer);
+            writeString(address.getStreet(), buffer);
+            writeString(address.getHouseNo(), buffer);
+            writeString(address.getPostalCode(), buffer);
+            writeString(address.getTown(), buffer);
+            writeString(address.getCountryCode(), buffer);
+        }
+
+        private static void writeAmount(BigDecimal amount, ByteBuffer buffer) {
+            if (amount == null) {
+                buffer.put((byte) AMOUNT_NULL);
+                return;
+            }
+            BigInteger unscaled = amount.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                buffer.put((byte) AMOUNT_LONG);
+                writeVarLong(zigZag(unscaled.longValue()), buffer);
+            } else {
+                buffer.put((byte) AMOUNT_BIG);
+                byte[] bytes = unscaled.toByteArray();
+                writeVarInt(bytes.length, buffer);
+                buffer.put(bytes);
+            }
+            writeVarLong(zigZag(amount.scale()), buffer);
+        }
+
+        private void writeStringArray(String[] strings, ByteBuffer buffer) {
+            writeVarInt(strings != null ? strings.length + 1 : 0, buffer);
+            if (strings != null) {
+                for (String s : strings)
+                    writeString(s, buffer);
+            }
+        }
+
+        private void writeString(String value, ByteBuffer buffer) {
+            if (value == null) {
+                writeVarInt(STRING_NULL, buffer);
+                return;
+            }
+
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeVarInt(STRING_REFERENCE_BASE + index, buffer);
+                return;
+            }
+
+            dictionary.put(value, dictionary.size());
+            writeVarInt(STRING_NEW, buffer);
+            writeUtf8(value, buffer);
+        }
+
+        private static void writeEnum(Enum<?> value, ByteBuffer buffer) {
+            writeVarInt(value != null ? value.ordinal() + 1 : 0, buffer);
+        }
+    }
+
+    /**
+     * Decodes a sequence of bills and validation results.
+     * <p>
+     * The records must be read in the same order as they have been written. The header
+     * is expected before the first record. Each record is read from the current position
+     * of the specified buffer, which is advanced. Strings are decoded directly from the
+     * buffer without intermediate copies if the buffer is backed by an array.
+     * </p>
+     * <p>
+     * Instances are not thread-safe.
+     * </p>
+     */
+    public static final class Reader {
+
+        private final List<String> dictionary = new ArrayList<>();
+        private boolean headerRead;
+
+        /**
+         * Creates a new reader for a new sequence.
+         */
+        public Reader() {
+            // default constructor
+        }
+
+        /**
+         * Reads bill data from the specified buffer.
+         *
+         * @param buffer buffer to read from
+         * @return the bill data
+         * @throws IllegalArgumentException if the data is invalid or not a bill
+         */
+        public Bill readBill(ByteBuffer buffer) {
+            try {
+                readHeader(buffer);
+                checkRecordType(buffer, RECORD_BILL);
+                return readBillData(buffer);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid encoded bill data", e);
+            }
+        }
+
+        /**
+         * Reads a validation result from the specified buffer.
+         *
+         * @param buffer buffer to read from
+         * @return the validation result
+         * @throws IllegalArgumentException if the data is invalid or not a validation result
+         */
+        public ValidationResult readValidationResult(ByteBuffer buffer) {
+            try {
+                readHeader(buffer);
+                checkRecordType(buffer, RECORD_VALIDATION_RESULT);
+
+                ValidationResult result = new ValidationResult();
+                int count = readVarInt(buffer);
+                for (int i = 0; i < count; i++) {
+                    int code = readVarInt(buffer);
+                    if (code == NO_CODE) {
+                        ValidationMessage.Type type = readEnum(MESSAGE_TYPES, buffer);
+                        String field = readString(buffer);
+                        String key = readString(buffer);
+                        result.addMessage(type, field, key, readStringArray(buffer));
+                    } else {
+                        code -= 1;
+                        if (!MessageCodes.isValid(code))
+                            throw new IllegalArgumentException("Invalid encoded validation message");
+                        result.addMessageCode(code, readStringArray(buffer));
+                    }
+                }
+
+                if (buffer.get() != 0)
+                    result.setCleanedBill(readBillData(buffer));
+                return result;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid encoded validation result", e);
+            }
+        }
+
+        /**
+         * Resets the reader for a new sequence.
+         */
+        public void reset() {
+            dictionary.clear();
+            headerRead = false;
+        }
+
+        private void readHeader(ByteBuffer buffer) {
+            if (headerRead)
+                return;
+            if (buffer.get() != MAGIC)
+                throw new IllegalArgumentException("Invalid encoded data (header missing)");
+            int version = buffer.get();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported version of encoded data: " + version);
+            headerRead = true;
+        }
+
+        private static void checkRecordType(ByteBuffer buffer, int expectedType) {
+            int recordType = buffer.get();
+            if (recordType != expectedType)
+                throw new IllegalArgumentException("Unexpected record type: " + recordType);
+        }
+
+        private Bill readBillData(ByteBuffer buffer) {
+            Bill bill = new Bill();
+            bill.setVersion(readEnum(VERSIONS, buffer));
+            bill.setAmount(readAmount(buffer));
+            bill.setCurrency(readString(buffer));
+            bill.setAccount(readString(buffer));
+            bill.setCreditor(readAddress(buffer));
+            bill.setReference(readString(buffer));
+            bill.setDebtor(readAddress(buffer));
+            bill.setUnstructuredMessage(readString(buffer));
+            bill.setBillInformation(readString(buffer));
+
+            int schemeCount = readVarInt(buffer);
+            if (schemeCount == 0) {
+                bill.setAlternativeSchemes(null);
+            } else {
+                AlternativeScheme[] schemes = new AlternativeScheme[checkedCount(schemeCount - 1, buffer)];
+                for (int i = 0; i < schemes.length; i++)
+                    schemes[i] = new AlternativeScheme(readString(buffer), readString(buffer));
+                bill.setAlternativeSchemes(schemes);
+            }
+
+            if (buffer.get() != 0) {
+                BillFormat format = new BillFormat();
+                format.setOutputSize(readEnum(OUTPUT_SIZES, buffer));
+                format.setLanguage(readEnum(LANGUAGES, buffer));
+                format.setSeparatorType(readEnum(SEPARATOR_TYPES, buffer));
+                format.setFontFamily(readString(buffer));
+                format.setGraphicsFormat(readEnum(GRAPHICS_FORMATS, buffer));
+                bill.setFormat(format);
+            } else {
+                bill.setFormat(null);
+            }
+
+            return bill;
+        }
+
+        private Address readAddress(ByteBuffer buffer) {
+            int type = buffer.get();
+            if (type == 0)
+                return null;
+            Address address = new Address();
+            address.setName(readString(buffer));
+            address.setAddressLine1(readString(buffer));
+            address.setAddressLine2(readString(buffer));
+            address.setStreet(readString(buffer));
+            address.setHouseNo(readString(buffer));
+            address.setPostalCode(readString(buffer));
+            address.setTown(readString(buffer));
+            address.setCountryCode(readString(buffer));
+            address.restoreType(ADDRESS_TYPES[type - 1]);
+            return address;
+        }
+
+        private static BigDecimal readAmount(ByteBuffer buffer) {
+            int kind = buffer.get();
+            if (kind == AMOUNT_NULL)
+                return null;
+
+            if (kind == AMOUNT_LONG) {
+                long unscaled = unZigZag(readVarLong(buffer));
+                int scale = (int) unZigZag(readVarLong(buffer));
+                return BigDecimal.valueOf(unscaled, scale);
+            }
+            if (kind != AMOUNT_BIG)
+                throw new IllegalArgumentException("Invalid encoded amount");
+
+            byte[] bytes = new byte[checkedCount(readVarInt(buffer), buffer)];
+            buffer.get(bytes);
+            int scale = (int) unZigZag(readVarLong(buffer));
+            return new BigDecimal(new BigInteger(bytes), scale);
+        }
+
+        private String[] readStringArray(ByteBuffer buffer) {
+            int count = readVarInt(buffer);
+            if (count == 0)
+                return null;
+            String[] strings = new String[checkedCount(count - 1, buffer)];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = readString(buffer);
+            return strings;
+        }
+
+        private String readString(ByteBuffer buffer) {
+            int tag = readVarInt(buffer);
+            if (tag == STRING_NULL)
+                return null;
+            if (tag >= STRING_REFERENCE_BASE)
+                return dictionary.get(tag - STRING_REFERENCE_BASE);
+
+            int length = checkedCount(readVarInt(buffer), buffer);
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            dictionary.add(value);
+            return value;
+        }
+
+        private static <E extends Enum<E>> E readEnum(E[] values, ByteBuffer buffer) {
+            int ordinal = readVarInt(buffer);
+            return ordinal != 0 ? values[ordinal - 1] : null;
+        }
+
+        private static int checkedCount(int count, ByteBuffer buffer) {
+            if (count < 0 || count > buffer.remaining())
+                throw new BufferUnderflowException();
+            return count;
+        }
+    }
+
+    // --- Primitive encodings
+
+    private static void writeVarInt(int value, ByteBuffer buffer) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Invalid encoded number");
+    }
+
+    private static void writeVarLong(long value, ByteBuffer buffer) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Invalid encoded number");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes the string as UTF-8 (preceded by its length) without creating a byte array.
+     */
+    private static void writeUtf8(String value, ByteBuffer buffer) {
+        int len = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if (ch < 0x80) {
+                utf8Length += 1;
+            } else if (ch < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(ch)) {
+                utf8Length += 1;
+            } else {
+                utf8Length += 3;
+            }
+        }
+
+        writeVarInt(utf8Length, buffer);
+        if (buffer.remaining() < utf8Length)
+            throw new BufferOverflowException();
+
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if (ch < 0x80) {
+                buffer.put((byte) ch);
+            } else if (ch < 0x800) {
+                buffer.put((byte) (0xc0 | (ch >> 6)));
+                buffer.put((byte) (0x80 | (ch & 0x3f)));
+            } else if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, value.charAt(i + 1));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+                i++;
+            } else if (Character.isSurrogate(ch)) {
+                // unpaired surrogates are replaced like String.getBytes() does
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | (ch >> 12)));
+                buffer.put((byte) (0x80 | ((ch >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (ch & 0x3f)));
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@
 package net.codecrete.qrbill.generator;
 
 import net.codecrete.qrbill.canvas.Canvas;
+import net.codecrete.qrbill.generator.GenerationListener.Stage;
 
 import java.awt.geom.AffineTransform;
 import java.io.IOException;
@@ -42,6 +43,7 @@ class BillLayout {
     private Bill bill;
     private QRCode qrCode;
     private Canvas graphics;
+    private StageTimer timer;
 
     private String accountPayableTo;
     private String reference;
@@ -64,13 +66,28 @@ class BillLayout {
 
 
     BillLayout(Bill bill, Canvas graphics) {
+        this(bill, QRCodeText.create(bill), graphics);
+    }
+
+    BillLayout(Bill bill, String qrCodeText, Canvas graphics) {
+        this(bill, qrCodeText, graphics, StageTimer.DISABLED);
+    }
+
+    BillLayout(Bill bill, String qrCodeText, Canvas graphics, StageTimer timer) {
         this.bill = bill;
-        this.qrCode = new QRCode(bill);
+        this.qrCode = new QRCode(qrCodeText, timer);
         this.graphics = graphics;
+        this.timer = timer;
+    }
+
+    int getQrCodeVersion() {
+        return qrCode.getVersion();
     }
 
     void draw() throws IOException {
 
+        LayoutEvent event = JfrEvents.startLayout();
+        timer.enter(Stage.TEXT_LAYOUT);
         prepareText();
 
         // payment part
@@ -91,6 +108,8 @@ class BillLayout {
             labelFontSize--;
             textFontSize--;
         }
+        int paymentPartFontSize = textFontSize;
+        timer.enter(Stage.DRAWING);
         drawPaymentPart();
 
         // receipt
@@ -98,6 +117,7 @@ class BillLayout {
         final int RC_LABEL_PREF_FONT_SIZE = 6; // pt
         final int RC_TEXT_PREF_FONT_SIZE = 8; // pt
 
+        timer.enter(Stage.TEXT_LAYOUT);
         labelFontSize = RC_LABEL_PREF_FONT_SIZE;
         textFontSize = RC_TEXT_PREF_FONT_SIZE;
         breakLines(RECEIPT_TEXT_WIDTH);
@@ -112,10 +132,14 @@ class BillLayout {
             breakLines(RECEIPT_TEXT_WIDTH);
             computeReceiptSpacing();
         }
+        timer.enter(Stage.DRAWING);
         drawReceipt();
 
         // border
         drawBorder();
+
+        if (event != null)
+            event.commit(bill.getFormat(), qrCode.getVersion(), paymentPartFontSize);
     }
 
     private void drawPaymentPart() throws IOException {
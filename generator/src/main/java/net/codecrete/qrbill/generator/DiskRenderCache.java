@@ -0,0 +1,231 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Render cache storing the generated output as files in a directory.
+ * <p>
+ * Each entry is stored in a separate file named after the key. Existing files
+ * are picked up when the cache is created, so the cache survives restarts. If the total size exceeds the limit, the least
+ * recently used files are deleted.
+ * </p>
+ * <p>
+ * I/O errors are not reported: a failed lookup is treated as a cache miss and
+ * a failed write is ignored.
+ * </p>
+ */
+public class DiskRenderCache implements RenderCache {
+
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong currentBytes = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    /**
+     * Creates a new instance.
+     * <p>
+     * The directory is created if it does not exist yet.
+     * </p>
+     *
+     * @param directory directory for the cache files
+     * @param maxBytes  maximum total size of the cache files, in bytes
+     * @throws IOException thrown if the directory cannot be created or read
+     */
+    public DiskRenderCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        // remove temporary files left over from an interrupted write
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            for (Path path : stream)
+                deleteQuietly(path);
+        }
+
+        for (CacheFile file : listFiles())
+            currentBytes.addAndGet(file.size);
+        evictIfNeeded();
+    }
+
+    /**
+     * Gets the cache directory.
+     *
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the total size of the cache files.
+     *
+     * @return the size, in bytes
+     */
+    public long getSizeInBytes() {
+        return currentBytes.get();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Path path = pathForKey(key);
+        try {
+            byte[] data = Files.readAllBytes(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] data) {
+        if (data.length > maxBytes)
+            return;
+
+        Path path = pathForKey(key);
+        Path tempPath = null;
+        try {
+            long previousSize = Files.exists(path) ? Files.size(path) : 0;
+            tempPath = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.write(tempPath, data);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempPath = null;
+            currentBytes.addAndGet(data.length - previousSize);
+        } catch (IOException e) {
+            // ignore: the entry is not cached
+        } finally {
+            if (tempPath != null)
+                deleteQuietly(tempPath);
+        }
+
+        evictIfNeeded();
+    }
+
+    /**
+     * Deletes all cache files.
+     */
+    public void clear() {
+        synchronized (evictionLock) {
+            try {
+                for (CacheFile file : listFiles())
+                    deleteFile(file);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (currentBytes.get() <= maxBytes)
+            return;
+
+        synchronized (evictionLock) {
+            if (currentBytes.get() <= maxBytes)
+                return;
+
+            try {
+                List<CacheFile> files = listFiles();
+                long total = 0;
+                for (CacheFile file : files)
+                    total += file.size;
+                currentBytes.set(total);
+
+                files.sort(Comparator.comparingLong(f -> f.lastModified));
+                // evict down to 90% to avoid evicting on every write
+                long target = maxBytes - maxBytes / 10;
+                for (CacheFile file : files) {
+                    if (currentBytes.get() <= target)
+                        break;
+                    deleteFile(file);
+                }
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void deleteFile(CacheFile file) {
+        try {
+            Files.delete(file.path);
+            currentBytes.addAndGet(-file.size);
+        } catch (NoSuchFileException e) {
+            // already deleted
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private List<CacheFile> listFiles() throws IOException {
+        List<CacheFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    files.add(new CacheFile(path, Files.size(path),
+                            Files.getLastModifiedTime(path).toMillis()));
+                } catch (NoSuchFileException e) {
+                    // concurrently deleted
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path pathForKey(String key) {
+        if (!isValidKey(key))
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+        return directory.resolve(key + FILE_SUFFIX);
+    }
+
+    private static boolean isValidKey(String key) {
+        int len = key.length();
+        if (len == 0 || len > 128)
+            return false;
+        for (int i = 0; i < len; i++) {
+            char ch = key.charAt(i);
+            if (!(ch >= '0' && ch <= '9' || ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch == '-' || ch == '_'))
+                return false;
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class CacheFile {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private CacheFile(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
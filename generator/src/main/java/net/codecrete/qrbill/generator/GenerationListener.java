@@ -0,0 +1,67 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * Listener for the time spent in the stages of QR bill generation.
+ * <p>
+ * If a listener is set with {@link QRBill#setGenerationListener(GenerationListener)},
+ * {@link QRBill#generate(Bill)}, {@link QRBill#generate(ValidatedBill)} and the {@code draw}
+ * methods measure the stages of the generation and report them after the bill has been
+ * generated successfully. Stages that did not occur (e.g. because the output was found in
+ * the render cache) are not reported. If no listener is set, nothing is measured.
+ * </p>
+ * <p>
+ * The listener is called on the thread generating the bill, once for each stage, in the
+ * order of {@link Stage}. Implementations must be thread-safe and should return quickly.
+ * </p>
+ */
+public interface GenerationListener {
+
+    /**
+     * Stage of the QR bill generation
+     */
+    enum Stage {
+        /**
+         * Validation and cleaning of the bill data
+         */
+        VALIDATION,
+        /**
+         * Creation of the text embedded in the QR code
+         */
+        QR_CODE_TEXT,
+        /**
+         * Encoding the text as a QR code (error correction, masking)
+         */
+        QR_CODE_ENCODING,
+        /**
+         * Text preparation, line breaking and font size selection
+         */
+        TEXT_LAYOUT,
+        /**
+         * Drawing onto the canvas
+         */
+        DRAWING,
+        /**
+         * Serialization of the canvas into the SVG or PDF data
+         */
+        SERIALIZATION
+    }
+
+    /**
+     * Reports the resources used by a stage of a single bill generation.
+     * <p>
+     * If a stage is entered several times, the total is reported.
+     * </p>
+     *
+     * @param stage          the stage
+     * @param durationNanos  the time spent in the stage, in nanoseconds
+     * @param allocatedBytes the number of bytes allocated by the generating thread in the stage,
+     *                       or -1 if the JVM does not support measuring it
+     */
+    void stageCompleted(Stage stage, long durationNanos, long allocatedBytes);
+}
@@ -0,0 +1,72 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * Support for the Java Flight Recorder events of the generator.
+ * <p>
+ * The library runs on Java 8, which might not include the JFR API. The event classes
+ * extending {@code jdk.jfr.Event} are therefore compiled separately (source set {@code jfr})
+ * and are only accessed through the event interfaces. They are loaded reflectively when
+ * this class is initialized. If loading fails, no events are recorded.
+ * </p>
+ * <p>
+ * The {@code start} methods return {@code null} if the event is not enabled in any recording.
+ * </p>
+ */
+final class JfrEvents {
+
+    /**
+     * Factory for started events (implemented in the {@code jfr} source set)
+     */
+    interface Factory {
+        ValidationEvent startValidation();
+
+        QrCodeEncodingEvent startQrCodeEncoding();
+
+        LayoutEvent startLayout();
+
+        RenderingEvent startRendering();
+    }
+
+    private static final Factory FACTORY = loadFactory();
+
+    private JfrEvents() {
+        // do not instantiate
+    }
+
+    static ValidationEvent startValidation() {
+        return FACTORY != null ? FACTORY.startValidation() : null;
+    }
+
+    static QrCodeEncodingEvent startQrCodeEncoding() {
+        return FACTORY != null ? FACTORY.startQrCodeEncoding() : null;
+    }
+
+    static LayoutEvent startLayout() {
+        return FACTORY != null ? FACTORY.startLayout() : null;
+    }
+
+    static RenderingEvent startRendering() {
+        return FACTORY != null ? FACTORY.startRendering() : null;
+    }
+
+    static String name(Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+
+    private static Factory loadFactory() {
+        try {
+            Class<?> factoryClass = Class.forName("net.codecrete.qrbill.generator.JfrEventFactory",
+                    true, JfrEvents.class.getClassLoader());
+            return (Factory) factoryClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // JFR API or event classes not available
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * JFR event for the layout and drawing of the payment part and receipt
+ * <p>
+ * Started with {@link JfrEvents}; implemented by {@code JfrLayoutEvent}.
+ * </p>
+ */
+interface LayoutEvent {
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format   the bill format
+     * @param version  the QR code version
+     * @param fontSize the text font size
+     */
+    void commit(BillFormat format, int version, int fontSize);
+}
@@ -0,0 +1,138 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory render cache with least-recently-used eviction.
+ * <p>
+ * The cache is bounded by the total size of the cached output. Optionally, a
+ * second tier (e.g. a {@link DiskRenderCache}) can be specified: it is consulted
+ * if an entry is not found in memory, and all added entries are written to it.
+ * </p>
+ */
+public class MemoryRenderCache implements RenderCache {
+
+    private final long maxBytes;
+    private final RenderCache secondTier;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxBytes maximum total size of the cached output, in bytes
+     */
+    public MemoryRenderCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a new instance with a second tier.
+     *
+     * @param maxBytes   maximum total size of the output cached in memory, in bytes
+     * @param secondTier second cache tier (or {@code null})
+     */
+    public MemoryRenderCache(long maxBytes, RenderCache secondTier) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+        this.secondTier = secondTier;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        synchronized (this) {
+            byte[] data = entries.get(key);
+            if (data != null) {
+                hitCount++;
+                return data;
+            }
+            missCount++;
+        }
+
+        if (secondTier == null)
+            return null;
+        byte[] data = secondTier.get(key);
+        if (data != null)
+            putInMemory(key, data);
+        return data;
+    }
+
+    @Override
+    public void put(String key, byte[] data) {
+        putInMemory(key, data);
+        if (secondTier != null)
+            secondTier.put(key, data);
+    }
+
+    /**
+     * Gets the number of entries in memory.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the total size of the output cached in memory.
+     *
+     * @return the size, in bytes
+     */
+    public synchronized long getSizeInBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Gets the number of lookups that have been answered from memory.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups that could not be answered from memory.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Removes all entries from memory (but not from the second tier).
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    private synchronized void putInMemory(String key, byte[] data) {
+        if (data.length > maxBytes)
+            return;
+
+        byte[] previous = entries.put(key, data);
+        if (previous != null)
+            currentBytes -= previous.length;
+        currentBytes += data.length;
+
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            currentBytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.codecrete.qrbill.generator.ValidationMessage.Type;
+
+/**
+ * Internal class for the compact representation of validation messages.
+ * <p>
+ * A message without parameters is encoded in a single {@code int}: the type, the
+ * ordinal of the field and the ordinal of the message key. Fields and keys not
+ * defined in {@link ValidationConstants} have no code.
+ * </p>
+ * <p>
+ * The codes are part of the binary format of {@link BillCodec}. New fields and
+ * keys must therefore be appended at the end of the enumerations.
+ * </p>
+ */
+final class MessageCodes {
+
+    /**
+     * Code for messages that cannot be encoded
+     */
+    static final int NO_CODE = -1;
+
+    private static final int FIELD_SHIFT = 1;
+    private static final int KEY_SHIFT = 16;
+    private static final int ORDINAL_MASK = 0x7fff;
+    private static final Type[] TYPES = Type.values();
+
+    private MessageCodes() {
+        // do not instantiate
+    }
+
+    /**
+     * Encodes a message.
+     *
+     * @param type  message type
+     * @param field field name
+     * @param key   message key
+     * @return the message code, or {@link #NO_CODE} if the field or key is unknown
+     */
+    static int encode(Type type, String field, String key) {
+        Field f = Field.of(field);
+        Key k = Key.of(key);
+        if (f == null || k == null)
+            return NO_CODE;
+        return encode(type, f, k);
+    }
+
+    /**
+     * Encodes a message for an address field.
+     *
+     * @param type      message type
+     * @param fieldRoot field root (creditor or debtor)
+     * @param subfield  subfield name (starting with a period)
+     * @param key       message key
+     * @return the message code, or {@link #NO_CODE} if the field or key is unknown
+     */
+    static int encode(Type type, String fieldRoot, String subfield, String key) {
+        Field f = Field.of(fieldRoot, subfield);
+        Key k = Key.of(key);
+        if (f == null || k == null)
+            return NO_CODE;
+        return encode(type, f, k);
+    }
+
+    private static int encode(Type type, Field field, Key key) {
+        return type.ordinal() | field.ordinal() << FIELD_SHIFT | key.ordinal() << KEY_SHIFT;
+    }
+
+    static boolean isValid(int code) {
+        int field = (code >>> FIELD_SHIFT) & ORDINAL_MASK;
+        int key = (code >>> KEY_SHIFT) & ORDINAL_MASK;
+        return code >= 0 && field < Field.VALUES.length && key < Key.VALUES.length;
+    }
+
+    static boolean isError(int code) {
+        return (code & 1) == Type.ERROR.ordinal();
+    }
+
+    static Type type(int code) {
+        return TYPES[code & 1];
+    }
+
+    static String field(int code) {
+        return Field.VALUES[(code >>> FIELD_SHIFT) & ORDINAL_MASK].name;
+    }
+
+    static String key(int code) {
+        return Key.VALUES[(code >>> KEY_SHIFT) & ORDINAL_MASK].key;
+    }
+
+    /**
+     * Field names used in validation messages
+     */
+    enum Field {
+        QR_TYPE(ValidationConstants.FIELD_QR_TYPE),
+        VERSION(ValidationConstants.FIELD_VERSION),
+        CODING_TYPE(ValidationConstants.FIELD_CODING_TYPE),
+        TRAILER(ValidationConstants.FIELD_TRAILER),
+        CURRENCY(ValidationConstants.FIELD_CURRENCY),
+        AMOUNT(ValidationConstants.FIELD_AMOUNT),
+        ACCOUNT(ValidationConstants.FIELD_ACCOUNT),
+        REFERENCE(ValidationConstants.FIELD_REFERENCE),
+        UNSTRUCTURED_MESSAGE(ValidationConstants.FIELD_UNSTRUCTURED_MESSAGE),
+        BILL_INFORMATION(ValidationConstants.FIELD_BILL_INFORMATION),
+        ALTERNATIVE_SCHEMES(ValidationConstants.FIELD_ALTERNATIVE_SCHEMES),
+        CREDITOR_NAME(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_NAME),
+        CREDITOR_ADDRESS_LINE_1(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_ADDRESS_LINE_1),
+        CREDITOR_ADDRESS_LINE_2(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_ADDRESS_LINE_2),
+        CREDITOR_STREET(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_STREET),
+        CREDITOR_HOUSE_NO(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_HOUSE_NO),
+        CREDITOR_POSTAL_CODE(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_POSTAL_CODE),
+        CREDITOR_TOWN(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_TOWN),
+        CREDITOR_COUNTRY_CODE(ValidationConstants.FIELDROOT_CREDITOR, ValidationConstants.SUBFIELD_COUNTRY_CODE),
+        DEBTOR_NAME(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_NAME),
+        DEBTOR_ADDRESS_LINE_1(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_ADDRESS_LINE_1),
+        DEBTOR_ADDRESS_LINE_2(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_ADDRESS_LINE_2),
+        DEBTOR_STREET(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_STREET),
+        DEBTOR_HOUSE_NO(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_HOUSE_NO),
+        DEBTOR_POSTAL_CODE(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_POSTAL_CODE),
+        DEBTOR_TOWN(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_TOWN),
+        DEBTOR_COUNTRY_CODE(ValidationConstants.FIELDROOT_DEBTOR, ValidationConstants.SUBFIELD_COUNTRY_CODE);
+
+        static final Field[] VALUES = values();
+        private static final Map<String, Field> BY_NAME = new HashMap<>();
+        private static final Map<String, Map<String, Field>> BY_ROOT_AND_SUBFIELD = new HashMap<>();
+
+        static {
+            for (Field field : VALUES) {
+                BY_NAME.put(field.name, field);
+                if (field.subfield != null)
+                    BY_ROOT_AND_SUBFIELD.computeIfAbsent(field.root, r -> new HashMap<>()).put(field.subfield, field);
+            }
+        }
+
+        final String name;
+        private final String root;
+        private final String subfield;
+
+        Field(String name) {
+            this.name = name;
+            root = name;
+            subfield = null;
+        }
+
+        Field(String root, String subfield) {
+            name = root + subfield;
+            this.root = root;
+            this.subfield = subfield;
+        }
+
+        static Field of(String name) {
+            return name != null ? BY_NAME.get(name) : null;
+        }
+
+        static Field of(String root, String subfield) {
+            Map<String, Field> subfields = BY_ROOT_AND_SUBFIELD.get(root);
+            return subfields != null ? subfields.get(subfield) : null;
+        }
+    }
+
+    /**
+     * Message keys used in validation messages
+     */
+    enum Key {
+        CURRENCY_IS_CHF_OR_EUR(ValidationConstants.KEY_CURRENCY_IS_CHF_OR_EUR),
+        AMOUNT_IS_IN_VALID_RANGE(ValidationConstants.KEY_AMOUNT_IS_IN_VALID_RANGE),
+        ACCOUNT_IS_CH_LI_IBAN(ValidationConstants.KEY_ACCOUNT_IS_CH_LI_IBAN),
+        ACCOUNT_IS_VALID_IBAN(ValidationConstants.KEY_ACCOUNT_IS_VALID_IBAN),
+        ACCOUNT_IID_UNKNOWN(ValidationConstants.KEY_ACCOUNT_IID_UNKNOWN),
+        VALID_ISO11649_CREDITOR_REF(ValidationConstants.KEY_VALID_ISO11649_CREDITOR_REF),
+        VALID_QR_REF_NO(ValidationConstants.KEY_VALID_QR_REF_NO),
+        MANDATORY_FOR_QR_IBAN(ValidationConstants.KEY_MANDATORY_FOR_QR_IBAN),
+        FIELD_IS_MANDATORY(ValidationConstants.KEY_FIELD_IS_MANDATORY),
+        ADDRESS_TYPE_CONFLICT(ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT),
+        VALID_COUNTRY_CODE(ValidationConstants.KEY_VALID_COUNTRY_CODE),
+        FIELD_CLIPPED(ValidationConstants.KEY_FIELD_CLIPPED),
+        FIELD_TOO_LONG(ValidationConstants.KEY_FIELD_TOO_LONG),
+        ADDITIONAL_INFO_TOO_LONG(ValidationConstants.ADDITIONAL_INFO_TOO_LONG),
+        REPLACED_UNSUPPORTED_CHARACTERS(ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS),
+        VALID_DATA_STRUCTURE(ValidationConstants.KEY_VALID_DATA_STRUCTURE),
+        SUPPORTED_VERSION(ValidationConstants.KEY_SUPPORTED_VERSION),
+        SUPPORTED_CODING_TYPE(ValidationConstants.KEY_SUPPORTED_CODING_TYPE),
+        VALID_NUMBER(ValidationConstants.KEY_VALID_NUMBER),
+        ALT_SCHEME_MAX_EXCEEDED(ValidationConstants.KEY_ALT_SCHEME_MAX_EXCEEDED),
+        BILL_INFO_INVALID(ValidationConstants.KEY_BILL_INFO_INVALID);
+
+        static final Key[] VALUES = values();
+        private static final Map<String, Key> BY_KEY = new HashMap<>();
+
+        static {
+            for (Key key : VALUES)
+                BY_KEY.put(key.key, key);
+        }
+
+        final String key;
+
+        Key(String key) {
+            this.key = key;
+        }
+
+        static Key of(String key) {
+            return key != null ? BY_KEY.get(key) : null;
+        }
+    }
+}
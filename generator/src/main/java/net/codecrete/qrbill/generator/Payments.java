@@ -36,9 +36,10 @@ public class Payments {
      * Cleans a string value to make it viable for the Swiss Payment Standards 2018.
      * <p>
      * Unsupported characters (according to Swiss Payment Standards 2018, ch. 2.4.1
-     * and appendix D) are replaced with spaces (unsupported whitespace) or dots
-     * (all other unsupported characters). Leading and trailing whitespace is
-     * removed.
+     * and appendix D) are replaced with similar supported characters if possible
+     * (e.g. "Ã" with "A", "Œ" with "OE" or typographic quotes with straight ones),
+     * with spaces (unsupported whitespace) or with dots (all other unsupported
+     * characters). Leading and trailing whitespace is removed.
      * </p>
      * <p>
      * If characters beyond 0xff are detected, the string is first normalized such
@@ -75,17 +76,20 @@ public class Payments {
         // characters that can simply be copied. If all characters are valid, no memory
         // is allocated.
         int pos = 0;
-        while (pos < len) {
-            char ch = value.charAt(pos); // current character
-
-            if (Payments.isValidQRBillCharacter(ch)) {
-                justProcessedSpace = ch == ' ';
-                pos++;
-                continue;
+        while (true) {
+            int endOfValidRun = skipValidCharacters(value, pos, len);
+            if (endOfValidRun > pos) {
+                justProcessedSpace = value.charAt(endOfValidRun - 1) == ' ';
+                pos = endOfValidRun;
             }
+            if (pos >= len)
+                break;
+
+            char ch = value.charAt(pos); // current (unsupported) character
+            String substitution = substitutionFor(ch);
 
             // Check for normalization
-            if (ch > 0xff && !isNormalized) {
+            if (substitution == null && ch > 0xff && !isNormalized) {
                 isNormalized = Normalizer.isNormalized(value, Normalizer.Form.NFC);
                 if (!isNormalized) {
                     // Normalize string and start over
@@ -103,7 +107,10 @@ public class Payments {
             if (pos > lastCopiedPos)
                 sb.append(value, lastCopiedPos, pos);
 
-            if (Character.isHighSurrogate(ch)) {
+            if (substitution != null) {
+                sb.append(substitution);
+                justProcessedSpace = false;
+            } else if (Character.isHighSurrogate(ch)) {
                 // Proper Unicode handling to prevent surrogates and combining characters
                 // from being replaced with multiples periods.
                 int codePoint = value.codePointAt(pos);
@@ -137,6 +144,61 @@ public class Payments {
         result.replacedUnsupportedChars = true;
     }
 
+    /**
+     * Tests if a string value is already clean.
+     * <p>
+     * A value is clean if {@link #cleanValue(String, CleaningResult)} would return
+     * it unchanged: it is not empty, has no leading or trailing whitespace and
+     * consists of supported characters only.
+     * </p>
+     *
+     * @param value string value to test (non null)
+     * @return {@code true} if the value is clean, {@code false} otherwise
+     */
+    static boolean isCleanValue(String value) {
+        int len = value.length();
+        if (len == 0 || value.charAt(0) == ' ' || value.charAt(len - 1) == ' ')
+            return false;
+
+        return skipValidCharacters(value, 0, len) == len;
+    }
+
+    /**
+     * Skips a run of supported characters.
+     * <p>
+     * Blocks of 8 characters are checked at once before the remaining characters
+     * are checked one by one.
+     * </p>
+     *
+     * @param value string value
+     * @param pos   start position
+     * @param len   length of string value
+     * @return position of the first unsupported character, or {@code len} if all
+     * remaining characters are supported
+     */
+    private static int skipValidCharacters(String value, int pos, int len) {
+        while (pos + 8 <= len) {
+            char ch0 = value.charAt(pos);
+            char ch1 = value.charAt(pos + 1);
+            char ch2 = value.charAt(pos + 2);
+            char ch3 = value.charAt(pos + 3);
+            char ch4 = value.charAt(pos + 4);
+            char ch5 = value.charAt(pos + 5);
+            char ch6 = value.charAt(pos + 6);
+            char ch7 = value.charAt(pos + 7);
+            if ((ch0 | ch1 | ch2 | ch3 | ch4 | ch5 | ch6 | ch7) > 0xff)
+                break;
+            if (!(VALID_CHARS[ch0] & VALID_CHARS[ch1] & VALID_CHARS[ch2] & VALID_CHARS[ch3]
+                    & VALID_CHARS[ch4] & VALID_CHARS[ch5] & VALID_CHARS[ch6] & VALID_CHARS[ch7]))
+                break;
+            pos += 8;
+        }
+
+        while (pos < len && isValidQRBillCharacter(value.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
     /**
      * Validates if the string is a valid IBAN number
      * <p>
@@ -148,29 +210,67 @@ public class Payments {
      * @return {@code true} if the IBAN is valid, {@code false} otherwise
      */
     public static boolean isValidIBAN(String iban) {
+        return isValidIBAN((CharSequence) iban);
+    }
 
-        iban = Strings.whiteSpaceRemoved(iban);
+    /**
+     * Validates if the character sequence is a valid IBAN number
+     * <p>
+     * The sequence is checked for valid characters, valid length and for a valid
+     * check digit. White space is ignored.
+     * </p>
+     * <p>
+     * The validation runs in a single pass and does not allocate memory.
+     * </p>
+     *
+     * @param iban IBAN to validate
+     * @return {@code true} if the IBAN is valid, {@code false} otherwise
+     */
+    public static boolean isValidIBAN(CharSequence iban) {
+        // The modulo 97 checksum is calculated over the rearranged IBAN,
+        // i.e. with the first four characters moved to the end. So they are
+        // set aside and processed last.
+        char ch0 = 0;
+        char ch1 = 0;
+        char ch2 = 0;
+        char ch3 = 0;
+        int count = 0; // number of characters excluding whitespace
+        int sum = 0;
 
         int len = iban.length();
-        if (len < 5)
-            return false;
+        for (int i = 0; i < len; i++) {
+            char ch = iban.charAt(i);
+            if (ch <= ' ')
+                continue;
 
-        if (!isAlphaNumeric(iban))
-            return false;
+            if (count == 0) {
+                ch0 = ch;
+            } else if (count == 1) {
+                ch1 = ch;
+            } else if (count == 2) {
+                ch2 = ch;
+            } else if (count == 3) {
+                ch3 = ch;
+            } else {
+                sum = addToMod97(sum, ch);
+                if (sum < 0)
+                    return false;
+            }
+            count++;
+        }
 
-        // Check for country code
-        if (!Character.isLetter(iban.charAt(0)) || !Character.isLetter(iban.charAt(1)))
+        if (count < 5)
             return false;
 
-        // Check for check digits
-        if (!Character.isDigit(iban.charAt(2)) || !Character.isDigit(iban.charAt(3)))
+        // Check for country code and check digits
+        if (!isLetter(ch0) || !isLetter(ch1) || !isDigit(ch2) || !isDigit(ch3))
             return false;
 
-        String checkDigits = iban.substring(2, 4);
-        if ("00".equals(checkDigits) || "01".equals(checkDigits) || "99".equals(checkDigits))
+        int checkDigits = (ch2 - '0') * 10 + (ch3 - '0');
+        if (checkDigits == 0 || checkDigits == 1 || checkDigits == 99)
             return false;
 
-        return hasValidMod97CheckDigits(iban);
+        return completeMod97(sum, ch0, ch1, ch2, ch3) == 1;
     }
 
     /**
@@ -210,22 +310,61 @@ public class Payments {
      * otherwise
      */
     public static boolean isValidISO11649Reference(String reference) {
+        return isValidISO11649Reference((CharSequence) reference);
+    }
 
-        reference = Strings.whiteSpaceRemoved(reference);
+    /**
+     * Validates if the character sequence is a valid ISO 11649 reference number.
+     * <p>
+     * The sequence is checked for valid characters, valid length and a valid check
+     * digit. White space is ignored.
+     * </p>
+     * <p>
+     * The validation runs in a single pass and does not allocate memory.
+     * </p>
+     *
+     * @param reference ISO 11649 creditor reference to validate
+     * @return {@code true} if the creditor reference is valid, {@code false}
+     * otherwise
+     */
+    public static boolean isValidISO11649Reference(CharSequence reference) {
+        // See isValidIBAN(CharSequence) for the handling of the first four characters
+        char ch2 = 0;
+        char ch3 = 0;
+        int count = 0; // number of characters excluding whitespace
+        int sum = 0;
 
-        if (reference.length() < 5 || reference.length() > 25)
-            return false;
+        int len = reference.length();
+        for (int i = 0; i < len; i++) {
+            char ch = reference.charAt(i);
+            if (ch <= ' ')
+                continue;
 
-        if (!isAlphaNumeric(reference))
-            return false;
+            if (count == 0) {
+                if (ch != 'R')
+                    return false;
+            } else if (count == 1) {
+                if (ch != 'F')
+                    return false;
+            } else if (count == 2) {
+                ch2 = ch;
+            } else if (count == 3) {
+                ch3 = ch;
+            } else {
+                sum = addToMod97(sum, ch);
+                if (sum < 0)
+                    return false;
+            }
+            count++;
+        }
 
-        if (reference.charAt(0) != 'R' || reference.charAt(1) != 'F')
+        if (count < 5 || count > 25)
             return false;
 
-        if (!Character.isDigit(reference.charAt(2)) || !Character.isDigit(reference.charAt(3)))
+        if (!isDigit(ch2) || !isDigit(ch3))
             return false;
 
-        return hasValidMod97CheckDigits(reference);
+        return completeMod97(sum, 'R', 'F', ch2, ch3) == 1;
     }
 
     /**
@@ -242,53 +381,72 @@ public class Payments {
      */
     public static String createISO11649Reference(String rawReference) {
         final String whiteSpaceRemoved = Strings.whiteSpaceRemoved(rawReference);
-        final int modulo = Payments.calculateMod97("RF00" + whiteSpaceRemoved);
-        return String.format("RF%02d", 98 - modulo) + whiteSpaceRemoved;
-    }
+        int len = whiteSpaceRemoved.length();
+        if (len == 0)
+            throw new IllegalArgumentException("Insufficient characters for checksum calculation");
 
-    private static boolean hasValidMod97CheckDigits(String number) {
-        return calculateMod97(number) == 1;
+        // checksum of rearranged reference, i.e. raw reference followed by "RF00"
+        int sum = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = whiteSpaceRemoved.charAt(i);
+            sum = addToMod97(sum, ch);
+            if (sum < 0)
+                throw new IllegalArgumentException("Invalid character in reference: " + ch);
+        }
+        final int modulo = completeMod97(sum, 'R', 'F', '0', '0');
+        return String.format("RF%02d", 98 - modulo) + whiteSpaceRemoved;
     }
 
     /**
-     * Calculate the reference's modulo 97 checksum according to ISO11649 and IBAN
+     * Adds a character to the modulo 97 checksum according to ISO11649 and IBAN
      * standard.
      * <p>
-     * The string may only contains digits, letters ('A' to 'Z' and 'a' to 'z', no
-     * accents). It must not contain white space.
+     * Digits ('0' to '9') contribute a single digit, letters ('A' to 'Z' and 'a'
+     * to 'z', no accents) two digits. The intermediate sum is kept small enough
+     * to never overflow.
      * </p>
      *
-     * @param reference the reference
-     * @return the checksum (0 to 96)
-     * @throws IllegalArgumentException thrown if the reference contains an invalid
-     *                                  character
+     * @param sum intermediate sum (0 to 9999999)
+     * @param ch  the character to add
+     * @return the new intermediate sum, or -1 if the character is invalid
      */
-    private static int calculateMod97(String reference) {
-        int len = reference.length();
-        if (len < 5)
-            throw new IllegalArgumentException("Insufficient characters for checksum calculation");
-
-        String rearranged = reference.substring(4) + reference.substring(0, 4);
-        int sum = 0;
-        for (int i = 0; i < len; i++) {
-            char ch = rearranged.charAt(i);
-            if (ch >= '0' && ch <= '9') {
-                sum = sum * 10 + (ch - '0');
-            } else if (ch >= 'A' && ch <= 'Z') {
-                sum = sum * 100 + (ch - 'A' + 10);
-            } else if (ch >= 'a' && ch <= 'z') {
-                sum = sum * 100 + (ch - 'a' + 10);
-            } else {
-                throw new IllegalArgumentException("Invalid character in reference: " + ch);
-            }
-            if (sum > 9999999)
-                sum = sum % 97;
+    private static int addToMod97(int sum, char ch) {
+        if (ch >= '0' && ch <= '9') {
+            sum = sum * 10 + (ch - '0');
+        } else if (ch >= 'A' && ch <= 'Z') {
+            sum = sum * 100 + (ch - 'A' + 10);
+        } else if (ch >= 'a' && ch <= 'z') {
+            sum = sum * 100 + (ch - 'a' + 10);
+        } else {
+            return -1;
         }
-
-        sum = sum % 97;
+        if (sum > 9999999)
+            sum = sum % 97;
         return sum;
     }
 
+    /**
+     * Completes the modulo 97 checksum by adding the four characters that have
+     * been moved from the start to the end of the reference.
+     *
+     * @param sum intermediate sum
+     * @param ch0 first character
+     * @param ch1 second character
+     * @param ch2 third character
+     * @param ch3 fourth character
+     * @return the checksum (0 to 96), or -1 if one of the characters is invalid
+     */
+    private static int completeMod97(int sum, char ch0, char ch1, char ch2, char ch3) {
+        sum = addToMod97(sum, ch0);
+        if (sum >= 0)
+            sum = addToMod97(sum, ch1);
+        if (sum >= 0)
+            sum = addToMod97(sum, ch2);
+        if (sum >= 0)
+            sum = addToMod97(sum, ch3);
+        return sum >= 0 ? sum % 97 : -1;
+    }
+
     private static final int[] MOD_10 = { 0, 9, 4, 6, 8, 2, 7, 1, 3, 5 };
 
     /**
@@ -306,23 +464,42 @@ public class Payments {
      * otherwise
      */
     public static boolean isValidQRReference(String reference) {
+        return isValidQRReference((CharSequence) reference);
+    }
 
-        reference = Strings.whiteSpaceRemoved(reference);
-
-        if (!isNumeric(reference))
-            return false;
-
+    /**
+     * Validates if the character sequence is a valid QR reference.
+     * <p>
+     * A valid QR reference is a valid ISR reference.
+     * </p>
+     * <p>
+     * The sequence is checked for valid characters, valid length and a valid check
+     * digit. White space is ignored.
+     * </p>
+     * <p>
+     * The validation runs in a single pass and does not allocate memory.
+     * </p>
+     *
+     * @param reference QR reference number to validate
+     * @return {@code true} if the reference number is valid, {@code false}
+     * otherwise
+     */
+    public static boolean isValidQRReference(CharSequence reference) {
         int carry = 0;
+        int count = 0; // number of digits
         int len = reference.length();
-        if (len != 27)
-            return false;
-
         for (int i = 0; i < len; i++) {
-            int digit = reference.charAt(i) - '0';
-            carry = MOD_10[(carry + digit) % 10];
+            char ch = reference.charAt(i);
+            if (ch <= ' ')
+                continue;
+            if (ch < '0' || ch > '9')
+                return false;
+
+            carry = MOD_10[(carry + ch - '0') % 10];
+            count++;
         }
 
-        return carry == 0;
+        return count == 27 && carry == 0;
     }
 
     /**
@@ -350,14 +527,12 @@ public class Payments {
         return sb.toString();
     }
 
-    private static boolean isNumeric(String value) {
-        int len = value.length();
-        for (int i = 0; i < len; i++) {
-            char ch = value.charAt(i);
-            if (ch < '0' || ch > '9')
-                return false;
-        }
-        return true;
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
     }
 
     static boolean isAlphaNumeric(String value) {
@@ -375,7 +550,76 @@ public class Payments {
         return true;
     }
 
+    /**
+     * Lookup table of the supported characters in the range 0x0000 to 0x00ff
+     */
+    private static final boolean[] VALID_CHARS = new boolean[0x100];
+
+    /**
+     * Substitutions for unsupported characters in the range 0x0000 to 0x017f
+     */
+    private static final String[] LATIN_SUBSTITUTIONS = new String[0x180];
+
+    /**
+     * Substitutions for unsupported characters in the range 0x2010 to 0x203a
+     */
+    private static final String[] PUNCTUATION_SUBSTITUTIONS = new String[0x2b];
+
+    static {
+        for (char ch = 0; ch < 0x100; ch++)
+            VALID_CHARS[ch] = isSupportedCharacter(ch);
+
+        // letters with accents: replace with base letter
+        for (char ch = 0xc0; ch < 0x180; ch++) {
+            if (isSupportedCharacter(ch))
+                continue;
+            String decomposed = Normalizer.normalize(String.valueOf(ch), Normalizer.Form.NFD);
+            if (decomposed.length() > 1 && isLetter(decomposed.charAt(0)))
+                LATIN_SUBSTITUTIONS[ch] = decomposed.substring(0, 1);
+        }
+
+        // letters without decomposition
+        setSubstitutions(LATIN_SUBSTITUTIONS, 0, "\u00c6\u00e6\u0152\u0153", "AE", "ae", "OE", "oe");
+        setSubstitutions(LATIN_SUBSTITUTIONS, 0, "\u00d0\u00f0\u00de\u00fe", "D", "d", "TH", "th");
+        setSubstitutions(LATIN_SUBSTITUTIONS, 0, "\u00d8\u00f8\u0110\u0111", "O", "o", "D", "d");
+        setSubstitutions(LATIN_SUBSTITUTIONS, 0, "\u0126\u0127\u0131\u0141\u0142", "H", "h", "i", "L", "l");
+
+        // quotes and dashes
+        setSubstitutions(LATIN_SUBSTITUTIONS, 0, "\u00ab\u00bb", "\"", "\"");
+        setSubstitutions(PUNCTUATION_SUBSTITUTIONS, 0x2010, "\u2010\u2011\u2012\u2013\u2014\u2015",
+                "-", "-", "-", "-", "-", "-");
+        setSubstitutions(PUNCTUATION_SUBSTITUTIONS, 0x2010, "\u2018\u2019\u201a\u201b\u2039\u203a",
+                "'", "'", "'", "'", "'", "'");
+        setSubstitutions(PUNCTUATION_SUBSTITUTIONS, 0x2010, "\u201c\u201d\u201e\u201f",
+                "\"", "\"", "\"", "\"");
+        setSubstitutions(PUNCTUATION_SUBSTITUTIONS, 0x2010, "\u2026", "...");
+    }
+
+    private static void setSubstitutions(String[] table, int offset, String chars, String... substitutions) {
+        for (int i = 0; i < substitutions.length; i++)
+            table[chars.charAt(i) - offset] = substitutions[i];
+    }
+
+    /**
+     * Gets the substitution for an unsupported character
+     *
+     * @param ch unsupported character
+     * @return substitution consisting of supported characters, or {@code null} if
+     * there is no substitution
+     */
+    private static String substitutionFor(char ch) {
+        if (ch < 0x180)
+            return LATIN_SUBSTITUTIONS[ch];
+        if (ch >= 0x2010 && ch <= 0x203a)
+            return PUNCTUATION_SUBSTITUTIONS[ch - 0x2010];
+        return null;
+    }
+
     private static boolean isValidQRBillCharacter(char ch) {
+        return ch < 0x100 && VALID_CHARS[ch];
+    }
+
+    private static boolean isSupportedCharacter(char ch) {
         if (ch < 0x20)
             return false;
         if (ch == 0x5e)
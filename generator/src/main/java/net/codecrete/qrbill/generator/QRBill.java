@@ -10,8 +10,12 @@ import net.codecrete.qrbill.canvas.ByteArrayResult;
 import net.codecrete.qrbill.canvas.Canvas;
 import net.codecrete.qrbill.canvas.PDFCanvas;
 import net.codecrete.qrbill.canvas.SVGCanvas;
+import net.codecrete.qrbill.generator.GenerationListener.Stage;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * Generates Swiss QR bill payment part.
@@ -52,10 +56,34 @@ public class QRBill {
     public static final double QR_CODE_HEIGHT = 46;
 
 
+    private static volatile GenerationListener generationListener;
+
     private QRBill() {
         // do not instantiate
     }
 
+    /**
+     * Sets the listener for the time spent in the generation stages.
+     * <p>
+     * If no listener is set, the stages are not measured.
+     * </p>
+     *
+     * @param listener the listener, or {@code null} to disable measuring
+     * @see GenerationListener
+     */
+    public static void setGenerationListener(GenerationListener listener) {
+        generationListener = listener;
+    }
+
+    /**
+     * Gets the listener for the time spent in the generation stages.
+     *
+     * @return the listener, or {@code null} if none is set
+     */
+    public static GenerationListener getGenerationListener() {
+        return generationListener;
+    }
+
     /**
      * Validates and cleans the bill data.
      * <p>
@@ -63,6 +91,10 @@ public class QRBill {
      * the cleaned bill data.
      * </p>
      * <p>
+     * If the bill data is already clean and valid, it is not copied: the cleaned
+     * bill data of the validation result is then the specified bill instance.
+     * </p>
+     * <p>
      * For details about the validation result, see <a href=
      * "https://github.com/manuelbl/SwissQRBill/wiki/Bill-data-validation">Bill data
      * validation</a>
@@ -75,6 +107,71 @@ public class QRBill {
         return Validator.validate(bill);
     }
 
+    /**
+     * Validates and cleans the bill data and checks the account number against the
+     * bank master data.
+     * <p>
+     * In addition to the regular validation, an error is reported if the account
+     * number does not belong to an institution contained in the specified index.
+     * No network access is required.
+     * </p>
+     *
+     * @param bill      bill data
+     * @param bankIndex index of the bank master data
+     * @return validation result
+     * @see #validate(Bill)
+     */
+    public static ValidationResult validate(Bill bill, BankMasterIndex bankIndex) {
+        return Validator.validate(bill, bankIndex);
+    }
+
+    /**
+     * Validates a batch of bills in parallel.
+     * <p>
+     * The validation is split across the common fork/join pool. The result records
+     * which bills are valid and contains the validation messages of the invalid
+     * bills only. The cleaned bill data is not retained.
+     * </p>
+     *
+     * @param bills list of bill data
+     * @return batch validation result
+     * @see #validate(Bill)
+     */
+    public static BatchValidationResult validateAll(List<Bill> bills) {
+        return validateAll(bills, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates a batch of bills in parallel using the specified fork/join pool.
+     * <p>
+     * The result records which bills are valid and contains the validation messages
+     * of the invalid bills only. The cleaned bill data is not retained.
+     * </p>
+     *
+     * @param bills list of bill data
+     * @param pool  fork/join pool to execute the validation
+     * @return batch validation result
+     * @see #validate(Bill)
+     */
+    public static BatchValidationResult validateAll(List<Bill> bills, ForkJoinPool pool) {
+        return BatchValidator.validate(bills.toArray(new Bill[0]), pool);
+    }
+
+    /**
+     * Validates a stream of bills in parallel.
+     * <p>
+     * The bills are identified by their position in the stream. The stream is
+     * consumed before the validation starts.
+     * </p>
+     *
+     * @param bills stream of bill data
+     * @return batch validation result
+     * @see #validateAll(List)
+     */
+    public static BatchValidationResult validateAll(Stream<Bill> bills) {
+        return BatchValidator.validate(bills.toArray(Bill[]::new), ForkJoinPool.commonPool());
+    }
+
     /**
      * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document.
      * <p>
@@ -96,9 +193,122 @@ public class QRBill {
      * @see #draw
      */
     public static byte[] generate(Bill bill) {
-        try (Canvas canvas = createCanvas(bill.getFormat())) {
-            validateAndGenerate(bill, canvas);
-            return ((ByteArrayResult)canvas).toByteArray();
+        RenderingEvent event = JfrEvents.startRendering();
+        StageTimer timer = StageTimer.start(generationListener, Stage.VALIDATION);
+        Bill cleanedBill = validateAndClean(bill);
+        timer.enter(Stage.QR_CODE_TEXT);
+        String qrCodeText = QRCodeText.create(cleanedBill);
+        timer.enter(Stage.DRAWING);
+        try (Canvas canvas = createCanvas(cleanedBill.getFormat())) {
+            int qrCodeVersion = drawValidated(cleanedBill, qrCodeText, canvas, timer);
+            timer.enter(Stage.SERIALIZATION);
+            byte[] result = ((ByteArrayResult)canvas).toByteArray();
+            timer.complete();
+            if (event != null)
+                event.commit(bill.getFormat(), qrCodeVersion, result.length);
+            return result;
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+    }
+
+    /**
+     * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document
+     * using the specified render cache.
+     * <p>
+     * The output is looked up in the cache using the content hash of the validated bill
+     * (cleaned bill data and bill format). It is only generated and added to the cache
+     * if it is not found. Otherwise, the method works like {@link #generate(Bill)}.
+     * </p>
+     *
+     * @param bill  the bill data
+     * @param cache the render cache (or {@code null} for no caching)
+     * @return the generated QR bill (as a byte array encoded in the specified graphics format)
+     * @throws QRBillValidationError thrown if the bill data does not validate
+     * @see RenderCache
+     */
+    public static byte[] generate(Bill bill, RenderCache cache) {
+        if (cache == null)
+            return generate(bill);
+
+        StageTimer timer = StageTimer.start(generationListener, Stage.VALIDATION);
+        ValidationResult result = Validator.validate(bill);
+        if (result.hasErrors())
+            throw new QRBillValidationError(result);
+        timer.enter(Stage.QR_CODE_TEXT);
+        return generateCached(result.getValidatedBill(), cache, timer);
+    }
+
+    /**
+     * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document
+     * from validated bill data.
+     * <p>
+     * The bill data is neither validated nor cleaned again and the QR code text
+     * is reused.
+     * </p>
+     *
+     * @param bill the validated bill data
+     * @return the generated QR bill (as a byte array encoded in the specified graphics format)
+     * @see #generate(Bill)
+     * @see ValidationResult#getValidatedBill()
+     */
+    public static byte[] generate(ValidatedBill bill) {
+        StageTimer timer = StageTimer.start(generationListener);
+        byte[] output = generateValidated(bill, timer);
+        timer.complete();
+        return output;
+    }
+
+    /**
+     * Generates a QR bill (payment part and receipt) or QR code as an SVG image or PDF document
+     * from validated bill data using the specified render cache.
+     * <p>
+     * The output is looked up in the cache using the content hash of the validated bill.
+     * It is only generated and added to the cache if it is not found.
+     * </p>
+     *
+     * @param bill  the validated bill data
+     * @param cache the render cache (or {@code null} for no caching)
+     * @return the generated QR bill (as a byte array encoded in the specified graphics format)
+     * @see #generate(ValidatedBill)
+     * @see RenderCache
+     */
+    public static byte[] generate(ValidatedBill bill, RenderCache cache) {
+        if (cache == null)
+            return generate(bill);
+
+        StageTimer timer = StageTimer.start(generationListener);
+        return generateCached(bill, cache, timer);
+    }
+
+    private static byte[] generateCached(ValidatedBill bill, RenderCache cache, StageTimer timer) {
+        // cache lookups are not part of any stage
+        timer.pause();
+        String key = bill.getContentHash();
+        byte[] output = cache.get(key);
+        if (output == null) {
+            output = generateValidated(bill, timer);
+            timer.pause();
+            cache.put(key, output.clone());
+        } else {
+            output = output.clone();
+        }
+        timer.complete();
+        return output;
+    }
+
+    private static byte[] generateValidated(ValidatedBill bill, StageTimer timer) {
+        RenderingEvent event = JfrEvents.startRendering();
+        Bill billData = bill.getBill();
+        timer.enter(Stage.DRAWING);
+        try (Canvas canvas = createCanvas(billData.getFormat())) {
+            int qrCodeVersion = drawValidated(billData, bill.getQrCodeText(), canvas, timer);
+            bill.setQrCodeVersion(qrCodeVersion);
+            timer.enter(Stage.SERIALIZATION);
+            byte[] result = ((ByteArrayResult)canvas).toByteArray();
+            if (event != null)
+                event.commit(billData.getFormat(), qrCodeVersion, result.length);
+            return result;
         } catch (IOException e) {
             throw new QRBillGenerationException(e);
         }
@@ -133,24 +343,67 @@ public class QRBill {
      */
     public static void draw(Bill bill, Canvas canvas) {
         try {
-            validateAndGenerate(bill, canvas);
+            RenderingEvent event = JfrEvents.startRendering();
+            StageTimer timer = StageTimer.start(generationListener, Stage.VALIDATION);
+            int qrCodeVersion = validateAndGenerate(bill, canvas, timer);
+            timer.complete();
+            if (event != null)
+                event.commit(bill.getFormat(), qrCodeVersion, 0);
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+    }
+
+    /**
+     * Draws the QR bill (payment part and receipt) or QR code for the specified validated
+     * bill data onto the specified canvas.
+     * <p>
+     * The bill data is neither validated nor cleaned again and the QR code text
+     * is reused. Otherwise, the method works like {@link #draw(Bill, Canvas)}.
+     * </p>
+     *
+     * @param bill   the validated bill data
+     * @param canvas the canvas to draw to
+     */
+    public static void draw(ValidatedBill bill, Canvas canvas) {
+        try {
+            RenderingEvent event = JfrEvents.startRendering();
+            StageTimer timer = StageTimer.start(generationListener, Stage.DRAWING);
+            int qrCodeVersion = drawValidated(bill.getBill(), bill.getQrCodeText(), canvas, timer);
+            bill.setQrCodeVersion(qrCodeVersion);
+            timer.complete();
+            if (event != null)
+                event.commit(bill.getFormat(), qrCodeVersion, 0);
         } catch (IOException e) {
             throw new QRBillGenerationException(e);
         }
     }
 
-    private static void validateAndGenerate(Bill bill, Canvas canvas) throws IOException {
+    private static int validateAndGenerate(Bill bill, Canvas canvas, StageTimer timer) throws IOException {
+        Bill cleanedBill = validateAndClean(bill);
+        timer.enter(Stage.QR_CODE_TEXT);
+        String qrCodeText = QRCodeText.create(cleanedBill);
+        timer.enter(Stage.DRAWING);
+        return drawValidated(cleanedBill, qrCodeText, canvas, timer);
+    }
+
+    private static Bill validateAndClean(Bill bill) {
         ValidationResult result = Validator.validate(bill);
-        Bill cleanedBill = result.getCleanedBill();
         if (result.hasErrors())
             throw new QRBillValidationError(result);
+        return result.getCleanedBill();
+    }
 
-        if (bill.getFormat().getOutputSize() == OutputSize.QR_CODE_ONLY) {
-            QRCode qrCode = new QRCode(cleanedBill);
+    private static int drawValidated(Bill cleanedBill, String qrCodeText, Canvas canvas, StageTimer timer)
+            throws IOException {
+        if (cleanedBill.getFormat().getOutputSize() == OutputSize.QR_CODE_ONLY) {
+            QRCode qrCode = new QRCode(qrCodeText, timer);
             qrCode.draw(canvas, 0, 0);
+            return qrCode.getVersion();
         } else {
-            BillLayout layout = new BillLayout(cleanedBill, canvas);
+            BillLayout layout = new BillLayout(cleanedBill, qrCodeText, canvas, timer);
             layout.draw();
+            return layout.getQrCodeVersion();
         }
     }
 
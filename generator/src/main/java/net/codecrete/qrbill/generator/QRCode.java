@@ -23,6 +23,8 @@ class QRCode {
     static final double SIZE = 46; // mm
 
     private final String embeddedText;
+    private final StageTimer timer;
+    private int version;
 
     /**
      * Creates an instance of the QR code for the specified bill data.
@@ -33,7 +35,36 @@ class QRCode {
      * @param bill bill data
      */
     QRCode(Bill bill) {
-        embeddedText = QRCodeText.create(bill);
+        this(QRCodeText.create(bill));
+    }
+
+    /**
+     * Creates an instance of the QR code for the specified embedded text.
+     *
+     * @param embeddedText text embedded in the QR code
+     */
+    QRCode(String embeddedText) {
+        this(embeddedText, StageTimer.DISABLED);
+    }
+
+    /**
+     * Creates an instance of the QR code for the specified embedded text.
+     *
+     * @param embeddedText text embedded in the QR code
+     * @param timer        timer for the generation stages
+     */
+    QRCode(String embeddedText, StageTimer timer) {
+        this.embeddedText = embeddedText;
+        this.timer = timer;
+    }
+
+    /**
+     * Gets the QR code version.
+     *
+     * @return the version (1 to 40), or 0 if the QR code has not been drawn yet
+     */
+    int getVersion() {
+        return version;
     }
 
     /**
@@ -46,7 +77,13 @@ class QRCode {
      * @throws IOException exception thrown in case of error in graphics context
      */
     void draw(Canvas graphics, double offsetX, double offsetY) throws IOException {
+        timer.enter(GenerationListener.Stage.QR_CODE_ENCODING);
+        QrCodeEncodingEvent event = JfrEvents.startQrCodeEncoding();
         QrCode qrCode = QrCode.encodeText(embeddedText, QrCode.Ecc.MEDIUM);
+        version = qrCode.version;
+        if (event != null)
+            event.commit(embeddedText, version);
+        timer.enter(GenerationListener.Stage.DRAWING);
 
         boolean[][] modules = copyModules(qrCode);
         clearSwissCrossArea(modules);
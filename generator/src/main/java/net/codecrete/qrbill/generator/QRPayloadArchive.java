@@ -0,0 +1,284 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Archive format for storing large numbers of QR code texts (e.g. decoded QR bill payloads).
+ * <p>
+ * Each text is compressed separately with a {@link QRTextCompressor}, i.e. with deflate
+ * and a preset dictionary. The archive starts with a header identifying the
+ * dictionary: either the built-in dictionary or a custom dictionary stored in the
+ * header itself (2-byte length followed by the dictionary). The header is followed by the
+ * records. Each record consists of the length of the compressed data (as a
+ * variable-length integer) and the compressed data.
+ * </p>
+ * <p>
+ * Texts are written with a {@link Writer} and read with a {@link Reader}. Neither is thread-safe.
+ * </p>
+ */
+public final class QRPayloadArchive {
+
+    private static final byte[] MAGIC = { 'Q', 'R', 'P', 'A' };
+    private static final int VERSION = 1;
+    private static final int BUILT_IN_DICTIONARY = 0;
+    private static final int CUSTOM_DICTIONARY = 1;
+
+    private QRPayloadArchive() {
+        // do not instantiate
+    }
+
+    /**
+     * Writes QR code texts to an archive.
+     */
+    public static final class Writer implements Closeable {
+
+        private final OutputStream stream;
+        private final QRTextCompressor compressor;
+        private final Deflater deflater;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        private int count;
+        private long uncompressedSize;
+        private long compressedSize;
+
+        /**
+         * Creates a new instance using the built-in dictionary.
+         *
+         * @param stream stream to write the archive to
+         * @throws IOException thrown if the header cannot be written
+         */
+        public Writer(OutputStream stream) throws IOException {
+            this(stream, QRTextCompressor.DEFAULT);
+        }
+
+        /**
+         * Creates a new instance using the dictionary of the specified compressor.
+         * <p>
+         * The dictionary is stored in the archive header.
+         * </p>
+         *
+         * @param stream     stream to write the archive to
+         * @param compressor compressor
+         * @throws IOException thrown if the header cannot be written
+         */
+        public Writer(OutputStream stream, QRTextCompressor compressor) throws IOException {
+            this.stream = stream;
+            this.compressor = compressor;
+
+            stream.write(MAGIC);
+            stream.write(VERSION);
+            if (compressor == QRTextCompressor.DEFAULT) {
+                stream.write(BUILT_IN_DICTIONARY);
+            } else {
+                byte[] dictionary = compressor.getDictionary();
+                stream.write(CUSTOM_DICTIONARY);
+                stream.write(dictionary.length >> 8);
+                stream.write(dictionary.length);
+                stream.write(dictionary);
+            }
+
+            deflater = compressor.createDeflater();
+        }
+
+        /**
+         * Writes a QR code text to the archive.
+         *
+         * @param qrText the QR code text
+         * @throws IOException thrown if the text cannot be written
+         */
+        public void write(String qrText) throws IOException {
+            byte[] text = qrText.getBytes(StandardCharsets.UTF_8);
+            buffer.reset();
+            compressor.compress(deflater, text, buffer);
+            int length = buffer.size();
+            writeVarInt(length);
+            buffer.writeTo(stream);
+
+            count++;
+            uncompressedSize += text.length;
+            compressedSize += length;
+        }
+
+        /**
+         * Gets the number of texts written.
+         *
+         * @return the number of texts
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the total size of the texts written, in bytes (UTF-8 encoded).
+         *
+         * @return the uncompressed size
+         */
+        public long getUncompressedSize() {
+            return uncompressedSize;
+        }
+
+        /**
+         * Gets the total size of the compressed texts, in bytes (excluding the record lengths).
+         *
+         * @return the compressed size
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Flushes the underlying stream.
+         *
+         * @throws IOException thrown if the stream cannot be flushed
+         */
+        public void flush() throws IOException {
+            stream.flush();
+        }
+
+        /**
+         * Closes this writer and the underlying stream.
+         *
+         * @throws IOException thrown if the stream cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            stream.close();
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                stream.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            stream.write(value);
+        }
+    }
+
+    /**
+     * Reads QR code texts from an archive.
+     */
+    public static final class Reader implements Closeable {
+
+        private final InputStream stream;
+        private final QRTextCompressor compressor;
+        private final Inflater inflater;
+        private byte[] buffer = new byte[512];
+
+        /**
+         * Creates a new instance and reads the archive header.
+         *
+         * @param stream stream to read the archive from
+         * @throws IOException thrown if the header cannot be read or is invalid
+         */
+        public Reader(InputStream stream) throws IOException {
+            this.stream = stream;
+
+            byte[] magic = readFully(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a QR payload archive");
+            int version = stream.read();
+            if (version != VERSION)
+                throw new IOException("Unsupported QR payload archive version " + version);
+
+            int dictionaryType = stream.read();
+            if (dictionaryType == BUILT_IN_DICTIONARY) {
+                compressor = QRTextCompressor.DEFAULT;
+            } else if (dictionaryType == CUSTOM_DICTIONARY) {
+                byte[] lengthBytes = readFully(2);
+                int dictionaryLength = (lengthBytes[0] & 0xff) << 8 | (lengthBytes[1] & 0xff);
+                try {
+                    compressor = new QRTextCompressor(readFully(dictionaryLength));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid dictionary in QR payload archive", e);
+                }
+            } else if (dictionaryType < 0) {
+                throw new EOFException("Unexpected end of QR payload archive");
+            } else {
+                throw new IOException("Unsupported dictionary type in QR payload archive");
+            }
+
+            inflater = compressor.createInflater();
+        }
+
+        /**
+         * Reads the next QR code text.
+         *
+         * @return the QR code text, or {@code null} if the end of the archive has been reached
+         * @throws IOException thrown if the text cannot be read or is invalid
+         */
+        public String read() throws IOException {
+            int length = readVarInt();
+            if (length < 0)
+                return null;
+            if (length > QRTextCompressor.MAX_TEXT_LENGTH)
+                throw new IOException("Invalid record length in QR payload archive");
+
+            if (buffer.length < length)
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            readFully(buffer, length);
+            try {
+                return compressor.decompress(inflater, buffer, 0, length);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid record in QR payload archive", e);
+            }
+        }
+
+        /**
+         * Closes this reader and the underlying stream.
+         *
+         * @throws IOException thrown if the stream cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            stream.close();
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = stream.read();
+                if (b < 0) {
+                    if (shift == 0)
+                        return -1; // end of archive
+                    throw new EOFException("Unexpected end of QR payload archive");
+                }
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Invalid record length in QR payload archive");
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            byte[] data = new byte[length];
+            readFully(data, length);
+            return data;
+        }
+
+        private void readFully(byte[] data, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                int n = stream.read(data, offset, length - offset);
+                if (n < 0)
+                    throw new EOFException("Unexpected end of QR payload archive");
+                offset += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the text embedded in the QR code using deflate with a preset dictionary.
+ * <p>
+ * QR code texts are too short for deflate to find many repetitions within the text.
+ * But they share a large fixed skeleton (header, address types, currency, trailer),
+ * which a preset dictionary provides. The compressed data is raw deflate data
+ * (no zlib header or checksum).
+ * </p>
+ * <p>
+ * The {@link #DEFAULT default instance} uses a built-in dictionary trained with
+ * {@link #trainDictionary(Iterable, int)}. Data compressed with a particular dictionary
+ * can only be decompressed with the same dictionary.
+ * </p>
+ * <p>
+ * Instances are immutable and thread-safe.
+ * </p>
+ */
+public final class QRTextCompressor {
+
+    /**
+     * Maximum length of the decompressed text
+     */
+    static final int MAX_TEXT_LENGTH = 10000;
+
+    /**
+     * Built-in dictionary.
+     * <p>
+     * Trained with {@code trainDictionary(QRTextCorpus.create(1, 5000), 2048, 0.02)}
+     * (see the benchmarks). The high minimum share keeps the names of the
+     * synthetic corpus out of the dictionary. It must never change as
+     * it is required to decompress existing data.
+     * </p>
+     */
+    private static final String DEFAULT_DICTIONARY =
+            "IT\n\n\n\nEUR\nEUR\nK\n\n\nCHF\nK\nDE\n\n\n\n\nCHF\n\n\n\n\nCHF\n\nZug\nCH\n\n\n3011 Bern\n"
+            + "\n\nCH\nThun\nCH\n\n\n7000 Chur\n\n\nCH\n9490\nVaduz\nLI\nBern\nCH\n\n\n\n\nCH\nSCOR\nEUR\n"
+            + "\n\n\n5000 Aarau\n\n\nCH\nAarau\nCH\n\n\n79539\nL\u00f6rrach\nDE\nChur\nCH\n\n\n8001 Z\u00fcrich\n"
+            + "\n\nCH\n6900\nBregenz\nAT\nBasel\nCH\n\n\nOlten\nCH\n\n\nGen\u00e8ve\nCH\n\n\nLugano\nCH\n\n"
+            + "\n6300\nZug\nCH\n\nFribourg\nCH\n\n\n8400 Winterthur\n\n\nCH\nLuzern\nCH\n\n\n3600\nThun\nCH\n"
+            + "\n\nCH\nNON\n\n\n\nCH\nNON\nZ\u00fcrich\nCH\n\n\n2501 Biel/Bienne\n\n\nCH\n3011\nBern\nCH\n"
+            + "\nEUR\nS\n5000\nAarau\nCH\n\n9000 St. Gallen\n\n\nCH\n68300\nSaint-Louis\nFR\n\n\n\nSCOR\nLausanne\n"
+            + "CH\n\n\n7000\nChur\nCH\n\nSpende\nEPD\n\n1201\nGen\u00e8ve\nCH\n\n\n\nCHF\nS\n4051\nBasel\n"
+            + "CH\n\n4600\nOlten\nCH\n\nWallisellen\nCH\n\n\nSt. Gallen\nCH\n\n\nNeuch\u00e2tel\nCH\n\n\nFrauenfeld\n"
+            + "CH\n\n\nRapperswil\nCH\n\n\n1700\nFribourg\nCH\n\n6900\nLugano\nCH\n\n6003\nLuzern\nCH\n\nWinterthur\n"
+            + "CH\n\n\n8001\nZ\u00fcrich\nCH\n\nBiel/Bienne\nCH\n\n\nKirchweg\nRosenweg\n1003\nLausanne\nCH\n"
+            + "\n8304\nWallisellen\nCH\n\n\n\nNON\n\n\n\n\nNON\n9000\nSt. Gallen\nCH\n\n2000\nNeuch\u00e2tel\n"
+            + "CH\n\n8500\nFrauenfeld\nCH\n\n8640\nRapperswil\nCH\n\n\n\nCH\nQRR\nBirkenweg\nVia Nassa\n8400\n"
+            + "Winterthur\nCH\n\n2501\nBiel/Bienne\nCH\n\nRue du Lac\nSeestrasse\nPoststrasse\n\n\nEPD\n\n"
+            + "CH\nNON\n\n\n\n\n\nCHF\nDorfstrasse\nHauptstrasse\nSchulstrasse\nGartenstrasse\nLindenstrasse\n"
+            + "Jahresbeitrag 2020\nEPD\n\n\n\n\nQRR\nVia Cantonale\nIndustriestrasse\nBahnhofstrasse\nAvenue de la Gare\n"
+            + "Rue de Lausanne\nGrosse Marktgasse\n\n\nCH\n\nNON\n\n\nEPD\nCHF\n\n\n\nCH\n\n\n\nSPC\n0200\n"
+            + "1\n";
+
+    /**
+     * Compressor with the built-in dictionary
+     */
+    public static final QRTextCompressor DEFAULT
+            = new QRTextCompressor(DEFAULT_DICTIONARY.getBytes(StandardCharsets.UTF_8));
+
+    private final byte[] dictionary;
+
+    /**
+     * Creates a new instance with the specified dictionary.
+     *
+     * @param dictionary the preset dictionary (at most 32 KB)
+     */
+    public QRTextCompressor(byte[] dictionary) {
+        if (dictionary.length > 32768)
+            throw new IllegalArgumentException("Dictionary must not be longer than 32 KB");
+        this.dictionary = dictionary.clone();
+    }
+
+    /**
+     * Gets a copy of the dictionary.
+     *
+     * @return the dictionary
+     */
+    public byte[] getDictionary() {
+        return dictionary.clone();
+    }
+
+    /**
+     * Compresses the specified text.
+     *
+     * @param text the text
+     * @return the compressed data
+     */
+    public byte[] compress(String text) {
+        Deflater deflater = createDeflater();
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(text.length() / 2 + 16);
+            compress(deflater, text.getBytes(StandardCharsets.UTF_8), output);
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the specified data.
+     *
+     * @param data   array containing the compressed data
+     * @param offset offset of the compressed data
+     * @param length length of the compressed data
+     * @return the decompressed text
+     * @throws IllegalArgumentException thrown if the data is invalid or was compressed with another dictionary
+     */
+    public String decompress(byte[] data, int offset, int length) {
+        Inflater inflater = createInflater();
+        try {
+            return decompress(inflater, data, offset, length);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the specified data.
+     *
+     * @param data the compressed data
+     * @return the decompressed text
+     * @throws IllegalArgumentException thrown if the data is invalid or was compressed with another dictionary
+     */
+    public String decompress(byte[] data) {
+        return decompress(data, 0, data.length);
+    }
+
+    Deflater createDeflater() {
+        return new Deflater(Deflater.BEST_COMPRESSION, true);
+    }
+
+    Inflater createInflater() {
+        return new Inflater(true);
+    }
+
+    /**
+     * Compresses the UTF-8 encoded text with the specified deflater, which is reset before use.
+     */
+    void compress(Deflater deflater, byte[] utf8Text, ByteArrayOutputStream output) {
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(utf8Text);
+        deflater.finish();
+        byte[] chunk = new byte[512];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            output.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Decompresses the data with the specified inflater, which is reset before use.
+     */
+    String decompress(Inflater inflater, byte[] data, int offset, int length) {
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        // raw inflation may need an extra dummy byte
+        byte[] input = Arrays.copyOfRange(data, offset, offset + length + 1);
+        inflater.setInput(input);
+
+        try {
+            byte[] output = new byte[Math.max(256, length * 4)];
+            int outputLength = 0;
+            while (!inflater.finished()) {
+                if (outputLength == output.length) {
+                    if (outputLength >= MAX_TEXT_LENGTH)
+                        throw new IllegalArgumentException("Compressed QR code text is too long");
+                    output = Arrays.copyOf(output, outputLength * 2);
+                }
+                int n = inflater.inflate(output, outputLength, output.length - outputLength);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalArgumentException("Invalid compressed QR code text");
+                outputLength += n;
+            }
+            return new String(output, 0, outputLength, StandardCharsets.UTF_8);
+
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed QR code text", e);
+        }
+    }
+
+    /**
+     * Trains a preset dictionary from sample QR code texts.
+     * <p>
+     * Equivalent to {@code trainDictionary(samples, maxSize, 0.01)}.
+     * </p>
+     *
+     * @param samples sample QR code texts
+     * @param maxSize maximum size of the dictionary, in bytes
+     * @return the dictionary
+     * @see #trainDictionary(Iterable, int, double)
+     */
+    public static byte[] trainDictionary(Iterable<String> samples, int maxSize) {
+        return trainDictionary(samples, maxSize, 0.01);
+    }
+
+    /**
+     * Trains a preset dictionary from sample QR code texts.
+     * <p>
+     * The texts are split into lines. Sequences of up to four consecutive lines
+     * occurring in at least the specified share of the samples are candidates. They are selected by the number
+     * of bytes they are expected to save (occurrences times length) until the
+     * maximum size is reached. The most valuable sequences are placed at the end of the
+     * dictionary as deflate encodes shorter distances more efficiently.
+     * </p>
+     *
+     * <p>
+     * A higher minimum share restricts the dictionary to the common skeleton and
+     * avoids overfitting to names and addresses of the samples.
+     * </p>
+     *
+     * @param samples  sample QR code texts
+     * @param maxSize  maximum size of the dictionary, in bytes
+     * @param minShare minimum share of samples a line sequence must occur in (between 0 and 1)
+     * @return the dictionary
+     */
+    public static byte[] trainDictionary(Iterable<String> samples, int maxSize, double minShare) {
+        Map<String, int[]> counts = new HashMap<>();
+        int sampleCount = 0;
+        for (String sample : samples) {
+            sampleCount++;
+            String[] lines = sample.split("\n", -1);
+            for (int start = 0; start < lines.length; start++) {
+                StringBuilder sb = new StringBuilder();
+                for (int n = 0; n < 4 && start + n < lines.length; n++) {
+                    sb.append(lines[start + n]).append('\n');
+                    counts.computeIfAbsent(sb.toString(), k -> new int[1])[0]++;
+                }
+            }
+        }
+
+        int minCount = Math.max(2, (int) Math.ceil(sampleCount * minShare));
+        List<Map.Entry<String, int[]>> candidates = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] >= minCount && entry.getKey().length() > 1)
+                candidates.add(entry);
+        }
+        // highest score first, ties broken by text for a deterministic result
+        candidates.sort((a, b) -> {
+            long scoreA = (long) a.getValue()[0] * a.getKey().length();
+            long scoreB = (long) b.getValue()[0] * b.getKey().length();
+            if (scoreA != scoreB)
+                return scoreA > scoreB ? -1 : 1;
+            return a.getKey().compareTo(b.getKey());
+        });
+
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, int[]> candidate : candidates) {
+            String text = candidate.getKey();
+            int length = text.getBytes(StandardCharsets.UTF_8).length;
+            if (size + length > maxSize)
+                continue;
+            boolean isCovered = false;
+            for (String s : selected) {
+                if (s.contains(text)) {
+                    isCovered = true;
+                    break;
+                }
+            }
+            if (isCovered)
+                continue;
+            // remove selected sequences covered by the new one
+            for (int i = selected.size() - 1; i >= 0; i--) {
+                if (text.contains(selected.get(i))) {
+                    size -= selected.get(i).getBytes(StandardCharsets.UTF_8).length;
+                    selected.remove(i);
+                }
+            }
+            selected.add(text);
+            size += length;
+        }
+
+        StringBuilder dictionary = new StringBuilder(size);
+        for (int i = selected.size() - 1; i >= 0; i--)
+            dictionary.append(selected.get(i));
+        return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * JFR event for encoding the text as a QR code
+ * <p>
+ * Started with {@link JfrEvents}; implemented by {@code JfrQrCodeEncodingEvent}.
+ * </p>
+ */
+interface QrCodeEncodingEvent {
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param text    the encoded text
+     * @param version the QR code version
+     */
+    void commit(String text, int version);
+}
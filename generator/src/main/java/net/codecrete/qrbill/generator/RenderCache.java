@@ -0,0 +1,43 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * Cache for generated QR bills.
+ * <p>
+ * If a render cache is passed to {@link QRBill#generate(Bill, RenderCache)} or
+ * {@link QRBill#generate(ValidatedBill, RenderCache)}, the generated output is
+ * looked up in the cache before generating it. The key is
+ * the content hash of the validated bill (see {@link ValidatedBill#getContentHash()}),
+ * which covers the cleaned bill data and the bill format.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe. They must neither modify the byte arrays
+ * passed to {@link #put} nor the ones returned from {@link #get}.
+ * </p>
+ *
+ * @see MemoryRenderCache
+ * @see DiskRenderCache
+ */
+public interface RenderCache {
+
+    /**
+     * Gets the generated output for the specified key.
+     *
+     * @param key content hash
+     * @return the generated output, or {@code null} if it is not in the cache
+     */
+    byte[] get(String key);
+
+    /**
+     * Adds the generated output to the cache.
+     *
+     * @param key  content hash
+     * @param data the generated output
+     */
+    void put(String key, byte[] data);
+}
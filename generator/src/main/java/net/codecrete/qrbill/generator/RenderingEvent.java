@@ -0,0 +1,25 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * JFR event for rendering a validated bill
+ * <p>
+ * Started with {@link JfrEvents}; implemented by {@code JfrRenderingEvent}.
+ * </p>
+ */
+interface RenderingEvent {
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param format  the bill format
+     * @param version the QR code version
+     * @param length  the output length (or 0)
+     */
+    void commit(BillFormat format, int version, long length);
+}
@@ -0,0 +1,159 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import net.codecrete.qrbill.generator.GenerationListener.Stage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the stages of a single bill generation for a {@link GenerationListener}.
+ * <p>
+ * The timer is either in a single stage or paused. {@link #enter(Stage)} switches to
+ * another stage and adds the time and allocations since the last switch to the previous
+ * stage. Time spent while paused is not reported. The disabled timer ({@link #DISABLED})
+ * ignores all calls.
+ * </p>
+ * <p>
+ * Instances are not thread-safe. They are used by a single thread for a single bill.
+ * </p>
+ */
+final class StageTimer {
+
+    /**
+     * Timer ignoring all calls
+     */
+    static final StageTimer DISABLED = new StageTimer(null);
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final GenerationListener listener;
+    private final long[] durations;
+    private final long[] allocations;
+    private final boolean[] isEntered;
+    private Stage currentStage;
+    private long lastTime;
+    private long lastAllocation;
+
+    private StageTimer(GenerationListener listener) {
+        this.listener = listener;
+        if (listener != null) {
+            durations = new long[STAGES.length];
+            allocations = new long[STAGES.length];
+            isEntered = new boolean[STAGES.length];
+        } else {
+            durations = null;
+            allocations = null;
+            isEntered = null;
+        }
+    }
+
+    /**
+     * Creates a timer starting in the specified stage.
+     *
+     * @param listener the listener (or {@code null})
+     * @param stage    the initial stage
+     * @return the timer, or the disabled timer if the listener is {@code null}
+     */
+    static StageTimer start(GenerationListener listener, Stage stage) {
+        StageTimer timer = start(listener);
+        timer.enter(stage);
+        return timer;
+    }
+
+    /**
+     * Creates a paused timer.
+     *
+     * @param listener the listener (or {@code null})
+     * @return the timer, or the disabled timer if the listener is {@code null}
+     */
+    static StageTimer start(GenerationListener listener) {
+        if (listener == null)
+            return DISABLED;
+        StageTimer timer = new StageTimer(listener);
+        timer.lastAllocation = allocatedBytes();
+        timer.lastTime = System.nanoTime();
+        return timer;
+    }
+
+    /**
+     * Enters the specified stage (or pauses if it is {@code null}).
+     *
+     * @param stage the stage
+     */
+    void enter(Stage stage) {
+        if (listener == null)
+            return;
+
+        long now = System.nanoTime();
+        long allocation = allocatedBytes();
+        if (currentStage != null) {
+            int index = currentStage.ordinal();
+            durations[index] += now - lastTime;
+            allocations[index] += allocation - lastAllocation;
+        }
+        currentStage = stage;
+        if (stage != null)
+            isEntered[stage.ordinal()] = true;
+        lastAllocation = allocation;
+        lastTime = System.nanoTime();
+    }
+
+    /**
+     * Leaves the current stage without entering another one.
+     * <p>
+     * The time until the next stage is entered is not reported.
+     * </p>
+     */
+    void pause() {
+        enter(null);
+    }
+
+    /**
+     * Ends the current stage and reports all stages to the listener.
+     */
+    void complete() {
+        if (listener == null)
+            return;
+
+        pause();
+        boolean isAllocationSupported = AllocationCounter.BEAN != null;
+        for (Stage stage : STAGES) {
+            int index = stage.ordinal();
+            if (isEntered[index])
+                listener.stageCompleted(stage, durations[index], isAllocationSupported ? allocations[index] : -1);
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = AllocationCounter.BEAN;
+        return bean != null ? bean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Per-thread allocation counter of the JVM (loaded on first use only)
+     */
+    private static class AllocationCounter {
+        static final com.sun.management.ThreadMXBean BEAN = lookUpBean();
+
+        private static com.sun.management.ThreadMXBean lookUpBean() {
+            try {
+                ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+                    if (allocationBean.isThreadAllocatedMemorySupported()
+                            && allocationBean.isThreadAllocatedMemoryEnabled())
+                        return allocationBean;
+                }
+            } catch (LinkageError | SecurityException e) {
+                // not available on this JVM
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Bill data that has been successfully validated and cleaned.
+ * <p>
+ * Instances are immutable. They are obtained from {@link ValidationResult#getValidatedBill()}
+ * and can be passed to {@link QRBill#generate(ValidatedBill)} and
+ * {@link QRBill#draw(ValidatedBill, net.codecrete.qrbill.canvas.Canvas)}, which then
+ * neither validate nor clean the data again.
+ * </p>
+ * <p>
+ * The text embedded in the QR code is computed when the instance is created.
+ * The content hash covers the QR code text and the bill format and can be used as
+ * the key for caching the generated output.
+ * </p>
+ */
+public final class ValidatedBill implements Serializable {
+
+    private static final long serialVersionUID = 4190482530870254713L;
+
+    private final Bill bill;
+    private final String qrCodeText;
+    private final String contentHash;
+    // chosen by the QR code encoder (derived from the QR code text)
+    private transient volatile int qrCodeVersion;
+
+    /**
+     * Creates a new instance from cleaned bill data.
+     * <p>
+     * The bill data is copied.
+     * </p>
+     *
+     * @param cleanedBill cleaned bill data (without validation errors)
+     */
+    ValidatedBill(Bill cleanedBill) {
+        this(copyOf(cleanedBill, cleanedBill.getFormat()), null);
+    }
+
+    private ValidatedBill(Bill bill, String qrCodeText) {
+        this.bill = bill;
+        this.qrCodeText = qrCodeText != null ? qrCodeText : QRCodeText.create(bill);
+        contentHash = calculateContentHash(this.qrCodeText, bill.getFormat());
+    }
+
+    /**
+     * Creates a copy of this bill with a different format.
+     * <p>
+     * As the format is not part of the QR code text, the data is not validated again.
+     * </p>
+     *
+     * @param format the bill format
+     * @return the validated bill with the new format
+     */
+    public ValidatedBill withFormat(BillFormat format) {
+        return new ValidatedBill(copyOf(bill, format), qrCodeText);
+    }
+
+    /**
+     * Gets the text embedded in the QR code.
+     *
+     * @return the QR code text
+     */
+    public String getQrCodeText() {
+        return qrCodeText;
+    }
+
+    /**
+     * Gets the content hash.
+     * <p>
+     * The hash is the hex-encoded SHA-256 digest of the QR code text and the bill
+     * format. Two validated bills with the same content hash result in the same
+     * generated output.
+     * </p>
+     *
+     * @return the content hash (64 hex digits)
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Gets the version of the QR code chosen by the encoder.
+     * <p>
+     * The version is known once the bill has been generated or drawn with
+     * {@link QRBill#generate(ValidatedBill)} or {@link QRBill#draw(ValidatedBill, net.codecrete.qrbill.canvas.Canvas)}.
+     * </p>
+     *
+     * @return the QR code version (1 to 40), or 0 if the QR code has not been encoded yet
+     */
+    public int getQrCodeVersion() {
+        return qrCodeVersion;
+    }
+
+    void setQrCodeVersion(int qrCodeVersion) {
+        this.qrCodeVersion = qrCodeVersion;
+    }
+
+    /**
+     * Gets the version of the QR bill standard.
+     *
+     * @return the version
+     */
+    public Bill.Version getVersion() {
+        return bill.getVersion();
+    }
+
+    /**
+     * Gets the payment amount.
+     *
+     * @return the payment amount (or {@code null} if it is left open)
+     */
+    public BigDecimal getAmount() {
+        return bill.getAmount();
+    }
+
+    /**
+     * Gets the payment currency.
+     *
+     * @return the currency code ("CHF" or "EUR")
+     */
+    public String getCurrency() {
+        return bill.getCurrency();
+    }
+
+    /**
+     * Gets the creditor's account number (without spaces).
+     *
+     * @return the account number
+     */
+    public String getAccount() {
+        return bill.getAccount();
+    }
+
+    /**
+     * Gets a copy of the creditor address.
+     *
+     * @return the creditor address
+     */
+    public Address getCreditor() {
+        return copyOf(bill.getCreditor());
+    }
+
+    /**
+     * Gets the creditor's reference (without spaces).
+     *
+     * @return the reference (or {@code null} if there is none)
+     */
+    public String getReference() {
+        return bill.getReference();
+    }
+
+    /**
+     * Gets a copy of the debtor address.
+     *
+     * @return the debtor address (or {@code null} if there is none)
+     */
+    public Address getDebtor() {
+        return copyOf(bill.getDebtor());
+    }
+
+    /**
+     * Gets the additional unstructured message.
+     *
+     * @return the unstructured message (or {@code null} if there is none)
+     */
+    public String getUnstructuredMessage() {
+        return bill.getUnstructuredMessage();
+    }
+
+    /**
+     * Gets the additional structured bill information.
+     *
+     * @return the bill information (or {@code null} if there is none)
+     */
+    public String getBillInformation() {
+        return bill.getBillInformation();
+    }
+
+    /**
+     * Gets a copy of the alternative payment schemes.
+     *
+     * @return the alternative schemes (or {@code null} if there are none)
+     */
+    public AlternativeScheme[] getAlternativeSchemes() {
+        return copyOf(bill.getAlternativeSchemes());
+    }
+
+    /**
+     * Gets a copy of the bill format.
+     *
+     * @return the bill format
+     */
+    public BillFormat getFormat() {
+        return bill.getFormat() != null ? new BillFormat(bill.getFormat()) : null;
+    }
+
+    /**
+     * Creates a mutable copy of the bill data.
+     *
+     * @return the bill data
+     */
+    public Bill toBill() {
+        return copyOf(bill, bill.getFormat());
+    }
+
+    /**
+     * Gets the bill data without copying it (for internal use only)
+     *
+     * @return the bill data
+     */
+    Bill getBill() {
+        return bill;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        return contentHash.equals(((ValidatedBill) o).contentHash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return contentHash.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ValidatedBill{" +
+                "contentHash='" + contentHash + '\'' +
+                ", bill=" + bill +
+                '}';
+    }
+
+    private static Bill copyOf(Bill bill, BillFormat format) {
+        Bill copy = new Bill();
+        copy.setVersion(bill.getVersion());
+        copy.setAmount(bill.getAmount());
+        copy.setCurrency(bill.getCurrency());
+        copy.setAccount(bill.getAccount());
+        copy.setCreditor(copyOf(bill.getCreditor()));
+        copy.setReference(bill.getReference());
+        copy.setDebtor(copyOf(bill.getDebtor()));
+        copy.setUnstructuredMessage(bill.getUnstructuredMessage());
+        copy.setBillInformation(bill.getBillInformation());
+        copy.setAlternativeSchemes(copyOf(bill.getAlternativeSchemes()));
+        copy.setFormat(format != null ? new BillFormat(format) : null);
+        return copy;
+    }
+
+    private static Address copyOf(Address address) {
+        return address != null ? new Address(address) : null;
+    }
+
+    private static AlternativeScheme[] copyOf(AlternativeScheme[] schemes) {
+        if (schemes == null)
+            return null;
+        AlternativeScheme[] copy = new AlternativeScheme[schemes.length];
+        for (int i = 0; i < schemes.length; i++)
+            copy[i] = new AlternativeScheme(schemes[i].getName(), schemes[i].getInstruction());
+        return copy;
+    }
+
+    private static String calculateContentHash(String qrCodeText, BillFormat format) {
+        StringBuilder sb = new StringBuilder(qrCodeText.length() + 80);
+        sb.append(qrCodeText).append('\u0000');
+        if (format != null) {
+            sb.append(format.getOutputSize()).append('\u0000')
+                    .append(format.getLanguage()).append('\u0000')
+                    .append(format.getSeparatorType()).append('\u0000')
+                    .append(format.getFontFamily()).append('\u0000')
+                    .append(format.getGraphicsFormat());
+        }
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new QRBillGenerationException(e);
+        }
+
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+}
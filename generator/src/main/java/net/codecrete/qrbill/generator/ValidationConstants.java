@@ -28,6 +28,10 @@ public class ValidationConstants {
      * Validation message key: IBAN must have valid format and check digit
      */
     public static final String KEY_ACCOUNT_IS_VALID_IBAN = "account_is_valid_iban";
+    /**
+     * Validation message key: IBAN must belong to an institution listed in the bank master data
+     */
+    public static final String KEY_ACCOUNT_IID_UNKNOWN = "account_iid_unknown";
     /**
      * Validation message key: Due to regular IBAN (outside QR-IID range) an ISO 11649 references is expected
      * but it has invalid format or check digit
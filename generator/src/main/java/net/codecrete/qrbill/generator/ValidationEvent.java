@@ -0,0 +1,24 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.generator;
+
+/**
+ * JFR event for the validation of the bill data
+ * <p>
+ * Started with {@link JfrEvents}; implemented by {@code JfrValidationEvent}.
+ * </p>
+ */
+interface ValidationEvent {
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param bill   the bill data
+     * @param result the validation result
+     */
+    void commit(Bill bill, ValidationResult result);
+}
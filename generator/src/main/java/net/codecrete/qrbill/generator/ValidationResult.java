@@ -6,8 +6,13 @@
 //
 package net.codecrete.qrbill.generator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -15,23 +20,47 @@ import static net.codecrete.qrbill.generator.ValidationMessage.Type;
 
 /**
  * Container for validation results
+ * <p>
+ * The messages are stored in a compact form and the {@link ValidationMessage}
+ * instances are only created when {@link #getValidationMessages()} is called.
+ * </p>
  */
 public class ValidationResult implements Serializable {
 
     private static final long serialVersionUID = -791181851684443602L;
     private static final List<ValidationMessage> EMPTY_LIST = Collections.emptyList();
+    private static final int[] NO_CODES = new int[0];
 
-    private List<ValidationMessage> validationMessages;
-    private Bill cleanedBill;
+    // the serialized form is the message list and the cleaned bill, as in earlier versions
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("validationMessages", List.class),
+            new ObjectStreamField("cleanedBill", Bill.class)
+    };
+
+    // message codes (see MessageCodes), NO_CODE for messages stored in 'uncodedMessages'
+    private transient int[] codes = NO_CODES;
+    private transient int count;
+    private transient int errorCount;
+    // sparse arrays, only allocated if needed
+    private transient String[][] parameters;
+    private transient ValidationMessage[] uncodedMessages;
+    private transient List<ValidationMessage> validationMessages;
+    private transient Bill cleanedBill;
+    private transient ValidatedBill validatedBill;
 
     /**
      * Gets the list of validation messages
+     * <p>
+     * The returned list cannot be modified. Use {@link #addMessage} to add messages.
+     * </p>
      *
      * @return the validation messages
      */
     public List<ValidationMessage> getValidationMessages() {
-        if (validationMessages == null)
+        if (count == 0)
             return EMPTY_LIST;
+        if (validationMessages == null || validationMessages.size() != count)
+            validationMessages = Collections.unmodifiableList(Arrays.asList(createMessages()));
         return validationMessages;
     }
 
@@ -42,7 +71,7 @@ public class ValidationResult implements Serializable {
      * otherwise
      */
     public boolean hasMessages() {
-        return validationMessages != null;
+        return count != 0;
     }
 
     /**
@@ -52,12 +81,7 @@ public class ValidationResult implements Serializable {
      * otherwise
      */
     public boolean hasWarnings() {
-        if (validationMessages == null)
-            return false;
-        for (ValidationMessage message : validationMessages)
-            if (message.getType() == Type.WARNING)
-                return true;
-        return false;
+        return count > errorCount;
     }
 
     /**
@@ -66,12 +90,7 @@ public class ValidationResult implements Serializable {
      * @return {@code true} if there are any error messages, {@code false} otherwise
      */
     public boolean hasErrors() {
-        if (validationMessages == null)
-            return false;
-        for (ValidationMessage message : validationMessages)
-            if (message.getType() == Type.ERROR)
-                return true;
-        return false;
+        return errorCount != 0;
     }
 
     /**
@@ -80,7 +99,7 @@ public class ValidationResult implements Serializable {
      * @return {@code true} if the bill data was valid, {@code false} otherwise
      */
     public boolean isValid() {
-        return !hasErrors();
+        return errorCount == 0;
     }
 
     /**
@@ -91,10 +110,11 @@ public class ValidationResult implements Serializable {
      * @param messageKey the language-netural message key
      */
     public void addMessage(Type type, String field, String messageKey) {
-        ValidationMessage message = new ValidationMessage(type, field, messageKey);
-        if (validationMessages == null)
-            validationMessages = new ArrayList<>();
-        validationMessages.add(message);
+        int code = MessageCodes.encode(type, field, messageKey);
+        if (code == MessageCodes.NO_CODE)
+            addUncodedMessage(new ValidationMessage(type, field, messageKey));
+        else
+            addCode(code, type);
     }
 
     /**
@@ -107,10 +127,32 @@ public class ValidationResult implements Serializable {
      *                          into the localized message
      */
     public void addMessage(Type type, String field, String messageKey, String[] messageParameters) {
-        ValidationMessage message = new ValidationMessage(type, field, messageKey, messageParameters);
-        if (validationMessages == null)
-            validationMessages = new ArrayList<>();
-        validationMessages.add(message);
+        int code = MessageCodes.encode(type, field, messageKey);
+        if (code == MessageCodes.NO_CODE) {
+            addUncodedMessage(new ValidationMessage(type, field, messageKey, messageParameters));
+        } else {
+            setParameters(count, messageParameters);
+            addCode(code, type);
+        }
+    }
+
+    /**
+     * Adds a validation message for an address field without concatenating the field name
+     *
+     * @param type              the message type
+     * @param fieldRoot         the field root (creditor or debtor)
+     * @param subfield          the subfield name
+     * @param messageKey        the language-netural message key
+     * @param messageParameters additional message parameters (or {@code null})
+     */
+    void addMessage(Type type, String fieldRoot, String subfield, String messageKey, String[] messageParameters) {
+        int code = MessageCodes.encode(type, fieldRoot, subfield, messageKey);
+        if (code == MessageCodes.NO_CODE) {
+            addUncodedMessage(new ValidationMessage(type, fieldRoot + subfield, messageKey, messageParameters));
+        } else {
+            setParameters(count, messageParameters);
+            addCode(code, type);
+        }
     }
 
     /**
@@ -129,5 +171,108 @@ public class ValidationResult implements Serializable {
      */
     public void setCleanedBill(Bill cleanedBill) {
         this.cleanedBill = cleanedBill;
+        validatedBill = null;
+    }
+
+    /**
+     * Gets the validated bill data.
+     * <p>
+     * The validated bill is an immutable copy of the cleaned bill data including
+     * the text embedded in the QR code. It can be used to generate the QR bill
+     * without validating it again.
+     * </p>
+     *
+     * @return the validated bill data, or {@code null} if the validation has failed
+     */
+    public ValidatedBill getValidatedBill() {
+        if (errorCount != 0 || cleanedBill == null)
+            return null;
+        if (validatedBill == null)
+            validatedBill = new ValidatedBill(cleanedBill);
+        return validatedBill;
+    }
+
+    // --- Access to the compact representation (for BillCodec and the JFR events)
+
+    int getMessageCount() {
+        return count;
+    }
+
+    int getMessageCode(int index) {
+        return codes[index];
+    }
+
+    String[] getMessageParameters(int index) {
+        return parameters != null && index < parameters.length ? parameters[index] : null;
+    }
+
+    ValidationMessage getUncodedMessage(int index) {
+        return uncodedMessages[index];
+    }
+
+    void addMessageCode(int code, String[] messageParameters) {
+        setParameters(count, messageParameters);
+        addCode(code, MessageCodes.type(code));
+    }
+
+    private void addCode(int code, Type type) {
+        if (count == codes.length)
+            codes = Arrays.copyOf(codes, Math.max(4, count * 2));
+        codes[count] = code;
+        count++;
+        if (type == Type.ERROR)
+            errorCount++;
+    }
+
+    private void addUncodedMessage(ValidationMessage message) {
+        if (uncodedMessages == null || uncodedMessages.length <= count)
+            uncodedMessages = uncodedMessages == null ? new ValidationMessage[Math.max(4, count + 1)]
+                    : Arrays.copyOf(uncodedMessages, Math.max(count + 1, uncodedMessages.length * 2));
+        uncodedMessages[count] = message;
+        addCode(MessageCodes.NO_CODE, message.getType());
+    }
+
+    private void setParameters(int index, String[] messageParameters) {
+        if (messageParameters == null)
+            return;
+        if (parameters == null || parameters.length <= index)
+            parameters = parameters == null ? new String[Math.max(4, index + 1)][]
+                    : Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
+        parameters[index] = messageParameters;
+    }
+
+    private ValidationMessage[] createMessages() {
+        ValidationMessage[] messages = new ValidationMessage[count];
+        for (int i = 0; i < count; i++) {
+            int code = codes[i];
+            if (code == MessageCodes.NO_CODE) {
+                messages[i] = uncodedMessages[i];
+            } else {
+                String[] messageParameters = parameters != null && i < parameters.length ? parameters[i] : null;
+                messages[i] = new ValidationMessage(MessageCodes.type(code), MessageCodes.field(code),
+                        MessageCodes.key(code), messageParameters);
+            }
+        }
+        return messages;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("validationMessages", count != 0 ? new ArrayList<>(getValidationMessages()) : null);
+        fields.put("cleanedBill", cleanedBill);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        codes = NO_CODES;
+        List<ValidationMessage> messages = (List<ValidationMessage>) fields.get("validationMessages", null);
+        if (messages != null) {
+            for (ValidationMessage message : messages)
+                addMessage(message.getType(), message.getField(), message.getMessageKey(),
+                        message.getMessageParameters());
+        }
+        cleanedBill = (Bill) fields.get("cleanedBill", null);
     }
 }
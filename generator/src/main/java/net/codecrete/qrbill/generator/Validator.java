@@ -22,23 +22,53 @@ import java.util.Locale;
 class Validator {
 
     private final Bill billIn;
+    private final BankMasterIndex bankIndex;
     private final Bill billOut;
     private final ValidationResult validationResult;
 
     /**
      * Validates the QR bill data and returns the validation messages (if any) and
      * the cleaned bill data.
+     * <p>
+     * If the bill data is already clean and valid, no copy is made and the
+     * cleaned bill data is the specified bill instance.
+     * </p>
      *
      * @param bill bill data to validate
      * @return validation result
      */
     static ValidationResult validate(Bill bill) {
-        Validator validator = new Validator(bill);
-        return validator.validateBill();
+        return validate(bill, null);
     }
 
-    private Validator(Bill bill) {
+    /**
+     * Validates the QR bill data and additionally checks the account number against
+     * the bank master data.
+     *
+     * @param bill      bill data to validate
+     * @param bankIndex index of the bank master data (or {@code null} to skip the check)
+     * @return validation result
+     */
+    static ValidationResult validate(Bill bill, BankMasterIndex bankIndex) {
+        ValidationEvent event = JfrEvents.startValidation();
+        ValidationResult result;
+        if (isCleanAndValid(bill)
+                && (bankIndex == null || bankIndex.contains(BankMasterIndex.getIID(bill.getAccount())))) {
+            result = new ValidationResult();
+            result.setCleanedBill(bill);
+        } else {
+            Validator validator = new Validator(bill, bankIndex);
+            result = validator.validateBill();
+        }
+
+        if (event != null)
+            event.commit(bill, result);
+        return result;
+    }
+
+    private Validator(Bill bill, BankMasterIndex bankIndex) {
         billIn = bill;
+        this.bankIndex = bankIndex;
         billOut = new Bill();
         validationResult = new ValidationResult();
     }
@@ -98,6 +128,8 @@ class Validator {
                     validationResult.addMessage(Type.ERROR, ValidationConstants.FIELD_ACCOUNT, ValidationConstants.KEY_ACCOUNT_IS_CH_LI_IBAN);
                 } else if (account.length() != 21) {
                     validationResult.addMessage(Type.ERROR, ValidationConstants.FIELD_ACCOUNT, ValidationConstants.KEY_ACCOUNT_IS_VALID_IBAN);
+                } else if (bankIndex != null && !bankIndex.contains(BankMasterIndex.getIID(account))) {
+                    validationResult.addMessage(Type.ERROR, ValidationConstants.FIELD_ACCOUNT, ValidationConstants.KEY_ACCOUNT_IID_UNKNOWN);
                 } else {
                     billOut.setAccount(account);
                 }
@@ -247,8 +279,8 @@ class Validator {
 
         if (addressOut.getCountryCode() != null
                 && (addressOut.getCountryCode().length() != 2 || !Payments.isAlphaNumeric(addressOut.getCountryCode())))
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_COUNTRY_CODE,
-                    ValidationConstants.KEY_VALID_COUNTRY_CODE);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_COUNTRY_CODE,
+                    ValidationConstants.KEY_VALID_COUNTRY_CODE, null);
 
         cleanAddressFields(addressOut, fieldRoot);
 
@@ -257,30 +289,38 @@ class Validator {
 
     private void validateEmptyAddress(String fieldRoot, boolean mandatory) {
         if (mandatory) {
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_NAME, ValidationConstants.KEY_FIELD_IS_MANDATORY);
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_POSTAL_CODE,
-                    ValidationConstants.KEY_FIELD_IS_MANDATORY);
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_ADDRESS_LINE_2,
-                    ValidationConstants.KEY_FIELD_IS_MANDATORY);
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_TOWN, ValidationConstants.KEY_FIELD_IS_MANDATORY);
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_COUNTRY_CODE,
-                    ValidationConstants.KEY_FIELD_IS_MANDATORY);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_NAME,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_POSTAL_CODE,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_ADDRESS_LINE_2,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_TOWN,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_COUNTRY_CODE,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
         }
     }
 
     private void emitErrorsForConflictingType(Address addressOut, String fieldRoot) {
         if (addressOut.getAddressLine1() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_ADDRESS_LINE_1, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_ADDRESS_LINE_1,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
         if (addressOut.getAddressLine2() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_ADDRESS_LINE_2, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_ADDRESS_LINE_2,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
         if (addressOut.getStreet() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_STREET, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_STREET,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
         if (addressOut.getHouseNo() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_HOUSE_NO, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_HOUSE_NO,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
         if (addressOut.getPostalCode() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_POSTAL_CODE, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_POSTAL_CODE,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
         if (addressOut.getTown() != null)
-            validationResult.addMessage(Type.ERROR, fieldRoot + ValidationConstants.SUBFIELD_TOWN, ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT);
+            validationResult.addMessage(Type.ERROR, fieldRoot, ValidationConstants.SUBFIELD_TOWN,
+                    ValidationConstants.KEY_ADDRESS_TYPE_CONFLICT, null);
     }
 
     private void checkMandatoryAddressFields(Address addressOut, String fieldRoot) {
@@ -362,7 +402,8 @@ class Validator {
 
     private void validateMandatory(String value, String fieldRoot, String subfield) {
         if (Strings.isNullOrEmpty(value))
-            validationResult.addMessage(Type.ERROR, fieldRoot + subfield, ValidationConstants.KEY_FIELD_IS_MANDATORY);
+            validationResult.addMessage(Type.ERROR, fieldRoot, subfield,
+                    ValidationConstants.KEY_FIELD_IS_MANDATORY, null);
     }
 
     private boolean validateLength(String value, int maxLength, String field) {
@@ -387,8 +428,8 @@ class Validator {
 
     private String clippedValue(String value, int maxLength, String fieldRoot, String subfield) {
         if (value != null && value.length() > maxLength) {
-            validationResult.addMessage(Type.WARNING, fieldRoot + subfield, ValidationConstants.KEY_FIELD_CLIPPED,
-                    new String[] { Integer.toString(maxLength) });
+            validationResult.addMessage(Type.WARNING, fieldRoot, subfield,
+                    ValidationConstants.KEY_FIELD_CLIPPED, new String[] { Integer.toString(maxLength) });
             return value.substring(0, maxLength);
         }
 
@@ -399,7 +440,8 @@ class Validator {
         CleaningResult result = new CleaningResult();
         Payments.cleanValue(value, result);
         if (result.replacedUnsupportedChars)
-            validationResult.addMessage(Type.WARNING, fieldRoot + subfield, ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS);
+            validationResult.addMessage(Type.WARNING, fieldRoot, subfield,
+                    ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS, null);
         return result.cleanedString;
     }
 
@@ -410,4 +452,148 @@ class Validator {
             validationResult.addMessage(Type.WARNING, fieldName, ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS);
         return result.cleanedString;
     }
+
+    // --- Fast path for bill data that is already clean and valid
+
+    /**
+     * Tests if the bill data is already clean and valid.
+     * <p>
+     * Bill data is clean and valid if the full validation would neither produce
+     * any messages nor modify any of the fields. The test does not allocate
+     * memory.
+     * </p>
+     *
+     * @param bill bill data to test
+     * @return {@code true} if the bill data is clean and valid, {@code false} otherwise
+     */
+    static boolean isCleanAndValid(Bill bill) {
+        String account = bill.getAccount();
+        if (account == null || account.length() != 21 || !isUpperCaseAlphaNumeric(account)
+                || !(account.startsWith("CH") || account.startsWith("LI")) || !Payments.isValidIBAN(account))
+            return false;
+
+        String currency = bill.getCurrency();
+        if (!"CHF".equals(currency) && !"EUR".equals(currency))
+            return false;
+
+        BigDecimal amount = bill.getAmount();
+        if (amount != null && (amount.scale() != 2 || amount.signum() < 0 || AMOUNT_MAX.compareTo(amount) < 0))
+            return false;
+
+        if (!isCleanAndValidAddress(bill.getCreditor()))
+            return false;
+        if (bill.getDebtor() != null && !isCleanAndValidAddress(bill.getDebtor()))
+            return false;
+
+        return isCleanAndValidReference(account, bill.getReference())
+                && isCleanAndValidAdditionalInformation(bill.getUnstructuredMessage(), bill.getBillInformation())
+                && isCleanAndValidAlternativeSchemes(bill.getAlternativeSchemes());
+    }
+
+    private static boolean isCleanAndValidAddress(Address address) {
+        if (address == null)
+            return false;
+
+        String name = address.getName();
+        String addressLine1 = address.getAddressLine1();
+        String addressLine2 = address.getAddressLine2();
+        String street = address.getStreet();
+        String houseNo = address.getHouseNo();
+        String postalCode = address.getPostalCode();
+        String town = address.getTown();
+        String countryCode = address.getCountryCode();
+
+        if (name == null || name.length() > 70 || !Payments.isCleanValue(name))
+            return false;
+
+        boolean hasCombinedElements = addressLine1 != null || addressLine2 != null;
+        boolean hasStructuredElements = street != null || houseNo != null || postalCode != null || town != null;
+        if (address.getType() == Address.Type.STRUCTURED) {
+            if (hasCombinedElements || postalCode == null || town == null
+                    || !isNullOrCleanValue(street, 70) || !isNullOrCleanValue(houseNo, 16)
+                    || !isNullOrCleanValue(postalCode, 16) || !isNullOrCleanValue(town, 35))
+                return false;
+        } else if (address.getType() == Address.Type.COMBINED_ELEMENTS) {
+            if (hasStructuredElements || addressLine2 == null
+                    || !isNullOrCleanValue(addressLine1, 70) || !isNullOrCleanValue(addressLine2, 70))
+                return false;
+        } else {
+            return false;
+        }
+
+        return countryCode != null && countryCode.length() == 2 && isUpperCaseAlphaNumeric(countryCode);
+    }
+
+    private static boolean isCleanAndValidReference(String account, String reference) {
+        boolean isQRBillIBAN = account.charAt(4) == '3' && (account.charAt(5) == '0' || account.charAt(5) == '1');
+        if (isQRBillIBAN)
+            return reference != null && reference.length() == 27 && Payments.isValidQRReference(reference);
+
+        return reference == null || (!containsWhiteSpace(reference) && Payments.isValidISO11649Reference(reference));
+    }
+
+    private static boolean isCleanAndValidAdditionalInformation(String unstructuredMessage, String billInformation) {
+        int combinedLength = 0;
+        if (unstructuredMessage != null) {
+            if (!Payments.isCleanValue(unstructuredMessage))
+                return false;
+            combinedLength += unstructuredMessage.length();
+        }
+        if (billInformation != null) {
+            if (!billInformation.startsWith("//") || billInformation.length() < 4
+                    || !Payments.isCleanValue(billInformation))
+                return false;
+            combinedLength += billInformation.length();
+        }
+        return combinedLength <= 140;
+    }
+
+    private static boolean isCleanAndValidAlternativeSchemes(AlternativeScheme[] schemes) {
+        if (schemes == null)
+            return true;
+        if (schemes.length == 0 || schemes.length > 2)
+            return false;
+
+        for (AlternativeScheme scheme : schemes) {
+            if (scheme == null)
+                return false;
+            String name = scheme.getName();
+            String instruction = scheme.getInstruction();
+            if (name == null && instruction == null)
+                return false;
+            if (name != null && !isTrimmed(name))
+                return false;
+            if (instruction != null && (instruction.length() > 100 || !isTrimmed(instruction)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isNullOrCleanValue(String value, int maxLength) {
+        return value == null || (value.length() <= maxLength && Payments.isCleanValue(value));
+    }
+
+    private static boolean isTrimmed(String value) {
+        int len = value.length();
+        return len > 0 && value.charAt(0) > ' ' && value.charAt(len - 1) > ' ';
+    }
+
+    private static boolean containsWhiteSpace(String value) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            if (value.charAt(i) <= ' ')
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isUpperCaseAlphaNumeric(String value) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if ((ch < '0' || ch > '9') && (ch < 'A' || ch > 'Z'))
+                return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,195 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.BankMasterIndex;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import net.codecrete.qrbill.generator.ValidationMessage;
+import net.codecrete.qrbill.generator.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the bank master data index
+ */
+@DisplayName("Bank master index")
+class BankMasterIndexTest {
+
+    // same columns as the bank master file published by SIX; QR-IIDs are in a separate column
+    private static final String BANK_MASTER_DATA = "Group;IID;Branch ID;SIC IID;Headquarters;IID Type;Valid from;"
+            + "SIC;euroSIC;LSV/BDD;Short name;Bank/Institution name;Street name;Building number;Postal code;"
+            + "Town name;Phone;Fax;Country code;Postal account;BIC;QR-IID\n"
+            + "01;100;0000;001000;100;1;20090727;1;1;0;SNB;Schweizerische Nationalbank;Börsenstrasse;15;8022;"
+            + "Zürich;058 631 00 00;;CH;;SNBZCHZZXXX;\n"
+            + "06;700;0000;007000;700;1;20100426;1;1;1;ZKB;Zürcher Kantonalbank;Bahnhofstrasse;9;8001;"
+            + "Zürich;0844 843 823;;CH;80-151-4;ZKBKCHZZ80A;30700\n"
+            + "06;700;0003;007003;700;2;20100426;1;0;1;ZKB;Zürcher Kantonalbank Filiale;Bahnhofstrasse;9;8001;"
+            + "Zürich;0844 843 823;;CH;80-151-4;ZKBKCHZZ80A;30700\n"
+            + "09;9000;0000;090000;9000;1;20180101;1;1;0;PostFinance;\"PostFinance AG\";Mingerstrasse;20;3030;"
+            + "Bern;0848 888 710;;CH;;POFICHBEXXX;31999\n";
+
+    @Test
+    void parseBankMasterData() throws IOException {
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(BANK_MASTER_DATA));
+        assertEquals(5, index.size());
+        assertTrue(index.contains(100));
+        assertTrue(index.contains(700));
+        assertTrue(index.contains(9000));
+        assertTrue(index.contains(30700));
+        assertTrue(index.contains(31999));
+        assertFalse(index.contains(701));
+        assertFalse(index.contains(-1));
+        assertEquals("Zürcher Kantonalbank", index.getBankName(700));
+        assertEquals("Zürcher Kantonalbank", index.getBankName(30700));
+        assertEquals("PostFinance AG", index.getBankName(31999));
+        assertNull(index.getBankName(8));
+    }
+
+    @Test
+    void bankNameForAccount() throws IOException {
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(BANK_MASTER_DATA));
+        assertEquals("PostFinance AG", index.getBankNameForAccount("CH3709000000304442225"));
+        assertEquals("PostFinance AG", index.getBankNameForAccount("CH4431999123000889012"));
+        assertNull(index.getBankNameForAccount("CH9300762011623852957"));
+        assertNull(index.getBankNameForAccount("DE89370400440532013000"));
+    }
+
+    @Test
+    void iidFromAccount() {
+        assertEquals(31999, BankMasterIndex.getIID("CH4431999123000889012"));
+        assertEquals(9000, BankMasterIndex.getIID("CH3709000000304442225"));
+        assertEquals(-1, BankMasterIndex.getIID("CH37090000003044422"));
+        assertEquals(-1, BankMasterIndex.getIID(null));
+        assertTrue(BankMasterIndex.isQRIID(30000));
+        assertTrue(BankMasterIndex.isQRIID(31999));
+        assertFalse(BankMasterIndex.isQRIID(32000));
+        assertFalse(BankMasterIndex.isQRIID(9000));
+    }
+
+    @Test
+    void snapshotRoundTrip(@TempDir Path tempDir) throws IOException {
+        Path sourceFile = tempDir.resolve("bankmaster.csv");
+        Files.write(sourceFile, BANK_MASTER_DATA.getBytes(StandardCharsets.ISO_8859_1));
+        BankMasterIndex index = BankMasterIndex.load(sourceFile, StandardCharsets.ISO_8859_1);
+
+        Path snapshotFile = tempDir.resolve("bankmaster.bin");
+        index.writeSnapshot(snapshotFile);
+        BankMasterIndex loadedIndex = BankMasterIndex.loadSnapshot(snapshotFile);
+
+        assertEquals(index.size(), loadedIndex.size());
+        for (int iid : new int[] { 100, 700, 9000, 30700, 31999 }) {
+            assertTrue(loadedIndex.contains(iid));
+            assertEquals(index.getBankName(iid), loadedIndex.getBankName(iid));
+        }
+        assertFalse(loadedIndex.contains(762));
+    }
+
+    @Test
+    void manyInstitutions() throws IOException {
+        StringBuilder sb = new StringBuilder("IID;Bank/Institution name\n");
+        for (int iid = 100; iid < 5000; iid += 3)
+            sb.append(iid).append(";Bank ").append(iid).append('\n');
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(sb.toString()));
+        assertEquals(1634, index.size());
+        for (int iid = 100; iid < 5000; iid++) {
+            if ((iid - 100) % 3 == 0)
+                assertEquals("Bank " + iid, index.getBankName(iid));
+            else
+                assertFalse(index.contains(iid));
+        }
+    }
+
+    @Test
+    void invalidSnapshot(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("invalid.bin");
+        Files.write(file, BANK_MASTER_DATA.getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> BankMasterIndex.loadSnapshot(file));
+    }
+
+    @Test
+    void fullSnapshotIsNotProbedEndlessly(@TempDir Path tempDir) throws IOException {
+        // corrupt snapshot: all slots are taken and none matches
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 16 * 8);
+        buffer.putInt(0x51524249).putInt(1).putInt(16).putInt(0);
+        for (int slot = 0; slot < 16; slot++)
+            buffer.putInt(50000 + slot).putInt(0);
+        Path file = tempDir.resolve("full.bin");
+        Files.write(file, buffer.array());
+
+        BankMasterIndex index = BankMasterIndex.loadSnapshot(file);
+        assertFalse(index.contains(700));
+        assertNull(index.getBankName(31999));
+    }
+
+    @Test
+    void invalidQRIID() {
+        assertThrows(IOException.class,
+                () -> BankMasterIndex.parse(new StringReader("IID;QR-IID;Name\n700;700;Bank\n")));
+    }
+
+    @Test
+    void missingIIDColumn() {
+        assertThrows(IOException.class, () -> BankMasterIndex.parse(new StringReader("Group;Name\n01;Bank\n")));
+    }
+
+    @Test
+    void invalidIID() {
+        assertThrows(IOException.class, () -> BankMasterIndex.parse(new StringReader("IID;Name\nABC;Bank\n")));
+    }
+
+    @Test
+    void validateKnownInstitution() throws IOException {
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(BANK_MASTER_DATA));
+        Bill bill = SampleData.getExample1();
+        ValidationResult result = QRBill.validate(bill, index);
+        assertFalse(result.hasErrors());
+
+        bill = SampleData.getExample3();
+        assertFalse(QRBill.validate(bill, index).hasErrors());
+    }
+
+    @Test
+    void validateUnknownInstitution() throws IOException {
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(BANK_MASTER_DATA));
+        Bill bill = SampleData.getExample4();
+        bill.setAccount("CH9300762011623852957");
+        ValidationResult result = QRBill.validate(bill, index);
+        assertTrue(result.hasErrors());
+        assertEquals(1, result.getValidationMessages().size());
+        ValidationMessage msg = result.getValidationMessages().get(0);
+        assertEquals(ValidationMessage.Type.ERROR, msg.getType());
+        assertEquals(ValidationConstants.FIELD_ACCOUNT, msg.getField());
+        assertEquals(ValidationConstants.KEY_ACCOUNT_IID_UNKNOWN, msg.getMessageKey());
+
+        assertFalse(QRBill.validate(bill).hasErrors());
+    }
+
+    @Test
+    void cleanBillIsNotCopied() throws IOException {
+        BankMasterIndex index = BankMasterIndex.parse(new StringReader(BANK_MASTER_DATA));
+        Bill bill = QRBill.validate(SampleData.getExample3()).getCleanedBill();
+        assertSame(bill, QRBill.validate(bill, index).getCleanedBill());
+    }
+}
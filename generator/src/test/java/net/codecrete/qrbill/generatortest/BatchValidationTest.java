@@ -0,0 +1,152 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.BatchValidationResult;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import net.codecrete.qrbill.generator.ValidationMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the validation of batches of bills
+ */
+@DisplayName("Batch validation")
+class BatchValidationTest {
+
+    @Test
+    void emptyBatch() {
+        BatchValidationResult result = QRBill.validateAll(Collections.emptyList());
+        assertEquals(0, result.size());
+        assertTrue(result.isValid());
+        assertEquals(0, result.getValidCount());
+        assertEquals(0, result.getInvalidCount());
+        assertTrue(result.getValidBills().isEmpty());
+    }
+
+    @Test
+    void allValid() {
+        List<Bill> bills = new ArrayList<>();
+        bills.add(SampleData.getExample1());
+        bills.add(SampleData.getExample2());
+        bills.add(SampleData.getExample3());
+        bills.add(SampleData.getExample4());
+
+        BatchValidationResult result = QRBill.validateAll(bills);
+        assertEquals(4, result.size());
+        assertTrue(result.isValid());
+        assertEquals(4, result.getValidCount());
+        assertEquals(0, result.getInvalidCount());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(result.isValid(i));
+            assertTrue(result.getValidationMessages(i).isEmpty());
+        }
+    }
+
+    @Test
+    void singleInvalid() {
+        List<Bill> bills = new ArrayList<>();
+        bills.add(SampleData.getExample1());
+        Bill invalidBill = SampleData.getExample2();
+        invalidBill.setCurrency("USD");
+        bills.add(invalidBill);
+        bills.add(SampleData.getExample3());
+
+        BatchValidationResult result = QRBill.validateAll(bills);
+        assertEquals(3, result.size());
+        assertFalse(result.isValid());
+        assertEquals(2, result.getValidCount());
+        assertEquals(1, result.getInvalidCount());
+        assertTrue(result.isValid(0));
+        assertFalse(result.isValid(1));
+        assertTrue(result.isValid(2));
+        assertArrayEquals(new int[] { 1 }, result.getInvalidIndices());
+
+        List<ValidationMessage> messages = result.getValidationMessages(1);
+        assertEquals(1, messages.size());
+        assertEquals(ValidationMessage.Type.ERROR, messages.get(0).getType());
+        assertEquals(ValidationConstants.FIELD_CURRENCY, messages.get(0).getField());
+        assertEquals(ValidationConstants.KEY_CURRENCY_IS_CHF_OR_EUR, messages.get(0).getMessageKey());
+    }
+
+    @Test
+    void warningsOnlyAreValid() {
+        Bill bill = SampleData.getExample1();
+        bill.setUnstructuredMessage("Thanks €");
+        BatchValidationResult result = QRBill.validateAll(Collections.singletonList(bill));
+        assertTrue(result.isValid(0));
+        assertTrue(result.getValidationMessages(0).isEmpty());
+    }
+
+    @Test
+    void largeBatchMatchesSingleValidation() {
+        List<Bill> bills = new ArrayList<>();
+        BitSet expectedValid = new BitSet();
+        for (int i = 0; i < 5000; i++) {
+            Bill bill = (i % 2) == 0 ? SampleData.getExample1() : SampleData.getExample3();
+            if (i % 7 == 3)
+                bill.setAccount("CH44 3199 9123 0008 8901 3");
+            else if (i % 11 == 5)
+                bill.getCreditor().setTown(null);
+            bills.add(bill);
+            if (QRBill.validate(bill).isValid())
+                expectedValid.set(i);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchValidationResult result = QRBill.validateAll(bills, pool);
+            assertEquals(5000, result.size());
+            assertEquals(expectedValid, result.getValidBills());
+            assertEquals(expectedValid.cardinality(), result.getValidCount());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(QRBill.validate(bills.get(i)).hasErrors(), !result.isValid(i));
+                if (!result.isValid(i))
+                    assertEquals(QRBill.validate(bills.get(i)).getValidationMessages().size(),
+                            result.getValidationMessages(i).size());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void streamOfBills() {
+        List<Bill> bills = new ArrayList<>();
+        bills.add(SampleData.getExample1());
+        Bill invalidBill = SampleData.getExample4();
+        invalidBill.setAccount(null);
+        bills.add(invalidBill);
+
+        BatchValidationResult result = QRBill.validateAll(bills.stream());
+        assertEquals(2, result.size());
+        assertTrue(result.isValid(0));
+        assertFalse(result.isValid(1));
+    }
+
+    @Test
+    void indexOutOfRange() {
+        BatchValidationResult result = QRBill.validateAll(Collections.singletonList(SampleData.getExample1()));
+        assertThrows(IndexOutOfBoundsException.class, () -> result.isValid(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> result.getValidationMessages(-1));
+    }
+}
@@ -0,0 +1,168 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillCodec;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import net.codecrete.qrbill.generator.ValidationMessage;
+import net.codecrete.qrbill.generator.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the binary encoding of bills and validation results
+ */
+@DisplayName("Binary bill codec")
+class BillCodecTest {
+
+    @Test
+    void roundTripExamples() {
+        for (Bill bill : Arrays.asList(SampleData.getExample1(), SampleData.getExample2(), SampleData.getExample3(),
+                SampleData.getExample4())) {
+            assertEquals(bill, BillCodec.decodeBill(BillCodec.encode(bill)));
+        }
+    }
+
+    @Test
+    void roundTripSpecialValues() {
+        Bill bill = new Bill();
+        bill.setFormat(null);
+        bill.setCurrency(null);
+        bill.setCreditor(null);
+        bill.setAmount(new BigDecimal("-12345678901234567890123.456"));
+        bill.setUnstructuredMessage("Zürich – 😀 \ud800 end");
+        Bill decoded = BillCodec.decodeBill(BillCodec.encode(bill));
+        assertEquals(bill.getAmount(), decoded.getAmount());
+        assertEquals("Zürich – 😀 ? end", decoded.getUnstructuredMessage());
+        assertNull(decoded.getFormat());
+        assertNull(decoded.getCreditor());
+        assertNull(decoded.getCurrency());
+    }
+
+    @Test
+    void addressTypeIsRestored() {
+        Bill bill = SampleData.getExample1();
+        Address address = new Address();
+        address.setName("Conflict AG");
+        address.setStreet("Bahnhofstrasse");
+        address.setAddressLine2("8000 Zürich");
+        bill.setDebtor(address);
+        Address emptyStructured = new Address();
+        emptyStructured.setStreet(null);
+        bill.setCreditor(emptyStructured);
+
+        Bill decoded = BillCodec.decodeBill(BillCodec.encode(bill));
+        assertEquals(Address.Type.CONFLICTING, decoded.getDebtor().getType());
+        assertEquals(Address.Type.STRUCTURED, decoded.getCreditor().getType());
+        assertEquals(bill, decoded);
+    }
+
+    @Test
+    void sequenceSharesStrings() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        BillCodec.Writer writer = new BillCodec.Writer();
+        writer.writeBill(SampleData.getExample1(), buffer);
+        int firstSize = buffer.position();
+        writer.writeBill(SampleData.getExample1(), buffer);
+        int secondSize = buffer.position() - firstSize;
+        writer.writeBill(SampleData.getExample2(), buffer);
+        assertTrue(secondSize < firstSize / 4);
+
+        buffer.flip();
+        BillCodec.Reader reader = new BillCodec.Reader();
+        assertEquals(SampleData.getExample1(), reader.readBill(buffer));
+        assertEquals(SampleData.getExample1(), reader.readBill(buffer));
+        assertEquals(SampleData.getExample2(), reader.readBill(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void smallerThanJavaSerialization() throws IOException {
+        Bill bill = SampleData.getExample1();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(bill);
+        }
+        assertTrue(BillCodec.encode(bill).length * 3 < buffer.size());
+    }
+
+    @Test
+    void roundTripValidationResult() {
+        Bill bill = SampleData.getExample1();
+        bill.getCreditor().setName("A very long name that will certainly be clipped because it exceeds "
+                + "the maximum length of seventy characters");
+        bill.setCurrency("USD");
+        ValidationResult result = QRBill.validate(bill);
+        result.addMessage(ValidationMessage.Type.WARNING, "custom", "custom_key", new String[] { "1", "2" });
+
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        new BillCodec.Writer().writeValidationResult(result, buffer);
+        buffer.flip();
+        ValidationResult decoded = new BillCodec.Reader().readValidationResult(buffer);
+
+        assertTrue(decoded.hasErrors());
+        assertTrue(decoded.hasWarnings());
+        assertEquals(result.getValidationMessages().size(), decoded.getValidationMessages().size());
+        for (int i = 0; i < result.getValidationMessages().size(); i++) {
+            ValidationMessage expected = result.getValidationMessages().get(i);
+            ValidationMessage actual = decoded.getValidationMessages().get(i);
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getField(), actual.getField());
+            assertEquals(expected.getMessageKey(), actual.getMessageKey());
+            assertTrue(Arrays.equals(expected.getMessageParameters(), actual.getMessageParameters()));
+        }
+        assertEquals(ValidationConstants.KEY_FIELD_CLIPPED, decoded.getValidationMessages().get(0).getMessageKey());
+        assertEquals(result.getCleanedBill(), decoded.getCleanedBill());
+    }
+
+    @Test
+    void validationResultWithoutBill() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new BillCodec.Writer().writeValidationResult(new ValidationResult(), buffer);
+        buffer.flip();
+        ValidationResult decoded = new BillCodec.Reader().readValidationResult(buffer);
+        assertFalse(decoded.hasMessages());
+        assertNull(decoded.getCleanedBill());
+    }
+
+    @Test
+    void bufferTooSmall() {
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        assertThrows(BufferOverflowException.class,
+                () -> new BillCodec.Writer().writeBill(SampleData.getExample1(), buffer));
+    }
+
+    @Test
+    void invalidData() {
+        assertThrows(IllegalArgumentException.class, () -> BillCodec.decodeBill(new byte[] { 1, 2, 3 }));
+        assertThrows(IllegalArgumentException.class, () -> BillCodec.decodeBill(new byte[] { 0x51, 99, 1 }));
+
+        byte[] data = BillCodec.encode(SampleData.getExample1());
+        assertThrows(IllegalArgumentException.class,
+                () -> BillCodec.decodeBill(Arrays.copyOf(data, data.length - 5)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BillCodec.Reader().readValidationResult(ByteBuffer.wrap(data)));
+    }
+}
@@ -12,6 +12,7 @@ import net.codecrete.qrbill.generator.ValidationConstants;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -149,8 +150,8 @@ class CharacterSetTest extends BillDataValidationBase {
     }
 
     @ParameterizedTest
-    @ValueSource(strings = { "^", "\u007f", "\u0080", "\u00a0", "\u00A0", "¡", "¤", "©", "±", "µ", "¼", "Å", "Æ", "Ð",
-            "×", "Ø", "Ý", "Þ", "å", "æ", "ø", "€", "¿", "Ý", "Ą", "Ď", "ð", "õ", "ã", "Ã" })
+    @ValueSource(strings = { "^", "\u007f", "\u0080", "\u00a0", "\u00A0", "¡", "¤", "©", "±", "µ", "¼",
+            "×", "€", "¿", "\u2022", "\u0180" })
     void invalidChars(String invalidChar) {
         bill = SampleData.getExample1();
         Address address = createValidPerson();
@@ -160,4 +161,36 @@ class CharacterSetTest extends BillDataValidationBase {
         assertSingleWarningMessage(ValidationConstants.FIELD_CREDITOR_STREET, "replaced_unsupported_characters");
         assertEquals("ABC.QRS", validatedBill.getCreditor().getStreet());
     }
+
+    @ParameterizedTest
+    @CsvSource({ "Å, A", "Ý, Y", "å, a", "õ, o", "ã, a", "Ã, A", "Ą, A", "Ď, D", "Ð, D", "ð, d", "Ø, O", "ø, o",
+            "Æ, AE", "æ, ae", "Œ, OE", "œ, oe", "Þ, TH", "Ł, L", "–, -", "—, -", "“, '\"'", "”, '\"'", "„, '\"'",
+            "«, '\"'", "…, ..." })
+    void substitutedChars(String invalidChar, String substitution) {
+        bill = SampleData.getExample1();
+        Address address = createValidPerson();
+        address.setStreet("ABC" + invalidChar + "QRS");
+        bill.setCreditor(address);
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_CREDITOR_STREET, "replaced_unsupported_characters");
+        assertEquals("ABC" + substitution + "QRS", validatedBill.getCreditor().getStreet());
+    }
+
+    @Test
+    void typographicApostropheReplacement() {
+        bill = SampleData.getExample1();
+        bill.setUnstructuredMessage("Invoice ‘2020’ – don’t pay twice");
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_UNSTRUCTURED_MESSAGE, "replaced_unsupported_characters");
+        assertEquals("Invoice '2020' - don't pay twice", validatedBill.getUnstructuredMessage());
+    }
+
+    @Test
+    void longTextWithSingleInvalidChar() {
+        bill = SampleData.getExample1();
+        bill.setUnstructuredMessage("abcdefghijklmnopqrstuvwxyz 0123456789^ABCDEFGH");
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_UNSTRUCTURED_MESSAGE, "replaced_unsupported_characters");
+        assertEquals("abcdefghijklmnopqrstuvwxyz 0123456789.ABCDEFGH", validatedBill.getUnstructuredMessage());
+    }
 }
@@ -0,0 +1,114 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationConstants;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for the validation of bill data that is already clean and valid
+ */
+@DisplayName("Validation of clean bill data")
+class CleanBillValidationTest extends BillDataValidationBase {
+
+    @Test
+    void cleanedExample1IsNotCopied() {
+        assertCleanBillIsNotCopied(SampleData.getExample1());
+    }
+
+    @Test
+    void cleanedExample2IsNotCopied() {
+        assertCleanBillIsNotCopied(SampleData.getExample2());
+    }
+
+    @Test
+    void cleanedExample3IsNotCopied() {
+        assertCleanBillIsNotCopied(SampleData.getExample3());
+    }
+
+    @Test
+    void cleanedExample4IsNotCopied() {
+        assertCleanBillIsNotCopied(SampleData.getExample4());
+    }
+
+    @Test
+    void formattedAccountIsCopied() {
+        bill = cleanedBill(SampleData.getExample1());
+        bill.setAccount("CH44 3199 9123 0008 8901 2");
+        validate();
+        assertNoMessages();
+        assertNotSame(bill, validatedBill);
+        assertEquals("CH4431999123000889012", validatedBill.getAccount());
+    }
+
+    @Test
+    void amountWithOtherScaleIsCopied() {
+        bill = cleanedBill(SampleData.getExample1());
+        bill.setAmount(new BigDecimal("100.5"));
+        validate();
+        assertNoMessages();
+        assertNotSame(bill, validatedBill);
+        assertEquals(new BigDecimal("100.50"), validatedBill.getAmount());
+    }
+
+    @Test
+    void untrimmedCreditorNameIsCopied() {
+        bill = cleanedBill(SampleData.getExample1());
+        bill.getCreditor().setName(" Robert Schneider AG");
+        validate();
+        assertNoMessages();
+        assertNotSame(bill, validatedBill);
+        assertEquals("Robert Schneider AG", validatedBill.getCreditor().getName());
+    }
+
+    @Test
+    void emptyDebtorIsCopied() {
+        bill = cleanedBill(SampleData.getExample1());
+        bill.setDebtor(new Address());
+        validate();
+        assertNoMessages();
+        assertNotSame(bill, validatedBill);
+        assertNull(validatedBill.getDebtor());
+    }
+
+    @Test
+    void unsupportedCharactersAreReplaced() {
+        bill = cleanedBill(SampleData.getExample1());
+        bill.setUnstructuredMessage("Thanks €");
+        validate();
+        assertSingleWarningMessage(ValidationConstants.FIELD_UNSTRUCTURED_MESSAGE,
+                ValidationConstants.KEY_REPLACED_UNSUPPORTED_CHARACTERS);
+        assertNotSame(bill, validatedBill);
+        assertEquals("Thanks .", validatedBill.getUnstructuredMessage());
+    }
+
+    private void assertCleanBillIsNotCopied(Bill sourceBill) {
+        bill = cleanedBill(sourceBill);
+        validate();
+        assertNoMessages();
+        assertSame(bill, validatedBill);
+    }
+
+    private static Bill cleanedBill(Bill bill) {
+        Bill cleanedBill = QRBill.validate(bill).getCleanedBill();
+        assertNotSame(bill, cleanedBill);
+        assertEquals(cleanedBill, QRBill.validate(cleanedBill).getCleanedBill());
+        return cleanedBill;
+    }
+}
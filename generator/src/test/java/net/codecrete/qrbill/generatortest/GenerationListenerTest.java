@@ -0,0 +1,132 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GenerationListener;
+import net.codecrete.qrbill.generator.GenerationListener.Stage;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.MemoryRenderCache;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.ValidatedBill;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the generation listener
+ */
+@DisplayName("Generation listener")
+class GenerationListenerTest {
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>();
+    private final List<Long> allocations = new ArrayList<>();
+
+    private final GenerationListener listener = (stage, durationNanos, allocatedBytes) -> {
+        stages.add(stage);
+        durations.add(durationNanos);
+        allocations.add(allocatedBytes);
+    };
+
+    @AfterEach
+    void reset() {
+        QRBill.setGenerationListener(null);
+    }
+
+    @Test
+    void generateReportsAllStages() {
+        QRBill.setGenerationListener(listener);
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(bill);
+
+        assertEquals(Arrays.asList(Stage.values()), stages);
+        for (long duration : durations)
+            assertTrue(duration >= 0);
+        for (long allocation : allocations)
+            assertTrue(allocation >= -1);
+        assertTrue(durations.get(Stage.QR_CODE_ENCODING.ordinal()) > 0);
+    }
+
+    @Test
+    void qrCodeOnlyHasNoTextLayout() {
+        QRBill.setGenerationListener(listener);
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        QRBill.generate(bill);
+
+        assertEquals(Arrays.asList(Stage.VALIDATION, Stage.QR_CODE_TEXT, Stage.QR_CODE_ENCODING, Stage.DRAWING,
+                Stage.SERIALIZATION), stages);
+    }
+
+    @Test
+    void drawValidatedBill() throws IOException {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT)) {
+            QRBill.setGenerationListener(listener);
+            QRBill.draw(QRBill.validate(bill).getValidatedBill(), canvas);
+        }
+
+        assertEquals(Arrays.asList(Stage.QR_CODE_ENCODING, Stage.TEXT_LAYOUT, Stage.DRAWING), stages);
+    }
+
+    @Test
+    void cachedOutputIsNotRendered() {
+        MemoryRenderCache cache = new MemoryRenderCache(1_000_000);
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(bill, cache);
+
+        QRBill.setGenerationListener(listener);
+        Bill sameBill = SampleData.getExample1();
+        sameBill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(sameBill, cache);
+
+        assertEquals(Arrays.asList(Stage.VALIDATION, Stage.QR_CODE_TEXT), stages);
+    }
+
+    @Test
+    void cachedValidatedBillReportsNoStages() {
+        MemoryRenderCache cache = new MemoryRenderCache(1_000_000);
+        ValidatedBill validatedBill = QRBill.validate(SampleData.getExample1()).getValidatedBill();
+        QRBill.setGenerationListener(listener);
+        QRBill.generate(validatedBill, cache);
+        assertEquals(Arrays.asList(Stage.QR_CODE_ENCODING, Stage.TEXT_LAYOUT, Stage.DRAWING,
+                Stage.SERIALIZATION), stages);
+
+        stages.clear();
+        QRBill.generate(validatedBill, cache);
+        assertEquals(Collections.emptyList(), stages);
+    }
+
+    @Test
+    void invalidBillIsNotReported() {
+        QRBill.setGenerationListener(listener);
+        Bill bill = SampleData.getExample1();
+        bill.setAccount("CH12");
+
+        assertThrows(QRBillValidationError.class, () -> QRBill.generate(bill));
+        assertEquals(Collections.emptyList(), stages);
+    }
+}
@@ -31,6 +31,16 @@ class IBANTest {
         assertTrue(Payments.isValidIBAN("FR76 3006 6100 4100 0105 7380 116"));
     }
 
+    @Test
+    void validCharSequence() {
+        assertTrue(Payments.isValidIBAN(new StringBuilder("CH44 3199 9123 0008 8901 2")));
+    }
+
+    @Test
+    void invalidCharSequence() {
+        assertFalse(Payments.isValidIBAN(new StringBuilder("CH44 3199 9123 0008 8901 3")));
+    }
+
     @Test
     void validWithTrailingAndLeadingSpaces() {
         assertTrue(Payments.isValidIBAN(" DE12500105170648489890 "));
@@ -26,6 +26,11 @@ class ISO11649Test {
         assertTrue(Payments.isValidISO11649Reference("RF08 B370 0321"));
     }
 
+    @Test
+    void validCharSequence() {
+        assertTrue(Payments.isValidISO11649Reference(new StringBuilder("RF08 B370 0321")));
+    }
+
     @Test
     void validWithLowercaseLetters() {
         assertTrue(Payments.isValidISO11649Reference("RF 44 alll ower case"));
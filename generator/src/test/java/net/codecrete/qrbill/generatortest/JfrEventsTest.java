@@ -0,0 +1,113 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the Java Flight Recorder events
+ */
+@DisplayName("JFR events")
+class JfrEventsTest {
+
+    private static final String[] EVENT_NAMES = {
+            "net.codecrete.qrbill.Validation",
+            "net.codecrete.qrbill.QrCodeEncoding",
+            "net.codecrete.qrbill.Layout",
+            "net.codecrete.qrbill.Rendering",
+            "net.codecrete.qrbill.CanvasFinalization"
+    };
+
+    @Test
+    void billGenerationEvents() throws IOException {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        List<RecordedEvent> events = record(() -> QRBill.generate(bill));
+
+        RecordedEvent validation = findEvent(events, "net.codecrete.qrbill.Validation");
+        assertEquals("SVG", validation.getString("graphicsFormat"));
+        assertEquals("QR_BILL_ONLY", validation.getString("outputSize"));
+        assertTrue(validation.getBoolean("valid"));
+
+        RecordedEvent encoding = findEvent(events, "net.codecrete.qrbill.QrCodeEncoding");
+        int version = encoding.getInt("qrCodeVersion");
+        assertTrue(version >= 1 && version <= 40);
+
+        RecordedEvent layout = findEvent(events, "net.codecrete.qrbill.Layout");
+        assertEquals("QR_BILL_ONLY", layout.getString("outputSize"));
+        assertEquals(version, layout.getInt("qrCodeVersion"));
+        assertTrue(layout.getInt("textFontSize") >= 8);
+
+        RecordedEvent rendering = findEvent(events, "net.codecrete.qrbill.Rendering");
+        assertEquals("SVG", rendering.getString("graphicsFormat"));
+        assertEquals(version, rendering.getInt("qrCodeVersion"));
+
+        RecordedEvent finalization = findEvent(events, "net.codecrete.qrbill.CanvasFinalization");
+        assertEquals("SVG", finalization.getString("graphicsFormat"));
+        assertEquals(rendering.getLong("outputLength"), finalization.getLong("outputLength"));
+    }
+
+    @Test
+    void pdfQrCodeEvents() throws IOException {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        List<RecordedEvent> events = record(() -> QRBill.generate(bill));
+
+        assertTrue(events.stream().noneMatch(e -> e.getEventType().getName().equals("net.codecrete.qrbill.Layout")));
+        RecordedEvent rendering = findEvent(events, "net.codecrete.qrbill.Rendering");
+        assertEquals("QR_CODE_ONLY", rendering.getString("outputSize"));
+        assertTrue(rendering.getInt("qrCodeVersion") >= 1);
+        RecordedEvent finalization = findEvent(events, "net.codecrete.qrbill.CanvasFinalization");
+        assertEquals("PDF", finalization.getString("graphicsFormat"));
+        assertEquals(rendering.getLong("outputLength"), finalization.getLong("outputLength"));
+    }
+
+    private static List<RecordedEvent> record(Runnable action) throws IOException {
+        Path file = Files.createTempFile("qrbill", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : EVENT_NAMES)
+                recording.enable(name).withoutThreshold();
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().startsWith("net.codecrete.qrbill."))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matches = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(1, matches.size(), name);
+        return matches.get(0);
+    }
+}
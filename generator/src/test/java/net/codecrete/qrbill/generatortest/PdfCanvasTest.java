@@ -9,6 +9,7 @@ package net.codecrete.qrbill.generatortest;
 import net.codecrete.qrbill.canvas.PDFCanvas;
 import net.codecrete.qrbill.generator.Bill;
 import net.codecrete.qrbill.generator.QRBill;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -18,6 +19,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Unit tests for generating QR bills as PNG
  */
@@ -44,4 +47,24 @@ class PdfCanvasTest {
         }
         Files.delete(path);
     }
+
+    @Test
+    void pdfMultiplePages() throws IOException {
+        Bill[] bills = { SampleData.getExample1(), SampleData.getExample2(), SampleData.getExample3() };
+        byte[] pdf;
+        try (PDFCanvas canvas = new PDFCanvas(QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT)) {
+            for (int i = 0; i < bills.length; i++) {
+                if (i > 0)
+                    canvas.addPage(QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT);
+                QRBill.draw(QRBill.validate(bills[i]).getValidatedBill(), canvas);
+            }
+            pdf = canvas.toByteArray();
+        }
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            assertEquals(3, document.getNumberOfPages());
+            assertEquals(QRBill.A4_PORTRAIT_HEIGHT, document.getPage(0).getMediaBox().getHeight() / 72 * 25.4, 0.01);
+            assertEquals(QRBill.QR_BILL_HEIGHT, document.getPage(2).getMediaBox().getHeight() / 72 * 25.4, 0.01);
+        }
+    }
 }
@@ -0,0 +1,110 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.QRPayloadArchive;
+import net.codecrete.qrbill.generator.QRTextCompressor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the QR payload archive
+ */
+@DisplayName("QR payload archive")
+class QRPayloadArchiveTest {
+
+    @Test
+    void roundTrip() throws IOException {
+        List<String> texts = QRTextCompressorTest.sampleTexts();
+        byte[] archive = writeArchive(texts, QRTextCompressor.DEFAULT);
+        assertEquals(texts, readArchive(archive));
+    }
+
+    @Test
+    void customDictionary() throws IOException {
+        List<String> texts = QRTextCompressorTest.sampleTexts();
+        QRTextCompressor compressor = new QRTextCompressor(QRTextCompressor.trainDictionary(texts, 300));
+        byte[] archive = writeArchive(texts, compressor);
+        assertEquals(texts, readArchive(archive));
+    }
+
+    @Test
+    void emptyCustomDictionary() throws IOException {
+        List<String> texts = QRTextCompressorTest.sampleTexts();
+        byte[] archive = writeArchive(texts, new QRTextCompressor(new byte[0]));
+        assertEquals(texts, readArchive(archive));
+    }
+
+    @Test
+    void statistics() throws IOException {
+        List<String> texts = QRTextCompressorTest.sampleTexts();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (QRPayloadArchive.Writer writer = new QRPayloadArchive.Writer(stream)) {
+            for (String text : texts)
+                writer.write(text);
+            assertEquals(texts.size(), writer.getCount());
+            long utf8Size = 0;
+            for (String text : texts)
+                utf8Size += text.getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(utf8Size, writer.getUncompressedSize());
+            assertTrue(writer.getCompressedSize() < writer.getUncompressedSize());
+        }
+    }
+
+    @Test
+    void emptyArchive() throws IOException {
+        byte[] archive = writeArchive(Arrays.<String>asList(), QRTextCompressor.DEFAULT);
+        assertTrue(readArchive(archive).isEmpty());
+    }
+
+    @Test
+    void invalidHeader() {
+        byte[] data = "QRXX".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> new QRPayloadArchive.Reader(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    void truncatedArchive() throws IOException {
+        byte[] archive = writeArchive(QRTextCompressorTest.sampleTexts(), QRTextCompressor.DEFAULT);
+        byte[] truncated = Arrays.copyOf(archive, archive.length - 5);
+        assertThrows(EOFException.class, () -> readArchive(truncated));
+    }
+
+    private static byte[] writeArchive(List<String> texts, QRTextCompressor compressor) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (QRPayloadArchive.Writer writer = new QRPayloadArchive.Writer(stream, compressor)) {
+            for (String text : texts)
+                writer.write(text);
+        }
+        return stream.toByteArray();
+    }
+
+    private static List<String> readArchive(byte[] archive) throws IOException {
+        List<String> texts = new ArrayList<>();
+        try (QRPayloadArchive.Reader reader = new QRPayloadArchive.Reader(new ByteArrayInputStream(archive))) {
+            String text;
+            while ((text = reader.read()) != null)
+                texts.add(text);
+        }
+        return texts;
+    }
+}
@@ -36,6 +36,11 @@ class QRReferenceTest {
         assertTrue(Payments.isValidQRReference("21 00000 00003 13947 14300 09017"));
     }
 
+    @Test
+    void validQRReferenceCharSequence() {
+        assertTrue(Payments.isValidQRReference(new StringBuilder("21 00000 00003 13947 14300 09017")));
+    }
+
     @Test
     void invalidQRReferenceWithLetters() {
         assertFalse(Payments.isValidQRReference("210000S00003139471430009017"));
@@ -0,0 +1,125 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRTextCompressor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the QR code text compression
+ */
+@DisplayName("QR text compressor")
+class QRTextCompressorTest {
+
+    @Test
+    void roundTrip() {
+        for (String text : sampleTexts()) {
+            byte[] compressed = QRTextCompressor.DEFAULT.compress(text);
+            assertEquals(text, QRTextCompressor.DEFAULT.decompress(compressed));
+        }
+    }
+
+    @Test
+    void betterThanPlainDeflate() {
+        for (String text : sampleTexts()) {
+            byte[] compressed = QRTextCompressor.DEFAULT.compress(text);
+            assertTrue(compressed.length < plainDeflateLength(text));
+        }
+    }
+
+    @Test
+    void decompressWithOffset() {
+        String text = sampleTexts().get(0);
+        byte[] compressed = QRTextCompressor.DEFAULT.compress(text);
+        byte[] data = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, data, 5, compressed.length);
+        assertEquals(text, QRTextCompressor.DEFAULT.decompress(data, 5, compressed.length));
+    }
+
+    @Test
+    void trainedDictionary() {
+        List<String> samples = sampleTexts();
+        byte[] dictionary = QRTextCompressor.trainDictionary(samples, 256);
+        assertTrue(dictionary.length > 0 && dictionary.length <= 256);
+        String dictionaryText = new String(dictionary, StandardCharsets.UTF_8);
+        assertTrue(dictionaryText.contains("SPC\n0200\n1\n"));
+
+        QRTextCompressor compressor = new QRTextCompressor(dictionary);
+        for (String text : samples)
+            assertEquals(text, compressor.decompress(compressor.compress(text)));
+    }
+
+    @Test
+    void trainingIsDeterministic() {
+        byte[] dictionary1 = QRTextCompressor.trainDictionary(sampleTexts(), 512);
+        byte[] dictionary2 = QRTextCompressor.trainDictionary(sampleTexts(), 512);
+        assertEquals(Arrays.toString(dictionary1), Arrays.toString(dictionary2));
+    }
+
+    @Test
+    void wrongDictionary() {
+        byte[] compressed = QRTextCompressor.DEFAULT.compress(sampleTexts().get(0));
+        QRTextCompressor other = new QRTextCompressor("SPC\n0200\n1\n".getBytes(StandardCharsets.US_ASCII));
+        String text;
+        try {
+            text = other.decompress(compressed);
+        } catch (IllegalArgumentException e) {
+            return; // expected outcome
+        }
+        // a different dictionary can only produce garbage
+        assertTrue(!text.equals(sampleTexts().get(0)));
+    }
+
+    @Test
+    void invalidData() {
+        byte[] data = { (byte) 0xff, (byte) 0xff, 0x12 };
+        assertThrows(IllegalArgumentException.class, () -> QRTextCompressor.DEFAULT.decompress(data));
+    }
+
+    @Test
+    void truncatedData() {
+        byte[] compressed = QRTextCompressor.DEFAULT.compress(sampleTexts().get(1));
+        assertThrows(IllegalArgumentException.class,
+                () -> QRTextCompressor.DEFAULT.decompress(compressed, 0, compressed.length / 2));
+    }
+
+    static List<String> sampleTexts() {
+        List<String> texts = new ArrayList<>();
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample1()));
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample2()));
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample3()));
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample4()));
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample5()));
+        texts.add(QRBill.encodeQrCodeText(SampleData.getExample6()));
+        return texts;
+    }
+
+    private static int plainDeflateLength(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        byte[] buffer = new byte[1000];
+        int length = 0;
+        while (!deflater.finished())
+            length += deflater.deflate(buffer);
+        deflater.end();
+        return length;
+    }
+}
@@ -0,0 +1,176 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.DiskRenderCache;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.MemoryRenderCache;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.ValidatedBill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the render caches
+ */
+@DisplayName("Render cache")
+class RenderCacheTest {
+
+    @Test
+    void generateUsesCache() {
+        MemoryRenderCache cache = new MemoryRenderCache(1_000_000);
+
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        byte[] output1 = QRBill.generate(bill, cache);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHitCount());
+
+        Bill sameBill = SampleData.getExample1();
+        sameBill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        byte[] output2 = QRBill.generate(sameBill, cache);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertArrayEquals(output1, output2);
+
+        assertArrayEquals(QRBill.generate(bill), output1);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void formatIsPartOfKey() {
+        MemoryRenderCache cache = new MemoryRenderCache(10_000_000);
+
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        QRBill.generate(bill, cache);
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        QRBill.generate(bill, cache);
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void cachedOutputCannotBeModified() {
+        MemoryRenderCache cache = new MemoryRenderCache(10_000_000);
+
+        ValidatedBill validatedBill = QRBill.validate(SampleData.getExample1()).getValidatedBill();
+        byte[] output1 = QRBill.generate(validatedBill, cache);
+        byte[] expected = output1.clone();
+        output1[0] = (byte) ~output1[0];
+        assertArrayEquals(expected, QRBill.generate(validatedBill, cache));
+    }
+
+    @Test
+    void invalidBillIsRejected() {
+        MemoryRenderCache cache = new MemoryRenderCache(10_000_000);
+
+        Bill bill = SampleData.getExample1();
+        bill.setCurrency("USD");
+        assertThrows(QRBillValidationError.class, () -> QRBill.generate(bill, cache));
+    }
+
+    @Test
+    void memoryEvictsLeastRecentlyUsed() {
+        MemoryRenderCache cache = new MemoryRenderCache(250);
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[100]);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[100]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(200, cache.getSizeInBytes());
+    }
+
+    @Test
+    void memorySkipsLargeEntries() {
+        MemoryRenderCache cache = new MemoryRenderCache(250);
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[300]);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void diskRoundTrip(@TempDir Path tempDir) throws IOException {
+        DiskRenderCache cache = new DiskRenderCache(tempDir.resolve("cache"), 10_000);
+        byte[] data = { 1, 2, 3, 4, 5 };
+        cache.put("abc", data);
+        assertArrayEquals(data, cache.get("abc"));
+        assertNull(cache.get("def"));
+        assertEquals(5, cache.getSizeInBytes());
+
+        // reopen
+        DiskRenderCache reopened = new DiskRenderCache(tempDir.resolve("cache"), 10_000);
+        assertEquals(5, reopened.getSizeInBytes());
+        assertArrayEquals(data, reopened.get("abc"));
+    }
+
+    @Test
+    void diskEvictsOldFiles(@TempDir Path tempDir) throws IOException {
+        DiskRenderCache cache = new DiskRenderCache(tempDir, 1000);
+        cache.put("a", new byte[400]);
+        Files.setLastModifiedTime(tempDir.resolve("a.bin"),
+                FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        cache.put("b", new byte[400]);
+        cache.put("c", new byte[400]);
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertTrue(cache.getSizeInBytes() <= 1000);
+    }
+
+    @Test
+    void diskFileCanBeDeletedAfterRead(@TempDir Path tempDir) throws IOException {
+        DiskRenderCache cache = new DiskRenderCache(tempDir, 1000);
+        cache.put("a", new byte[400]);
+        assertNotNull(cache.get("a"));
+        cache.clear();
+        assertEquals(0, cache.getSizeInBytes());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void diskRejectsInvalidKey(@TempDir Path tempDir) throws IOException {
+        DiskRenderCache cache = new DiskRenderCache(tempDir, 1000);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("../abc"));
+    }
+
+    @Test
+    void secondTierIsUsed(@TempDir Path tempDir) throws IOException {
+        DiskRenderCache diskCache = new DiskRenderCache(tempDir, 10_000_000);
+        MemoryRenderCache cache = new MemoryRenderCache(10_000_000, diskCache);
+
+        ValidatedBill validatedBill = QRBill.validate(SampleData.getExample1()).getValidatedBill();
+        byte[] output = QRBill.generate(validatedBill, cache);
+        assertArrayEquals(output, diskCache.get(validatedBill.getContentHash()));
+
+        cache.clear();
+        assertArrayEquals(output, QRBill.generate(validatedBill, cache));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+}
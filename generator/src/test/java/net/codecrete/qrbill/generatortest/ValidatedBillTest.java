@@ -0,0 +1,122 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.generatortest;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidatedBill;
+import net.codecrete.qrbill.generator.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for validated bill data
+ */
+@DisplayName("Validated bill")
+class ValidatedBillTest {
+
+    @Test
+    void validBill() {
+        Bill bill = SampleData.getExample1();
+        ValidationResult result = QRBill.validate(bill);
+        ValidatedBill validatedBill = result.getValidatedBill();
+        assertNotNull(validatedBill);
+        assertSame(validatedBill, result.getValidatedBill());
+        assertEquals(QRBill.encodeQrCodeText(bill), validatedBill.getQrCodeText());
+        assertEquals(result.getCleanedBill(), validatedBill.toBill());
+        assertEquals(64, validatedBill.getContentHash().length());
+    }
+
+    @Test
+    void invalidBill() {
+        Bill bill = SampleData.getExample1();
+        bill.setCurrency("USD");
+        assertNull(QRBill.validate(bill).getValidatedBill());
+    }
+
+    @Test
+    void isImmutable() {
+        Bill bill = SampleData.getExample3();
+        ValidatedBill validatedBill = QRBill.validate(bill).getValidatedBill();
+        String town = validatedBill.getCreditor().getTown();
+
+        bill.getCreditor().setTown("Bern");
+        validatedBill.getCreditor().setTown("Basel");
+        validatedBill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        validatedBill.toBill().setAccount("CH3709000000304442225");
+
+        assertEquals(town, validatedBill.getCreditor().getTown());
+        assertEquals(OutputSize.QR_BILL_ONLY, validatedBill.getFormat().getOutputSize());
+        assertEquals(QRBill.validate(SampleData.getExample3()).getValidatedBill(), validatedBill);
+    }
+
+    @Test
+    void contentHash() {
+        ValidatedBill bill1 = QRBill.validate(SampleData.getExample2()).getValidatedBill();
+        ValidatedBill bill2 = QRBill.validate(SampleData.getExample2()).getValidatedBill();
+        ValidatedBill bill3 = QRBill.validate(SampleData.getExample4()).getValidatedBill();
+        assertEquals(bill1.getContentHash(), bill2.getContentHash());
+        assertEquals(bill1, bill2);
+        assertEquals(bill1.hashCode(), bill2.hashCode());
+        assertNotEquals(bill1.getContentHash(), bill3.getContentHash());
+    }
+
+    @Test
+    void withFormat() {
+        ValidatedBill bill = QRBill.validate(SampleData.getExample1()).getValidatedBill();
+        BillFormat format = bill.getFormat();
+        format.setGraphicsFormat(GraphicsFormat.PDF);
+        ValidatedBill pdfBill = bill.withFormat(format);
+
+        assertEquals(GraphicsFormat.PDF, pdfBill.getFormat().getGraphicsFormat());
+        assertEquals(bill.getQrCodeText(), pdfBill.getQrCodeText());
+        assertNotEquals(bill.getContentHash(), pdfBill.getContentHash());
+    }
+
+    @Test
+    void generateSameOutput() {
+        Bill bill = SampleData.getExample4();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        byte[] expected = QRBill.generate(bill);
+        byte[] actual = QRBill.generate(QRBill.validate(bill).getValidatedBill());
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void generateQrCodeOnly() {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        bill.getFormat().setOutputSize(OutputSize.QR_CODE_ONLY);
+        byte[] expected = QRBill.generate(bill);
+        byte[] actual = QRBill.generate(QRBill.validate(bill).getValidatedBill());
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void qrCodeVersionOfEncoder() {
+        Bill bill = SampleData.getExample1();
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.SVG);
+        ValidatedBill validatedBill = QRBill.validate(bill).getValidatedBill();
+        assertEquals(0, validatedBill.getQrCodeVersion());
+
+        QRBill.generate(validatedBill);
+        int version = validatedBill.getQrCodeVersion();
+        assertTrue(version >= 1 && version <= 40);
+    }
+}
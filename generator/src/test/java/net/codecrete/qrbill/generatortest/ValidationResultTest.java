@@ -7,11 +7,17 @@
 
 package net.codecrete.qrbill.generatortest;
 
+import net.codecrete.qrbill.generator.ValidationConstants;
 import net.codecrete.qrbill.generator.ValidationMessage;
 import net.codecrete.qrbill.generator.ValidationMessage.Type;
 import net.codecrete.qrbill.generator.ValidationResult;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -20,6 +26,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ValidationResultTest {
@@ -121,4 +129,65 @@ class ValidationResultTest {
 
         assertEquals(SampleData.getExample2(), result.getCleanedBill());
     }
+
+    @Test
+    void knownAndCustomMessagesKeepOrder() {
+        ValidationResult result = new ValidationResult();
+        result.addMessage(Type.WARNING, ValidationConstants.FIELD_CREDITOR_STREET, ValidationConstants.KEY_FIELD_CLIPPED,
+                new String[] { "70" });
+        result.addMessage(Type.ERROR, "custom", ValidationConstants.KEY_FIELD_IS_MANDATORY);
+        result.addMessage(Type.ERROR, ValidationConstants.FIELD_ACCOUNT, ValidationConstants.KEY_ACCOUNT_IS_VALID_IBAN);
+        assertFalse(result.isValid());
+        assertTrue(result.hasWarnings());
+
+        List<ValidationMessage> messages = result.getValidationMessages();
+        assertEquals(3, messages.size());
+        assertEquals(Type.WARNING, messages.get(0).getType());
+        assertEquals(ValidationConstants.FIELD_CREDITOR_STREET, messages.get(0).getField());
+        assertEquals(ValidationConstants.KEY_FIELD_CLIPPED, messages.get(0).getMessageKey());
+        assertTrue(Arrays.equals(new String[] { "70" }, messages.get(0).getMessageParameters()));
+        assertEquals("custom", messages.get(1).getField());
+        assertEquals(ValidationConstants.FIELD_ACCOUNT, messages.get(2).getField());
+        assertEquals(ValidationConstants.KEY_ACCOUNT_IS_VALID_IBAN, messages.get(2).getMessageKey());
+        assertNull(messages.get(2).getMessageParameters());
+    }
+
+    @Test
+    void messageListIsCached() {
+        ValidationResult result = new ValidationResult();
+        result.addMessage(Type.ERROR, ValidationConstants.FIELD_CURRENCY, ValidationConstants.KEY_CURRENCY_IS_CHF_OR_EUR);
+        List<ValidationMessage> messages = result.getValidationMessages();
+        assertSame(messages, result.getValidationMessages());
+        assertThrows(UnsupportedOperationException.class,
+                () -> messages.add(new ValidationMessage(Type.ERROR, "a", "b")));
+
+        result.addMessage(Type.WARNING, ValidationConstants.FIELD_AMOUNT, ValidationConstants.KEY_FIELD_CLIPPED);
+        assertEquals(2, result.getValidationMessages().size());
+    }
+
+    @Test
+    void serialization() throws IOException, ClassNotFoundException {
+        ValidationResult result = new ValidationResult();
+        result.addMessage(Type.WARNING, ValidationConstants.FIELD_DEBTOR_TOWN, ValidationConstants.KEY_FIELD_CLIPPED,
+                new String[] { "35" });
+        result.addMessage(Type.ERROR, "custom", "custom_key");
+        result.setCleanedBill(SampleData.getExample1());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(result);
+        }
+        ValidationResult copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            copy = (ValidationResult) in.readObject();
+        }
+
+        assertTrue(copy.hasErrors());
+        assertTrue(copy.hasWarnings());
+        assertEquals(2, copy.getValidationMessages().size());
+        assertEquals(ValidationConstants.FIELD_DEBTOR_TOWN, copy.getValidationMessages().get(0).getField());
+        assertTrue(Arrays.equals(new String[] { "35" }, copy.getValidationMessages().get(0).getMessageParameters()));
+        assertEquals("custom_key", copy.getValidationMessages().get(1).getMessageKey());
+        assertEquals(SampleData.getExample1(), copy.getCleanedBill());
+    }
 }
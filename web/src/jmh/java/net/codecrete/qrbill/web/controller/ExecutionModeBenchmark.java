@@ -0,0 +1,183 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the request execution modes under a mixed I/O and rendering workload.
+ * <p>
+ * Each operation is a burst of concurrent requests. Every request blocks for a while
+ * (simulating reading the request, a slow client or a back-end call) and every n-th
+ * request also renders a bill. The score is the time to complete the burst, i.e.
+ * throughput is {@code requests / score}. The median and the 99th percentile of the
+ * request latency are printed after each iteration.
+ * </p>
+ * <ul>
+ *     <li>{@code PLATFORM}: current setup, a pool of platform threads (Tomcat's default
+ *     of 200) doing both the I/O and the rendering</li>
+ *     <li>{@code PLATFORM_RENDER_POOL}: the same pool, but rendering on the {@link RenderPool}</li>
+ *     <li>{@code VIRTUAL}: a virtual thread per request and rendering on the {@link RenderPool}
+ *     ({@code qrbill.virtual-threads=true}); requires Java 21 and fails on older JVMs</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+
+    public enum ExecutionMode {
+        PLATFORM, PLATFORM_RENDER_POOL, VIRTUAL
+    }
+
+    @Param({ "PLATFORM", "PLATFORM_RENDER_POOL", "VIRTUAL" })
+    private ExecutionMode mode;
+
+    @Param({ "1000" })
+    private int requests;
+
+    @Param({ "50" })
+    private int ioMillis;
+
+    @Param({ "4" })
+    private int renderEvery;
+
+    private static final int WORKER_THREADS = 200;
+
+    private ExecutorService requestExecutor;
+    private RenderPool renderPool;
+    private Bill bill;
+    private long[] latencies;
+    private long[] iterationLatencies;
+    private int iterationCount;
+
+    @Setup
+    public void setup() {
+        if (mode == ExecutionMode.VIRTUAL)
+            requestExecutor = VirtualThreads.newThreadPerTaskExecutor("request-");
+        else
+            requestExecutor = Executors.newFixedThreadPool(WORKER_THREADS);
+        if (mode != ExecutionMode.PLATFORM)
+            renderPool = new RenderPool(0, requests);
+
+        bill = createBill();
+        latencies = new long[requests];
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+        if (renderPool != null)
+            renderPool.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationLatencies = new long[0];
+        iterationCount = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportLatencies() {
+        long[] sorted = Arrays.copyOf(iterationLatencies, iterationCount);
+        Arrays.sort(sorted);
+        if (sorted.length == 0)
+            return;
+        System.out.printf("  request latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            requestExecutor.execute(() -> {
+                try {
+                    handleRequest(index);
+                } finally {
+                    latencies[index] = System.nanoTime() - start;
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+
+        if (iterationLatencies.length < iterationCount + requests)
+            iterationLatencies = Arrays.copyOf(iterationLatencies, 2 * (iterationCount + requests));
+        System.arraycopy(latencies, 0, iterationLatencies, iterationCount, requests);
+        iterationCount += requests;
+    }
+
+    private void handleRequest(int index) {
+        try {
+            Thread.sleep(ioMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (index % renderEvery == 0) {
+            if (renderPool != null)
+                renderPool.call(() -> QRBill.generate(bill));
+            else
+                QRBill.generate(bill);
+        }
+    }
+
+    private static Bill createBill() {
+        Bill bill = new Bill();
+        bill.setAccount("CH4431999123000889012");
+        bill.setAmount(new BigDecimal("1949.75"));
+        bill.setCurrency("CHF");
+        bill.setReference("210000000003139471430009017");
+        bill.setUnstructuredMessage("Order of 15 June 2020");
+
+        Address creditor = new Address();
+        creditor.setName("Robert Schneider AG");
+        creditor.setStreet("Rue du Lac");
+        creditor.setHouseNo("1268");
+        creditor.setPostalCode("2501");
+        creditor.setTown("Biel");
+        creditor.setCountryCode("CH");
+        bill.setCreditor(creditor);
+
+        bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+        bill.getFormat().setOutputSize(OutputSize.QR_BILL_ONLY);
+        return bill;
+    }
+}
@@ -0,0 +1,214 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the postal code suggestions in {@link PostalCodeIndex}.
+ * <p>
+ * The full list of Swiss postal codes is downloaded from the official source unless
+ * the system property {@code qrbill.postalcodes.url} specifies another location
+ * (e.g. a local copy of the ZIP file). For comparison, the benchmark also measures
+ * the previous implementation, which scanned all entries for substring matches.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostalCodeIndexBenchmark {
+
+    @Param({ "8302", "203", "züri", "dorf", "rickenbach", "abc" })
+    private String query;
+
+    private PostalCodeIndex index;
+    private LegacySearch legacySearch;
+    private boolean isNumeric;
+
+    @Setup
+    public void setup() {
+        List<PostalCode> postalCodes = PostalCodeData.load(
+                System.getProperty("qrbill.postalcodes.url", PostalCodeData.DATA_URL));
+        index = new PostalCodeIndex(postalCodes);
+        legacySearch = new LegacySearch(postalCodes);
+        isNumeric = Character.isDigit(query.charAt(0));
+
+        // the index might append accent-insensitive and similar matches to the exact ones
+        List<PostalCode> exactMatches = linearScan();
+        List<PostalCode> indexMatches = search();
+        if (indexMatches.size() < exactMatches.size()
+                || !indexMatches.subList(0, exactMatches.size()).equals(exactMatches))
+            throw new IllegalStateException("Index and linear scan return different results for " + query);
+    }
+
+    @Benchmark
+    public List<PostalCode> search() {
+        return isNumeric ? index.getPostalCodeMatches(query) : index.getTownMatches(query);
+    }
+
+    @Benchmark
+    public List<PostalCode> linearScan() {
+        return isNumeric ? legacySearch.getPostalCodeMatches(query) : legacySearch.getTownMatches(query);
+    }
+
+    /**
+     * Previous implementation of the search (for comparison)
+     */
+    static class LegacySearch {
+
+        private static final int MAX_SUGGESTED_ITEMS = 20;
+
+        private final PostalCode[] sortedByPostalCode;
+        private final PostalCode[] sortedByTown;
+
+        LegacySearch(List<PostalCode> postalCodeList) {
+            sortedByPostalCode = postalCodeList.toArray(new PostalCode[0]);
+            Arrays.sort(sortedByPostalCode, Comparator.comparing(pc -> pc.code));
+            sortedByTown = postalCodeList.toArray(new PostalCode[0]);
+            Arrays.sort(sortedByTown, Comparator.comparing(pc -> pc.townLowercase));
+        }
+
+        List<PostalCode> getPostalCodeMatches(String substring) {
+            // Search for postal codes starting with the substring first
+            int index = binarySearchForPostalCode(sortedByPostalCode, substring);
+            List<PostalCode> result = new ArrayList<>();
+            int arrayLen = sortedByPostalCode.length;
+            while (index < arrayLen && sortedByPostalCode[index].code.startsWith(substring)
+                    && result.size() < MAX_SUGGESTED_ITEMS) {
+                result.add(sortedByPostalCode[index]);
+                index++;
+            }
+
+            if (substring.length() <= 2 || result.size() >= 6)
+                return result;
+
+            // Search for postal codes containing the substring
+            for (PostalCode pc : sortedByPostalCode) {
+                if (pc.code.contains(substring) && !result.contains(pc)) {
+                    result.add(pc);
+                    if (result.size() >= MAX_SUGGESTED_ITEMS)
+                        break;
+                }
+            }
+
+            return result;
+        }
+
+        List<PostalCode> getTownMatches(String substring) {
+            substring = substring.toLowerCase(Locale.FRENCH);
+
+            // Search for towns starting with the substring first
+            int index = binarySearchForTown(sortedByTown, substring);
+            List<PostalCode> result = new ArrayList<>();
+            int arrayLen = sortedByTown.length;
+            while (index < arrayLen && sortedByTown[index].townLowercase.startsWith(substring)
+                    && result.size() < MAX_SUGGESTED_ITEMS) {
+                result.add(sortedByTown[index]);
+                index++;
+            }
+
+            if (substring.length() <= 2 || result.size() >= 6)
+                return result;
+
+            // Search for postal codes containing the substring
+            for (PostalCode pc : sortedByTown) {
+                if (pc.townLowercase.contains(substring) && !result.contains(pc)) {
+                    result.add(pc);
+                    if (result.size() >= MAX_SUGGESTED_ITEMS)
+                        break;
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Searches the array for the specified postal code.
+         * <p>
+         * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
+         * matching element is returned if the the array contains several matching ones.
+         * </p>
+         *
+         * @param a          the array to be searched (must be sorted in ascending
+         *                   order)
+         * @param postalCode the postal code to search for
+         * @return the index of the first matching element (if found) or the index where
+         * the element would need to be inserted to retain the order (if not
+         * found)
+         */
+        private static int binarySearchForPostalCode(PostalCode[] a, String postalCode) {
+            int lower = 0;
+            int upper = a.length;
+
+            while (lower < upper) {
+                int mid = (lower + upper) >>> 1;
+                String midValue = a[mid].code;
+                int cmp = midValue.compareTo(postalCode);
+
+                if (cmp < 0)
+                    lower = mid + 1;
+                else
+                    upper = mid;
+            }
+
+            return lower;
+        }
+
+        /**
+         * Searches the array for the specified town.
+         * <p>
+         * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
+         * matching element is returned if the the array contains several matching ones.
+         * </p>
+         *
+         * @param a    the array to be searched (must be sorted in ascending order)
+         * @param town the towb to search for
+         * @return the index of the first matching element (if found) or the index where
+         * the element would need to be inserted to retain the order (if not
+         * found)
+         */
+        private static int binarySearchForTown(PostalCode[] a, String town) {
+            int lower = 0;
+            int upper = a.length;
+
+            while (lower < upper) {
+                int mid = (lower + upper) >>> 1;
+                String midValue = a[mid].townLowercase;
+                int cmp = midValue.compareTo(town);
+
+                if (cmp < 0)
+                    lower = mid + 1;
+                else
+                    upper = mid;
+            }
+
+            return lower;
+        }
+    }
+}
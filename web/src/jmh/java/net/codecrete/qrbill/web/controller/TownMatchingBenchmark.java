@@ -0,0 +1,61 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the accent-insensitive and fuzzy town matching in {@link PostalCodeIndex}.
+ * <p>
+ * The queries do not match any town exactly, so the search falls back to the folded
+ * keys and to similar town names. As in {@link PostalCodeIndexBenchmark}, the system
+ * property {@code qrbill.postalcodes.url} can specify a local copy of the data.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TownMatchingBenchmark {
+
+    @Param({ "Zurich", "Zuerich", "Rikenbach", "st-gallen", "Neuchatell", "xyzxyz" })
+    private String query;
+
+    private PostalCodeIndex index;
+    private String lowercaseQuery;
+
+    @Setup
+    public void setup() {
+        List<PostalCode> postalCodes = PostalCodeData.load(
+                System.getProperty("qrbill.postalcodes.url", PostalCodeData.DATA_URL));
+        index = new PostalCodeIndex(postalCodes);
+        lowercaseQuery = query.toLowerCase(Locale.FRENCH);
+    }
+
+    @Benchmark
+    public List<PostalCode> townMatches() {
+        return index.getTownMatches(lowercaseQuery);
+    }
+}
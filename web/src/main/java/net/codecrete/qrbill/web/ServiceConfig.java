@@ -0,0 +1,75 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.codecrete.qrbill.web.controller.BillImageCache;
+import net.codecrete.qrbill.web.controller.ConcurrencyLimiter;
+import net.codecrete.qrbill.web.controller.ImageRequestCoalescer;
+import net.codecrete.qrbill.web.controller.RenderPool;
+import net.codecrete.qrbill.web.controller.ServiceMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.MessageSource;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Beans shared by the Spring MVC and the WebFlux variant of the service.
+ */
+@Configuration
+public class ServiceConfig {
+
+    @Bean
+    public MessageSource messageSource() {
+        ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
+        messageSource.setBasename("classpath:locale/messages");
+        messageSource.setDefaultEncoding("UTF-8");
+        return messageSource;
+    }
+
+    @Bean
+    public BillImageCache billImageCache(@Value("${qrbill.image-cache.directory}") String directory,
+                                         @Value("${qrbill.image-cache.max-size}") long maxSize,
+                                         ObjectProvider<BuildProperties> buildProperties) throws IOException {
+        BuildProperties build = buildProperties.getIfAvailable();
+        return new BillImageCache(directory.isEmpty() ? null : Paths.get(directory), maxSize,
+                build != null ? build.getVersion() : null);
+    }
+
+    @Bean
+    public ServiceMetrics serviceMetrics(MeterRegistry registry) {
+        return new ServiceMetrics(registry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public RenderPool renderPool(@Value("${qrbill.render.threads}") int threads,
+                                 @Value("${qrbill.render.queue-capacity}") int queueCapacity) {
+        return new RenderPool(threads, queueCapacity);
+    }
+
+    @Bean
+    public ConcurrencyLimiter renderLimiter(@Value("${qrbill.render.limit.initial}") int initialLimit,
+                                            @Value("${qrbill.render.limit.min}") int minLimit,
+                                            @Value("${qrbill.render.limit.max}") int maxLimit,
+                                            @Value("${qrbill.render.limit.queue-length}") int maxQueueLength,
+                                            @Value("${qrbill.render.limit.queue-timeout}") long queueTimeout) {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, maxQueueLength, queueTimeout);
+    }
+
+    @Bean
+    public ImageRequestCoalescer imageRequestCoalescer(@Value("${qrbill.image-coalescing.result-ttl}") long resultTtl,
+                                                       @Value("${qrbill.image-coalescing.max-size}") long maxSize,
+                                                       @Value("${qrbill.image-coalescing.wait-timeout}") long waitTimeout) {
+        return new ImageRequestCoalescer(resultTtl, maxSize, waitTimeout);
+    }
+}
@@ -7,17 +7,56 @@
 
 package net.codecrete.qrbill.web;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.MimeMappings;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.ExecutorService;
+
 @Component
 public class ServletCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServletCustomizer.class);
+
+    private final boolean useVirtualThreads;
+    private final ObjectProvider<ExecutorService> httpExecutor;
+
+    /**
+     * Creates an instance.
+     * <p>
+     * Single constructor for Spring dependency injection.
+     * </p>
+     *
+     * @param useVirtualThreads indicates if requests are to be handled on virtual threads
+     * @param httpExecutor      virtual thread executor for requests
+     *                          (only available if virtual threads are enabled and supported)
+     */
+    public ServletCustomizer(@Value("${qrbill.virtual-threads}") boolean useVirtualThreads,
+                             @Qualifier("httpVirtualThreadExecutor") ObjectProvider<ExecutorService> httpExecutor) {
+        this.useVirtualThreads = useVirtualThreads;
+        this.httpExecutor = httpExecutor;
+    }
+
     @Override
     public void customize(TomcatServletWebServerFactory factory) {
         MimeMappings mappings = new MimeMappings(MimeMappings.DEFAULT);
         mappings.add("yaml", "application/x-yaml;charset=UTF-8");
         factory.setMimeMappings(mappings);
+
+        if (useVirtualThreads) {
+            ExecutorService executor = httpExecutor.getIfAvailable();
+            if (executor != null) {
+                // replaces Tomcat's worker pool: one virtual thread per request
+                factory.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(executor));
+            } else {
+                LOGGER.warn("Virtual threads are not supported by this JVM; using platform threads");
+            }
+        }
     }
 }
@@ -6,26 +6,81 @@
 //
 package net.codecrete.qrbill.web;
 
+import net.codecrete.qrbill.web.controller.BatchProcessor;
 import net.codecrete.qrbill.web.controller.PostalCodeData;
-import org.springframework.context.MessageSource;
+import net.codecrete.qrbill.web.controller.VirtualThreads;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+
 @Configuration
 public class WebServiceConfig implements WebMvcConfigurer {
 
-    @Bean
-    public MessageSource messageSource() {
-        ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
-        messageSource.setBasename("classpath:locale/messages");
-        messageSource.setDefaultEncoding("UTF-8");
-        return messageSource;
+    private final ObjectProvider<ExecutorService> mvcExecutor;
+
+    /**
+     * Creates an instance.
+     *
+     * @param mvcExecutor virtual thread executor for asynchronous request processing
+     *                    (only available if virtual threads are enabled and supported)
+     */
+    public WebServiceConfig(@Qualifier("mvcVirtualThreadExecutor") ObjectProvider<ExecutorService> mvcExecutor) {
+        this.mvcExecutor = mvcExecutor;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public PostalCodeData postalCodeData(@Value("${qrbill.postal-codes.source}") String source,
+                                         @Value("${qrbill.postal-codes.snapshot}") String snapshot,
+                                         @Value("${qrbill.postal-codes.refresh-interval}") long refreshInterval) {
+        return new PostalCodeData(source, snapshot.isEmpty() ? null : Paths.get(snapshot), refreshInterval);
     }
 
-    @Bean
-    public PostalCodeData postalCodeData() {
-        return new PostalCodeData();
+    @Bean(destroyMethod = "shutdown")
+    public BatchProcessor batchProcessor(@Value("${qrbill.batch.threads}") int threads) {
+        return new BatchProcessor(threads);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Conditional(VirtualThreadsEnabled.class)
+    public ExecutorService httpVirtualThreadExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Conditional(VirtualThreadsEnabled.class)
+    public ExecutorService mvcVirtualThreadExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("mvc-virtual-");
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // streaming responses (batch endpoints) mostly wait for the client and the batch processor
+        ExecutorService executor = mvcExecutor.getIfAvailable();
+        if (executor != null)
+            configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+    }
+
+    /**
+     * Condition that is met if virtual threads are enabled and supported by the JVM.
+     */
+    static class VirtualThreadsEnabled implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return context.getEnvironment().getProperty("qrbill.virtual-threads", Boolean.class, false)
+                    && VirtualThreads.isSupported();
+        }
     }
 }
@@ -0,0 +1,257 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Burkhard-Keller tree for finding words within a small edit distance.
+ * <p>
+ * Each child is labelled with its Levenshtein distance to the parent. Due to the
+ * triangle inequality, a search for words within distance <i>k</i> of the query only
+ * needs to descend into children whose label differs by at most <i>k</i> from the
+ * distance between the query and the node.
+ * </p>
+ * <p>
+ * The tree is stored in flat arrays and is immutable once built. For queries of up to
+ * 64 characters, the distances are computed with Myers' bit-parallel algorithm, which
+ * processes a word in a single pass with a few bit operations per character.
+ * </p>
+ */
+final class BKTree {
+
+    private static final int NONE = -1;
+
+    /**
+     * Maximum query length for the bit-parallel algorithm
+     */
+    private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+
+    /**
+     * Number of characters with a precomputed match mask
+     */
+    private static final int PEQ_SIZE = 256;
+
+    private final String[] words;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] distanceToParent;
+    private final int maxWordLength;
+
+    /**
+     * Creates a new tree containing the specified words.
+     *
+     * @param wordCollection the words (duplicates are ignored)
+     */
+    BKTree(Collection<String> wordCollection) {
+        int capacity = wordCollection.size();
+        words = new String[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        distanceToParent = new int[capacity];
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+
+        int count = 0;
+        int maxLength = 0;
+        int[][] rows = new int[2][];
+        for (String word : wordCollection) {
+            maxLength = Math.max(maxLength, word.length());
+            if (count == 0) {
+                words[count++] = word;
+                continue;
+            }
+
+            int node = 0;
+            while (true) {
+                rows = ensureRowCapacity(rows, Math.max(word.length(), words[node].length()));
+                int distance = distance(word, words[node], rows);
+                if (distance == 0)
+                    break; // duplicate
+
+                int child = firstChild[node];
+                int lastChild = NONE;
+                while (child != NONE && distanceToParent[child] != distance) {
+                    lastChild = child;
+                    child = nextSibling[child];
+                }
+                if (child != NONE) {
+                    node = child;
+                    continue;
+                }
+
+                words[count] = word;
+                distanceToParent[count] = distance;
+                if (lastChild == NONE)
+                    firstChild[node] = count;
+                else
+                    nextSibling[lastChild] = count;
+                count++;
+                break;
+            }
+        }
+
+        maxWordLength = maxLength;
+    }
+
+    /**
+     * Finds all words within the specified edit distance of the query.
+     *
+     * @param query       the query
+     * @param maxDistance the maximum edit distance
+     * @return the matching words, ordered by edit distance and alphabetically
+     */
+    List<String> search(String query, int maxDistance) {
+        if (words.length == 0)
+            return new ArrayList<>();
+
+        List<Match> matches = new ArrayList<>();
+
+        boolean isBitParallel = query.length() > 0 && query.length() <= MAX_BIT_PARALLEL_LENGTH;
+        long[] peq = isBitParallel ? matchMasks(query) : null;
+        int[][] rows = isBitParallel ? null : ensureRowCapacity(new int[2][], Math.max(query.length(), maxWordLength));
+
+        int[] stack = new int[words.length];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            int distance = isBitParallel
+                    ? bitParallelDistance(query, peq, words[node])
+                    : distance(query, words[node], rows);
+            if (distance <= maxDistance)
+                matches.add(new Match(words[node], distance));
+
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                if (Math.abs(distanceToParent[child] - distance) <= maxDistance)
+                    stack[stackSize++] = child;
+            }
+        }
+
+        matches.sort((a, b) -> a.distance != b.distance ? a.distance - b.distance : a.word.compareTo(b.word));
+        List<String> result = new ArrayList<>(matches.size());
+        for (Match match : matches)
+            result.add(match.word);
+        return result;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings.
+     *
+     * @param a    first string
+     * @param b    second string
+     * @param rows two work arrays with a length of at least the length of {@code b} plus 1
+     * @return the distance
+     */
+    private static int distance(String a, String b, int[][] rows) {
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        int lengthB = b.length();
+        for (int j = 0; j <= lengthB; j++)
+            previous[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ch = a.charAt(i - 1);
+            for (int j = 1; j <= lengthB; j++) {
+                int cost = ch == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+
+        return previous[lengthB];
+    }
+
+    /**
+     * Computes the Levenshtein distance with Myers' bit-parallel algorithm.
+     * <p>
+     * Bit <i>i</i> of the vertical delta vectors represents row <i>i</i> of a column
+     * of the dynamic programming matrix, with the query running down the rows.
+     * </p>
+     *
+     * @param query the query (1 to 64 characters)
+     * @param peq   the match masks of the query (see {@link #matchMasks(String)})
+     * @param word  the word
+     * @return the distance
+     */
+    private static int bitParallelDistance(String query, long[] peq, String word) {
+        int length = query.length();
+        long lastBit = 1L << (length - 1);
+        long pv = -1L;
+        long mv = 0;
+        int score = length;
+
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            long eq = ch < PEQ_SIZE ? peq[ch] : matchMask(query, ch);
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & lastBit) != 0)
+                score++;
+            else if ((mh & lastBit) != 0)
+                score--;
+            // the first row of the matrix increases by 1 in each column
+            ph = (ph << 1) | 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+
+        return score;
+    }
+
+    /**
+     * Computes the match masks of the query for all characters below {@link #PEQ_SIZE}.
+     *
+     * @param query the query
+     * @return array of masks, with bit <i>i</i> set if the query has the character at position <i>i</i>
+     */
+    private static long[] matchMasks(String query) {
+        long[] peq = new long[PEQ_SIZE];
+        for (int i = 0; i < query.length(); i++) {
+            char ch = query.charAt(i);
+            if (ch < PEQ_SIZE)
+                peq[ch] |= 1L << i;
+        }
+        return peq;
+    }
+
+    private static long matchMask(String query, char ch) {
+        long mask = 0;
+        for (int i = 0; i < query.length(); i++) {
+            if (query.charAt(i) == ch)
+                mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    private static int[][] ensureRowCapacity(int[][] rows, int length) {
+        if (rows[0] == null || rows[0].length <= length) {
+            rows[0] = new int[length + 1];
+            rows[1] = new int[length + 1];
+        }
+        return rows;
+    }
+
+    private static class Match {
+        final String word;
+        final int distance;
+
+        Match(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+}
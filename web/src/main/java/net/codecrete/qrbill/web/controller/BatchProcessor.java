@@ -0,0 +1,158 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Processes a sequence of items in parallel and delivers the results in the original order.
+ * <p>
+ * All requests share a fixed thread pool. Each call of {@link #process} keeps at most
+ * a fixed number of items in flight. The next item is only taken from the input once the
+ * oldest result has been delivered. So a slow consumer also slows down the reading of the
+ * input and neither the input nor the results are ever held in memory as a whole.
+ * </p>
+ */
+public class BatchProcessor {
+
+    /**
+     * Consumer of the results
+     *
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface ResultConsumer<R> {
+        /**
+         * Accepts the next result.
+         *
+         * @param index zero-based index of the item
+         * @param result the result
+         * @throws IOException thrown if the result cannot be written
+         */
+        void accept(int index, R result) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threads number of threads (0 for the number of available processors)
+     */
+    public BatchProcessor(int threads) {
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads, new BatchThreadFactory());
+        maxInFlight = 2 * threads;
+    }
+
+    /**
+     * Gets the maximum number of items in flight per call of {@link #process}.
+     *
+     * @return the maximum number of items
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Processes all items of the input.
+     * <p>
+     * The function is run on the thread pool. The input is read and the consumer is
+     * called on the calling thread. If the function or the consumer fails, the items
+     * still in flight are cancelled and the exception is rethrown.
+     * </p>
+     *
+     * @param input    the input items
+     * @param function the function to apply to each item
+     * @param consumer the consumer of the results
+     * @param <T>      item type
+     * @param <R>      result type
+     * @return the number of processed items
+     * @throws IOException thrown if the consumer fails
+     */
+    public <T, R> int process(Iterator<T> input, Function<T, R> function, ResultConsumer<R> consumer)
+            throws IOException {
+        ArrayDeque<CompletableFuture<R>> window = new ArrayDeque<>(maxInFlight);
+        int count = 0;
+        try {
+            while (input.hasNext()) {
+                T item = input.next();
+                window.addLast(CompletableFuture.supplyAsync(() -> function.apply(item), executor));
+                if (window.size() >= maxInFlight) {
+                    consumer.accept(count, join(window.removeFirst()));
+                    count++;
+                }
+            }
+            while (!window.isEmpty()) {
+                consumer.accept(count, join(window.removeFirst()));
+                count++;
+            }
+        } finally {
+            for (CompletableFuture<R> future : window)
+                future.cancel(false);
+        }
+        return count;
+    }
+
+    /**
+     * Runs a single task on the thread pool and waits for its result.
+     * <p>
+     * For work that cannot be parallelized (such as drawing all bills onto a single
+     * document) but is to be limited by the same thread pool.
+     * </p>
+     *
+     * @param task the task
+     * @param <R>  result type
+     * @return the result
+     */
+    public <R> R call(Supplier<R> task) {
+        return join(CompletableFuture.supplyAsync(task, executor));
+    }
+
+    /**
+     * Stops the thread pool.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "qrbill-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.ValidatedBill;
+import net.codecrete.qrbill.generator.ValidationResult;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationMessage;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates or validates many QR bills in a single request.
+ * <p>
+ * The request body is either a JSON array of bills or newline-delimited JSON (one bill per line).
+ * The bills are parsed incrementally and rendered in parallel (see {@link BatchProcessor}).
+ * </p>
+ * <p>
+ * The endpoints are not part of the OpenAPI definition as the generated interface
+ * would read the entire request into memory.
+ * </p>
+ */
+@RestController
+public class BillBatchController {
+
+    static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+    private static final String MEDIA_TYPE_ZIP = "application/zip";
+
+    /**
+     * Maximum number of bills in a single PDF document
+     */
+    static final int MAX_PDF_PAGES = 200;
+
+    private final MessageLocalizer messageLocalizer;
+    private final BatchProcessor batchProcessor;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader billReader;
+    private final ObjectWriter responseWriter;
+    private final ServiceMetrics metrics;
+
+    /**
+     * Creates an instance.
+     * <p>
+     * Single constructor for Spring dependency injection.
+     * </p>
+     */
+    public BillBatchController(MessageLocalizer messageLocalizer, BatchProcessor batchProcessor,
+                               ObjectMapper objectMapper, ServiceMetrics metrics) {
+        this.messageLocalizer = messageLocalizer;
+        this.batchProcessor = batchProcessor;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        billReader = objectMapper.readerFor(QrBill.class);
+        responseWriter = objectMapper.writerFor(ValidationResponse.class);
+    }
+
+    /**
+     * Validates the QR bills.
+     * <p>
+     * The response is newline-delimited JSON with a validation response per bill
+     * (see {@code /bill/validated}) in the order of the request. Each line is sent
+     * as soon as the bill and all bills before it have been validated. If the request
+     * turns out to be malformed half-way, the response is aborted.
+     * </p>
+     *
+     * @param request the HTTP request
+     * @return the validation responses
+     */
+    @PostMapping(path = "/bill/batch/validated", consumes = {MediaType.APPLICATION_JSON_VALUE, MEDIA_TYPE_NDJSON})
+    public ResponseEntity<StreamingResponseBody> validateBills(HttpServletRequest request) {
+
+        Locale locale = LocaleContextHolder.getLocale();
+        MappingIterator<QrBill> bills = openBills(request);
+
+        StreamingResponseBody body = outputStream -> {
+            try (MappingIterator<QrBill> input = bills) {
+                batchProcessor.process(input, bill -> validateBillToJson(bill, locale), (index, line) -> {
+                    outputStream.write(line);
+                    outputStream.flush();
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf(MEDIA_TYPE_NDJSON))
+                .body(body);
+    }
+
+    /**
+     * Generates the QR bills as a ZIP archive.
+     * <p>
+     * The archive contains an SVG or PDF file per bill ({@code bill-00001.svg} etc.)
+     * in the order of the request. For invalid bills, it contains a JSON file with the
+     * validation messages instead ({@code bill-00001-errors.json}). The archive is
+     * streamed while the request is being read. If the request turns out to be
+     * malformed half-way, the response is aborted.
+     * </p>
+     *
+     * @param request        the HTTP request
+     * @param acceptLanguage value of {@code Accept-Language} header
+     * @return the ZIP archive
+     */
+    @PostMapping(path = "/bill/batch/zip", consumes = {MediaType.APPLICATION_JSON_VALUE, MEDIA_TYPE_NDJSON})
+    public ResponseEntity<StreamingResponseBody> generateZip(
+            HttpServletRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage) {
+
+        Language language = QRBillController.languageFromHeader(acceptLanguage);
+        Locale locale = LocaleContextHolder.getLocale();
+        MappingIterator<QrBill> bills = openBills(request);
+
+        StreamingResponseBody body = outputStream -> {
+            try (MappingIterator<QrBill> input = bills; ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+                batchProcessor.process(input, bill -> renderBill(bill, language, locale),
+                        (index, entry) -> entry.writeTo(zip, index));
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf(MEDIA_TYPE_ZIP))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"qrbills.zip\"")
+                .body(body);
+    }
+
+    /**
+     * Generates the QR bills as a single PDF document with a page per bill.
+     * <p>
+     * The bills are validated first. If any of them is invalid, status 422 is returned
+     * with the validation messages of the first invalid bill. The field names are
+     * prefixed with the bill index, e.g. {@code [3].creditor.name}.
+     * </p>
+     * <p>
+     * The document is drawn on the thread pool of the batch processor, i.e. it is subject
+     * to the same limit as the rendering for the ZIP archives.
+     * </p>
+     *
+     * @param request        the HTTP request
+     * @param acceptLanguage value of {@code Accept-Language} header
+     * @return the PDF document
+     * @throws IOException thrown if the request cannot be read
+     */
+    @PostMapping(path = "/bill/batch/pdf", consumes = {MediaType.APPLICATION_JSON_VALUE, MEDIA_TYPE_NDJSON})
+    public ResponseEntity<Resource> generatePdf(
+            HttpServletRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguage)
+            throws IOException {
+
+        Language language = QRBillController.languageFromHeader(acceptLanguage);
+        List<ValidatedBill> validatedBills = new ArrayList<>();
+        try (MappingIterator<QrBill> input = openBills(request)) {
+            batchProcessor.process(input, bill -> validateBill(bill, language), (index, result) -> {
+                if (result.hasErrors())
+                    throw new QRBillValidationError(prefixFields(result, index));
+                if (index >= MAX_PDF_PAGES)
+                    throw new BadRequestException("Too many bills (max. " + MAX_PDF_PAGES + " per PDF document)");
+                validatedBills.add(result.getValidatedBill());
+            });
+        } catch (RuntimeJsonMappingException e) {
+            throw new BadRequestException("Invalid bill data: " + e.getMessage());
+        }
+        if (validatedBills.isEmpty())
+            throw new BadRequestException("No bills in request");
+
+        byte[] document = batchProcessor.call(() -> drawPdf(validatedBills));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(new ByteArrayResource(document));
+    }
+
+    private byte[] drawPdf(List<ValidatedBill> bills) {
+        OutputSize firstOutputSize = bills.get(0).getFormat().getOutputSize();
+        try (PDFCanvas canvas = new PDFCanvas(pageWidth(firstOutputSize), pageHeight(firstOutputSize))) {
+            for (int i = 0; i < bills.size(); i++) {
+                ValidatedBill bill = bills.get(i);
+                if (i > 0) {
+                    OutputSize outputSize = bill.getFormat().getOutputSize();
+                    canvas.addPage(pageWidth(outputSize), pageHeight(outputSize));
+                }
+                metrics.draw(bill, canvas);
+            }
+            return canvas.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappingIterator<QrBill> openBills(HttpServletRequest request) {
+        try {
+            return billReader.readValues(request.getInputStream());
+        } catch (IOException e) {
+            throw new BadRequestException("Invalid bill data: " + e.getMessage());
+        }
+    }
+
+    private byte[] validateBillToJson(QrBill qrBill, Locale locale) {
+        ValidationResult result = metrics.validate(QrBillDTOConverter.fromDtoQrBill(qrBill));
+        ValidationResponse response
+                = QRBillController.createValidationResponse(result, messageLocalizer, metrics, locale);
+        try {
+            byte[] json = responseWriter.writeValueAsBytes(response);
+            byte[] line = Arrays.copyOf(json, json.length + 1);
+            line[json.length] = '\n';
+            return line;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ValidationResult validateBill(QrBill qrBill, Language language) {
+        Bill bill = QrBillDTOConverter.fromDtoQrBill(qrBill);
+        QRBillController.setFormatDefaults(bill, language, null);
+        QRBillController.updateForAdviceOnly(bill);
+        return metrics.validate(bill);
+    }
+
+    private BatchEntry renderBill(QrBill qrBill, Language language, Locale locale) {
+        ValidationResult result = validateBill(qrBill, language);
+        if (result.hasErrors()) {
+            List<ValidationMessage> messages
+                    = QrBillDTOConverter.toDtoValidationMessageList(result.getValidationMessages());
+            messageLocalizer.addLocalMessages(messages, locale);
+            try {
+                return new BatchEntry("-errors.json", objectMapper.writeValueAsBytes(messages), true);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        ValidatedBill bill = result.getValidatedBill();
+        GraphicsFormat graphicsFormat = bill.getFormat().getGraphicsFormat();
+        byte[] data = metrics.generate(bill);
+        // PDF content streams are already compressed
+        return graphicsFormat == GraphicsFormat.PDF
+                ? new BatchEntry(".pdf", data, false)
+                : new BatchEntry(".svg", data, true);
+    }
+
+    private static ValidationResult prefixFields(ValidationResult result, int index) {
+        ValidationResult prefixedResult = new ValidationResult();
+        for (net.codecrete.qrbill.generator.ValidationMessage message : result.getValidationMessages())
+            prefixedResult.addMessage(message.getType(), "[" + index + "]." + message.getField(),
+                    message.getMessageKey(), message.getMessageParameters());
+        return prefixedResult;
+    }
+
+    private static double pageWidth(OutputSize outputSize) {
+        switch (outputSize) {
+            case QR_BILL_ONLY:
+                return QRBill.QR_BILL_WIDTH;
+            case QR_CODE_ONLY:
+                return QRBill.QR_CODE_WIDTH;
+            default:
+                return QRBill.A4_PORTRAIT_WIDTH;
+        }
+    }
+
+    private static double pageHeight(OutputSize outputSize) {
+        switch (outputSize) {
+            case QR_BILL_ONLY:
+                return QRBill.QR_BILL_HEIGHT;
+            case QR_CODE_ONLY:
+                return QRBill.QR_CODE_HEIGHT;
+            default:
+                return QRBill.A4_PORTRAIT_HEIGHT;
+        }
+    }
+
+    /**
+     * Rendered bill or validation messages, ready to be written to the ZIP archive
+     */
+    private static class BatchEntry {
+        private final String suffix;
+        private final byte[] data;
+        private final boolean compress;
+        private final long crc;
+
+        BatchEntry(String suffix, byte[] data, boolean compress) {
+            this.suffix = suffix;
+            this.data = data;
+            this.compress = compress;
+            CRC32 crc32 = new CRC32();
+            crc32.update(data);
+            crc = crc32.getValue();
+        }
+
+        void writeTo(ZipOutputStream zip, int index) throws IOException {
+            ZipEntry entry = new ZipEntry(String.format("bill-%05d%s", index + 1, suffix));
+            if (!compress) {
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCompressedSize(data.length);
+            }
+            entry.setCrc(crc);
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+        }
+    }
+}
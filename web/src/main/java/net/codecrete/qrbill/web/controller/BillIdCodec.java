@@ -0,0 +1,195 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import net.codecrete.qrbill.generator.QRTextCompressor;
+import net.codecrete.qrbill.web.model.BillFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes and decodes bill IDs.
+ * <p>
+ * A bill ID encodes the QR code text and the bill format. It consists of:
+ * </p>
+ * <ul>
+ *     <li>a version byte ({@link #VERSION_TRAINED_DICTIONARY}),</li>
+ *     <li>two bytes with the format enumerations packed into bits,</li>
+ *     <li>the font family (only if set) as a length byte and UTF-8 bytes,</li>
+ *     <li>the QR code text, compressed with {@link QRTextCompressor#DEFAULT}.</li>
+ * </ul>
+ * <p>
+ * The result is encoded with the URL-safe RFC4648 Base 64 encoding without padding.
+ * </p>
+ * <p>
+ * IDs of earlier versions are Base 64 encoded, compressed JSON data (see {@link BillPayload}),
+ * with all equal signs replaced by tildes. As the zlib header always starts with 0x78,
+ * they can be distinguished by the first byte and can still be decoded.
+ * </p>
+ */
+final class BillIdCodec {
+
+    static final int VERSION_TRAINED_DICTIONARY = 3;
+
+    private static final int ZLIB_HEADER = 0x78;
+    private static final int MAX_FONT_FAMILY_LENGTH = 255;
+
+    private static final int FORMAT_PRESENT = 0x8000;
+    private static final int FONT_FAMILY_PRESENT = 0x0008;
+    private static final int GRAPHICS_FORMAT_SHIFT = 12;
+    private static final int OUTPUT_SIZE_SHIFT = 9;
+    private static final int LANGUAGE_SHIFT = 6;
+    private static final int SEPARATOR_TYPE_SHIFT = 4;
+
+    // explicit order as the codes are part of the ID format
+    private static final BillFormat.GraphicsFormatEnum[] GRAPHICS_FORMATS = {
+            BillFormat.GraphicsFormatEnum.SVG, BillFormat.GraphicsFormatEnum.PDF
+    };
+    private static final BillFormat.OutputSizeEnum[] OUTPUT_SIZES = {
+            BillFormat.OutputSizeEnum.A4_PORTRAIT_SHEET, BillFormat.OutputSizeEnum.QR_BILL_ONLY,
+            BillFormat.OutputSizeEnum.QR_CODE_ONLY
+    };
+    private static final BillFormat.LanguageEnum[] LANGUAGES = {
+            BillFormat.LanguageEnum.DE, BillFormat.LanguageEnum.FR, BillFormat.LanguageEnum.IT,
+            BillFormat.LanguageEnum.EN
+    };
+    private static final BillFormat.SeparatorTypeEnum[] SEPARATOR_TYPES = {
+            BillFormat.SeparatorTypeEnum.NONE, BillFormat.SeparatorTypeEnum.SOLID_LINE,
+            BillFormat.SeparatorTypeEnum.SOLID_LINE_WITH_SCISSORS
+    };
+
+    private static final ObjectReader LEGACY_READER = new ObjectMapper().readerFor(BillPayload.class);
+
+    private BillIdCodec() {
+        // do not instantiate
+    }
+
+    /**
+     * Encodes the QR code text and the bill format as a bill ID.
+     *
+     * @param qrCodeText the QR code text
+     * @param format     the bill format (or {@code null})
+     * @return the bill ID
+     */
+    static String encode(String qrCodeText, BillFormat format) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(qrCodeText.length() / 2 + 16);
+        buffer.write(VERSION_TRAINED_DICTIONARY);
+
+        byte[] fontFamily = null;
+        int bits = 0;
+        if (format != null) {
+            bits = FORMAT_PRESENT
+                    | code(GRAPHICS_FORMATS, format.getGraphicsFormat()) << GRAPHICS_FORMAT_SHIFT
+                    | code(OUTPUT_SIZES, format.getOutputSize()) << OUTPUT_SIZE_SHIFT
+                    | code(LANGUAGES, format.getLanguage()) << LANGUAGE_SHIFT
+                    | code(SEPARATOR_TYPES, format.getSeparatorType()) << SEPARATOR_TYPE_SHIFT;
+            if (format.getFontFamily() != null) {
+                fontFamily = format.getFontFamily().getBytes(StandardCharsets.UTF_8);
+                if (fontFamily.length > MAX_FONT_FAMILY_LENGTH)
+                    throw new IllegalArgumentException("Font family is too long");
+                bits |= FONT_FAMILY_PRESENT;
+            }
+        }
+        buffer.write(bits >> 8);
+        buffer.write(bits);
+        if (fontFamily != null) {
+            buffer.write(fontFamily.length);
+            buffer.write(fontFamily, 0, fontFamily.length);
+        }
+
+        byte[] compressedText = QRTextCompressor.DEFAULT.compress(qrCodeText);
+        buffer.write(compressedText, 0, compressedText.length);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.toByteArray());
+    }
+
+    /**
+     * Decodes a bill ID.
+     *
+     * @param id the bill ID
+     * @return the decoded payload, or {@code null} if the ID is invalid
+     */
+    static BillPayload decode(String id) {
+        byte[] data;
+        try {
+            data = Base64.getUrlDecoder().decode(id.replace('~', '='));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (data.length < 3)
+            return null;
+        if ((data[0] & 0xff) == ZLIB_HEADER)
+            return decodeLegacy(data);
+        if (data[0] != VERSION_TRAINED_DICTIONARY)
+            return null;
+
+        int bits = (data[1] & 0xff) << 8 | (data[2] & 0xff);
+        int offset = 3;
+        BillFormat format = null;
+        if ((bits & FORMAT_PRESENT) != 0) {
+            format = new BillFormat();
+            format.setGraphicsFormat(value(GRAPHICS_FORMATS, bits >> GRAPHICS_FORMAT_SHIFT & 0x7));
+            format.setOutputSize(value(OUTPUT_SIZES, bits >> OUTPUT_SIZE_SHIFT & 0x7));
+            format.setLanguage(value(LANGUAGES, bits >> LANGUAGE_SHIFT & 0x7));
+            format.setSeparatorType(value(SEPARATOR_TYPES, bits >> SEPARATOR_TYPE_SHIFT & 0x3));
+            if ((bits & FONT_FAMILY_PRESENT) != 0) {
+                if (offset >= data.length)
+                    return null;
+                int length = data[offset] & 0xff;
+                offset++;
+                if (offset + length > data.length)
+                    return null;
+                format.setFontFamily(new String(data, offset, length, StandardCharsets.UTF_8));
+                offset += length;
+            }
+        }
+
+        String qrText;
+        try {
+            qrText = QRTextCompressor.DEFAULT.decompress(data, offset, data.length - offset);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        BillPayload payload = new BillPayload();
+        payload.setVersion(data[0]);
+        payload.setFormat(format);
+        payload.setQrText(qrText);
+        return payload;
+    }
+
+    private static BillPayload decodeLegacy(byte[] data) {
+        try (InputStream stream = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return LEGACY_READER.readValue(stream);
+        } catch (IOException e) {
+            return null; // invalid ID
+        }
+    }
+
+    private static <T> int code(T[] values, T value) {
+        if (value == null)
+            return 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value)
+                return i + 1;
+        }
+        throw new IllegalArgumentException("Unsupported format value: " + value);
+    }
+
+    private static <T> T value(T[] values, int code) {
+        return code > 0 && code <= values.length ? values[code - 1] : null;
+    }
+}
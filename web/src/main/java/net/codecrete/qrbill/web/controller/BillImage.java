@@ -0,0 +1,47 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.generator.GraphicsFormat;
+
+/**
+ * Generated bill image together with its graphics format.
+ */
+public final class BillImage {
+
+    private final GraphicsFormat format;
+    private final byte[] data;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param format graphics format
+     * @param data   image data
+     */
+    public BillImage(GraphicsFormat format, byte[] data) {
+        this.format = format;
+        this.data = data;
+    }
+
+    /**
+     * Gets the graphics format.
+     *
+     * @return the graphics format
+     */
+    public GraphicsFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the image data.
+     *
+     * @return the image data
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,136 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.generator.DiskRenderCache;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Server-side disk cache for generated bill images.
+ * <p>
+ * The images are stored in a {@link DiskRenderCache}, which limits the total size
+ * and picks up the files of earlier runs on startup. The graphics format is part of
+ * the file name so that the file contains the image only and can be returned as is.
+ * </p>
+ * <p>
+ * The cache keys include the service version so that images rendered by an
+ * earlier version are neither served from the cache nor match ETags issued by it.
+ * If the version is unknown, a fixed value is used and a warning is logged. The
+ * cached images then survive an upgrade, and the cache directory must be cleared manually.
+ * </p>
+ */
+public class BillImageCache {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final GraphicsFormat[] FORMATS = GraphicsFormat.values();
+    private static final String UNKNOWN_VERSION = "unknown";
+    private static final Logger LOGGER = LoggerFactory.getLogger(BillImageCache.class);
+
+    private final DiskRenderCache cache;
+    private final String version;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param directory cache directory (or {@code null} to disable the cache)
+     * @param maxBytes  maximum total size of the cached images, in bytes (0 to disable the cache)
+     * @param version   service version (or {@code null} if unknown)
+     * @throws IOException thrown if the directory cannot be created or read
+     */
+    public BillImageCache(Path directory, long maxBytes, String version) throws IOException {
+        cache = directory != null && maxBytes > 0 ? new DiskRenderCache(directory, maxBytes) : null;
+        if (version == null) {
+            version = UNKNOWN_VERSION;
+            if (cache != null)
+                LOGGER.warn("Service version unknown (no build info); clear the image cache {} after upgrades",
+                        directory);
+        }
+        this.version = version;
+    }
+
+    /**
+     * Gets the cached image for the specified key.
+     *
+     * @param key cache key (see {@link #createKey})
+     * @return the image, or {@code null} if it is not cached
+     */
+    public BillImage get(String key) {
+        if (cache == null)
+            return null;
+        for (GraphicsFormat format : FORMATS) {
+            byte[] data = cache.get(fileKey(key, format));
+            if (data != null)
+                return new BillImage(format, data);
+        }
+        return null;
+    }
+
+    /**
+     * Adds an image to the cache.
+     *
+     * @param key   cache key (see {@link #createKey})
+     * @param image generated image
+     */
+    public void put(String key, BillImage image) {
+        if (cache == null)
+            return;
+        cache.put(fileKey(key, image.getFormat()), image.getData());
+    }
+
+    private static String fileKey(String key, GraphicsFormat format) {
+        return key + "-" + format.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Creates a cache key from the service version and the specified parts.
+     * <p>
+     * The key is the hex-encoded SHA-256 digest of the parts. {@code null} parts are
+     * distinct from empty parts.
+     * </p>
+     *
+     * @param parts the parts (e.g. bill ID and format overrides)
+     * @return the key
+     */
+    public String createKey(String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        for (String part : parts) {
+            if (part == null) {
+                digest.update((byte) 1);
+            } else {
+                digest.update((byte) 0);
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
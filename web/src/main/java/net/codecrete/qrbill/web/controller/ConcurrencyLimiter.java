@@ -0,0 +1,332 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit for the number of concurrent renderings.
+ * <p>
+ * The limit is adjusted with a gradient on the observed render latency: a long-term
+ * average represents the latency without contention, a short-term average the current
+ * latency. If the current latency rises above the long-term average (times a tolerance),
+ * the limit is reduced proportionally. Otherwise it grows by the square root of the limit.
+ * The limit is only raised while it is actually used, i.e. while at least half of the
+ * permits are taken.
+ * </p>
+ * <p>
+ * Requests exceeding the limit wait in a bounded queue for a limited time. If the queue is
+ * full or the time is up, a {@link RejectedExecutionException} is thrown, which is meant to be
+ * reported to the client as a temporary overload.
+ * </p>
+ * <p>
+ * The following meters are registered:
+ * </p>
+ * <ul>
+ *     <li>{@code qrbill.render.limit}: current concurrency limit</li>
+ *     <li>{@code qrbill.render.inflight}: renderings in progress</li>
+ *     <li>{@code qrbill.render.queued}: requests waiting for a permit</li>
+ *     <li>{@code qrbill.render.rejected}: rejected requests, tagged with the reason</li>
+ * </ul>
+ */
+public class ConcurrencyLimiter implements MeterBinder {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_WINDOW = 10;
+    private static final double LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueLength;
+    private final long queueTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    // guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queueLength;
+    private double shortLatency;
+    private double longLatency;
+
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param initialLimit       initial concurrency limit (0 for twice the number of available processors)
+     * @param minLimit           minimum concurrency limit
+     * @param maxLimit           maximum concurrency limit
+     * @param maxQueueLength     maximum number of requests waiting for a permit (0 for no queueing)
+     * @param queueTimeoutMillis maximum time to wait for a permit, in milliseconds
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueueLength,
+                              long queueTimeoutMillis) {
+        if (initialLimit <= 0)
+            initialLimit = 2 * Runtime.getRuntime().availableProcessors();
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit));
+        this.maxQueueLength = maxQueueLength;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of permits currently taken.
+     *
+     * @return the number of permits
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for a permit.
+     *
+     * @return the number of requests
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queueLength;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the task with a permit.
+     * <p>
+     * Waits for a permit if the limit is reached. Only the latency of successfully
+     * completed tasks is used to adjust the limit.
+     * </p>
+     *
+     * @param task the task
+     * @param <T>  result type
+     * @return the result
+     * @throws RejectedExecutionException thrown if no permit is available within the queue timeout
+     */
+    public <T> T call(Supplier<T> task) {
+        Permit permit = acquire();
+        try {
+            T result = task.get();
+            permit.release(true);
+            return result;
+        } finally {
+            permit.release(false);
+        }
+    }
+
+    /**
+     * Acquires a permit, waiting if the limit is reached.
+     *
+     * @return the permit
+     * @throws RejectedExecutionException thrown if the queue is full or no permit is available
+     *                                    within the queue timeout
+     */
+    public Permit acquire() {
+        lock.lock();
+        try {
+            if (queueLength == 0 && inFlight < (int) limit)
+                return grantPermit();
+
+            if (queueLength >= maxQueueLength) {
+                rejectedQueueFull.incrementAndGet();
+                throw new RejectedExecutionException("Concurrency limit reached");
+            }
+
+            queueLength++;
+            try {
+                long remainingNanos = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) {
+                        rejectedTimeout.incrementAndGet();
+                        throw new RejectedExecutionException("Timeout waiting for concurrency permit");
+                    }
+                    remainingNanos = permitAvailable.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for concurrency permit", e);
+            } finally {
+                queueLength--;
+            }
+            return grantPermit();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires a permit without waiting.
+     * <p>
+     * For callers that must not block (such as the WebFlux event loop).
+     * </p>
+     *
+     * @return the permit
+     * @throws RejectedExecutionException thrown if the limit is reached
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                rejectedQueueFull.incrementAndGet();
+                throw new RejectedExecutionException("Concurrency limit reached");
+            }
+            return grantPermit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit grantPermit() {
+        inFlight++;
+        return new Permit(System.nanoTime());
+    }
+
+    private void release(long latencyNanos, boolean isSample) {
+        lock.lock();
+        try {
+            if (isSample)
+                updateLimit(latencyNanos);
+            inFlight--;
+
+            int available = (int) limit - inFlight;
+            for (int i = 0; i < Math.min(available, queueLength); i++)
+                permitAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjusts the limit with the latency of a completed rendering.
+     * <p>
+     * Must be called while holding the lock and before the permit is returned.
+     * </p>
+     *
+     * @param latencyNanos the latency, in nanoseconds
+     */
+    private void updateLimit(long latencyNanos) {
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+        } else {
+            shortLatency += (latencyNanos - shortLatency) / SHORT_WINDOW;
+            longLatency += (latencyNanos - longLatency) / LONG_WINDOW;
+        }
+
+        // let the long-term average follow quickly if the load has dropped
+        if (longLatency > 2 * shortLatency)
+            longLatency *= 0.95;
+
+        // no evidence that a higher limit would be used
+        if (inFlight < limit / 2)
+            return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(newLimit, maxLimit));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("qrbill.render.limit", this, ConcurrencyLimiter::getLimit)
+                .description("Concurrency limit for rendering")
+                .register(registry);
+        Gauge.builder("qrbill.render.inflight", this, ConcurrencyLimiter::getInFlight)
+                .description("Renderings in progress")
+                .register(registry);
+        Gauge.builder("qrbill.render.queued", this, ConcurrencyLimiter::getQueueLength)
+                .description("Requests waiting for a rendering permit")
+                .register(registry);
+        FunctionCounter.builder("qrbill.render.rejected", rejectedQueueFull, AtomicLong::get)
+                .description("Requests rejected by the concurrency limit")
+                .tags("reason", "queue.full")
+                .register(registry);
+        FunctionCounter.builder("qrbill.render.rejected", rejectedTimeout, AtomicLong::get)
+                .description("Requests rejected by the concurrency limit")
+                .tags("reason", "timeout")
+                .register(registry);
+    }
+
+    /**
+     * Permit to render a bill.
+     * <p>
+     * Must be released exactly once. Additional calls of {@link #release(boolean)} are ignored.
+     * </p>
+     * <p>
+     * The latency is measured from the time the permit is granted, or from the last call
+     * of {@link #markStart()}.
+     * </p>
+     */
+    public final class Permit {
+
+        private volatile long startTime;
+        private final AtomicBoolean isReleased = new AtomicBoolean();
+
+        private Permit(long startTime) {
+            this.startTime = startTime;
+        }
+
+        /**
+         * Restarts the latency measurement.
+         * <p>
+         * To be called when the rendering actually starts if it first waits in the queue
+         * of a thread pool. The queue time is then not used for adjusting the limit.
+         * </p>
+         */
+        public void markStart() {
+            startTime = System.nanoTime();
+        }
+
+        /**
+         * Returns the permit.
+         *
+         * @param isSuccess {@code true} if the rendering completed successfully and its latency
+         *                  is to be used for adjusting the limit
+         */
+        public void release(boolean isSuccess) {
+            if (isReleased.compareAndSet(false, true))
+                ConcurrencyLimiter.this.release(System.nanoTime() - startTime, isSuccess);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same bill image.
+ * <p>
+ * If a bill image is requested while the same image is already being rendered, the request
+ * waits for the result of the rendering in progress instead of rendering it again
+ * ("single flight"). Failures are shared as well.
+ * </p>
+ * <p>
+ * Completed results are kept in memory for a short time. Callers are expected to check
+ * them with {@link #getRecent(String)} before the image cache on disk so that requests
+ * arriving just after the rendering neither render again nor read the disk. The memory
+ * used for these results is limited.
+ * </p>
+ * <p>
+ * Requests waiting for a rendering in progress give up after a timeout with a
+ * {@link RejectedExecutionException}, which is meant to be reported as a temporary overload.
+ * </p>
+ * <p>
+ * The following meters are registered:
+ * </p>
+ * <ul>
+ *     <li>{@code qrbill.image.coalesced}: requests served without rendering, tagged with the source
+ *     ({@code inflight} for a rendering in progress, {@code recent} for a recent result)</li>
+ * </ul>
+ */
+public class ImageRequestCoalescer implements MeterBinder {
+
+    private final long resultTtlNanos;
+    private final long maxSize;
+    private final long waitTimeoutNanos;
+
+    private final ConcurrentHashMap<String, CompletableFuture<BillImage>> inFlight = new ConcurrentHashMap<>();
+
+    // guarded by recentResults; in order of expiry
+    private final LinkedHashMap<String, RecentResult> recentResults = new LinkedHashMap<>();
+    private long recentResultsSize;
+
+    private final AtomicLong inFlightHits = new AtomicLong();
+    private final AtomicLong recentHits = new AtomicLong();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param resultTtlMillis   time to keep completed results, in milliseconds (0 to not keep them)
+     * @param maxSize           maximum total size of the kept results, in bytes
+     * @param waitTimeoutMillis maximum time to wait for a rendering in progress, in milliseconds
+     */
+    public ImageRequestCoalescer(long resultTtlMillis, long maxSize, long waitTimeoutMillis) {
+        this.resultTtlNanos = TimeUnit.MILLISECONDS.toNanos(resultTtlMillis);
+        this.maxSize = maxSize;
+        this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+    }
+
+    /**
+     * Gets a recently rendered image.
+     *
+     * @param key the key identifying the image
+     * @return the image, or {@code null} if no recent result exists
+     */
+    public BillImage getRecent(String key) {
+        if (resultTtlNanos <= 0)
+            return null;
+
+        synchronized (recentResults) {
+            removeExpiredResults(System.nanoTime());
+            RecentResult recentResult = recentResults.get(key);
+            if (recentResult == null)
+                return null;
+            recentHits.incrementAndGet();
+            return recentResult.image;
+        }
+    }
+
+    /**
+     * Gets the bill image, rendering it unless a rendering is in progress or a recent result exists.
+     * <p>
+     * The image is rendered on the calling thread. Other callers for the same key wait for it.
+     * </p>
+     *
+     * @param key      the key identifying the image
+     * @param renderer the function rendering the image
+     * @return the image
+     * @throws RejectedExecutionException thrown if the rendering in progress does not complete in time
+     */
+    public BillImage get(String key, Supplier<BillImage> renderer) {
+        BillImage result = getRecent(key);
+        if (result != null)
+            return result;
+
+        CompletableFuture<BillImage> future = new CompletableFuture<>();
+        CompletableFuture<BillImage> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            inFlightHits.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            result = renderer.get();
+        } catch (RuntimeException | Error e) {
+            fail(key, future, e);
+            throw e;
+        }
+        complete(key, future, result);
+        return result;
+    }
+
+    /**
+     * Gets the bill image, rendering it unless a rendering is in progress or a recent result exists.
+     * <p>
+     * Non-blocking variant: the rendering is subscribed to once and runs to completion
+     * even if the first subscriber cancels, as other requests might be waiting for it.
+     * </p>
+     *
+     * @param key      the key identifying the image
+     * @param renderer the function creating the rendering
+     * @return the image
+     */
+    public Mono<BillImage> getAsync(String key, Supplier<Mono<BillImage>> renderer) {
+        return Mono.defer(() -> {
+            BillImage result = getRecent(key);
+            if (result != null)
+                return Mono.just(result);
+
+            CompletableFuture<BillImage> future = new CompletableFuture<>();
+            CompletableFuture<BillImage> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                inFlightHits.incrementAndGet();
+                return Mono.fromFuture(existing)
+                        .timeout(Duration.ofNanos(waitTimeoutNanos), Mono.error(RenderTimeout::new));
+            }
+
+            Mono<BillImage> rendering;
+            try {
+                rendering = renderer.get();
+            } catch (RuntimeException | Error e) {
+                fail(key, future, e);
+                throw e;
+            }
+            rendering.subscribe(
+                    image -> complete(key, future, image),
+                    error -> fail(key, future, error),
+                    () -> fail(key, future, new IllegalStateException("Rendering without result")));
+            return Mono.fromFuture(future);
+        });
+    }
+
+    private void complete(String key, CompletableFuture<BillImage> future, BillImage result) {
+        // make the result visible before the rendering is no longer in progress
+        putRecentResult(key, result);
+        inFlight.remove(key, future);
+        future.complete(result);
+    }
+
+    private void fail(String key, CompletableFuture<BillImage> future, Throwable error) {
+        inFlight.remove(key, future);
+        future.completeExceptionally(error);
+    }
+
+    private void putRecentResult(String key, BillImage image) {
+        if (resultTtlNanos <= 0 || image.getData().length > maxSize)
+            return;
+
+        long now = System.nanoTime();
+        synchronized (recentResults) {
+            RecentResult previous = recentResults.remove(key);
+            if (previous != null)
+                recentResultsSize -= previous.image.getData().length;
+            recentResults.put(key, new RecentResult(image, now + resultTtlNanos));
+            recentResultsSize += image.getData().length;
+            removeExpiredResults(now);
+        }
+    }
+
+    private void removeExpiredResults(long now) {
+        Iterator<Map.Entry<String, RecentResult>> iterator = recentResults.entrySet().iterator();
+        while (iterator.hasNext()) {
+            RecentResult recentResult = iterator.next().getValue();
+            if (recentResultsSize <= maxSize && recentResult.expiryTime - now > 0)
+                break;
+            recentResultsSize -= recentResult.image.getData().length;
+            iterator.remove();
+        }
+    }
+
+    private BillImage await(CompletableFuture<BillImage> future) {
+        try {
+            return future.get(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RenderTimeout();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qrbill.image.coalesced", inFlightHits, AtomicLong::get)
+                .description("Bill image requests served without rendering")
+                .tags("source", "inflight")
+                .register(registry);
+        FunctionCounter.builder("qrbill.image.coalesced", recentHits, AtomicLong::get)
+                .description("Bill image requests served without rendering")
+                .tags("source", "recent")
+                .register(registry);
+    }
+
+    private static class RenderTimeout extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        RenderTimeout() {
+            super("Timeout waiting for rendering in progress");
+        }
+    }
+
+    private static class RecentResult {
+        private final BillImage image;
+        private final long expiryTime;
+
+        RecentResult(BillImage image, long expiryTime) {
+            this.image = image;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -30,10 +30,12 @@ class MessageLocalizer {
     }
 
     void addLocalMessages(List<ValidationMessage> messages) {
+        addLocalMessages(messages, LocaleContextHolder.getLocale());
+    }
 
-        Locale currentLocale = LocaleContextHolder.getLocale();
+    void addLocalMessages(List<ValidationMessage> messages, Locale locale) {
         for (ValidationMessage message : messages) {
-            message.setMessage(getLocalMessage(message.getMessageKey(), message.getMessageParameters(), currentLocale));
+            message.setMessage(getLocalMessage(message.getMessageKey(), message.getMessageParameters(), locale));
         }
     }
 
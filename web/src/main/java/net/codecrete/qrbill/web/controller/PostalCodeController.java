@@ -19,14 +19,17 @@ public class PostalCodeController {
 
     private final PostalCodeData postalCodeData;
 
+    private final ServiceMetrics metrics;
+
     /**
      * Creates an instance.
      * <p>
      * Single constructor for Spring dependency injection.
      * </p>
      */
-    public PostalCodeController(PostalCodeData postalCodeData) {
+    public PostalCodeController(PostalCodeData postalCodeData, ServiceMetrics metrics) {
         this.postalCodeData = postalCodeData;
+        this.metrics = metrics;
     }
 
     @RequestMapping(value = "/postal-codes/suggest")
@@ -35,7 +38,7 @@ public class PostalCodeController {
                                            @RequestParam("substring") String substring) {
 
         // get postal code
-        List<PostalCodeData.PostalCode> postalCodeList = postalCodeData.suggestPostalCodes(country, substring);
+        List<PostalCodeData.PostalCode> postalCodeList = metrics.suggestPostalCodes(postalCodeData, country, substring);
 
         // convert result into API data structure
         int len = postalCodeList.size();
@@ -6,6 +6,9 @@
 //
 package net.codecrete.qrbill.web.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -14,93 +17,161 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipInputStream;
 
+/**
+ * Swiss postal codes and towns for suggestions.
+ * <p>
+ * The data is the official list published by swisstopo. If a snapshot file is configured,
+ * the data of the last download is loaded from the snapshot on {@link #start()} and the
+ * official list is downloaded again in the background at a fixed interval. Readers always
+ * use the current immutable index and are never blocked by a refresh. Only if no data
+ * is available at all, the first request waits for the download.
+ * </p>
+ */
 public class PostalCodeData {
 
-    private static final int MAX_SUGGESTED_ITEMS = 20;
+    static final String DATA_URL
+            = "https://data.geo.admin.ch/ch.swisstopo-vd.ortschaftenverzeichnis_plz/PLZO_CSV_LV03.zip";
     private static final List<PostalCode> EMPTY_RESULT = Collections.emptyList();
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostalCodeData.class);
 
-    private PostalCode[] sortedByPostalCode;
-    private PostalCode[] sortedByTown;
-
-    public List<PostalCode> suggestPostalCodes(String country, String substring) {
-
-        if (country != null && country.length() != 0 && !country.equals("CH"))
-            return EMPTY_RESULT;
-
-        if (substring == null || substring.length() == 0)
-            return EMPTY_RESULT;
+    private final String sourceUrl;
+    private final Path snapshotFile;
+    private final long refreshInterval;
+    private volatile PostalCodeIndex index;
+    private ScheduledExecutorService refreshExecutor;
+    private boolean loadedOnDemand;
 
-        checkData();
+    /**
+     * Creates a new instance downloading the official list on first use.
+     */
+    public PostalCodeData() {
+        this(DATA_URL, null, 0);
+    }
 
-        substring = substring.trim();
-        if (isNumeric(substring))
-            return getPostalCodeMatches(substring);
-        else
-            return getTownMatches(substring);
+    /**
+     * Creates a new instance.
+     *
+     * @param sourceUrl       URL of the ZIP file with the list of postal codes (official format)
+     * @param snapshotFile    path of the snapshot file (or {@code null} for no snapshot)
+     * @param refreshInterval interval for downloading the list again, in minutes (0 for no refresh)
+     */
+    public PostalCodeData(String sourceUrl, Path snapshotFile, long refreshInterval) {
+        this.sourceUrl = sourceUrl;
+        this.snapshotFile = snapshotFile;
+        this.refreshInterval = refreshInterval;
     }
 
-    private List<PostalCode> getPostalCodeMatches(String substring) {
-        // Search for postal codes starting with the substring first
-        int index = binarySearchForPostalCode(sortedByPostalCode, substring);
-        List<PostalCode> result = new ArrayList<>();
-        int arrayLen = sortedByPostalCode.length;
-        while (index < arrayLen && sortedByPostalCode[index].code.startsWith(substring)
-                && result.size() < MAX_SUGGESTED_ITEMS) {
-            result.add(sortedByPostalCode[index]);
-            index++;
+    /**
+     * Loads the snapshot (if available) and starts the background refresh.
+     * <p>
+     * The first refresh is scheduled when the snapshot has reached the age of
+     * the refresh interval, or immediately if there is no snapshot. If a request
+     * has already downloaded the data by then, the first refresh is skipped.
+     * </p>
+     */
+    public synchronized void start() {
+        long snapshotAge = Long.MAX_VALUE;
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                index = new PostalCodeIndex(PostalCodeSnapshot.read(snapshotFile));
+                snapshotAge = System.currentTimeMillis() - Files.getLastModifiedTime(snapshotFile).toMillis();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read postal code snapshot {}", snapshotFile, e);
+            }
         }
 
-        if (substring.length() <= 2 || result.size() >= 6)
-            return result;
+        if (refreshInterval > 0 && refreshExecutor == null) {
+            refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "postal-code-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long initialDelay = Math.max(0, TimeUnit.MINUTES.toMillis(refreshInterval) - snapshotAge);
+            refreshExecutor.scheduleWithFixedDelay(this::refreshInBackground,
+                    initialDelay, TimeUnit.MINUTES.toMillis(refreshInterval), TimeUnit.MILLISECONDS);
+        }
+    }
 
-        // Search for postal codes containing the substring
-        for (PostalCode pc : sortedByPostalCode) {
-            if (pc.code.contains(substring) && !result.contains(pc)) {
-                result.add(pc);
-                if (result.size() >= MAX_SUGGESTED_ITEMS)
-                    break;
-            }
+    /**
+     * Stops the background refresh.
+     */
+    public synchronized void stop() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            refreshExecutor = null;
         }
+    }
 
-        return result;
+    /**
+     * Downloads the list of postal codes and replaces the current data.
+     * <p>
+     * If a snapshot file is configured, the snapshot is updated as well. A failure to
+     * write the snapshot is logged but does not fail the refresh.
+     * </p>
+     *
+     * @throws PostalCodeDataException thrown if the data cannot be downloaded
+     */
+    public void refresh() {
+        List<PostalCode> postalCodes = load(sourceUrl);
+        index = new PostalCodeIndex(postalCodes);
+        writeSnapshot(postalCodes);
     }
 
-    private List<PostalCode> getTownMatches(String substring) {
-        substring = substring.toLowerCase(Locale.FRENCH);
-
-        // Search for towns starting with the substring first
-        int index = binarySearchForTown(sortedByTown, substring);
-        List<PostalCode> result = new ArrayList<>();
-        int arrayLen = sortedByTown.length;
-        while (index < arrayLen && sortedByTown[index].townLowercase.startsWith(substring)
-                && result.size() < MAX_SUGGESTED_ITEMS) {
-            result.add(sortedByTown[index]);
-            index++;
+    private void writeSnapshot(List<PostalCode> postalCodes) {
+        if (snapshotFile == null)
+            return;
+        try {
+            PostalCodeSnapshot.write(snapshotFile, postalCodes);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write postal code snapshot {}", snapshotFile, e);
         }
+    }
 
-        if (substring.length() <= 2 || result.size() >= 6)
-            return result;
-
-        // Search for postal codes containing the substring
-        for (PostalCode pc : sortedByTown) {
-            if (pc.townLowercase.contains(substring) && !result.contains(pc)) {
-                result.add(pc);
-                if (result.size() >= MAX_SUGGESTED_ITEMS)
-                    break;
+    private void refreshInBackground() {
+        try {
+            synchronized (this) {
+                if (index == null || loadedOnDemand) {
+                    // initial download (shared with waiting requests), or the data has just been downloaded
+                    checkData();
+                    loadedOnDemand = false;
+                    return;
+                }
             }
+            refresh();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot refresh postal code data from {}", sourceUrl, e);
         }
+    }
+
+    public List<PostalCode> suggestPostalCodes(String country, String substring) {
+
+        if (country != null && country.length() != 0 && !country.equals("CH"))
+            return EMPTY_RESULT;
+
+        if (substring == null || substring.length() == 0)
+            return EMPTY_RESULT;
+
+        PostalCodeIndex postalCodeIndex = checkData();
 
-        return result;
+        substring = substring.trim();
+        if (isNumeric(substring))
+            return postalCodeIndex.getPostalCodeMatches(substring);
+        else
+            return postalCodeIndex.getTownMatches(substring.toLowerCase(Locale.FRENCH));
     }
 
     private static boolean isNumeric(String str) {
@@ -113,82 +184,40 @@ public class PostalCodeData {
         return true;
     }
 
-    /**
-     * Searches the array for the specified postal code.
-     * <p>
-     * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
-     * matching element is returned if the the array contains several matching ones.
-     * </p>
-     *
-     * @param a          the array to be searched (must be sorted in ascending
-     *                   order)
-     * @param postalCode the postal code to search for
-     * @return the index of the first matching element (if found) or the index where
-     * the element would need to be inserted to retain the order (if not
-     * found)
-     */
-    private static int binarySearchForPostalCode(PostalCode[] a, String postalCode) {
-        int lower = 0;
-        int upper = a.length;
-
-        while (lower < upper) {
-            int mid = (lower + upper) >>> 1;
-            String midValue = a[mid].code;
-            int cmp = midValue.compareTo(postalCode);
-
-            if (cmp < 0)
-                lower = mid + 1;
-            else
-                upper = mid;
+    private PostalCodeIndex checkData() {
+        PostalCodeIndex postalCodeIndex = index;
+        if (postalCodeIndex != null)
+            return postalCodeIndex;
+
+        synchronized (this) {
+            if (index == null) {
+                List<PostalCode> postalCodes = load(sourceUrl);
+                index = new PostalCodeIndex(postalCodes);
+                loadedOnDemand = true;
+                writeSnapshot(postalCodes);
+            }
+            return index;
         }
-
-        return lower;
     }
 
     /**
-     * Searches the array for the specified town.
-     * <p>
-     * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
-     * matching element is returned if the the array contains several matching ones.
-     * </p>
+     * Loads the postal codes from a ZIP file in the format of the official list.
      *
-     * @param a    the array to be searched (must be sorted in ascending order)
-     * @param town the towb to search for
-     * @return the index of the first matching element (if found) or the index where
-     * the element would need to be inserted to retain the order (if not
-     * found)
+     * @param url URL of the ZIP file
+     * @return the postal codes
      */
-    private static int binarySearchForTown(PostalCode[] a, String town) {
-        int lower = 0;
-        int upper = a.length;
-
-        while (lower < upper) {
-            int mid = (lower + upper) >>> 1;
-            String midValue = a[mid].townLowercase;
-            int cmp = midValue.compareTo(town);
-
-            if (cmp < 0)
-                lower = mid + 1;
-            else
-                upper = mid;
-        }
-
-        return lower;
-    }
-
-    private synchronized void checkData() {
-        if (sortedByPostalCode == null)
-            load();
-    }
-
-    private void load() {
+    static List<PostalCode> load(String url) {
         try {
-            URL u = new URL("https://data.geo.admin.ch/ch.swisstopo-vd.ortschaftenverzeichnis_plz/PLZO_CSV_LV03.zip");
-            HttpURLConnection connection = (HttpURLConnection) u.openConnection();
-            connection.setInstanceFollowRedirects(true);
+            URL u = new URL(url);
+            URLConnection connection = u.openConnection();
+            if (connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).setInstanceFollowRedirects(true);
             connection.connect();
 
-            byte[] zipData = readFully(connection.getInputStream(), connection.getContentLength());
+            byte[] zipData;
+            try (InputStream inputStream = connection.getInputStream()) {
+                zipData = readFully(inputStream, connection.getContentLength());
+            }
 
             // They keep changing the encoding from UTF-8 to ISO-8850-1 and back. So test for both.
             List<PostalCode> postalCodeList = readCSV(zipData, StandardCharsets.UTF_8);
@@ -197,7 +226,7 @@ public class PostalCodeData {
             if (postalCodeList == null)
                 throw new PostalCodeDataException("Invalid encoding of postal code data");
 
-            setupSortedArrays(postalCodeList);
+            return postalCodeList;
 
         } catch (IOException e) {
             throw new PostalCodeDataException(e);
@@ -205,7 +234,7 @@ public class PostalCodeData {
 
     }
 
-    private List<PostalCode> readCSV(byte[] zipData, Charset charset) throws IOException {
+    private static List<PostalCode> readCSV(byte[] zipData, Charset charset) throws IOException {
         List<PostalCode> postalCodeList = new ArrayList<>();
         boolean containsZurich = false;
         try (InputStream in = new ByteArrayInputStream(zipData); ZipInputStream zis = new ZipInputStream(in)) {
@@ -234,7 +263,7 @@ public class PostalCodeData {
         return postalCodeList;
     }
 
-    private void processLine(String line, List<PostalCode> postalCodeList) {
+    private static void processLine(String line, List<PostalCode> postalCodeList) {
         String[] values = line.split(";");
         if (values.length >= 2) {
             PostalCode pc = new PostalCode(values[1], values[0]);
@@ -242,18 +271,8 @@ public class PostalCodeData {
         }
     }
 
-    private void setupSortedArrays(List<PostalCode> postalCodeList) {
-        sortedByPostalCode = new PostalCode[postalCodeList.size()];
-        sortedByPostalCode = postalCodeList.toArray(sortedByPostalCode);
-        Arrays.sort(sortedByPostalCode, Comparator.comparing(pc -> pc.code));
-
-        sortedByTown = new PostalCode[postalCodeList.size()];
-        sortedByTown = postalCodeList.toArray(sortedByTown);
-        Arrays.sort(sortedByTown, Comparator.comparing(pc -> pc.townLowercase));
-    }
-
     private static byte[] readFully(InputStream inputStream, int expectedLength) throws IOException {
-        ByteArrayOutputStream ba = new ByteArrayOutputStream(expectedLength);
+        ByteArrayOutputStream ba = new ByteArrayOutputStream(Math.max(expectedLength, 4096));
         byte[] buffer = new byte[4096];
         while (true) {
             int n = inputStream.read(buffer);
@@ -268,7 +287,7 @@ public class PostalCodeData {
 
         public final String code;
         public final String town;
-        private final String townLowercase;
+        final String townLowercase;
 
         PostalCode(String code, String town) {
             this.code = code;
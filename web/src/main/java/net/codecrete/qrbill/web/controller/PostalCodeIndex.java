@@ -0,0 +1,317 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable search index for postal codes and towns.
+ * <p>
+ * The postal codes are kept in two sorted arrays, one sorted by postal code and one
+ * by town. Prefix matches are found with a binary search in the sorted arrays. For
+ * substring matches, a trigram index maps each sequence of three characters to the
+ * sorted positions of all entries containing it. Only the entries of the rarest trigram
+ * of the query are then checked, in the order of the sorted array.
+ * </p>
+ * <p>
+ * If a town query has few matches, the search continues with folded keys (diacritics
+ * removed, case folded), so "Zurich" finds "Zürich". Then it tries town names within
+ * a small edit distance of the query (see {@link BKTree}). The results are ranked in this
+ * order: prefix matches, substring matches, folded prefix and substring matches, similar
+ * names by increasing edit distance.
+ * </p>
+ * <p>
+ * Once built, the index is immutable and can be used from multiple threads.
+ * </p>
+ */
+final class PostalCodeIndex {
+
+    /**
+     * Maximum number of results
+     */
+    static final int MAX_SUGGESTED_ITEMS = 20;
+
+    /**
+     * Minimum number of prefix matches that suppresses the search for substring matches
+     */
+    private static final int MIN_PREFIX_MATCHES = 6;
+
+    /**
+     * Minimum query length for similar town names
+     */
+    private static final int MIN_FUZZY_LENGTH = 5;
+
+    /**
+     * Minimum query length for allowing an edit distance of 2 (instead of 1)
+     */
+    private static final int MIN_DISTANCE_2_LENGTH = 9;
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final SortedKeys byPostalCode;
+    private final SortedKeys byTown;
+    private final SortedKeys byFoldedTown;
+    private final BKTree foldedTownTree;
+
+    /**
+     * Creates a new index.
+     *
+     * @param postalCodes list of postal codes
+     */
+    PostalCodeIndex(List<PostalCode> postalCodes) {
+        byPostalCode = new SortedKeys(postalCodes, pc -> pc.code);
+        byTown = new SortedKeys(postalCodes, pc -> pc.townLowercase);
+        byFoldedTown = new SortedKeys(postalCodes, pc -> fold(pc.town));
+
+        List<String> foldedTowns = new ArrayList<>();
+        for (String key : byFoldedTown.keys) {
+            if (foldedTowns.isEmpty() || !foldedTowns.get(foldedTowns.size() - 1).equals(key))
+                foldedTowns.add(key);
+        }
+        foldedTownTree = new BKTree(foldedTowns);
+    }
+
+    /**
+     * Gets the number of postal codes in the index.
+     *
+     * @return the number of postal codes
+     */
+    int size() {
+        return byPostalCode.entries.length;
+    }
+
+    /**
+     * Finds the postal codes starting with or containing the specified digits.
+     *
+     * @param substring the digits
+     * @return the matching postal codes, starting with the prefix matches
+     */
+    List<PostalCode> getPostalCodeMatches(String substring) {
+        List<PostalCode> result = new ArrayList<>();
+        byPostalCode.find(substring, result);
+        return result;
+    }
+
+    /**
+     * Finds the towns starting with, containing or being similar to the specified text.
+     *
+     * @param substring the text (in lower case)
+     * @return the matching postal codes, ranked by match quality
+     */
+    List<PostalCode> getTownMatches(String substring) {
+        List<PostalCode> result = new ArrayList<>();
+        byTown.find(substring, result);
+        if (result.size() >= MIN_PREFIX_MATCHES)
+            return result;
+
+        // accent- and case-insensitive matches
+        String folded = fold(substring);
+        byFoldedTown.find(folded, result);
+        if (result.size() >= MIN_PREFIX_MATCHES || folded.length() < MIN_FUZZY_LENGTH)
+            return result;
+
+        // similar town names (typing errors)
+        int maxDistance = folded.length() >= MIN_DISTANCE_2_LENGTH ? 2 : 1;
+        for (String town : foldedTownTree.search(folded, maxDistance)) {
+            byFoldedTown.findEqual(town, result);
+            if (result.size() >= MAX_SUGGESTED_ITEMS)
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Folds the text for accent- and case-insensitive matching.
+     * <p>
+     * Diacritics are removed, the text is converted to lower case
+     * and hyphens are replaced with spaces.
+     * </p>
+     *
+     * @param text the text
+     * @return the folded text
+     */
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char ch = decomposed.charAt(i);
+            if (Character.getType(ch) == Character.NON_SPACING_MARK)
+                continue;
+            sb.append(ch == '-' ? ' ' : Character.toLowerCase(ch));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Entries sorted by a key, with a trigram index of the keys
+     */
+    private static final class SortedKeys {
+
+        private final PostalCode[] entries;
+        private final String[] keys;
+        // sorted trigrams and for each of them, the ascending positions of the entries containing it
+        private final long[] trigrams;
+        private final int[][] postings;
+
+        SortedKeys(List<PostalCode> postalCodes, Function<PostalCode, String> keyFunction) {
+            entries = postalCodes.toArray(new PostalCode[0]);
+            Arrays.sort(entries, Comparator.comparing(keyFunction));
+            keys = new String[entries.length];
+            for (int i = 0; i < entries.length; i++)
+                keys[i] = keyFunction.apply(entries[i]);
+
+            // collect all (trigram, position) pairs and sort them
+            List<long[]> pairs = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                for (int j = 0; j + 3 <= key.length(); j++)
+                    pairs.add(new long[] { trigram(key, j), i });
+            }
+            pairs.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+            int numTrigrams = 0;
+            for (int i = 0; i < pairs.size(); i++)
+                if (i == 0 || pairs.get(i)[0] != pairs.get(i - 1)[0])
+                    numTrigrams++;
+
+            trigrams = new long[numTrigrams];
+            postings = new int[numTrigrams][];
+            int start = 0;
+            int t = 0;
+            while (start < pairs.size()) {
+                long tri = pairs.get(start)[0];
+                int end = start;
+                while (end < pairs.size() && pairs.get(end)[0] == tri)
+                    end++;
+                int[] positions = new int[end - start];
+                int count = 0;
+                for (int i = start; i < end; i++) {
+                    int position = (int) pairs.get(i)[1];
+                    if (count == 0 || positions[count - 1] != position)
+                        positions[count++] = position;
+                }
+                trigrams[t] = tri;
+                postings[t] = Arrays.copyOf(positions, count);
+                t++;
+                start = end;
+            }
+        }
+
+        /**
+         * Adds the entries with keys starting with or containing the substring to the result.
+         * <p>
+         * Entries already contained in the result are skipped.
+         * </p>
+         *
+         * @param substring the substring
+         * @param result    the result list
+         */
+        void find(String substring, List<PostalCode> result) {
+            // Search for keys starting with the substring first
+            int prefixStart = binarySearch(substring);
+            int prefixEnd = prefixStart;
+            int prefixCount = 0;
+            while (prefixEnd < keys.length && keys[prefixEnd].startsWith(substring)
+                    && result.size() < MAX_SUGGESTED_ITEMS) {
+                prefixCount += addIfAbsent(entries[prefixEnd], result);
+                prefixEnd++;
+            }
+
+            if (substring.length() <= 2 || prefixCount >= MIN_PREFIX_MATCHES || result.size() >= MAX_SUGGESTED_ITEMS)
+                return;
+
+            // Search for keys containing the substring, using the rarest trigram;
+            // prefix matches form the range [prefixStart, prefixEnd) and are skipped
+            int[] candidates = rarestTrigramPostings(substring);
+            for (int position : candidates) {
+                if (position >= prefixStart && position < prefixEnd)
+                    continue;
+                if (keys[position].contains(substring)) {
+                    addIfAbsent(entries[position], result);
+                    if (result.size() >= MAX_SUGGESTED_ITEMS)
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Adds the entries with the specified key to the result.
+         * <p>
+         * Entries already contained in the result are skipped.
+         * </p>
+         *
+         * @param key    the key
+         * @param result the result list
+         */
+        void findEqual(String key, List<PostalCode> result) {
+            for (int i = binarySearch(key); i < keys.length && keys[i].equals(key)
+                    && result.size() < MAX_SUGGESTED_ITEMS; i++)
+                addIfAbsent(entries[i], result);
+        }
+
+        private static int addIfAbsent(PostalCode postalCode, List<PostalCode> result) {
+            // the result is short, and a linear search is faster than any set
+            for (PostalCode pc : result) {
+                if (pc == postalCode)
+                    return 0;
+            }
+            result.add(postalCode);
+            return 1;
+        }
+
+        private int[] rarestTrigramPostings(String substring) {
+            int[] rarest = null;
+            for (int j = 0; j + 3 <= substring.length(); j++) {
+                int index = Arrays.binarySearch(trigrams, trigram(substring, j));
+                if (index < 0)
+                    return NO_POSTINGS;
+                if (rarest == null || postings[index].length < rarest.length)
+                    rarest = postings[index];
+            }
+            return rarest;
+        }
+
+        /**
+         * Searches for the first key equal to or greater than the specified key.
+         * <p>
+         * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
+         * matching element is returned if the the array contains several matching ones.
+         * </p>
+         *
+         * @param key the key to search for
+         * @return the index of the first matching element (if found) or the index where
+         * the element would need to be inserted to retain the order (if not found)
+         */
+        private int binarySearch(String key) {
+            int lower = 0;
+            int upper = keys.length;
+
+            while (lower < upper) {
+                int mid = (lower + upper) >>> 1;
+                int cmp = keys[mid].compareTo(key);
+
+                if (cmp < 0)
+                    lower = mid + 1;
+                else
+                    upper = mid;
+            }
+
+            return lower;
+        }
+
+        private static long trigram(String s, int offset) {
+            return ((long) s.charAt(offset) << 32) | ((long) s.charAt(offset + 1) << 16) | s.charAt(offset + 2);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary snapshot of the postal code data.
+ * <p>
+ * The snapshot allows the service to start with the data of the last successful
+ * download instead of downloading the official list first. The format is:
+ * </p>
+ * <ul>
+ *     <li>Magic "QRPC" and version (1 byte)</li>
+ *     <li>Number of entries (4 bytes, big endian)</li>
+ *     <li>For each entry: postal code and town, each as 2-byte length and UTF-8 bytes</li>
+ * </ul>
+ */
+final class PostalCodeSnapshot {
+
+    private static final byte[] MAGIC = { 'Q', 'R', 'P', 'C' };
+    private static final int VERSION = 1;
+
+    private PostalCodeSnapshot() {
+        // do not instantiate
+    }
+
+    /**
+     * Reads the postal codes from the snapshot file.
+     * <p>
+     * The file is memory-mapped.
+     * </p>
+     *
+     * @param path path of the snapshot file
+     * @return the postal codes
+     * @throws IOException thrown if the file cannot be read or has an invalid format
+     */
+    static List<PostalCode> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (byte b : MAGIC) {
+                if (buffer.get() != b)
+                    throw new IOException("Invalid postal code snapshot");
+            }
+            if (buffer.get() != VERSION)
+                throw new IOException("Unsupported postal code snapshot version");
+
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 4)
+                throw new IOException("Invalid postal code snapshot");
+            List<PostalCode> postalCodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String code = readString(buffer);
+                String town = readString(buffer);
+                postalCodes.add(new PostalCode(code, town));
+            }
+            return postalCodes;
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated postal code snapshot", e);
+        }
+    }
+
+    /**
+     * Writes the postal codes to the snapshot file.
+     * <p>
+     * The data is written to a temporary file first, which then replaces the snapshot
+     * file in an atomic operation. If writing fails, the temporary file is deleted.
+     * </p>
+     *
+     * @param path        path of the snapshot file
+     * @param postalCodes the postal codes
+     * @throws IOException thrown if the file cannot be written
+     */
+    static void write(Path path, List<PostalCode> postalCodes) throws IOException {
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                out.write(MAGIC);
+                out.write(VERSION);
+                out.writeInt(postalCodes.size());
+                for (PostalCode pc : postalCodes) {
+                    writeString(out, pc.code);
+                    writeString(out, pc.town);
+                }
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff)
+            throw new IOException("Value too long for postal code snapshot");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
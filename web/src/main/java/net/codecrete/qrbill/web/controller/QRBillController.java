@@ -7,13 +7,11 @@
 package net.codecrete.qrbill.web.controller;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import net.codecrete.qrbill.generator.Bill;
 import net.codecrete.qrbill.generator.GraphicsFormat;
 import net.codecrete.qrbill.generator.Language;
 import net.codecrete.qrbill.generator.MultilingualText;
 import net.codecrete.qrbill.generator.OutputSize;
-import net.codecrete.qrbill.generator.QRBill;
 import net.codecrete.qrbill.generator.QRBillValidationError;
 import net.codecrete.qrbill.generator.SeparatorType;
 import net.codecrete.qrbill.generator.ValidationResult;
@@ -23,28 +21,22 @@ import net.codecrete.qrbill.web.model.QrBill;
 import net.codecrete.qrbill.web.model.QrCodeInformation;
 import net.codecrete.qrbill.web.model.ValidationMessage;
 import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.NativeWebRequest;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 @RestController
 public class QRBillController implements BillApi {
@@ -53,15 +45,38 @@ public class QRBillController implements BillApi {
 
     private final NativeWebRequest request;
 
+    private final BillImageCache imageCache;
+
+    private final ServiceMetrics metrics;
+
+    private final RenderPool renderPool;
+
+    private final ConcurrencyLimiter renderLimiter;
+
+    private final ImageRequestCoalescer imageCoalescer;
+
     /**
      * Creates an instance.
      * <p>
      * Single constructor for Spring dependency injection.
      * </p>
+     * <p>
+     * The number of concurrent renderings is limited by the adaptive render limiter.
+     * If requests are handled on virtual threads, the bills are rendered on the bounded
+     * render pool so that the CPU-bound work cannot occupy more platform threads than
+     * there are processors.
+     * </p>
      */
-    public QRBillController(MessageLocalizer messageLocalizer, NativeWebRequest request) {
+    public QRBillController(MessageLocalizer messageLocalizer, NativeWebRequest request, BillImageCache imageCache,
+                            ServiceMetrics metrics, RenderPool renderPool, ConcurrencyLimiter renderLimiter,
+                            ImageRequestCoalescer imageCoalescer, @Value("${qrbill.virtual-threads}") boolean useVirtualThreads) {
         this.messageLocalizer = messageLocalizer;
         this.request = request;
+        this.imageCache = imageCache;
+        this.metrics = metrics;
+        this.renderPool = useVirtualThreads && VirtualThreads.isSupported() ? renderPool : null;
+        this.renderLimiter = renderLimiter;
+        this.imageCoalescer = imageCoalescer;
     }
 
     /**
@@ -74,7 +89,7 @@ public class QRBillController implements BillApi {
      */
     @Override
     public ResponseEntity<ValidationResponse> validateBill(QrBill qrBill) {
-        ValidationResult result = QRBill.validate(QrBillDTOConverter.fromDtoQrBill(qrBill));
+        ValidationResult result = metrics.validate(QrBillDTOConverter.fromDtoQrBill(qrBill));
         return new ResponseEntity<>(createValidationResponse(result), HttpStatus.OK);
     }
 
@@ -90,8 +105,8 @@ public class QRBillController implements BillApi {
     public ResponseEntity<ValidationResponse> decodeQRCode(QrCodeInformation qrCodeInformation) {
         ValidationResult result;
         try {
-            Bill bill = QRBill.decodeQrCodeText(qrCodeInformation.getText());
-            result = QRBill.validate(bill);
+            Bill bill = metrics.decodeQrCodeText(qrCodeInformation.getText());
+            result = metrics.validate(bill);
         } catch (QRBillValidationError e) {
             result = e.getValidationResult();
         }
@@ -99,6 +114,20 @@ public class QRBillController implements BillApi {
     }
 
     private ValidationResponse createValidationResponse(ValidationResult result) {
+        return createValidationResponse(result, messageLocalizer, metrics, LocaleContextHolder.getLocale());
+    }
+
+    /**
+     * Creates the validation response for the specified validation result.
+     *
+     * @param result           the validation result
+     * @param messageLocalizer the message localizer
+     * @param metrics          the service metrics
+     * @param locale           the locale for the messages
+     * @return the validation response
+     */
+    static ValidationResponse createValidationResponse(ValidationResult result, MessageLocalizer messageLocalizer,
+                                                       ServiceMetrics metrics, Locale locale) {
         // Get validated data
         Bill validatedBill = result.getCleanedBill();
 
@@ -109,16 +138,17 @@ public class QRBillController implements BillApi {
         if (result.hasMessages()) {
             List<ValidationMessage> messages
                     = QrBillDTOConverter.toDtoValidationMessageList(result.getValidationMessages());
-            messageLocalizer.addLocalMessages(messages);
+            messageLocalizer.addLocalMessages(messages, locale);
             response.setValidationMessages(messages);
         }
         response.setValidatedBill(QrBillDTOConverter.toDTOQrBill(validatedBill));
 
         // generate QR code text and bill ID
         if (!result.hasErrors()) {
-            String qrCodeText = QRBill.encodeQrCodeText(validatedBill);
+            String qrCodeText = result.getValidatedBill().getQrCodeText();
             response.setQrCodeText(qrCodeText);
-            response.setBillID(generateID(qrCodeText, QrBillDTOConverter.toDtoBillFormat(validatedBill.getFormat())));
+            response.setBillID(generateID(qrCodeText, QrBillDTOConverter.toDtoBillFormat(validatedBill.getFormat()),
+                    metrics));
         }
 
         return response;
@@ -136,15 +166,49 @@ public class QRBillController implements BillApi {
         Bill bill = QrBillDTOConverter.fromDtoQrBill(qrBill);
         setFormatDefaults(bill);
         updateForAdviceOnly(bill);
-        byte[] result = QRBill.generate(bill);
+        byte[] result = generate(bill);
         MediaType contentType = getContentType(bill.getFormat().getGraphicsFormat());
         return ResponseEntity.ok().contentType(contentType).body(new ByteArrayResource(result));
     }
 
-    private static CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(10, TimeUnit.DAYS);
+    private byte[] generate(Bill bill) {
+        if (renderPool == null)
+            return renderLimiter.call(() -> metrics.generate(bill));
+
+        ConcurrencyLimiter.Permit permit = renderLimiter.acquire();
+        try {
+            byte[] result = renderPool.call(() -> {
+                // the time spent in the pool's queue is not part of the render latency
+                permit.markStart();
+                return metrics.generate(bill);
+            });
+            permit.release(true);
+            return result;
+        } finally {
+            permit.release(false);
+        }
+    }
+
+    static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(10, TimeUnit.DAYS);
+
+    /** Request headers the image depends on (default language and graphics format) */
+    static final String[] IMAGE_VARY_HEADERS = { HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE };
 
     /**
      * Generates the QR bill as an SVG or PDF.
+     * <p>
+     * Generated images can be cached on disk (see {@link BillImageCache}). The cache key is
+     * derived from the request (bill ID, format overrides and the relevant request headers),
+     * so cached images are sent without decoding the bill ID.
+     * </p>
+     * <p>
+     * The cache key also serves as a strong ETag. If the request's {@code If-None-Match}
+     * header matches, status 304 is returned without decoding the ID or generating the image.
+     * </p>
+     * <p>
+     * Concurrent requests for the same image share a single rendering, and recent results
+     * are served from memory before the disk cache is checked (see {@link ImageRequestCoalescer}).
+     * </p>
      *
      * @param billID         the bill format (qrCodeOnly, a6Landscape, a5Landscape, a4Portrait)
      * @param outputSize     output size for QR bill (overrides the one specified in the *billID*, optional)
@@ -153,6 +217,36 @@ public class QRBillController implements BillApi {
      */
     @Override
     public ResponseEntity<Resource> getBillImage(String billID, String outputSize, String graphicsFormat) {
+        String cacheKey = imageCache.createKey(billID, outputSize, graphicsFormat,
+                String.valueOf(languageFromRequestHeader()), String.valueOf(graphicsFormatFromRequestHeader()));
+        String eTag = "\"" + cacheKey + "\"";
+        if (request.checkNotModified(eTag))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(IMAGE_CACHE_CONTROL)
+                    .varyBy(IMAGE_VARY_HEADERS)
+                    .build();
+
+        BillImage image = imageCoalescer.getRecent(cacheKey);
+        if (image == null)
+            image = imageCache.get(cacheKey);
+        if (image == null)
+            image = imageCoalescer.get(cacheKey, () -> {
+                Bill bill = decodeBill(billID, outputSize, graphicsFormat);
+                BillImage result = new BillImage(bill.getFormat().getGraphicsFormat(), generate(bill));
+                imageCache.put(cacheKey, result);
+                return result;
+            });
+
+        return ResponseEntity.ok()
+                .contentType(getContentType(image.getFormat()))
+                .eTag(eTag)
+                .cacheControl(IMAGE_CACHE_CONTROL)
+                .varyBy(IMAGE_VARY_HEADERS)
+                .body(new ByteArrayResource(image.getData()));
+    }
+
+    private Bill decodeBill(String billID, String outputSize, String graphicsFormat) {
         Bill bill;
         try {
             bill = decodeID(billID);
@@ -168,32 +262,26 @@ public class QRBillController implements BillApi {
         if (graphicsFormat != null)
             bill.getFormat().setGraphicsFormat(getGraphicsFormat(graphicsFormat));
         updateForAdviceOnly(bill);
-
-        byte[] result = QRBill.generate(bill);
-        MediaType contentType = getContentType(bill.getFormat().getGraphicsFormat());
-        return ResponseEntity.ok()
-                .contentType(contentType)
-                .cacheControl(IMAGE_CACHE_CONTROL)
-                .body(new ByteArrayResource(result));
+        return bill;
     }
 
-    private static OutputSize getOutputSize(String value) {
+    static OutputSize getOutputSize(String value) {
         BillFormat.OutputSizeEnum outputSizeEnum = BillFormat.OutputSizeEnum.fromValue(value);
         return OutputSize.valueOf(outputSizeEnum.name());
     }
 
-    private static GraphicsFormat getGraphicsFormat(String value) {
+    static GraphicsFormat getGraphicsFormat(String value) {
         BillFormat.GraphicsFormatEnum graphicsFormatEnum = BillFormat.GraphicsFormatEnum.fromValue(value);
         return GraphicsFormat.valueOf(graphicsFormatEnum.name());
     }
 
     private static final MediaType MEDIA_TYPE_SVG = MediaType.valueOf("image/svg+xml;charset=UTF-8");
 
-    private static MediaType getContentType(GraphicsFormat graphicsFormat) {
+    static MediaType getContentType(GraphicsFormat graphicsFormat) {
         return graphicsFormat == GraphicsFormat.SVG ? MEDIA_TYPE_SVG : MediaType.APPLICATION_PDF;
     }
 
-    private void updateForAdviceOnly(Bill bill) {
+    static void updateForAdviceOnly(Bill bill) {
         if (bill.getAmount() == null || BigDecimal.ZERO.compareTo(bill.getAmount()) != 0)
             return;
 
@@ -206,79 +294,51 @@ public class QRBillController implements BillApi {
     /**
      * Generates an ID that encodes the entire bill data.
      * <p>
-     * The ID is the Base 64 (URL safe version) of the compressed (deflate) JSON
-     * data consisting of version, language and the text string would be embedded in
-     * the QR code.
-     * </p>
-     * <p>
-     * The ID is made URL safe by using the URL-safe RFC4648 Base 64 encoding and
-     * replacing all equal signs (=) with tildes (~).
+     * The ID consists of the bill format and the text embedded in the QR code
+     * in a compact binary format (see {@link BillIdCodec}).
      * </p>
      *
      * @param qrCodeText the QR code text
      * @param billFormat the billFormat
+     * @param metrics    the service metrics
      * @return the generated ID
      */
-    private String generateID(String qrCodeText, BillFormat billFormat) {
-
-        BillPayload payload = new BillPayload();
-        payload.setVersion(1);
-        payload.setFormat(billFormat);
-        payload.setQrText(qrCodeText);
-
-        Base64.Encoder base64 = Base64.getUrlEncoder();
-        byte[] encodedData;
-        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-             OutputStream intermediate = base64.wrap(buffer);
-             DeflaterOutputStream head = new DeflaterOutputStream(intermediate)) {
-
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(head, payload);
-            head.flush();
-            encodedData = buffer.toByteArray();
-
-        } catch (IOException e) {
-            throw new RuntimeException(e); // NOSONAR
-        }
-
-        String id = new String(encodedData, StandardCharsets.US_ASCII);
-        return id.replace('=', '~');
+    private static String generateID(String qrCodeText, BillFormat billFormat, ServiceMetrics metrics) {
+        return metrics.encodeBillId(qrCodeText, billFormat);
     }
 
     /**
      * Decodes an bill ID and returns the bill data
      * <p>
      * The bill ID is assumed to have been generated by
-     * {@link #generateID(String, BillFormat)}.
+     * {@link #generateID(String, BillFormat, ServiceMetrics)} or by an earlier version of it.
      * </p>
      *
      * @param id the ID
      * @return the bill data
      */
     private Bill decodeID(String id) {
-
-        id = id.replace('~', '=');
-        byte[] encodedData = id.getBytes(StandardCharsets.US_ASCII);
-
-        Base64.Decoder base64 = Base64.getUrlDecoder();
-        BillPayload payload;
-        try (InputStream dataStream = new ByteArrayInputStream(encodedData);
-             InputStream intermediate = base64.wrap(dataStream);
-             InflaterInputStream head = new InflaterInputStream(intermediate)) {
-
-            ObjectMapper mapper = new ObjectMapper();
-            payload = mapper.readValue(head, BillPayload.class);
-
-        } catch (IOException e) {
+        BillPayload payload = metrics.decodeBillId(id);
+        if (payload == null)
             return null; // invalid ID
-        }
 
-        Bill bill = QRBill.decodeQrCodeText(payload.getQrText());
+        Bill bill = metrics.decodeQrCodeText(payload.getQrText());
         bill.setFormat(QrBillDTOConverter.fromDtoBillFormat(payload.getFormat()));
         return bill;
     }
 
     private void setFormatDefaults(Bill bill) {
+        setFormatDefaults(bill, languageFromRequestHeader(), graphicsFormatFromRequestHeader());
+    }
+
+    /**
+     * Sets the default values for all format fields that have not been set.
+     *
+     * @param bill                  the bill data
+     * @param defaultLanguage       language to use if none is set (or {@code null} for English)
+     * @param defaultGraphicsFormat graphics format to use if none is set (or {@code null} for SVG)
+     */
+    static void setFormatDefaults(Bill bill, Language defaultLanguage, GraphicsFormat defaultGraphicsFormat) {
         net.codecrete.qrbill.generator.BillFormat format = bill.getFormat();
         OutputSize outputSize = null;
         Language language = null;
@@ -297,7 +357,7 @@ public class QRBillController implements BillApi {
         if (outputSize == null)
             outputSize = OutputSize.A4_PORTRAIT_SHEET;
         if (language == null)
-            language = languageFromRequestHeader();
+            language = defaultLanguage;
         if (language == null)
             language = Language.EN;
         if (separatorType == null)
@@ -306,7 +366,7 @@ public class QRBillController implements BillApi {
             fontFamily = "Helvetica,Arial,\"Liberation Sans\"";
 
         if (graphicsFormat == null)
-            graphicsFormat = graphicsFormatFromRequestHeader();
+            graphicsFormat = defaultGraphicsFormat;
         if (graphicsFormat == null)
             graphicsFormat = GraphicsFormat.SVG;
 
@@ -322,7 +382,17 @@ public class QRBillController implements BillApi {
     }
 
     private GraphicsFormat graphicsFormatFromRequestHeader() {
-        for (MediaType mediaType : MediaType.parseMediaTypes(request.getHeader("Accept"))) {
+        return graphicsFormatFromHeader(request.getHeader("Accept"));
+    }
+
+    /**
+     * Determines the graphics format from the value of an {@code Accept} header.
+     *
+     * @param mediaTypes header value (or {@code null})
+     * @return the first supported graphics format, or {@code null} if there is none
+     */
+    static GraphicsFormat graphicsFormatFromHeader(String mediaTypes) {
+        for (MediaType mediaType : MediaType.parseMediaTypes(mediaTypes)) {
             if (mediaType.isCompatibleWith(MediaType.valueOf("image/svg+xml")))
                 return GraphicsFormat.SVG;
             if (mediaType.isCompatibleWith(MediaType.valueOf("application/pdf")))
@@ -333,7 +403,16 @@ public class QRBillController implements BillApi {
     }
 
     private Language languageFromRequestHeader() {
-        String languages = request.getHeader("Accept-Language");
+        return languageFromHeader(request.getHeader("Accept-Language"));
+    }
+
+    /**
+     * Determines the bill language from the value of an {@code Accept-Language} header.
+     *
+     * @param languages header value (or {@code null})
+     * @return the first supported language, or {@code null} if there is none
+     */
+    static Language languageFromHeader(String languages) {
         if (languages == null)
             return null;
 
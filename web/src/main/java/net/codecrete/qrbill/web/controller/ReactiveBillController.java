@@ -0,0 +1,277 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.ValidationResult;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.QrCodeInformation;
+import net.codecrete.qrbill.web.model.ValidationMessage;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import net.codecrete.qrbill.web.reactive.api.BillApi;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.MessageSource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * WebFlux variant of the bill API.
+ * <p>
+ * Implements the same contract as {@link QRBillController} but never blocks the
+ * event loop: the bill generation is run on the bounded {@link RenderPool} and the image
+ * cache is accessed on the elastic scheduler for blocking I/O. The response is written
+ * without holding a thread, so slow clients downloading large PDFs tie up connections
+ * but no threads.
+ * </p>
+ * <p>
+ * If the adaptive render limit is reached or the render pool is saturated, the request
+ * is answered with status 503 and a {@code Retry-After} header instead of being queued
+ * without limit. As the event loop must not block, requests do not wait for a permit
+ * of the render limiter.
+ * </p>
+ * <p>
+ * The controller is only active in the reactive variant of the service
+ * (see {@link net.codecrete.qrbill.web.reactive.ReactiveApplication}).
+ * </p>
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveBillController implements BillApi {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final MessageLocalizer messageLocalizer;
+
+    private final BillImageCache imageCache;
+
+    private final ServiceMetrics metrics;
+
+    private final RenderPool renderPool;
+
+    private final ConcurrencyLimiter renderLimiter;
+
+    private final ImageRequestCoalescer imageCoalescer;
+
+    /**
+     * Creates an instance.
+     * <p>
+     * Single constructor for Spring dependency injection.
+     * </p>
+     */
+    public ReactiveBillController(MessageSource messageSource, BillImageCache imageCache, ServiceMetrics metrics,
+                                  RenderPool renderPool, ConcurrencyLimiter renderLimiter,
+                                  ImageRequestCoalescer imageCoalescer) {
+        this.messageLocalizer = new MessageLocalizer(messageSource);
+        this.imageCache = imageCache;
+        this.metrics = metrics;
+        this.renderPool = renderPool;
+        this.renderLimiter = renderLimiter;
+        this.imageCoalescer = imageCoalescer;
+    }
+
+    /**
+     * Validates the QR bill data
+     *
+     * @param qrBill   the QR bill data
+     * @param exchange the server exchange
+     * @return returns the validation result
+     * @see QRBillController#validateBill(QrBill)
+     */
+    @Override
+    public Mono<ResponseEntity<ValidationResponse>> validateBill(Mono<QrBill> qrBill, ServerWebExchange exchange) {
+        return qrBill.map(bill -> {
+            ValidationResult result = metrics.validate(QrBillDTOConverter.fromDtoQrBill(bill));
+            return ResponseEntity.ok(createValidationResponse(result, exchange));
+        });
+    }
+
+    /**
+     * Decodes the text from the QR code and validates the information.
+     *
+     * @param qrCodeInformation the text from the QR code
+     * @param exchange          the server exchange
+     * @return returns the validation result
+     * @see QRBillController#decodeQRCode(QrCodeInformation)
+     */
+    @Override
+    public Mono<ResponseEntity<ValidationResponse>> decodeQRCode(Mono<QrCodeInformation> qrCodeInformation,
+                                                                 ServerWebExchange exchange) {
+        return qrCodeInformation.map(information -> {
+            ValidationResult result;
+            try {
+                Bill bill = metrics.decodeQrCodeText(information.getText());
+                result = metrics.validate(bill);
+            } catch (QRBillValidationError e) {
+                result = e.getValidationResult();
+            }
+            return ResponseEntity.ok(createValidationResponse(result, exchange));
+        });
+    }
+
+    private ValidationResponse createValidationResponse(ValidationResult result, ServerWebExchange exchange) {
+        return QRBillController.createValidationResponse(result, messageLocalizer, metrics, getLocale(exchange));
+    }
+
+    /**
+     * Generates the QR bill as an SVG or PDF.
+     *
+     * @param qrBill   the QR bill data
+     * @param exchange the server exchange
+     * @return the generated bill
+     * @see QRBillController#generateBill(QrBill)
+     */
+    @Override
+    public Mono<ResponseEntity<Resource>> generateBill(Mono<QrBill> qrBill, ServerWebExchange exchange) {
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        Language language = QRBillController.languageFromHeader(headers.getFirst(HttpHeaders.ACCEPT_LANGUAGE));
+        GraphicsFormat graphicsFormat = QRBillController.graphicsFormatFromHeader(headers.getFirst(HttpHeaders.ACCEPT));
+
+        return qrBill.flatMap(dto -> {
+            Bill bill = QrBillDTOConverter.fromDtoQrBill(dto);
+            QRBillController.setFormatDefaults(bill, language, graphicsFormat);
+            QRBillController.updateForAdviceOnly(bill);
+            return render(() -> metrics.generate(bill))
+                    .map(result -> ResponseEntity.ok()
+                            .contentType(QRBillController.getContentType(bill.getFormat().getGraphicsFormat()))
+                            .body(new ByteArrayResource(result)));
+        });
+    }
+
+    /**
+     * Generates the QR bill as an SVG or PDF.
+     * <p>
+     * Caching, ETag handling and request coalescing are the same as for {@link QRBillController}.
+     * </p>
+     *
+     * @param billID         the bill format (qrCodeOnly, a6Landscape, a5Landscape, a4Portrait)
+     * @param outputSize     output size for QR bill (overrides the one specified in the *billID*, optional)
+     * @param graphicsFormat graphics format for QR bill (overrides the one specified in the *billID*, optional)
+     * @param exchange       the server exchange
+     * @return the generated bill
+     * @see QRBillController#getBillImage(String, String, String)
+     */
+    @Override
+    public Mono<ResponseEntity<Resource>> getBillImage(String billID, String outputSize, String graphicsFormat,
+                                                       ServerWebExchange exchange) {
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        Language defaultLanguage = QRBillController.languageFromHeader(headers.getFirst(HttpHeaders.ACCEPT_LANGUAGE));
+        GraphicsFormat defaultGraphicsFormat
+                = QRBillController.graphicsFormatFromHeader(headers.getFirst(HttpHeaders.ACCEPT));
+        String cacheKey = imageCache.createKey(billID, outputSize, graphicsFormat,
+                String.valueOf(defaultLanguage), String.valueOf(defaultGraphicsFormat));
+        String eTag = "\"" + cacheKey + "\"";
+        if (exchange.checkNotModified(eTag))
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(QRBillController.IMAGE_CACHE_CONTROL)
+                    .varyBy(QRBillController.IMAGE_VARY_HEADERS)
+                    .build());
+
+        BillImage recentImage = imageCoalescer.getRecent(cacheKey);
+        if (recentImage != null)
+            return Mono.just(imageResponse(recentImage, eTag));
+
+        return Mono.fromCallable(() -> imageCache.get(cacheKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(imageCoalescer.getAsync(cacheKey, () -> {
+                    Bill bill = decodeBill(billID, outputSize, graphicsFormat, defaultLanguage, defaultGraphicsFormat);
+                    return render(() -> {
+                        BillImage result = new BillImage(bill.getFormat().getGraphicsFormat(), metrics.generate(bill));
+                        imageCache.put(cacheKey, result);
+                        return result;
+                    });
+                }))
+                .map(image -> imageResponse(image, eTag));
+    }
+
+    private <T> Mono<T> render(Callable<T> task) {
+        return Mono.defer(() -> {
+            ConcurrencyLimiter.Permit permit = renderLimiter.tryAcquire();
+            return renderPool.submit(() -> {
+                        // the time spent in the pool's queue is not part of the render latency
+                        permit.markStart();
+                        return task.call();
+                    })
+                    .doOnSuccess(result -> permit.release(true))
+                    .doFinally(signal -> permit.release(false));
+        });
+    }
+
+    private static ResponseEntity<Resource> imageResponse(BillImage image, String eTag) {
+        return ResponseEntity.ok()
+                .contentType(QRBillController.getContentType(image.getFormat()))
+                .eTag(eTag)
+                .cacheControl(QRBillController.IMAGE_CACHE_CONTROL)
+                .varyBy(QRBillController.IMAGE_VARY_HEADERS)
+                .body(new ByteArrayResource(image.getData()));
+    }
+
+    private Bill decodeBill(String billID, String outputSize, String graphicsFormat, Language defaultLanguage,
+                            GraphicsFormat defaultGraphicsFormat) {
+        Bill bill;
+        try {
+            BillPayload payload = metrics.decodeBillId(billID);
+            if (payload == null)
+                throw new BadRequestException("Invalid bill ID. Validate bill data to get a valid ID");
+            bill = metrics.decodeQrCodeText(payload.getQrText());
+            bill.setFormat(QrBillDTOConverter.fromDtoBillFormat(payload.getFormat()));
+            QRBillController.setFormatDefaults(bill, defaultLanguage, defaultGraphicsFormat);
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid bill ID. Validate bill data to get a valid ID");
+        }
+
+        if (outputSize != null)
+            bill.getFormat().setOutputSize(QRBillController.getOutputSize(outputSize));
+        if (graphicsFormat != null)
+            bill.getFormat().setGraphicsFormat(QRBillController.getGraphicsFormat(graphicsFormat));
+        QRBillController.updateForAdviceOnly(bill);
+        return bill;
+    }
+
+    @ExceptionHandler(QRBillValidationError.class)
+    ResponseEntity<List<ValidationMessage>> handleValidationError(QRBillValidationError ex,
+                                                                  ServerWebExchange exchange) {
+        List<ValidationMessage> messages
+                = QrBillDTOConverter.toDtoValidationMessageList(ex.getValidationResult().getValidationMessages());
+        messageLocalizer.addLocalMessages(messages, getLocale(exchange));
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(messages);
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    ResponseEntity<String> handleBadRequestException(BadRequestException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    ResponseEntity<String> handleOverload() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body("Server overloaded. Retry later.");
+    }
+
+    private static Locale getLocale(ServerWebExchange exchange) {
+        Locale locale = exchange.getLocaleContext().getLocale();
+        return locale != null ? locale : Locale.getDefault();
+    }
+}
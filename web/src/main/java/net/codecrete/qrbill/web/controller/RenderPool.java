@@ -0,0 +1,137 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool for CPU-bound rendering.
+ * <p>
+ * The pool has a fixed number of threads and a bounded queue. If all threads are busy
+ * and the queue is full, new tasks are rejected immediately instead of piling up. The
+ * rejection ({@link RejectedExecutionException}) is meant to be reported to the client
+ * as a temporary overload so that the latency of accepted requests stays predictable.
+ * </p>
+ */
+public class RenderPool {
+
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threads       number of threads (0 for the number of available processors)
+     * @param queueCapacity maximum number of tasks waiting for a thread (0 for no queueing)
+     */
+    public RenderPool(int threads, int queueCapacity) {
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                new RenderThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        scheduler = Schedulers.fromExecutorService(executor, "qrbill-render");
+    }
+
+    /**
+     * Gets the number of threads.
+     *
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Gets the number of tasks waiting for a thread.
+     *
+     * @return the number of tasks
+     */
+    public int getQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Runs the task on the pool.
+     * <p>
+     * The task is submitted when the result is subscribed to. If the pool is saturated,
+     * the result fails with a {@link RejectedExecutionException}.
+     * </p>
+     *
+     * @param task the task
+     * @param <T>  result type
+     * @return the result
+     */
+    public <T> Mono<T> submit(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(scheduler);
+    }
+
+    /**
+     * Runs the task on the pool and waits for the result.
+     * <p>
+     * Meant for callers running on virtual threads: the blocking I/O stays on the
+     * calling thread and only the CPU-bound part occupies a platform thread.
+     * If the pool is saturated, a {@link RejectedExecutionException} is thrown
+     * immediately.
+     * </p>
+     *
+     * @param task the task
+     * @param <T>  result type
+     * @return the result
+     */
+    public <T> T call(Callable<T> task) {
+        Future<T> future = executor.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stops the thread pool.
+     */
+    public void shutdown() {
+        scheduler.dispose();
+        executor.shutdownNow();
+    }
+
+    private static class RenderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "qrbill-render-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
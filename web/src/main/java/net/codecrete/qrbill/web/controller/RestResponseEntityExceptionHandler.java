@@ -18,6 +18,7 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionHandler {
@@ -47,6 +48,14 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
         return handleExceptionInternal(ex, ex.getMessage(), new HttpHeaders(), HttpStatus.BAD_REQUEST, request);
     }
 
+    @ExceptionHandler(RejectedExecutionException.class)
+    protected ResponseEntity<Object> handleOverload(RejectedExecutionException ex, WebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return handleExceptionInternal(ex, "Server overloaded. Retry later.", headers,
+                HttpStatus.SERVICE_UNAVAILABLE, request);
+    }
+
     @ExceptionHandler(HttpMessageConversionException.class)
     protected ResponseEntity<Object> messageConversionExceptionHandler(HttpMessageConversionException ex, WebRequest request) {
         Throwable cause = ex;
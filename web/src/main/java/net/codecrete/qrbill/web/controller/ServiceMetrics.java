@@ -0,0 +1,288 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.codecrete.qrbill.canvas.Canvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillValidationError;
+import net.codecrete.qrbill.generator.ValidatedBill;
+import net.codecrete.qrbill.generator.ValidationResult;
+import net.codecrete.qrbill.web.model.BillFormat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Instrumented access to the QR bill library and the postal code data.
+ * <p>
+ * The following meters are recorded:
+ * </p>
+ * <ul>
+ *     <li>{@code qrbill.validate}: validation time, tagged with the outcome</li>
+ *     <li>{@code qrbill.generate}: generation time, tagged with graphics format, output size and language</li>
+ *     <li>{@code qrbill.generate.output}: size of the generated SVG or PDF data (histogram)</li>
+ *     <li>{@code qrbill.qrcode.version}: QR code version chosen by the encoder (histogram)</li>
+ *     <li>{@code qrbill.draw}: time for drawing a bill onto a multipage document</li>
+ *     <li>{@code qrbill.decode}: time for decoding QR code texts, tagged with the outcome</li>
+ *     <li>{@code qrbill.billid}: time for encoding and decoding bill IDs</li>
+ *     <li>{@code qrbill.postalcodes.suggest}: time for postal code suggestions, tagged with
+ *     the query type</li>
+ * </ul>
+ * <p>
+ * The generation meters are registered on first use of each combination of graphics format,
+ * output size and language. All other meters have a fixed set of tags and are registered upfront.
+ * In both cases, the hot paths neither look up nor allocate meters once they are registered.
+ * </p>
+ */
+public final class ServiceMetrics {
+
+    private static final String OUTCOME = "outcome";
+
+    private static final int MAX_QR_CODE_VERSION = 40;
+
+    private static final GraphicsFormat[] GRAPHICS_FORMATS = GraphicsFormat.values();
+    private static final OutputSize[] OUTPUT_SIZES = OutputSize.values();
+    private static final Language[] LANGUAGES = Language.values();
+
+    private final MeterRegistry registry;
+    private final Timer validValidationTimer;
+    private final Timer invalidValidationTimer;
+    // indexed by graphics format, output size and language; registered on first use
+    private final AtomicReferenceArray<GenerationMeters> generationMeters;
+    private final DistributionSummary qrCodeVersionSummary;
+    private final Timer drawTimer;
+    private final Timer validDecodeTimer;
+    private final Timer invalidDecodeTimer;
+    private final Timer billIdEncodeTimer;
+    private final Timer billIdDecodeTimer;
+    private final Timer postalCodeSuggestTimer;
+    private final Timer townSuggestTimer;
+
+    /**
+     * Creates a new instance registering its meters with the specified registry.
+     *
+     * @param registry the meter registry
+     */
+    public ServiceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        validValidationTimer = timer(registry, "qrbill.validate", "Bill validation", OUTCOME, "valid");
+        invalidValidationTimer = timer(registry, "qrbill.validate", "Bill validation", OUTCOME, "invalid");
+
+        generationMeters = new AtomicReferenceArray<>(GRAPHICS_FORMATS.length * OUTPUT_SIZES.length
+                * LANGUAGES.length);
+
+        qrCodeVersionSummary = DistributionSummary.builder("qrbill.qrcode.version")
+                .description("QR code version")
+                .minimumExpectedValue(1L)
+                .maximumExpectedValue((long) MAX_QR_CODE_VERSION)
+                .publishPercentileHistogram()
+                .register(registry);
+        drawTimer = timer(registry, "qrbill.draw", "Drawing bill onto multipage document");
+        validDecodeTimer = timer(registry, "qrbill.decode", "QR code text decoding", OUTCOME, "valid");
+        invalidDecodeTimer = timer(registry, "qrbill.decode", "QR code text decoding", OUTCOME, "invalid");
+        billIdEncodeTimer = timer(registry, "qrbill.billid", "Bill ID encoding and decoding", "operation", "encode");
+        billIdDecodeTimer = timer(registry, "qrbill.billid", "Bill ID encoding and decoding", "operation", "decode");
+        postalCodeSuggestTimer = timer(registry, "qrbill.postalcodes.suggest", "Postal code suggestions",
+                "query", "postal.code");
+        townSuggestTimer = timer(registry, "qrbill.postalcodes.suggest", "Postal code suggestions",
+                "query", "town");
+    }
+
+    /**
+     * Validates the bill data.
+     *
+     * @param bill the bill data
+     * @return the validation result
+     * @see QRBill#validate(Bill)
+     */
+    ValidationResult validate(Bill bill) {
+        long start = System.nanoTime();
+        ValidationResult result = QRBill.validate(bill);
+        record(result.hasErrors() ? invalidValidationTimer : validValidationTimer, start);
+        return result;
+    }
+
+    /**
+     * Validates the bill data and generates the QR bill.
+     * <p>
+     * Validation and generation are recorded separately.
+     * </p>
+     *
+     * @param bill the bill data
+     * @return the generated QR bill
+     * @throws QRBillValidationError thrown if the bill data does not validate
+     * @see QRBill#generate(Bill)
+     */
+    byte[] generate(Bill bill) {
+        ValidationResult result = validate(bill);
+        if (result.hasErrors())
+            throw new QRBillValidationError(result);
+        return generate(result.getValidatedBill());
+    }
+
+    /**
+     * Generates the QR bill from validated bill data.
+     *
+     * @param bill the validated bill data
+     * @return the generated QR bill
+     * @see QRBill#generate(ValidatedBill)
+     */
+    byte[] generate(ValidatedBill bill) {
+        long start = System.nanoTime();
+        byte[] result = QRBill.generate(bill);
+        net.codecrete.qrbill.generator.BillFormat format = bill.getFormat();
+        GenerationMeters meters = generationMeters(format.getGraphicsFormat(), format.getOutputSize(),
+                format.getLanguage());
+        record(meters.timer, start);
+        meters.outputSize.record(result.length);
+        qrCodeVersionSummary.record(bill.getQrCodeVersion());
+        return result;
+    }
+
+    /**
+     * Draws the QR bill from validated bill data onto the canvas.
+     *
+     * @param bill   the validated bill data
+     * @param canvas the canvas
+     * @see QRBill#draw(ValidatedBill, Canvas)
+     */
+    void draw(ValidatedBill bill, Canvas canvas) {
+        long start = System.nanoTime();
+        QRBill.draw(bill, canvas);
+        record(drawTimer, start);
+        qrCodeVersionSummary.record(bill.getQrCodeVersion());
+    }
+
+    /**
+     * Decodes the text embedded in a QR code.
+     *
+     * @param text the QR code text
+     * @return the decoded bill data
+     * @throws QRBillValidationError thrown if the text is invalid
+     * @see QRBill#decodeQrCodeText(String)
+     */
+    Bill decodeQrCodeText(String text) {
+        long start = System.nanoTime();
+        try {
+            Bill bill = QRBill.decodeQrCodeText(text);
+            record(validDecodeTimer, start);
+            return bill;
+        } catch (QRBillValidationError e) {
+            record(invalidDecodeTimer, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes a bill ID.
+     *
+     * @param qrCodeText the QR code text
+     * @param billFormat the bill format
+     * @return the bill ID
+     * @see BillIdCodec#encode(String, BillFormat)
+     */
+    String encodeBillId(String qrCodeText, BillFormat billFormat) {
+        long start = System.nanoTime();
+        String id = BillIdCodec.encode(qrCodeText, billFormat);
+        record(billIdEncodeTimer, start);
+        return id;
+    }
+
+    /**
+     * Decodes a bill ID.
+     *
+     * @param id the bill ID
+     * @return the decoded payload, or {@code null} if the ID is invalid
+     * @see BillIdCodec#decode(String)
+     */
+    BillPayload decodeBillId(String id) {
+        long start = System.nanoTime();
+        try {
+            return BillIdCodec.decode(id);
+        } finally {
+            record(billIdDecodeTimer, start);
+        }
+    }
+
+    /**
+     * Suggests postal codes and towns.
+     *
+     * @param postalCodeData the postal code data
+     * @param country        the country code
+     * @param substring      the query
+     * @return the suggested postal codes
+     * @see PostalCodeData#suggestPostalCodes(String, String)
+     */
+    List<PostalCodeData.PostalCode> suggestPostalCodes(PostalCodeData postalCodeData, String country,
+                                                         String substring) {
+        long start = System.nanoTime();
+        List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes(country, substring);
+        boolean isPostalCode = !substring.isEmpty() && Character.isDigit(substring.charAt(0));
+        record(isPostalCode ? postalCodeSuggestTimer : townSuggestTimer, start);
+        return result;
+    }
+
+    private GenerationMeters generationMeters(GraphicsFormat graphicsFormat, OutputSize outputSize,
+                                              Language language) {
+        int index = (graphicsFormat.ordinal() * OUTPUT_SIZES.length + outputSize.ordinal()) * LANGUAGES.length
+                + language.ordinal();
+        GenerationMeters meters = generationMeters.get(index);
+        if (meters == null) {
+            // registering is idempotent, so concurrent first uses get the same meters
+            meters = new GenerationMeters(registry, graphicsFormat, outputSize, language);
+            generationMeters.set(index, meters);
+        }
+        return meters;
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Meters for the generation of bills with a specific graphics format, output size and language
+     */
+    private static class GenerationMeters {
+        private final Timer timer;
+        private final DistributionSummary outputSize;
+
+        GenerationMeters(MeterRegistry registry, GraphicsFormat graphicsFormat, OutputSize outputSize,
+                         Language language) {
+            String[] tags = {
+                    "format", graphicsFormat.name(),
+                    "output.size", outputSize.name(),
+                    "language", language.name()
+            };
+            timer = Timer.builder("qrbill.generate")
+                    .description("Bill generation")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.outputSize = DistributionSummary.builder("qrbill.generate.output")
+                    .description("Size of generated bill")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
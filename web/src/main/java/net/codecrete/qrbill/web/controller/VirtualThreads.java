@@ -0,0 +1,92 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.controller;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads.
+ * <p>
+ * Virtual threads are available from Java 21 on. As the service is built for Java 8,
+ * the API is accessed by reflection.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookUpMethod(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = lookUpMethod("java.lang.Thread$Builder", "name",
+            String.class, long.class);
+    private static final Method BUILDER_FACTORY = lookUpMethod("java.lang.Thread$Builder", "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = lookUpMethod(Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean IS_SUPPORTED = checkSupport();
+
+    private VirtualThreads() {
+        // do not instantiate
+    }
+
+    /**
+     * Indicates if the JVM supports virtual threads.
+     *
+     * @return {@code true} if they are supported
+     */
+    public static boolean isSupported() {
+        return IS_SUPPORTED;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @param namePrefix prefix of the thread names (a counter is appended)
+     * @return the executor
+     * @throws UnsupportedOperationException thrown if the JVM does not support virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (!IS_SUPPORTED)
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads cannot be created", e);
+        }
+    }
+
+    private static boolean checkSupport() {
+        if (OF_VIRTUAL == null || BUILDER_NAME == null || BUILDER_FACTORY == null
+                || NEW_THREAD_PER_TASK_EXECUTOR == null)
+            return false;
+        try {
+            // fails if virtual threads are a disabled preview feature (Java 19 and 20)
+            OF_VIRTUAL.invoke(null);
+            return true;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
+
+    private static Method lookUpMethod(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return lookUpMethod(Class.forName(className), name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method lookUpMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
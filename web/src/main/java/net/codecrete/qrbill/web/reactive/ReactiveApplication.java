@@ -0,0 +1,39 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.reactive;
+
+import net.codecrete.qrbill.web.ServiceConfig;
+import net.codecrete.qrbill.web.controller.ReactiveBillController;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Alternative entry point running the bill API on Spring WebFlux (Netty).
+ * <p>
+ * Only the bill API ({@code /bill/...}) is provided. It is started from the service JAR with:
+ * </p>
+ * <pre>
+ * java -Dloader.main=net.codecrete.qrbill.web.reactive.ReactiveApplication \
+ *     -cp qrbill-service.jar org.springframework.boot.loader.PropertiesLauncher
+ * </pre>
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Import({ ServiceConfig.class, ReactiveServiceConfig.class, ReactiveBillController.class })
+public class ReactiveApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .run(args);
+    }
+}
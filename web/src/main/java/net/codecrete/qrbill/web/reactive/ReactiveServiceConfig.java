@@ -0,0 +1,50 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.reactive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.method.HandlerTypePredicate;
+import org.springframework.web.reactive.config.PathMatchConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Configuration of the WebFlux variant of the service.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServiceConfig implements WebFluxConfigurer {
+
+    private final String basePath;
+
+    /**
+     * Creates an instance.
+     * <p>
+     * The API is served under the same base path as the servlet variant.
+     * </p>
+     *
+     * @param basePath the base path
+     */
+    public ReactiveServiceConfig(@Value("${server.servlet.context-path}") String basePath) {
+        this.basePath = basePath;
+    }
+
+    @Bean
+    public NettyReactiveWebServerFactory reactiveWebServerFactory() {
+        // use Netty even though Tomcat is on the classpath as well
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Override
+    public void configurePathMatching(PathMatchConfigurer configurer) {
+        configurer.addPathPrefix(basePath, HandlerTypePredicate.forAnnotation(RestController.class));
+    }
+}
@@ -0,0 +1,177 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.codecrete.qrbill.web.model.BillFormat;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationMessage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for batch generation API (ZIP and multipage PDF)
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DisplayName("Batch generation")
+class BatchGenerationTests {
+
+    private static final MediaType MEDIA_TYPE_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+    private final TestRestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    BatchGenerationTests(@Autowired TestRestTemplate template, @Autowired ObjectMapper objectMapper) {
+        restTemplate = template;
+        this.objectMapper = objectMapper;
+    }
+
+    @Test
+    void zipFromJsonArray() throws IOException {
+        QrBill invalidBill = SampleData.createBill1();
+        invalidBill.getCreditor().setTown(null);
+        List<QrBill> bills = Arrays.asList(SampleData.createBill1(), SampleData.createBill2(), invalidBill);
+
+        byte[] response = restTemplate.postForObject("/bill/batch/zip", bills, byte[].class);
+
+        assertNotNull(response);
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                String text = new String(readAll(zip), StandardCharsets.UTF_8);
+                if (entry.getName().endsWith(".svg"))
+                    assertTrue(text.indexOf("<svg") > 0);
+                else
+                    assertTrue(text.contains("\"field\":\"creditor.town\""));
+            }
+        }
+        assertEquals(Arrays.asList("bill-00001.svg", "bill-00002.svg", "bill-00003-errors.json"), names);
+    }
+
+    @Test
+    void zipWithPdfFromNdjson() throws IOException {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PDF);
+
+        byte[] response = postNdjson("/bill/batch/zip", bill, SampleData.createBill2(), bill, byte[].class).getBody();
+
+        assertNotNull(response);
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                byte[] data = readAll(zip);
+                if (entry.getName().endsWith(".pdf"))
+                    assertEquals("%PDF", new String(data, 0, 4, StandardCharsets.US_ASCII));
+            }
+        }
+        assertEquals(Arrays.asList("bill-00001.pdf", "bill-00002.svg", "bill-00003.pdf"), names);
+    }
+
+    @Test
+    void multipagePdf() throws IOException {
+        QrBill bill = SampleData.createBill2();
+        bill.getFormat().setOutputSize(BillFormat.OutputSizeEnum.A4_PORTRAIT_SHEET);
+
+        ResponseEntity<byte[]> response = postNdjson("/bill/batch/pdf", SampleData.createBill1(), bill,
+                SampleData.createBill1(), byte[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        try (PDDocument document = PDDocument.load(response.getBody())) {
+            assertEquals(3, document.getNumberOfPages());
+            assertEquals(105, document.getPage(0).getMediaBox().getHeight() / 72 * 25.4, 0.01);
+            assertEquals(297, document.getPage(1).getMediaBox().getHeight() / 72 * 25.4, 0.01);
+        }
+    }
+
+    @Test
+    void multipagePdfWithInvalidBill() {
+        QrBill invalidBill = SampleData.createBill1();
+        invalidBill.getCreditor().setTown(null);
+        List<QrBill> bills = Arrays.asList(SampleData.createBill1(), invalidBill);
+
+        ResponseEntity<ValidationMessage[]> response
+                = restTemplate.postForEntity("/bill/batch/pdf", bills, ValidationMessage[].class);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        ValidationMessage[] messages = response.getBody();
+        assertNotNull(messages);
+        assertEquals(1, messages.length);
+        assertEquals("[1].creditor.town", messages[0].getField());
+        assertEquals("field_is_mandatory", messages[0].getMessageKey());
+    }
+
+    @Test
+    void tooManyBillsForPdf() {
+        List<QrBill> bills = new ArrayList<>();
+        for (int i = 0; i < 201; i++)
+            bills.add(SampleData.createBill1());
+
+        ResponseEntity<String> response = restTemplate.postForEntity("/bill/batch/pdf", bills, String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void emptyBatch() {
+        ResponseEntity<String> response = restTemplate.postForEntity("/bill/batch/pdf",
+                new ArrayList<QrBill>(), String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    private <T> ResponseEntity<T> postNdjson(String url, QrBill bill1, QrBill bill2, QrBill bill3,
+                                             Class<T> responseType) throws JsonProcessingException {
+        StringBuilder body = new StringBuilder();
+        for (QrBill bill : Arrays.asList(bill1, bill2, bill3))
+            body.append(objectMapper.writeValueAsString(bill)).append('\n');
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MEDIA_TYPE_NDJSON);
+        return restTemplate.postForEntity(url, new HttpEntity<>(body.toString(), headers), responseType);
+    }
+
+    private static byte[] readAll(ZipInputStream zip) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = zip.read(buffer)) > 0)
+            os.write(buffer, 0, n);
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for batch validation API (newline-delimited JSON)
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DisplayName("Batch validation")
+class BatchValidationTests {
+
+    private static final MediaType MEDIA_TYPE_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+    private final TestRestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    BatchValidationTests(@Autowired TestRestTemplate template, @Autowired ObjectMapper objectMapper) {
+        restTemplate = template;
+        this.objectMapper = objectMapper;
+    }
+
+    @Test
+    void validateNdjson() throws IOException {
+        StringBuilder request = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            QrBill bill = SampleData.createBill1();
+            bill.setAmount(BigDecimal.valueOf(i + 1));
+            if (i % 7 == 3)
+                bill.getCreditor().setTown(null);
+            request.append(objectMapper.writeValueAsString(bill)).append('\n');
+        }
+
+        String[] lines = postNdjson(request.toString());
+
+        assertEquals(100, lines.length);
+        for (int i = 0; i < 100; i++) {
+            ValidationResponse response = objectMapper.readValue(lines[i], ValidationResponse.class);
+            assertEquals(0, BigDecimal.valueOf(i + 1).compareTo(response.getValidatedBill().getAmount()));
+            if (i % 7 == 3) {
+                assertFalse(response.getValid());
+                assertNull(response.getBillID());
+                assertEquals("creditor.town", response.getValidationMessages().get(0).getField());
+                assertNotNull(response.getValidationMessages().get(0).getMessage());
+            } else {
+                assertTrue(response.getValid());
+                assertNotNull(response.getBillID());
+                assertNotNull(response.getQrCodeText());
+            }
+        }
+    }
+
+    @Test
+    void validateJsonArray() throws IOException {
+        QrBill bill = SampleData.createBill2();
+        String request = objectMapper.writeValueAsString(Arrays.asList(SampleData.createBill1(), bill));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<String> response = restTemplate.postForEntity("/bill/batch/validated",
+                new HttpEntity<>(request, headers), String.class);
+
+        assertEquals(MEDIA_TYPE_NDJSON, response.getHeaders().getContentType());
+        assertNotNull(response.getBody());
+        String[] lines = response.getBody().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(bill.getCreditor().getName(),
+                objectMapper.readValue(lines[1], ValidationResponse.class).getValidatedBill().getCreditor().getName());
+    }
+
+    @Test
+    void emptyRequest() {
+        assertEquals(0, postNdjson("").length);
+    }
+
+    private String[] postNdjson(String request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MEDIA_TYPE_NDJSON);
+        ResponseEntity<String> response = restTemplate.postForEntity("/bill/batch/validated",
+                new HttpEntity<>(request, headers), String.class);
+        String body = response.getBody();
+        if (body == null || body.isEmpty())
+            return new String[0];
+        assertTrue(body.endsWith("\n"));
+        return body.split("\n");
+    }
+}
@@ -0,0 +1,89 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.web.controller.BillImage;
+import net.codecrete.qrbill.web.controller.BillImageCache;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit test for the disk cache of bill images
+ */
+@DisplayName("Bill image cache")
+class BillImageCacheTests {
+
+    private static final byte[] SVG_DATA = "<svg/>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PDF_DATA = "%PDF-1.4".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void imageKeepsFormat(@TempDir Path tempDir) throws IOException {
+        BillImageCache cache = new BillImageCache(tempDir, 100_000, "1.0");
+        String svgKey = cache.createKey("id", "svg");
+        String pdfKey = cache.createKey("id", "pdf");
+        cache.put(svgKey, new BillImage(GraphicsFormat.SVG, SVG_DATA));
+        cache.put(pdfKey, new BillImage(GraphicsFormat.PDF, PDF_DATA));
+
+        BillImage svgImage = new BillImageCache(tempDir, 100_000, "1.0").get(svgKey);
+        assertNotNull(svgImage);
+        assertEquals(GraphicsFormat.SVG, svgImage.getFormat());
+        assertArrayEquals(SVG_DATA, svgImage.getData());
+
+        BillImage pdfImage = cache.get(pdfKey);
+        assertNotNull(pdfImage);
+        assertEquals(GraphicsFormat.PDF, pdfImage.getFormat());
+        assertArrayEquals(PDF_DATA, pdfImage.getData());
+
+        // files contain the image only
+        assertArrayEquals(SVG_DATA, Files.readAllBytes(tempDir.resolve(svgKey + "-svg.bin")));
+    }
+
+    @Test
+    void keyDependsOnVersion(@TempDir Path tempDir) throws IOException {
+        BillImageCache cache = new BillImageCache(tempDir, 100_000, "1.0");
+        String key = cache.createKey("id", null);
+        cache.put(key, new BillImage(GraphicsFormat.SVG, SVG_DATA));
+
+        BillImageCache upgradedCache = new BillImageCache(tempDir, 100_000, "1.1");
+        String upgradedKey = upgradedCache.createKey("id", null);
+        assertNotEquals(key, upgradedKey);
+        assertNull(upgradedCache.get(upgradedKey));
+
+        assertNotEquals(key, cache.createKey("id", ""));
+        // unknown version: stable across restarts
+        assertEquals(new BillImageCache(null, 0, null).createKey("id"),
+                new BillImageCache(null, 0, null).createKey("id"));
+    }
+
+    @Test
+    void disabledCache(@TempDir Path tempDir) throws IOException {
+        Path directory = tempDir.resolve("cache");
+        BillImageCache cache = new BillImageCache(null, 100_000, "1.0");
+        String key = cache.createKey("id");
+        cache.put(key, new BillImage(GraphicsFormat.SVG, SVG_DATA));
+        assertNull(cache.get(key));
+
+        cache = new BillImageCache(directory, 0, "1.0");
+        cache.put(key, new BillImage(GraphicsFormat.SVG, SVG_DATA));
+        assertNull(cache.get(key));
+        assertFalse(Files.exists(directory));
+    }
+}
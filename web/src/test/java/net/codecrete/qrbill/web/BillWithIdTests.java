@@ -6,6 +6,8 @@
 //
 package net.codecrete.qrbill.web;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.codecrete.qrbill.web.model.QrBill;
 import net.codecrete.qrbill.web.model.ValidationResponse;
 import okhttp3.OkHttpClient;
@@ -23,8 +25,10 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -43,9 +47,11 @@ class BillWithIdTests {
     int randomServerPort;
 
     private final TestRestTemplate restTemplate;
+    private final MeterRegistry registry;
 
-    BillWithIdTests(@Autowired TestRestTemplate template) {
+    BillWithIdTests(@Autowired TestRestTemplate template, @Autowired MeterRegistry registry) {
         restTemplate = template;
+        this.registry = registry;
     }
 
     @Test
@@ -67,6 +73,23 @@ class BillWithIdTests {
         assertTrue(text.indexOf("Meierhans AG") > 0);
     }
 
+    @Test
+    void billIdIsCompact() {
+        QrBill bill = SampleData.createBill1();
+
+        ValidationResponse response = restTemplate.postForObject("/bill/validated", bill, ValidationResponse.class);
+        assertNotNull(response);
+
+        String billId = response.getBillID();
+        // legacy IDs (compressed JSON) of similar bills are more than twice as long
+        assertTrue(billId.length() < VALID_BILL_ID.length() / 2);
+        assertFalse(billId.startsWith("eJ"));
+
+        byte[] result = restTemplate.getForObject("/bill/image/" + billId, byte[].class);
+        assertNotNull(result);
+        assertTrue(new String(result, StandardCharsets.UTF_8).contains("Meierhans AG"));
+    }
+
     @Test
     void validateAndRetrieveBillWithDefaultFormat() {
         QrBill bill = SampleData.createBill2();
@@ -133,6 +156,56 @@ class BillWithIdTests {
         assertTrue(result[0] == '%' && result[1] == 'P' && result[2] == 'D' && result[3] == 'F');
     }
 
+    @Test
+    void retrieveCachedBill() throws IOException {
+        String url = "/bill/image/" + VALID_BILL_ID + "?graphicsFormat=pdf&outputSize=qr-bill-only";
+        Response response1 = getRequest(url);
+        assertEquals(200, response1.code());
+        byte[] result1 = response1.body().bytes();
+
+        Response response2 = getRequest(url);
+        assertEquals(200, response2.code());
+        assertEquals("application/pdf", response2.header("Content-Type"));
+        assertEquals(String.valueOf(result1.length), response2.header("Content-Length"));
+        assertArrayEquals(result1, response2.body().bytes());
+    }
+
+    @Test
+    void repeatedRequestIsServedFromMemory() throws IOException {
+        String url = "/bill/image/" + VALID_BILL_ID + "?graphicsFormat=svg&outputSize=a4-portrait-sheet";
+        FunctionCounter recentHits = registry.get("qrbill.image.coalesced").tag("source", "recent")
+                .functionCounter();
+        Response response1 = getRequest(url);
+        assertEquals(200, response1.code());
+        byte[] result1 = response1.body().bytes();
+        double hits = recentHits.count();
+
+        Response response2 = getRequest(url);
+        assertEquals(200, response2.code());
+        assertArrayEquals(result1, response2.body().bytes());
+        assertEquals(hits + 1, recentHits.count());
+    }
+
+    @Test
+    void retrieveBillWithETag() throws IOException {
+        String url = "/bill/image/" + VALID_BILL_ID + "?outputSize=qr-code-only";
+        Response response = getRequest(url);
+        assertEquals(200, response.code());
+        String eTag = response.header("ETag");
+        assertNotNull(eTag);
+        assertTrue(eTag.startsWith("\""));
+        assertEquals("Accept, Accept-Language", response.header("Vary"));
+
+        Response notModified = getRequest(url, eTag);
+        assertEquals(304, notModified.code());
+        assertEquals(eTag, notModified.header("ETag"));
+        assertEquals("Accept, Accept-Language", notModified.header("Vary"));
+        assertEquals(0, notModified.body().bytes().length);
+
+        Response otherFormat = getRequest(url + "&graphicsFormat=pdf", eTag);
+        assertEquals(200, otherFormat.code());
+        assertNotEquals(eTag, otherFormat.header("ETag"));
+    }
 
     @Test
     void retrieveWithInvalidBillID() throws IOException {
@@ -141,10 +214,16 @@ class BillWithIdTests {
     }
 
     private Response getRequest(String relativeUrl) throws IOException {
+        return getRequest(relativeUrl, null);
+    }
+
+    private Response getRequest(String relativeUrl, String ifNoneMatch) throws IOException {
         OkHttpClient client = new OkHttpClient();
-        Request request = new Request.Builder()
-                .url(String.format("http://localhost:%d/qrbill-api%s", randomServerPort, relativeUrl))
-                .build();
+        Request.Builder builder = new Request.Builder()
+                .url(String.format("http://localhost:%d/qrbill-api%s", randomServerPort, relativeUrl));
+        if (ifNoneMatch != null)
+            builder.header("If-None-Match", ifNoneMatch);
+        Request request = builder.build();
 
         return client.newCall(request).execute();
     }
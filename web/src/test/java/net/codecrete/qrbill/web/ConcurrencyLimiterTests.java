@@ -0,0 +1,169 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.codecrete.qrbill.web.controller.ConcurrencyLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for the adaptive concurrency limit
+ */
+@DisplayName("Concurrency limiter")
+class ConcurrencyLimiterTests {
+
+    @Test
+    void rejectsWithoutQueue() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 0, 1000);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+
+        ConcurrencyLimiter.Permit permit = limiter.acquire();
+        assertEquals(1, registry.get("qrbill.render.inflight").gauge().value());
+        assertThrows(RejectedExecutionException.class, limiter::acquire);
+        assertThrows(RejectedExecutionException.class, limiter::tryAcquire);
+        assertEquals(2, registry.get("qrbill.render.rejected").tag("reason", "queue.full")
+                .functionCounter().count());
+
+        permit.release(true);
+        permit.release(true);
+        assertEquals(0, limiter.getInFlight());
+        limiter.tryAcquire().release(false);
+    }
+
+    @Test
+    void queuedRequestGetsPermit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1, 10_000);
+        ConcurrencyLimiter.Permit permit = limiter.acquire();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = executor.submit(() -> limiter.call(() -> "done"));
+            while (limiter.getQueueLength() == 0)
+                Thread.sleep(1);
+            assertFalse(result.isDone());
+
+            permit.release(true);
+            assertEquals("done", result.get(10, TimeUnit.SECONDS));
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void queueTimeout() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1, 50);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+        ConcurrencyLimiter.Permit permit = limiter.acquire();
+
+        assertThrows(RejectedExecutionException.class, () -> limiter.call(() -> "never"));
+        assertEquals(1, registry.get("qrbill.render.rejected").tag("reason", "timeout")
+                .functionCounter().count());
+        assertEquals(0, limiter.getQueueLength());
+        permit.release(false);
+    }
+
+    @Test
+    void failedTaskReleasesPermit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 0, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> limiter.call(() -> {
+            throw new IllegalArgumentException();
+        }));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void limitAdaptsToLatency() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 100, 100, 10_000);
+
+        // constant latency with all permits used: the limit grows
+        runConcurrently(limiter, 8, 40, 2);
+        int increasedLimit = limiter.getLimit();
+        assertTrue(increasedLimit > 8);
+
+        // latency rises sharply: the limit shrinks
+        runConcurrently(limiter, increasedLimit, 10, 40);
+        assertTrue(limiter.getLimit() < increasedLimit);
+    }
+
+    @Test
+    void waitBeforeStartIsIgnored() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 100, 0, 0);
+
+        // constant execution time: the limit grows
+        renderWithWait(limiter, 10, 0);
+        int increasedLimit = limiter.getLimit();
+        assertTrue(increasedLimit > 2);
+
+        // longer wait before the rendering starts: the limit does not shrink
+        renderWithWait(limiter, 10, 40);
+        assertTrue(limiter.getLimit() >= increasedLimit);
+    }
+
+    private static void renderWithWait(ConcurrencyLimiter limiter, int iterations, long waitMillis) {
+        for (int i = 0; i < iterations; i++) {
+            // use all permits so that the limit is adjusted
+            List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            for (int j = limiter.getLimit(); j > 0; j--)
+                permits.add(limiter.acquire());
+            sleep(waitMillis);
+            for (ConcurrencyLimiter.Permit permit : permits)
+                permit.markStart();
+            sleep(2);
+            for (ConcurrencyLimiter.Permit permit : permits)
+                permit.release(true);
+        }
+    }
+
+    private static void runConcurrently(ConcurrencyLimiter limiter, int threads, int iterations, long sleepMillis)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < iterations; j++) {
+                        limiter.call(() -> {
+                            sleep(sleepMillis);
+                            return null;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
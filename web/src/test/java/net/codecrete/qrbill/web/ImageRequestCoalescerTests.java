@@ -0,0 +1,177 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.web.controller.BillImage;
+import net.codecrete.qrbill.web.controller.ImageRequestCoalescer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for the coalescing of bill image requests
+ */
+@DisplayName("Image request coalescing")
+class ImageRequestCoalescerTests {
+
+    private static final BillImage IMAGE = new BillImage(GraphicsFormat.SVG, new byte[] { 1, 2, 3 });
+
+    private final AtomicInteger renderCount = new AtomicInteger();
+
+    @Test
+    void concurrentRequestsShareRendering() throws Exception {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(0, 1000, 10_000);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        coalescer.bindTo(registry);
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<BillImage>> results = new ArrayList<>();
+            results.add(executor.submit(() -> coalescer.get("key", () -> {
+                rendering.countDown();
+                await(release);
+                return render();
+            })));
+            assertTrue(rendering.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++)
+                results.add(executor.submit(() -> coalescer.get("key", this::render)));
+            while (registry.get("qrbill.image.coalesced").tag("source", "inflight").functionCounter().count() < 4)
+                Thread.sleep(1);
+
+            release.countDown();
+            for (Future<BillImage> result : results)
+                assertSame(IMAGE, result.get(10, TimeUnit.SECONDS));
+            assertEquals(1, renderCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitingRequestTimesOut() throws Exception {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(0, 1000, 50);
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BillImage> first = executor.submit(() -> coalescer.get("key", () -> {
+                rendering.countDown();
+                await(release);
+                return render();
+            }));
+            assertTrue(rendering.await(10, TimeUnit.SECONDS));
+
+            assertThrows(RejectedExecutionException.class, () -> coalescer.get("key", this::render));
+            assertThrows(RejectedExecutionException.class,
+                    () -> coalescer.getAsync("key", () -> Mono.fromSupplier(this::render)).block());
+
+            release.countDown();
+            assertSame(IMAGE, first.get(10, TimeUnit.SECONDS));
+            assertEquals(1, renderCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void recentResultIsReused() throws InterruptedException {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(100, 1000, 10_000);
+        BillImage result = coalescer.get("key", this::render);
+        assertSame(result, coalescer.get("key", this::render));
+        assertEquals(1, renderCount.get());
+
+        coalescer.get("other", this::render);
+        assertEquals(2, renderCount.get());
+
+        Thread.sleep(150);
+        coalescer.get("key", this::render);
+        assertEquals(3, renderCount.get());
+    }
+
+    @Test
+    void recentResultsAreLimited() {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(60_000, 2 * IMAGE.getData().length, 10_000);
+        coalescer.get("key1", this::render);
+        coalescer.get("key2", this::render);
+        coalescer.get("key3", this::render);
+        assertEquals(3, renderCount.get());
+
+        coalescer.get("key3", this::render);
+        coalescer.get("key2", this::render);
+        assertEquals(3, renderCount.get());
+        coalescer.get("key1", this::render);
+        assertEquals(4, renderCount.get());
+    }
+
+    @Test
+    void failureIsNotKept() {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(60_000, 1000, 10_000);
+        assertThrows(IllegalArgumentException.class, () -> coalescer.get("key", () -> {
+            throw new IllegalArgumentException();
+        }));
+
+        assertSame(IMAGE, coalescer.get("key", this::render));
+    }
+
+    @Test
+    void asyncRequestsShareRendering() {
+        ImageRequestCoalescer coalescer = new ImageRequestCoalescer(60_000, 1000, 10_000);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        coalescer.bindTo(registry);
+        MonoProcessor<BillImage> rendering = MonoProcessor.create();
+
+        Mono<BillImage> first = coalescer.getAsync("key", () -> {
+            renderCount.incrementAndGet();
+            return rendering;
+        }).cache();
+        first.subscribe();
+        Mono<BillImage> second = coalescer.getAsync("key", () -> Mono.fromSupplier(this::render));
+        second.subscribe();
+        assertEquals(1, registry.get("qrbill.image.coalesced").tag("source", "inflight").functionCounter().count());
+
+        rendering.onNext(IMAGE);
+        assertSame(IMAGE, first.block());
+        assertSame(IMAGE, second.block());
+        assertSame(IMAGE, coalescer.getAsync("key", () -> Mono.fromSupplier(this::render)).block());
+        assertEquals(1, renderCount.get());
+    }
+
+    private BillImage render() {
+        renderCount.incrementAndGet();
+        return IMAGE;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
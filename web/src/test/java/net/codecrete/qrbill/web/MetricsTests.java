@@ -0,0 +1,109 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.codecrete.qrbill.web.controller.ServiceMetrics;
+import net.codecrete.qrbill.web.model.BillFormat;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for the service metrics
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DisplayName("Service metrics")
+class MetricsTests {
+
+    private final TestRestTemplate restTemplate;
+    private final MeterRegistry registry;
+
+    MetricsTests(@Autowired TestRestTemplate template, @Autowired MeterRegistry registry) {
+        restTemplate = template;
+        this.registry = registry;
+    }
+
+    @Test
+    void generationMetrics() {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PDF);
+        bill.getFormat().setLanguage(BillFormat.LanguageEnum.FR);
+        DistributionSummary qrCodeVersion = registry.get("qrbill.qrcode.version").summary();
+        long qrCodeCount = qrCodeVersion.count();
+        // generation meters are registered on first use
+        Timer previousTimer = registry.find("qrbill.generate")
+                .tags("format", "PDF", "output.size", "QR_BILL_ONLY", "language", "FR").timer();
+        long count = previousTimer != null ? previousTimer.count() : 0;
+
+        byte[] response = restTemplate.postForObject("/bill/image", bill, byte[].class);
+
+        assertNotNull(response);
+        Timer timer = registry.get("qrbill.generate")
+                .tags("format", "PDF", "output.size", "QR_BILL_ONLY", "language", "FR").timer();
+        DistributionSummary outputSize = registry.get("qrbill.generate.output")
+                .tags("format", "PDF", "output.size", "QR_BILL_ONLY", "language", "FR").summary();
+        assertTrue(timer.count() > count);
+        assertTrue(outputSize.max() >= response.length);
+        assertTrue(qrCodeVersion.count() > qrCodeCount);
+        assertTrue(qrCodeVersion.max() >= 1 && qrCodeVersion.max() <= 40);
+    }
+
+    @Test
+    void validationMetrics() {
+        Timer validation = registry.get("qrbill.validate").tag("outcome", "valid").timer();
+        Timer billIdEncoding = registry.get("qrbill.billid").tag("operation", "encode").timer();
+        long validationCount = validation.count();
+        long billIdCount = billIdEncoding.count();
+
+        ValidationResponse response = restTemplate.postForObject("/bill/validated", SampleData.createBill1(),
+                ValidationResponse.class);
+
+        assertNotNull(response);
+        assertTrue(validation.count() > validationCount);
+        assertTrue(billIdEncoding.count() > billIdCount);
+    }
+
+    @Test
+    void generationMetersAreRegisteredLazily() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ServiceMetrics(meterRegistry);
+
+        assertNull(meterRegistry.find("qrbill.generate").meter());
+        assertNull(meterRegistry.find("qrbill.generate.output").meter());
+        assertNotNull(meterRegistry.find("qrbill.validate").timer());
+    }
+
+    @Test
+    void prometheusEndpoint() {
+        restTemplate.postForObject("/bill/validated", SampleData.createBill1(), ValidationResponse.class);
+        restTemplate.postForObject("/bill/image", SampleData.createBill1(), byte[].class);
+
+        String text = restTemplate.getForObject("/actuator/prometheus", String.class);
+
+        assertNotNull(text);
+        assertTrue(text.contains("qrbill_validate_seconds_count{outcome=\"valid\",}"));
+        assertTrue(text.contains("qrbill_generate_output_bytes_bucket{"));
+        assertTrue(text.contains("http_server_requests_seconds_bucket{"));
+        assertTrue(text.contains("qrbill_render_limit "));
+        assertTrue(text.contains("qrbill_render_rejected_total{reason=\"timeout\",}"));
+    }
+}
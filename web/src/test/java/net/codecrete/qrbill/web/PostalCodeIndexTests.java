@@ -0,0 +1,131 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData;
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for the prefix and substring search of the postal code index
+ */
+@DisplayName("Postal code index")
+class PostalCodeIndexTests {
+
+    private static final String HEADER = "Ortschaftsname;PLZ;Zusatzziffer;Gemeindename;BFS-Nr;Kantonskürzel\n";
+
+    private static final String DATA = "Zürich;8001;0;Zürich;261;ZH\n"
+            + "Zürich;8002;0;Zürich;261;ZH\n"
+            + "Kloten;8302;0;Kloten;62;ZH\n"
+            + "Bern;3011;0;Bern;351;BE\n"
+            + "Bremgarten bei Bern;3047;0;Bremgarten bei Bern;353;BE\n"
+            + "Rickenbach;6221;0;Rickenbach (LU);1097;LU\n"
+            + "Rickenbach Sulz;8545;0;Rickenbach (ZH);225;ZH\n"
+            + "Chur;7000;0;Chur;3901;GR\n"
+            + "La Chaux-de-Fonds;2300;0;La Chaux-de-Fonds;6421;NE\n";
+
+    private static PostalCodeData data;
+
+    @BeforeAll
+    static void loadData(@TempDir Path tempDir) throws IOException {
+        StringBuilder lines = new StringBuilder(DATA);
+        for (int i = 0; i < 25; i++)
+            lines.append("Testdorf ").append(i).append(';').append(1100 + i).append(";0;Testdorf;9999;BE\n");
+
+        Path path = tempDir.resolve("list.zip");
+        try (OutputStream os = Files.newOutputStream(path); ZipOutputStream zip = new ZipOutputStream(os)) {
+            zip.putNextEntry(new ZipEntry("PLZO_CSV_LV03.csv"));
+            zip.write((HEADER + lines).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        data = new PostalCodeData(path.toUri().toString(), null, 0);
+        data.refresh();
+    }
+
+    @Test
+    void postalCodePrefix() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "800");
+        assertEquals(2, result.size());
+        assertEquals("8001", result.get(0).code);
+        assertEquals("8002", result.get(1).code);
+    }
+
+    @Test
+    void postalCodeSubstring() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "302");
+        assertEquals(1, result.size());
+        assertEquals("8302", result.get(0).code);
+        assertEquals("Kloten", result.get(0).town);
+    }
+
+    @Test
+    void prefixBeforeSubstring() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "30");
+        assertEquals(2, result.size());
+        assertEquals("3011", result.get(0).code);
+        assertEquals("3047", result.get(1).code);
+
+        result = data.suggestPostalCodes("CH", "bern");
+        assertEquals(2, result.size());
+        assertEquals("Bern", result.get(0).town);
+        assertEquals("Bremgarten bei Bern", result.get(1).town);
+    }
+
+    @Test
+    void townSubstring() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "bach");
+        assertEquals(2, result.size());
+        assertEquals("Rickenbach", result.get(0).town);
+        assertEquals("Rickenbach Sulz", result.get(1).town);
+
+        result = data.suggestPostalCodes("CH", "sulz");
+        assertEquals(1, result.size());
+        assertEquals("8545", result.get(0).code);
+    }
+
+    @Test
+    void shortQueryOnlyMatchesPrefix() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "ch");
+        assertEquals(1, result.size());
+        assertEquals("Chur", result.get(0).town);
+
+        result = data.suggestPostalCodes("CH", "02");
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void resultIsLimited() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "11");
+        assertEquals(20, result.size());
+        assertEquals("1100", result.get(0).code);
+        assertEquals("1119", result.get(19).code);
+    }
+
+    @Test
+    void noMatches() {
+        assertTrue(data.suggestPostalCodes("CH", "9999").isEmpty());
+        assertTrue(data.suggestPostalCodes("CH", "xyz").isEmpty());
+        assertTrue(data.suggestPostalCodes("CH", "qqqbach").isEmpty());
+        assertTrue(data.suggestPostalCodes("CH", "").isEmpty());
+        assertTrue(data.suggestPostalCodes("DE", "Bern").isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for loading the postal code data from a local file and a snapshot
+ */
+@DisplayName("Postal code snapshot")
+class PostalCodeSnapshotTests {
+
+    private static final String HEADER = "Ortschaftsname;PLZ;Zusatzziffer;Gemeindename;BFS-Nr;Kantonskürzel\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void refreshFromLocalFile() throws IOException {
+        Path source = createZip("list.zip", "Kloten;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        Path snapshot = tempDir.resolve("snapshot.bin");
+
+        PostalCodeData data = new PostalCodeData(source.toUri().toString(), snapshot, 0);
+        data.refresh();
+
+        List<PostalCodeData.PostalCode> result = data.suggestPostalCodes("CH", "8302");
+        assertEquals(1, result.size());
+        assertEquals("Kloten", result.get(0).town);
+        assertTrue(Files.exists(snapshot));
+    }
+
+    @Test
+    void startFromSnapshot() throws IOException {
+        Path source = createZip("list.zip", "Kloten;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        Path snapshot = tempDir.resolve("snapshot.bin");
+        new PostalCodeData(source.toUri().toString(), snapshot, 0).refresh();
+
+        String missingSource = tempDir.resolve("missing.zip").toUri().toString();
+        PostalCodeData data = new PostalCodeData(missingSource, snapshot, 0);
+        data.start();
+
+        List<PostalCodeData.PostalCode> result = data.suggestPostalCodes("CH", "zür");
+        assertEquals(1, result.size());
+        assertEquals("8001", result.get(0).code);
+        assertEquals("Zürich", result.get(0).town);
+        assertThrows(PostalCodeData.PostalCodeDataException.class, data::refresh);
+    }
+
+    @Test
+    void refreshReplacesData() throws IOException {
+        Path source = createZip("list.zip", "Kloten;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        PostalCodeData data = new PostalCodeData(source.toUri().toString(), null, 0);
+        data.refresh();
+        assertEquals("Kloten", data.suggestPostalCodes("CH", "830").get(0).town);
+
+        createZip("list.zip", "Kloten Flughafen;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        data.refresh();
+        assertEquals("Kloten Flughafen", data.suggestPostalCodes("CH", "830").get(0).town);
+    }
+
+    @Test
+    void backgroundRefresh() throws IOException, InterruptedException {
+        Path source = createZip("list.zip", "Kloten;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        Path snapshot = tempDir.resolve("snapshot.bin");
+        PostalCodeData data = new PostalCodeData(source.toUri().toString(), snapshot, 60);
+        try {
+            data.start();
+            for (int i = 0; i < 100 && !Files.exists(snapshot); i++)
+                Thread.sleep(50);
+            assertTrue(Files.exists(snapshot));
+        } finally {
+            data.stop();
+        }
+    }
+
+    @Test
+    void failedWriteRemovesTemporaryFile() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            longName.append("Zürich");
+        Path source = createZip("list.zip", longName + ";8001;0;Zürich;261;ZH\n");
+        Path snapshot = tempDir.resolve("snapshot.bin");
+
+        PostalCodeData data = new PostalCodeData(source.toUri().toString(), snapshot, 0);
+        data.refresh();
+        assertEquals(1, data.suggestPostalCodes("CH", "8001").size());
+        assertFalse(Files.exists(snapshot));
+        assertFalse(Files.exists(tempDir.resolve("snapshot.bin.tmp")));
+    }
+
+    @Test
+    void requestDownloadWritesSnapshot() throws IOException {
+        Path source = createZip("list.zip", "Kloten;8302;0;Kloten;62;ZH\nZürich;8001;0;Zürich;261;ZH\n");
+        Path snapshot = tempDir.resolve("snapshot.bin");
+
+        PostalCodeData data = new PostalCodeData(source.toUri().toString(), snapshot, 0);
+        data.start();
+        assertEquals("Kloten", data.suggestPostalCodes("CH", "8302").get(0).town);
+        assertTrue(Files.exists(snapshot));
+    }
+
+    private Path createZip(String name, String lines) throws IOException {
+        Path path = tempDir.resolve(name);
+        try (OutputStream os = Files.newOutputStream(path); ZipOutputStream zip = new ZipOutputStream(os)) {
+            zip.putNextEntry(new ZipEntry("PLZO_CSV_LV03.csv"));
+            zip.write((HEADER + lines).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return path;
+    }
+}
@@ -0,0 +1,191 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.web.controller.RenderPool;
+import net.codecrete.qrbill.web.model.BillFormat;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationMessage;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import net.codecrete.qrbill.web.reactive.ReactiveApplication;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for the WebFlux variant of the bill API
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = ReactiveApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.main.web-application-type=reactive",
+                "qrbill.render.threads=1",
+                "qrbill.render.queue-capacity=1"
+        })
+@DisplayName("Reactive bill API")
+class ReactiveBillTests {
+
+    private final WebTestClient client;
+    private final RenderPool renderPool;
+
+    ReactiveBillTests(@Autowired WebTestClient client, @Autowired RenderPool renderPool) {
+        this.client = client;
+        this.renderPool = renderPool;
+    }
+
+    @Test
+    void validateBill() {
+        ValidationResponse response = client.post().uri("/qrbill-api/bill/validated")
+                .bodyValue(SampleData.createBill1())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ValidationResponse.class)
+                .returnResult().getResponseBody();
+
+        assertNotNull(response);
+        assertTrue(response.getValid());
+        assertNotNull(response.getBillID());
+        assertNotNull(response.getQrCodeText());
+    }
+
+    @Test
+    void generatePdfBill() {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PDF);
+
+        byte[] result = client.post().uri("/qrbill-api/bill/image")
+                .bodyValue(bill)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_PDF)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertNotNull(result);
+        assertTrue(new String(result, 0, 4, StandardCharsets.US_ASCII).startsWith("%PDF"));
+    }
+
+    @Test
+    void languageFromHeader() {
+        QrBill bill = SampleData.createBill1();
+        bill.setFormat(null);
+
+        byte[] result = client.post().uri("/qrbill-api/bill/image")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "zh, de")
+                .bodyValue(bill)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertNotNull(result);
+        assertTrue(new String(result, StandardCharsets.UTF_8).contains("Zahlteil"));
+    }
+
+    @Test
+    void validationError() {
+        QrBill bill = SampleData.createBill1();
+        bill.getCreditor().setTown(null);
+
+        List<ValidationMessage> messages = client.post().uri("/qrbill-api/bill/image")
+                .bodyValue(bill)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBodyList(ValidationMessage.class)
+                .returnResult().getResponseBody();
+
+        assertNotNull(messages);
+        assertEquals(1, messages.size());
+        assertEquals("creditor.town", messages.get(0).getField());
+        assertEquals("field_is_mandatory", messages.get(0).getMessageKey());
+        assertNotNull(messages.get(0).getMessage());
+    }
+
+    @Test
+    void retrieveBillWithETag() {
+        ValidationResponse response = client.post().uri("/qrbill-api/bill/validated")
+                .bodyValue(SampleData.createBill1())
+                .exchange()
+                .expectBody(ValidationResponse.class)
+                .returnResult().getResponseBody();
+        assertNotNull(response);
+        String uri = "/qrbill-api/bill/image/" + response.getBillID();
+
+        String eTag = client.get().uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=864000")
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Language")
+                .returnResult(byte[].class).getResponseHeaders().getETag();
+        assertNotNull(eTag);
+
+        byte[] cached = client.get().uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, eTag)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+        assertNotNull(cached);
+        assertTrue(new String(cached, StandardCharsets.UTF_8).contains("<svg"));
+
+        client.get().uri(uri)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Language")
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void invalidBillId() {
+        client.get().uri("/qrbill-api/bill/image/ABCD")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void overloadIsRejected() throws InterruptedException {
+        // occupy the single render thread and the single queue slot
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        renderPool.submit(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }).subscribe();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        renderPool.submit(() -> release.await(10, TimeUnit.SECONDS)).subscribe();
+
+        try {
+            String retryAfter = client.post().uri("/qrbill-api/bill/image")
+                    .bodyValue(SampleData.createBill1())
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                    .returnResult(String.class).getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+            assertNotNull(retryAfter);
+            assertFalse(retryAfter.isEmpty());
+        } finally {
+            release.countDown();
+        }
+    }
+}
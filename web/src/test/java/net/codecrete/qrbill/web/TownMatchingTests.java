@@ -0,0 +1,103 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.web.controller.PostalCodeData;
+import net.codecrete.qrbill.web.controller.PostalCodeData.PostalCode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test for accent-insensitive and fuzzy town matching
+ */
+@DisplayName("Town matching")
+class TownMatchingTests {
+
+    private static final String DATA = "Ortschaftsname;PLZ;Zusatzziffer;Gemeindename;BFS-Nr;Kantonskürzel\n"
+            + "Zürich;8001;0;Zürich;261;ZH\n"
+            + "Zürich;8002;0;Zürich;261;ZH\n"
+            + "Rickenbach;6221;0;Rickenbach (LU);1097;LU\n"
+            + "Rickenbach Sulz;8545;0;Rickenbach (ZH);225;ZH\n"
+            + "Genève;1201;0;Genève;6621;GE\n"
+            + "St. Gallen;9000;0;St. Gallen;3203;SG\n"
+            + "La Chaux-de-Fonds;2300;0;La Chaux-de-Fonds;6421;NE\n"
+            + "Kloten;8302;0;Kloten;62;ZH\n"
+            + "Bern;3011;0;Bern;351;BE\n";
+
+    private static PostalCodeData data;
+
+    @BeforeAll
+    static void loadData(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("list.zip");
+        try (OutputStream os = Files.newOutputStream(path); ZipOutputStream zip = new ZipOutputStream(os)) {
+            zip.putNextEntry(new ZipEntry("PLZO_CSV_LV03.csv"));
+            zip.write(DATA.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        data = new PostalCodeData(path.toUri().toString(), null, 0);
+        data.refresh();
+    }
+
+    @Test
+    void withoutAccents() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "Zurich");
+        assertEquals(2, result.size());
+        assertEquals("Zürich", result.get(0).town);
+        assertEquals("8001", result.get(0).code);
+
+        result = data.suggestPostalCodes("CH", "geneve");
+        assertEquals(1, result.size());
+        assertEquals("Genève", result.get(0).town);
+    }
+
+    @Test
+    void withoutHyphens() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "chaux de fonds");
+        assertEquals(1, result.size());
+        assertEquals("2300", result.get(0).code);
+    }
+
+    @Test
+    void withTypingError() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "Rikenbach");
+        assertEquals(1, result.size());
+        assertEquals("Rickenbach", result.get(0).town);
+
+        result = data.suggestPostalCodes("CH", "Zuerich");
+        assertEquals(2, result.size());
+        assertEquals("Zürich", result.get(0).town);
+    }
+
+    @Test
+    void exactMatchesFirst() {
+        List<PostalCode> result = data.suggestPostalCodes("CH", "rickenbach");
+        assertEquals(2, result.size());
+        assertEquals("Rickenbach", result.get(0).town);
+        assertEquals("Rickenbach Sulz", result.get(1).town);
+    }
+
+    @Test
+    void shortQueryNotFuzzy() {
+        assertTrue(data.suggestPostalCodes("CH", "abc").isEmpty());
+        assertTrue(data.suggestPostalCodes("CH", "berm").isEmpty());
+        assertEquals("Kloten", data.suggestPostalCodes("CH", "kloen").get(0).town);
+    }
+}
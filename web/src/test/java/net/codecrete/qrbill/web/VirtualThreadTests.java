@@ -0,0 +1,201 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2020 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.web.controller.RenderPool;
+import net.codecrete.qrbill.web.controller.VirtualThreads;
+import net.codecrete.qrbill.web.model.BillFormat;
+import net.codecrete.qrbill.web.model.QrBill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit test for the virtual thread execution mode
+ * <p>
+ * On JVMs without virtual threads, the service falls back to platform threads.
+ * </p>
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "qrbill.virtual-threads=true",
+                "qrbill.render.threads=1",
+                "qrbill.render.queue-capacity=1"
+        })
+@DisplayName("Virtual thread mode")
+class VirtualThreadTests {
+
+    private final TestRestTemplate restTemplate;
+    private final RenderPool renderPool;
+
+    VirtualThreadTests(@Autowired TestRestTemplate template, @Autowired RenderPool renderPool) {
+        restTemplate = template;
+        this.renderPool = renderPool;
+    }
+
+    @Test
+    void pdfQrBill() {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PDF);
+        byte[] response = restTemplate.postForObject("/bill/image", bill, byte[].class);
+
+        assertNotNull(response);
+        assertEquals("%PDF-1.4", new String(response, 0, 8, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void requestRunsOnVirtualThread() throws ReflectiveOperationException {
+        assumeTrue(VirtualThreads.isSupported(), "virtual threads require Java 21 or later");
+
+        RequestThreadFilter.lastThread.set(null);
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.SVG);
+        ResponseEntity<byte[]> response = restTemplate.postForEntity("/bill/image", bill, byte[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        Thread requestThread = RequestThreadFilter.lastThread.get();
+        assertNotNull(requestThread);
+        assertTrue(requestThread.getName().startsWith("http-virtual-"));
+        assertTrue(isVirtual(requestThread));
+    }
+
+    @Test
+    void renderPoolBoundsConcurrency() throws InterruptedException {
+        assumeTrue(VirtualThreads.isSupported(), "virtual threads require Java 21 or later");
+        assertEquals(1, renderPool.getThreads());
+
+        // many virtual threads compete for the single render thread and the single queue slot
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = VirtualThreads.newThreadPerTaskExecutor("test-virtual-");
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++)
+                results.add(callers.submit(() -> renderPool.call(() -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        return release.await(10, TimeUnit.SECONDS);
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                })));
+            Thread.sleep(200);
+            release.countDown();
+
+            int rejected = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    assertTrue(result.get(10, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    rejected++;
+                } catch (TimeoutException e) {
+                    fail("render task did not complete");
+                }
+            }
+            assertEquals(1, maxActive.get());
+            assertTrue(rejected > 0);
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void overloadIsRejected() throws InterruptedException {
+        assumeTrue(VirtualThreads.isSupported());
+
+        // occupy the single render thread and the single queue slot
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        callers.execute(() -> renderPool.call(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        callers.execute(() -> renderPool.call(() -> release.await(10, TimeUnit.SECONDS)));
+        Thread.sleep(100);
+
+        try {
+            ResponseEntity<String> response
+                    = restTemplate.postForEntity("/bill/image", SampleData.createBill1(), String.class);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+            assertNotNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        Method isVirtual = Thread.class.getMethod("isVirtual");
+        return (Boolean) isVirtual.invoke(thread);
+    }
+
+    /**
+     * Records the thread handling the most recent request
+     */
+    @TestConfiguration
+    static class RequestThreadConfig {
+
+        @Bean
+        RequestThreadFilter requestThreadFilter() {
+            return new RequestThreadFilter();
+        }
+    }
+
+    static class RequestThreadFilter extends OncePerRequestFilter {
+
+        static final AtomicReference<Thread> lastThread = new AtomicReference<>();
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws ServletException, IOException {
+            lastThread.set(Thread.currentThread());
+            filterChain.doFilter(request, response);
+        }
+    }
+}